@@ -0,0 +1,370 @@
+package cbcb.kmulus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.db.cluster.ClusterPresenceVectors;
+import cbcb.kmulus.db.cluster.ResidentKMeans;
+import cbcb.kmulus.db.cluster.ResidentVectors;
+import cbcb.kmulus.db.cluster.SeedPresenceVectors;
+import cbcb.kmulus.db.processing.GenerateSequencePresenceVectors;
+import cbcb.kmulus.db.processing.WritePartitions;
+import cbcb.kmulus.util.PresenceVector;
+
+/**
+ * Runs the stages of {@link PartitionDatabase} in process, over local files, for databases which
+ * fit in the memory of one machine.  The presence vectors, the k-means iterations, the final
+ * assignment, the partitions and the union centers are computed on a {@link ForkJoinPool} with
+ * every intermediate in memory, the vectors in {@link ResidentVectors}, by the same code as the
+ * Hadoop jobs and {@link ResidentKMeans}.  They are written in the same layout and formats:
+ * OUTPUT_DIR/partitions, centers, means and assignments.
+ *
+ * The results are those of the Hadoop pipeline run with a single reduce task, as with the local
+ * job runner, except that a sequence equally close to several centers is assigned to the first of
+ * them rather than to one at random.  The clustering is seeded as by
+ * {@link SeedPresenceVectors}, the same as the pipeline given the same SEED, and runs
+ * {@link ClusterPresenceVectors#NUM_ITERATIONS} iterations.
+ */
+public class LocalPartitionDatabase extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(LocalPartitionDatabase.class);
+
+	private static final String USAGE =
+		"LocalPartitionDatabase DATABASE_SEQS OUTPUT_DIR NUM_CLUSTERS [KMER_LEN] [NUM_THREADS] " +
+		"[SEED]";
+
+	private static final int DEF_KMER_LEN = 3;
+
+	/** The number of tasks each stage is split into per thread, to balance the load. */
+	private static final int TASKS_PER_THREAD = 4;
+
+	/* The names of the part files written, as by the first task of each job. */
+	private static final String MAP_PART = "part-m-00000";
+	private static final String REDUCE_PART = "part-r-00000";
+	private static final String PARTITION_PART = WritePartitions.PARTITION_FILE + "-m-00000";
+
+	private ForkJoinPool pool;
+	private int numThreads;
+	private int kmerLength;
+
+	/** A simple FASTA record, as read. */
+	private static class Record {
+		private final String header;
+		private final String sequence;
+
+		private Record(String header, String sequence) {
+			this.header = header;
+			this.sequence = sequence;
+		}
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new LocalPartitionDatabase(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Pipeline failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println(USAGE);
+			return -1;
+		}
+
+		File dbInput = new File(args[0]);
+		File finalOut = new File(args[1]);
+		int numClusters = Integer.parseInt(args[2]);
+		kmerLength = args.length > 3 ? Integer.parseInt(args[3]) : DEF_KMER_LEN;
+		numThreads = args.length > 4 ?
+				Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : new Random().nextLong();
+
+		LOG.info("Tool name: " + LocalPartitionDatabase.class.getName());
+		LOG.info(" - sequenceInput: " + dbInput);
+		LOG.info(" - outputDir: " + finalOut);
+		LOG.info(" - numClusters: " + numClusters);
+		LOG.info(" - numThreads: " + numThreads);
+		LOG.info(" - seed: " + seed);
+
+		pool = new ForkJoinPool(Math.max(1, numThreads));
+		try {
+			long startTime = System.currentTimeMillis();
+			List<Record> records = readRecords(dbInput);
+			ResidentVectors vectors = new ResidentVectors(kmerLength);
+			for (PresenceVector vector : createVectors(records)) {
+				vectors.add(vector);
+			}
+			LOG.info("Created the vectors of " + vectors.size() + " sequences in " +
+					(System.currentTimeMillis() - startTime) + "ms.");
+
+			ResidentKMeans.Means seeds = ResidentKMeans.seed(vectors, numClusters, seed,
+					SeedPresenceVectors.DEFAULT_NUM_ROUNDS, pool);
+			ResidentKMeans.Means means = ResidentKMeans.cluster(vectors, seeds,
+					ClusterPresenceVectors.NUM_ITERATIONS, pool);
+
+			/* The final run assigns every sequence, and takes the union of each cluster. */
+			startTime = System.currentTimeMillis();
+			PresenceVector[] centers = ResidentKMeans.loadCenters(means);
+			int[] assignment = vectors.assign(centers, pool);
+			PresenceVector[] unions = vectors.union(assignment, centers.length, pool);
+
+			FileSystem fs = FileSystem.getLocal(getConf());
+			File partitionsOut = new File(finalOut, PartitionDatabase.PARTITIONS_SUFFIX);
+			File centersOut = new File(finalOut, PartitionDatabase.CENTERS_SUFFIX);
+			File meansOut = new File(finalOut, PartitionDatabase.MEANS_SUFFIX);
+			File assignmentsOut = new File(finalOut, PartitionDatabase.ASSIGNMENTS_SUFFIX);
+			for (File dir : new File[] {partitionsOut, centersOut, meansOut, assignmentsOut}) {
+				FileUtil.fullyDelete(dir);
+				dir.mkdirs();
+			}
+
+			long[] unionKeys = new long[unions.length];
+			for (int i = 0; i < unions.length; i++) {
+				unionKeys[i] = i;
+			}
+			writeVectors(fs, new File(centersOut, REDUCE_PART), unionKeys, unions);
+			writeVectors(fs, new File(meansOut, REDUCE_PART), means.keys, means.means);
+			writeAssignments(new File(assignmentsOut, MAP_PART), vectors, assignment);
+			writePartitions(partitionsOut, records, vectors, assignment);
+			LOG.info("Assigned and wrote " + vectors.size() + " sequences in " +
+					(System.currentTimeMillis() - startTime) + "ms.");
+		} finally {
+			pool.shutdownNow();
+		}
+		return 0;
+	}
+
+	/** Reads the simple FASTA records of a file, or of the files of a directory, by name. */
+	private static List<Record> readRecords(File input) throws IOException {
+		List<Record> records = new ArrayList<Record>();
+		File[] files = input.isDirectory() ? input.listFiles() : new File[] {input};
+		Arrays.sort(files);
+
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty()) {
+						continue;
+					}
+
+					int split = line.indexOf(WritePartitions.SIMPLE_FASTA_SPLIT);
+					if (!line.startsWith(">") || split < 0) {
+						throw new IOException("Line '" + line + "' of " + file +
+								" is not simple FASTA.");
+					}
+					records.add(new Record(line.substring(0, split), line.substring(split + 1)));
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Creates the presence vectors of the records, in order of sequence id, as they are read from
+	 * the output of the single reduce task.
+	 */
+	private PresenceVector[] createVectors(final List<Record> records) throws IOException {
+		final PresenceVector[] vectors = new PresenceVector[records.size()];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final int[] range : split(vectors.length)) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = range[0]; i < range[1]; i++) {
+						Record record = records.get(i);
+						vectors[i] = GenerateSequencePresenceVectors.createVector(
+								parseId(record), record.sequence, kmerLength);
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+
+		Arrays.sort(vectors, new Comparator<PresenceVector>() {
+			@Override
+			public int compare(PresenceVector a, PresenceVector b) {
+				return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+			}
+		});
+		return vectors;
+	}
+
+	private static long parseId(Record record) {
+		return Long.parseLong(record.header.substring(1));
+	}
+
+	/** Returns the indices of the vectors assigned to each cluster, in order. */
+	private static int[][] groupByCluster(int[] assignment, int numClusters) {
+		int[] sizes = new int[numClusters];
+		for (int clusterId : assignment) {
+			sizes[clusterId]++;
+		}
+		int[][] members = new int[numClusters][];
+		for (int i = 0; i < numClusters; i++) {
+			members[i] = new int[sizes[i]];
+		}
+		Arrays.fill(sizes, 0);
+		for (int i = 0; i < assignment.length; i++) {
+			members[assignment[i]][sizes[assignment[i]]++] = i;
+		}
+		return members;
+	}
+
+	/** Writes the non-null vectors to a SequenceFile, keyed as given. */
+	private void writeVectors(FileSystem fs, File file, long[] keys, PresenceVector[] vectors)
+			throws IOException {
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, getConf(),
+				new Path(file.toURI().toString()), LongWritable.class, PresenceVector.class);
+		LongWritable key = new LongWritable();
+		try {
+			for (int i = 0; i < vectors.length; i++) {
+				if (vectors[i] != null) {
+					key.set(keys[i]);
+					writer.append(key, vectors[i]);
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** Writes the "seqId\tclusterId" assignments, in order of sequence id. */
+	private static void writeAssignments(File file, ResidentVectors vectors, int[] assignment)
+			throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			for (int i = 0; i < vectors.size(); i++) {
+				out.write(vectors.getId(i) + "\t" + assignment[i] + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the records of each cluster, in the order they were read, to the cluster's partition,
+	 * as {@link WritePartitions} does.
+	 */
+	private void writePartitions(final File partitionsOut, final List<Record> records,
+			ResidentVectors vectors, int[] assignment) throws IOException {
+		/* Look up the cluster of each record through its position in id order. */
+		final int[] recordClusters = new int[records.size()];
+		long[] ids = new long[vectors.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = vectors.getId(i);
+		}
+		for (int i = 0; i < recordClusters.length; i++) {
+			recordClusters[i] = assignment[Arrays.binarySearch(ids, parseId(records.get(i)))];
+		}
+
+		final int numClusters = assignment.length == 0 ? 0 : max(assignment) + 1;
+		final int[][] members = groupByCluster(recordClusters, numClusters);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final int[] range : split(numClusters)) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (int i = range[0]; i < range[1]; i++) {
+						if (members[i].length == 0) {
+							continue;
+						}
+						File partition = new File(partitionsOut, Integer.toString(i));
+						partition.mkdirs();
+						Writer out = new BufferedWriter(new OutputStreamWriter(
+								new FileOutputStream(new File(partition, PARTITION_PART)), "UTF-8"));
+						try {
+							for (int member : members[i]) {
+								Record record = records.get(member);
+								out.write(record.header + "\n" + record.sequence.trim() + "\n");
+							}
+						} finally {
+							out.close();
+						}
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+	}
+
+	private static int max(int[] values) {
+		int max = values[0];
+		for (int value : values) {
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+
+	/** Splits [0, n) into contiguous ranges, a few per thread. */
+	private List<int[]> split(int n) {
+		int numTasks = Math.max(1, Math.min(n, numThreads * TASKS_PER_THREAD));
+		List<int[]> ranges = new ArrayList<int[]>(numTasks);
+		for (int i = 0; i < numTasks; i++) {
+			ranges.add(new int[] {(int) ((long) n * i / numTasks),
+					(int) ((long) n * (i + 1) / numTasks)});
+		}
+		return ranges;
+	}
+
+	/** Runs the tasks on the pool, and waits for all of them. */
+	private void invokeAll(List<Callable<Void>> tasks) throws IOException {
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting on the pool.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+}
@@ -1,23 +1,31 @@
 package cbcb.kmulus;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.util.ToolRunner;
 
 import cbcb.kmulus.db.cluster.ClusterPresenceVectors;
+import cbcb.kmulus.db.cluster.ResidentKMeans;
 import cbcb.kmulus.db.processing.GenerateSequencePresenceVectors;
-import cbcb.kmulus.db.processing.PrepareClusteringOutput;
-import cbcb.kmulus.db.processing.UnionClusterPresenceVectors;
-import cbcb.kmulus.db.processing.WriteClusterSequencesToHDFS;
-import cbcb.kmulus.db.processing.WriteSequencesToCluster;
+import cbcb.kmulus.db.processing.WritePartitions;
+import cbcb.kmulus.util.Checkpoints;
 
 import com.google.common.collect.ImmutableMap;
 
 /**
  * The pipeline for generating clustered database partitions from a single database.
+ *
+ * Each step records its completion in {@link Checkpoints}, under OUTPUT_DIR/temp/checkpoints, with
+ * a fingerprint of its inputs and parameters, and is skipped when the pipeline is run again with
+ * both unchanged and its outputs still in place.  A clustering which did not complete resumes from
+ * its last completed iteration.
  * 
  * @author CH Albach
  */
@@ -25,20 +33,33 @@ public class PartitionDatabase {
 	
 	private static final String USAGE = 
 		"PartitionDatabase DATABASE_SEQS OUTPUT_DIR NUM_SEQ NUM_CLUSTERS\n" +
-		"\t[[START]:[STOP]] [KMER_LEN]\n" +
+		"\t[[START]:[STOP]] [KMER_LEN] [RESIDENT_THREADS] [SEED]\n" +
 		"\tSTART and STOP indicate which range of steps should be run:\n" +
 		"\t{ r-repeat mask | t-transform to PV | c-cluster\n" +
-		"\t  p-prepare output | w-write partitions | u-union centers }";
+		"\t  p (no-op, kept for compatibility) | w-write partitions | u-union centers }\n" +
+		"\tSteps whose inputs and parameters are unchanged since they completed, and\n" +
+		"\twhose outputs exist, are skipped; delete OUTPUT_DIR/temp/checkpoints to\n" +
+		"\trun them again.\n" +
+		"\tIf RESIDENT_THREADS is given, the k-means iterations are run in this\n" +
+		"\tprocess by ResidentKMeans, on that many threads, rather than as jobs;\n" +
+		"\t0 runs them as jobs.  If SEED is given, the initial centers are the same\n" +
+		"\tfrom run to run.";
 	
-	/* Final output directories. */
-	private static final String PARTITIONS_SUFFIX = "partitions";
-	private static final String CENTERS_SUFFIX = "centers";
+	/* Final output directories; see UpdateDatabase. */
+	static final String PARTITIONS_SUFFIX = "partitions";
+	static final String CENTERS_SUFFIX = "centers";
+	static final String MEANS_SUFFIX = "means";
+	static final String ASSIGNMENTS_SUFFIX = "assignments";
 	
 	/* Intermediate output directories. */
-	private static final String TEMP_SUFFIX = "temp";
+	static final String TEMP_SUFFIX = "temp";
 	private static final String GENERATE_SUFFIX = "gen";
 	private static final String CLUSTER_SUFFIX = "cluster";
-	private static final String PREP_SUFFIX = "prep";
+	static final String CHECKPOINTS_SUFFIX = "checkpoints";
+
+	/* The output directories of the clustering iterations, and their completion markers. */
+	private static final String ITERATION_PREFIX = "output-";
+	private static final String SUCCESS_FILE = "_SUCCESS";
 	
 	private static final String DEFAULT_KMER_LEN = "3";
 	
@@ -65,6 +86,8 @@ public class PartitionDatabase {
 		String numSeq = args[2];
 		String numClusters = args[3];
 		String kmerLen = args.length > 5 ? args[5] : DEFAULT_KMER_LEN;
+		String residentThreads = args.length > 6 && !args[6].equals("0") ? args[6] : null;
+		String seed = args.length > 7 ? args[7] : null;
 		PipeStep start = PipeStep.REPEAT_MASK;
 		PipeStep end = PipeStep.UNION_CENTERS;
 		
@@ -95,130 +118,233 @@ public class PartitionDatabase {
 		Integer.parseInt(numSeq);
 		Integer.parseInt(numClusters);
 		Integer.parseInt(kmerLen);
+		if (residentThreads != null) {
+			Integer.parseInt(residentThreads);
+		}
+		if (seed != null) {
+			Long.parseLong(seed);
+		}
 		
 		try {
 			/* Define all intermediate and final output directories. */
 			String pvOut = tempOut + Path.SEPARATOR + GENERATE_SUFFIX;
-			String clusterOut = tempOut + Path.SEPARATOR + CLUSTER_SUFFIX + Path.SEPARATOR + ClusterPresenceVectors.FINAL_DIR;
-			String prepClusterOut = tempOut + Path.SEPARATOR + PREP_SUFFIX;
+			String clusterTemp = tempOut + Path.SEPARATOR + CLUSTER_SUFFIX;
+			String iterationsOut = clusterTemp + Path.SEPARATOR + TEMP_SUFFIX;
+			String clusterOut = clusterTemp + Path.SEPARATOR + ClusterPresenceVectors.FINAL_DIR;
+			String prepClusterOut = clusterOut + Path.SEPARATOR + ClusterPresenceVectors.ASSIGNMENTS_DIR;
 			String partitionsOut = finalOut + Path.SEPARATOR + PARTITIONS_SUFFIX;
 			String centersOut = finalOut + Path.SEPARATOR + CENTERS_SUFFIX;
+			String meansOut = finalOut + Path.SEPARATOR + MEANS_SUFFIX;
+			String assignmentsOut = finalOut + Path.SEPARATOR + ASSIGNMENTS_SUFFIX;
 
+			Configuration conf = new Configuration();
+			FileSystem fs = FileSystem.get(conf);
+			Checkpoints checkpoints =
+				new Checkpoints(fs, new Path(tempOut + Path.SEPARATOR + CHECKPOINTS_SUFFIX));
 
-			switch (start) {
-			case REPEAT_MASK:
-				// Delete the output directories.
-				Configuration conf = new Configuration();
-				FileSystem.get(conf).delete(new Path(tempOut), true);
-				FileSystem.get(conf).delete(new Path(finalOut), true);
-				conf.set("mapred.child.java.opts", "-Xmx1024m");
-				// TODO(calbach): Repeat masking.
-				if (end == PipeStep.REPEAT_MASK) {
-					break;
+			for (PipeStep step : PipeStep.values()) {
+				if (step.compareTo(start) < 0 || step.compareTo(end) > 0) {
+					continue;
 				}
 
-				// Transform the database sequences into PresenceVectors.
-			case TRANSFORM_PV:
-
-				int result = ToolRunner.run(
-						new GenerateSequencePresenceVectors(),
-						new String[]{dbInput, pvOut, kmerLen});
-
-				if (result < 0) {
-					System.err.println(GenerateSequencePresenceVectors.class.getName() + " failed.");
-					System.exit(result);
-				}
-				if (end == PipeStep.TRANSFORM_PV) {
+				/* Fingerprint the inputs and parameters of the step, and name its outputs. */
+				String fingerprint;
+				Path[] outputs;
+				switch (step) {
+				case TRANSFORM_PV:
+					fingerprint = checkpoints.fingerprint(new Path[]{new Path(dbInput)}, kmerLen);
+					outputs = new Path[]{new Path(pvOut)};
+					break;
+				case CLUSTER:
+					fingerprint = checkpoints.fingerprint(new Path[]{new Path(pvOut)},
+							numSeq, numClusters, kmerLen, seed == null ? "" : seed);
+					outputs = new Path[]{new Path(prepClusterOut)};
+					break;
+				case WRITE_PARTITIONS:
+					fingerprint = checkpoints.fingerprint(
+							new Path[]{new Path(prepClusterOut), new Path(dbInput)});
+					outputs = new Path[]{new Path(partitionsOut)};
 					break;
+				case UNION_CENTERS:
+					fingerprint = checkpoints.fingerprint(new Path[]{new Path(clusterTemp)});
+					outputs = new Path[]{
+							new Path(centersOut), new Path(meansOut), new Path(assignmentsOut)};
+					break;
+				default:
+					// TODO(calbach): Repeat masking.
+					// The final clustering run writes the assignments for partitioning itself.
+					continue;
 				}
 
-				// Cluster the PresenceVectors.
-			case CLUSTER:
-				clusterOut = tempOut + Path.SEPARATOR + CLUSTER_SUFFIX;
-				int runIter = 0;
-				do {
-					result = ToolRunner.run(new Configuration(),
-							new ClusterPresenceVectors(runIter),
-							new String[]{pvOut, clusterOut, numSeq, numClusters, kmerLen});
-
-					runIter++;
-				} while (result == ClusterPresenceVectors.CODE_LOOP);
-
-				if (result == ClusterPresenceVectors.CODE_CONVERGED) {
-					result = ToolRunner.run(new Configuration(), 
-							new ClusterPresenceVectors(),
-							new String[]{pvOut, clusterOut, numSeq, numClusters, kmerLen});
+				if (checkpoints.isDone(step.name(), fingerprint) && allExist(fs, outputs)) {
+					System.out.println("Skipping " + step + "; its inputs are unchanged.");
+					continue;
 				}
+				boolean resume = checkpoints.wasStarted(step.name(), fingerprint);
+				checkpoints.markStarted(step.name(), fingerprint);
 
-				if (result < 0) {
-					System.err.println(ClusterPresenceVectors.class.getName() + " failed.");
-					System.exit(result);
-				}
-				clusterOut += Path.SEPARATOR + ClusterPresenceVectors.FINAL_DIR;
+				int result = 0;
+				switch (step) {
+				case TRANSFORM_PV:
+					// Transform the database sequences into PresenceVectors.
+					result = ToolRunner.run(
+							new GenerateSequencePresenceVectors(),
+							new String[]{dbInput, pvOut, kmerLen});
 
-				if (end == PipeStep.CLUSTER) {
+					if (result != 0) {
+						System.err.println(
+								GenerateSequencePresenceVectors.class.getName() + " failed.");
+						System.exit(result);
+					}
 					break;
-				}
 
-				// Reformat the clustering output for partitioning.
-			case PREP:
+				case CLUSTER:
+					// Cluster the PresenceVectors, from the last completed iteration if resuming.
+					int runIter = resume ? getLastIteration(fs, new Path(iterationsOut), true) : -1;
+					if (runIter > 0) {
+						System.out.println("Resuming clustering from iteration " + runIter + ".");
+						deleteIterationsAfter(fs, new Path(iterationsOut), runIter);
+						fs.delete(new Path(clusterOut), true);
+					} else {
+						runIter = 0;
+						fs.delete(new Path(clusterTemp), true);
+					}
 
-				result = ToolRunner.run(
-						new PrepareClusteringOutput(),
-						new String[]{clusterOut, prepClusterOut});
+					Configuration clusterConf = new Configuration();
+					if (seed != null) {
+						clusterConf.set(ClusterPresenceVectors.SEED, seed);
+					}
 
-				if (result < 0) {
-					System.err.println(PrepareClusteringOutput.class.getName() + " failed.");
-					System.exit(result);
-				}
-				if (end == PipeStep.PREP) {
+					if (runIter == 0 && residentThreads != null) {
+						// Iterate in this process, leaving only the final run to a job.
+						String[] residentArgs =
+							{pvOut, clusterTemp, numClusters, kmerLen, residentThreads, seed};
+						if (seed == null) {
+							residentArgs = Arrays.copyOf(residentArgs, residentArgs.length - 1);
+						}
+						result = ToolRunner.run(new Configuration(), new ResidentKMeans(),
+								residentArgs);
+						if (result != 0) {
+							System.err.println(ResidentKMeans.class.getName() + " failed.");
+							System.exit(result);
+						}
+						runIter = ClusterPresenceVectors.NUM_ITERATIONS;
+					}
+
+					do {
+						result = ToolRunner.run(clusterConf,
+								new ClusterPresenceVectors(runIter),
+								new String[]{pvOut, clusterTemp, numSeq, numClusters, kmerLen});
+
+						runIter++;
+					} while (result == ClusterPresenceVectors.CODE_LOOP);
+
+					if (result == ClusterPresenceVectors.CODE_CONVERGED) {
+						result = ToolRunner.run(new Configuration(), 
+								new ClusterPresenceVectors(),
+								new String[]{pvOut, clusterTemp, numSeq, numClusters, kmerLen});
+					}
+
+					if (result < 0) {
+						System.err.println(ClusterPresenceVectors.class.getName() + " failed.");
+						System.exit(result);
+					}
 					break;
-				}
 
-				// Generate the database partitions.
-			case WRITE_PARTITIONS:
-				result = ToolRunner.run(
-						new WriteSequencesToCluster(),
-						new String[]{prepClusterOut, dbInput, partitionsOut, tempOut + Path.SEPARATOR + "part", numClusters});
+				case WRITE_PARTITIONS:
+					// Generate the database partitions.
+					result = ToolRunner.run(
+							new WritePartitions(),
+							new String[]{prepClusterOut, dbInput, partitionsOut});
 
-				if (result < 0) {
-					System.err.println(WriteSequencesToCluster.class.getName() + " failed.");
-					System.exit(result);
-				}
-				
-				result = ToolRunner.run(
-						new WriteClusterSequencesToHDFS(),
-						new String[]{tempOut + Path.SEPARATOR + "part", partitionsOut, tempOut + Path.SEPARATOR + "null", numClusters});
-
-				if (result < 0) {
-					System.err.println(WriteClusterSequencesToHDFS.class.getName() + " failed.");
-					System.exit(result);
-				}
-				
-				if (end == PipeStep.WRITE_PARTITIONS) {
+					if (result != 0) {
+						System.err.println(WritePartitions.class.getName() + " failed.");
+						System.exit(result);
+					}
 					break;
-				}
 
-				// Generate a union vector as the center for each cluster.
-			case UNION_CENTERS:
-				result = ToolRunner.run(
-						new UnionClusterPresenceVectors(),
-						new String[]{clusterOut, centersOut, kmerLen});
+				case UNION_CENTERS:
+					// Copy out the union vector of each cluster, taken by the final clustering run,
+					// and the means and assignments, which UpdateDatabase adds sequences with.
+					int lastIter = getLastIteration(fs, new Path(iterationsOut), false);
+					if (lastIter < 0) {
+						throw new IOException("There are no clustering iterations in "
+								+ iterationsOut + ".");
+					}
+					copyParts(fs, new Path(clusterOut), new Path(centersOut), conf);
+					copyParts(fs, new Path(iterationsOut, ITERATION_PREFIX + lastIter),
+							new Path(meansOut), conf);
+					copyParts(fs, new Path(prepClusterOut), new Path(assignmentsOut), conf);
+					break;
 
-				if (result < 0) {
-					System.err.println(UnionClusterPresenceVectors.class.getName() + " failed.");
-					System.exit(result);
-				}
-				if (end == PipeStep.UNION_CENTERS) {
+				default:
 					break;
 				}
 
-			default:
-				break;
+				checkpoints.markDone(step.name(), fingerprint);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.out.println("Pipeline failed.");
 		}
 	}
+
+	/** Returns whether every one of the given paths exists. */
+	private static boolean allExist(FileSystem fs, Path[] paths) throws IOException {
+		for (Path path : paths) {
+			if (!fs.exists(path)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Replaces the destination directory with copies of the part files of the source. */
+	private static void copyParts(FileSystem fs, Path src, Path dst, Configuration conf)
+			throws IOException {
+		fs.delete(dst, true);
+		fs.mkdirs(dst);
+		for (FileStatus status : fs.listStatus(src)) {
+			String name = status.getPath().getName();
+			if (!status.isDir() && name.startsWith("part-")) {
+				FileUtil.copy(fs, status.getPath(), fs, new Path(dst, name), false, conf);
+			}
+		}
+	}
+
+	/**
+	 * Returns the last clustering iteration, whose means the final run assigned the sequences to,
+	 * or -1 if there is none.  If completed, only iterations whose jobs completed are considered;
+	 * the means of the first are written by the client.
+	 */
+	private static int getLastIteration(FileSystem fs, Path iterationsOut, boolean completed)
+			throws IOException {
+		int lastIteration = -1;
+		if (!fs.exists(iterationsOut)) {
+			return lastIteration;
+		}
+		for (FileStatus status : fs.listStatus(iterationsOut)) {
+			String name = status.getPath().getName();
+			if (status.isDir() && name.startsWith(ITERATION_PREFIX)) {
+				int iteration = Integer.parseInt(name.substring(ITERATION_PREFIX.length()));
+				if (completed && !fs.exists(new Path(status.getPath(), SUCCESS_FILE))) {
+					continue;
+				}
+				lastIteration = Math.max(lastIteration, iteration);
+			}
+		}
+		return lastIteration;
+	}
+
+	/** Deletes the output of the clustering iterations after the given one. */
+	private static void deleteIterationsAfter(FileSystem fs, Path iterationsOut, int iteration)
+			throws IOException {
+		for (FileStatus status : fs.listStatus(iterationsOut)) {
+			String name = status.getPath().getName();
+			if (status.isDir() && name.startsWith(ITERATION_PREFIX) &&
+					Integer.parseInt(name.substring(ITERATION_PREFIX.length())) > iteration) {
+				fs.delete(status.getPath(), true);
+			}
+		}
+	}
 }
@@ -0,0 +1,371 @@
+package cbcb.kmulus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.db.cluster.AssignPresenceVectors;
+import cbcb.kmulus.db.cluster.ClusterPresenceVectors;
+import cbcb.kmulus.db.processing.GenerateSequencePresenceVectors;
+import cbcb.kmulus.db.processing.WritePartitions;
+import cbcb.kmulus.util.Checkpoints;
+import cbcb.kmulus.util.PresenceVector;
+
+/**
+ * Adds new sequences to a database built by {@link PartitionDatabase}, without clustering again.
+ * The presence vectors of only the new sequences are generated, and assigned to the means of the
+ * existing clusters.  The new sequences are then written to partition files of their own within
+ * the existing partitions, ORed into the union centers, and added to the assignments.
+ *
+ * The size of every cluster is kept in DATABASE_DIR/sizes, as "clusterId\tsize" lines, and the
+ * clusters which have grown past MAX_CLUSTER_SIZE, by default twice the mean cluster size, are
+ * listed in DATABASE_DIR/resplit, to be split again locally.  The sequence ids of the new
+ * sequences must not be in the database already.
+ *
+ * All the files of an update are staged in a temporary directory of its own before the database
+ * is changed.  The update is then marked as started in {@link Checkpoints}, under
+ * DATABASE_DIR/temp/checkpoints, and its staged files are moved into the database.  An update is
+ * identified by a fingerprint of its new sequences and parameters: if it is run again after it was
+ * interrupted while moving its files, it moves the rest of them, and once it has completed, running
+ * it again does nothing.
+ */
+public class UpdateDatabase extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(UpdateDatabase.class);
+
+	private static final String USAGE =
+		"UpdateDatabase NEW_SEQS DATABASE_DIR [KMER_LEN] [MAX_CLUSTER_SIZE]";
+
+	/* Database files kept by updates. */
+	static final String SIZES_FILE = "sizes";
+	static final String RESPLIT_FILE = "resplit";
+
+	/* Intermediate output directories, within the update's temp directory. */
+	private static final String UPDATE_PREFIX = "update-";
+	private static final String GENERATE_SUFFIX = "gen";
+	private static final String ASSIGN_SUFFIX = "assign";
+
+	/* The number of hex digits of the fingerprint which name the files of an update. */
+	private static final int UPDATE_ID_LEN = 16;
+
+	private static final String DEFAULT_KMER_LEN = "3";
+	private static final int DEFAULT_GROWTH = 2;
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new UpdateDatabase(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Pipeline failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println(USAGE);
+			return -1;
+		}
+
+		String seqInput = args[0];
+		String dbDir = args[1];
+		String kmerLen = args.length > 2 ? args[2] : DEFAULT_KMER_LEN;
+		Integer.parseInt(kmerLen);
+		String maxSize = args.length > 3 ? args[3] : "";
+
+		LOG.info("Tool name: " + UpdateDatabase.class.getName());
+		LOG.info(" - newSequences: " + seqInput);
+		LOG.info(" - databaseDir: " + dbDir);
+
+		Configuration conf = getConf();
+		FileSystem fs = FileSystem.get(conf);
+		Path meansPath = new Path(dbDir, PartitionDatabase.MEANS_SUFFIX);
+		Path assignmentsPath = new Path(dbDir, PartitionDatabase.ASSIGNMENTS_SUFFIX);
+		if (!fs.exists(meansPath) || !fs.exists(assignmentsPath)) {
+			System.err.println("The database has no means or assignments; rerun the union centers "
+					+ "step of " + PartitionDatabase.class.getName() + ".");
+			return -1;
+		}
+
+		/* Tag the files of this update, so that they don't collide with those of other ones. */
+		String tempDir = dbDir + Path.SEPARATOR + PartitionDatabase.TEMP_SUFFIX;
+		Checkpoints checkpoints = new Checkpoints(fs,
+				new Path(tempDir + Path.SEPARATOR + PartitionDatabase.CHECKPOINTS_SUFFIX));
+		String fingerprint =
+			checkpoints.fingerprint(new Path[]{new Path(seqInput)}, kmerLen, maxSize);
+		String updateId = "u" + fingerprint.substring(0, UPDATE_ID_LEN);
+		String step = UPDATE_PREFIX + updateId;
+		Path tempOut = new Path(tempDir, step);
+		LOG.info(" - update: " + updateId);
+
+		if (checkpoints.isDone(step, fingerprint)) {
+			LOG.info("The update was already applied.");
+			return 0;
+		}
+
+		if (checkpoints.wasStarted(step, fingerprint)) {
+			LOG.info("Resuming the update from its staged files.");
+		} else {
+			/* Nothing in the database has changed yet, so stage the update from the start. */
+			fs.delete(tempOut, true);
+			int result = stage(fs, conf, seqInput, dbDir, tempOut, kmerLen, maxSize);
+			if (result != 0) {
+				return result;
+			}
+			checkpoints.markStarted(step, fingerprint);
+		}
+
+		commit(fs, tempOut, dbDir, updateId);
+		checkpoints.markDone(step, fingerprint);
+		fs.delete(tempOut, true);
+		return 0;
+	}
+
+	/**
+	 * Runs the jobs of an update, and writes its new centers, partitions, assignments, sizes and
+	 * resplit clusters under its temp directory, leaving the database as it is.
+	 */
+	private static int stage(FileSystem fs, Configuration conf, String seqInput, String dbDir,
+			Path tempOut, String kmerLen, String maxSizeArg) throws Exception {
+		String pvOut = new Path(tempOut, GENERATE_SUFFIX).toString();
+		Path assignOut = new Path(tempOut, ASSIGN_SUFFIX);
+		Path newAssignments = new Path(assignOut, ClusterPresenceVectors.ASSIGNMENTS_DIR);
+		Path newPartitions = new Path(tempOut, PartitionDatabase.PARTITIONS_SUFFIX);
+
+		Path meansPath = new Path(dbDir, PartitionDatabase.MEANS_SUFFIX);
+		Path assignmentsPath = new Path(dbDir, PartitionDatabase.ASSIGNMENTS_SUFFIX);
+		Path sizesPath = new Path(dbDir, SIZES_FILE);
+
+		/* Count the clusters before this update's assignments are added. */
+		Map<Long, Long> sizes = fs.exists(sizesPath) ?
+				readSizes(fs, sizesPath) : countAssignments(fs, assignmentsPath);
+
+		// Transform the new sequences into PresenceVectors.
+		int result = ToolRunner.run(new Configuration(conf),
+				new GenerateSequencePresenceVectors(), new String[] {seqInput, pvOut, kmerLen});
+		if (result != 0) {
+			System.err.println(GenerateSequencePresenceVectors.class.getName() + " failed.");
+			return result;
+		}
+
+		// Assign the PresenceVectors to the existing means.
+		result = ToolRunner.run(new Configuration(conf), new AssignPresenceVectors(),
+				new String[] {pvOut, meansPath.toString(), assignOut.toString(), kmerLen});
+		if (result != 0) {
+			System.err.println(AssignPresenceVectors.class.getName() + " failed.");
+			return result;
+		}
+
+		// Write the new sequences to partitions of their own.
+		result = ToolRunner.run(new Configuration(conf), new WritePartitions(),
+				new String[] {newAssignments.toString(), seqInput, newPartitions.toString()});
+		if (result != 0) {
+			System.err.println(WritePartitions.class.getName() + " failed.");
+			return result;
+		}
+
+		unionCenters(fs, new Path(dbDir, PartitionDatabase.CENTERS_SUFFIX), assignOut,
+				new Path(tempOut, PartitionDatabase.CENTERS_SUFFIX), conf);
+
+		long total = 0;
+		for (long size : sizes.values()) {
+			total += size;
+		}
+		long maxSize = !maxSizeArg.isEmpty() ? Long.parseLong(maxSizeArg) :
+				DEFAULT_GROWTH * Math.max(1, total / Math.max(1, sizes.size()));
+		LOG.info(" - maxClusterSize: " + maxSize);
+
+		Map<Long, Long> added = countAssignments(fs, newAssignments);
+		for (Map.Entry<Long, Long> entry : added.entrySet()) {
+			Long size = sizes.get(entry.getKey());
+			sizes.put(entry.getKey(), entry.getValue() + (size == null ? 0 : size));
+		}
+		writeSizes(fs, new Path(tempOut, SIZES_FILE), sizes, 0);
+		int numResplit = writeSizes(fs, new Path(tempOut, RESPLIT_FILE), sizes, maxSize + 1);
+		LOG.info("Adding sequences to " + added.size() + " clusters; " + numResplit
+				+ " clusters are past the maximum size.");
+		return 0;
+	}
+
+	/**
+	 * Moves the staged files of an update into the database.  Each file is moved only if it is
+	 * still staged, so that an interrupted commit can be run again.
+	 */
+	private void commit(FileSystem fs, Path tempOut, String dbDir, String updateId) throws IOException {
+		replace(fs, new Path(tempOut, PartitionDatabase.CENTERS_SUFFIX),
+				new Path(dbDir, PartitionDatabase.CENTERS_SUFFIX));
+		appendPartitions(fs, new Path(tempOut, PartitionDatabase.PARTITIONS_SUFFIX),
+				new Path(dbDir, PartitionDatabase.PARTITIONS_SUFFIX), updateId);
+		moveParts(fs, new Path(new Path(tempOut, ASSIGN_SUFFIX),
+				ClusterPresenceVectors.ASSIGNMENTS_DIR),
+				new Path(dbDir, PartitionDatabase.ASSIGNMENTS_SUFFIX), updateId);
+		replace(fs, new Path(tempOut, SIZES_FILE), new Path(dbDir, SIZES_FILE));
+		replace(fs, new Path(tempOut, RESPLIT_FILE), new Path(dbDir, RESPLIT_FILE));
+	}
+
+	/** Replaces a file or directory of the database with a staged one, if it is still staged. */
+	private static void replace(FileSystem fs, Path staged, Path path) throws IOException {
+		if (!fs.exists(staged)) {
+			return;
+		}
+		fs.delete(path, true);
+		if (!fs.rename(staged, path)) {
+			throw new IOException("Could not replace " + path + " with " + staged + ".");
+		}
+	}
+
+	/** Counts the sequences of each cluster in the "seqId\tclusterId" files of a directory. */
+	private static Map<Long, Long> countAssignments(FileSystem fs, Path assignmentsPath)
+			throws IOException {
+		return readTuples(fs, assignmentsPath, true);
+	}
+
+	private static Map<Long, Long> readSizes(FileSystem fs, Path sizesPath) throws IOException {
+		return readTuples(fs, sizesPath, false);
+	}
+
+	/**
+	 * Writes the sizes of the clusters of at least the given size, and returns how many there were.
+	 */
+	private static int writeSizes(FileSystem fs, Path path, Map<Long, Long> sizes, long minSize)
+			throws IOException {
+		int count = 0;
+		PrintWriter out = new PrintWriter(fs.create(path, true));
+		for (Map.Entry<Long, Long> entry : sizes.entrySet()) {
+			if (entry.getValue() >= minSize) {
+				out.println(entry.getKey() + "\t" + entry.getValue());
+				count++;
+			}
+		}
+		out.close();
+		return count;
+	}
+
+	/**
+	 * Reads the "key\tvalue" lines of a file, or of the data files of a directory.  If counting, the
+	 * lines with each value are counted instead.
+	 */
+	private static Map<Long, Long> readTuples(FileSystem fs, Path path, boolean count)
+			throws IOException {
+		Map<Long, Long> tuples = new TreeMap<Long, Long>();
+		for (FileStatus status : fs.listStatus(path)) {
+			String name = status.getPath().getName();
+			if (status.isDir() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(status.getPath())));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty()) {
+						continue;
+					}
+
+					String[] tuple = line.split("\t");
+					if (count) {
+						long value = Long.parseLong(tuple[1]);
+						Long size = tuples.get(value);
+						tuples.put(value, size == null ? 1 : size + 1);
+					} else {
+						tuples.put(Long.parseLong(tuple[0]), Long.parseLong(tuple[1]));
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return tuples;
+	}
+
+	/**
+	 * ORs the unions of the new sequences of each cluster into the union centers, and writes the
+	 * result to a single file of the staged centers.
+	 */
+	private static void unionCenters(FileSystem fs, Path centersPath, Path newUnionsPath,
+			Path stagedPath, Configuration conf) throws IOException {
+		Map<Long, PresenceVector> centers = new TreeMap<Long, PresenceVector>();
+		readVectors(fs, centersPath, conf, centers);
+		readVectors(fs, newUnionsPath, conf, centers);
+
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf,
+				new Path(stagedPath, "part-r-00000"), LongWritable.class, PresenceVector.class);
+		LongWritable key = new LongWritable();
+		for (Map.Entry<Long, PresenceVector> entry : centers.entrySet()) {
+			key.set(entry.getKey());
+			writer.append(key, entry.getValue());
+		}
+		writer.close();
+	}
+
+	/** Reads the vectors of the part files of a directory, ORing those of the same cluster. */
+	private static void readVectors(FileSystem fs, Path path, Configuration conf,
+			Map<Long, PresenceVector> vectors) throws IOException {
+		for (FileStatus status : fs.listStatus(path)) {
+			String name = status.getPath().getName();
+			if (status.isDir() || !name.startsWith("part-")) {
+				continue;
+			}
+
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+			LongWritable key = new LongWritable();
+			PresenceVector value = new PresenceVector();
+			while (reader.next(key, value)) {
+				PresenceVector union = vectors.get(key.get());
+				if (union == null) {
+					vectors.put(key.get(), new PresenceVector(value));
+				} else {
+					union.unionEquals(value);
+				}
+			}
+			reader.close();
+		}
+	}
+
+	/** Moves the files of each new partition into the database partition of the same cluster. */
+	void appendPartitions(FileSystem fs, Path newPartitions, Path partitions,
+			String updateId) throws IOException {
+		for (FileStatus status : fs.listStatus(newPartitions)) {
+			String name = status.getPath().getName();
+			if (status.isDir() && !name.startsWith("_") && !name.startsWith(".")) {
+				Path partition = new Path(partitions, name);
+				fs.mkdirs(partition);
+				moveParts(fs, status.getPath(), partition, updateId);
+			}
+		}
+	}
+
+	/** Moves the data files of a directory into another, tagging their names with the update. */
+	private static void moveParts(FileSystem fs, Path src, Path dst, String updateId)
+			throws IOException {
+		for (FileStatus status : fs.listStatus(src)) {
+			String name = status.getPath().getName();
+			if (status.isDir() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+
+			Path moved = new Path(dst, name + "-" + updateId);
+			if (!fs.rename(status.getPath(), moved)) {
+				throw new IOException("Could not move " + status.getPath() + " to " + moved + ".");
+			}
+		}
+	}
+}
@@ -2,59 +2,633 @@ package cbcb.kmulus.allpairs.comparison;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.log4j.Logger;
 
 /**
  * A computationally intensive {@link Reducer} which computes all pairs comparisons between its
- * set of input values.
- * 
+ * set of input values.  Each comparison is written as the {@link IdPair} of the two items' ids,
+ * along with the distance between them.
+ *
+ * When {@link #NUM_THREADS_ATTR} is greater than 1, the upper triangle of the comparison matrix of
+ * a group is split into square tiles which are compared on a {@link ForkJoinPool}.  Completed
+ * tiles are handed back through a bounded queue, so that only the reducer's own thread ever
+ * writes to the {@link Reducer.Context}.  Subclasses must therefore keep
+ * {@link #compareItems(Object, Object)} free of side effects.
+ *
+ * The output may be limited in two ways.  Pairs farther apart than {@link #MAX_DISTANCE_ATTR} are
+ * dropped as they are compared.  When {@link #NUM_NEIGHBORS_ATTR} is set, only the pairs among
+ * the k nearest neighbors of either item within the group are written; since an item appears in
+ * several groups, {@link MergeNearestNeighbors} then selects its k nearest over all of them.
+ *
+ * When {@link #BLOCK_SIZE_ATTR} is set, groups are the tiles of a {@link BlockGrouper}.  A group
+ * drawn from two blocks holds the pairs between them only, so its items are compared as a
+ * rectangle rather than a triangle.
+ *
+ * By default every item of a group is held in memory at once.  When {@link #GROUP_HEAP_ATTR} is
+ * set, the values of a group are instead serialized into a {@link GroupBuffer}, which spills to
+ * local disk beyond that many bytes, and compared as block nested loops: a chunk of rows within
+ * the budget is held in memory while the later items are streamed past it.  The values must then
+ * be {@link Writable}.
+ *
  * @author CH Albach
  *
  * @param <V2> the input type of item to be compared
- * @param <V3> an emitted value representing the comparison between two items
+ * @param <I> the in-memory form of an item, as created by {@link #copyValue(Object)}
  */
-public abstract class AllPairsReducer<V2, V3> extends Reducer<LongWritable, V2, Text, V3> {
+public abstract class AllPairsReducer<V2, I> extends Reducer<LongWritable, V2, IdPair, LongWritable> {
+
+	private static final Logger LOG = Logger.getLogger(AllPairsReducer.class);
 
 	public static final char SEQ_ID_DELIM = ',';
-	
+
+	/**
+	 * Counters comparing the predicted cost of each group, from {@link #getItemCost(Object)}, with
+	 * the time it actually took.  The predicted cost is in thousands of units, and groups are
+	 * bucketed by their realized time so that stragglers stand out.
+	 */
+	public static enum GroupCounters {
+		GROUPS, PREDICTED_COST, REALIZED_MS,
+		GROUPS_UNDER_1S, GROUPS_UNDER_1M, GROUPS_UNDER_10M, GROUPS_OVER_10M,
+		GROUPS_SPILLED, SPILLED_BYTES
+	}
+
+	/** Configuration attribute for the number of comparison threads used by each reducer. */
+	public static final String NUM_THREADS_ATTR = "apt";
+
+	/** Configuration attribute for the number of items along each edge of a tile. */
+	public static final String TILE_SIZE_ATTR = "apts";
+
+	/** Configuration attribute for the greatest distance of a pair which is written. */
+	public static final String MAX_DISTANCE_ATTR = "apd";
+
+	/** Configuration attribute for the number of nearest neighbors kept per item, or 0 for all. */
+	public static final String NUM_NEIGHBORS_ATTR = "apk";
+
+	/**
+	 * Configuration attribute for the number of items per block of a {@link BlockGrouper}, or 0
+	 * if groups are not made of blocks.
+	 */
+	public static final String BLOCK_SIZE_ATTR = "apb";
+
+	/**
+	 * Configuration attribute for the bytes of serialized values of a group to hold in memory, or
+	 * 0 to hold every item of a group in memory.
+	 */
+	public static final String GROUP_HEAP_ATTR = "aph";
+
+	public static final int DEF_NUM_THREADS = 1;
+	public static final int DEF_TILE_SIZE = 64;
+	public static final long DEF_MAX_DISTANCE = Long.MAX_VALUE;
+	public static final int DEF_NUM_NEIGHBORS = 0;
+	public static final long DEF_GROUP_HEAP = 0;
+
+	/** The number of tiles which may be in flight per comparison thread. */
+	private static final int TILES_PER_THREAD = 4;
+
+	/** How long to wait on a tile before reporting progress, in milliseconds. */
+	private static final long PROGRESS_INTERVAL = 10000;
+
+	/** Groups which take longer than this, in milliseconds, are logged. */
+	private static final long SLOW_GROUP_MS = 60000;
+
+	private ForkJoinPool pool;
+	private int numThreads;
+	private int tileSize;
+	private long maxDistance;
+	private int numNeighbors;
+	private long blockSize;
+	private long groupHeap;
+
+	/* The serialized values of the current group, when groupHeap > 0. */
+	private GroupBuffer buffer;
+
+	/* The nearest neighbors of each item in the current group, when numNeighbors > 0. */
+	private List<NearestNeighbors> neighbors;
+
+	/* Output objects, reused for every pair. */
+	private final IdPair pair = new IdPair();
+	private final LongWritable distance = new LongWritable();
+
 	/** Parses the 0 based internal identifier for this item. */
-	protected abstract long parseId(V2 value) throws IOException;
-	
-	/** Compares the given items. */
-	protected abstract V3 compareItems(V2 a, V2 b);
-	
-	/** Creates a copy of the given item by value. */
-	protected abstract V2 copyValue(V2 original);
-	
+	protected abstract long parseId(I item) throws IOException;
+
+	/** Compares the given items, returning the distance between them. */
+	protected abstract long compareItems(I a, I b);
+
+	/**
+	 * Creates the in-memory form of the given item, copied by value.  This is called once per
+	 * value in a group, or once per chunk of rows before it if the group is buffered, so any
+	 * per-item work needed by {@link #compareItems(Object, Object)} belongs here rather than being
+	 * repeated for every pair.
+	 */
+	protected abstract I copyValue(V2 original) throws IOException;
+
+	/**
+	 * Estimates the cost of an item, such that comparing two items costs roughly the product of
+	 * their costs.  By default every item costs the same.
+	 */
+	protected long getItemCost(I item) {
+		return 1;
+	}
+
+	/**
+	 * Parses the identifier of a value which is buffered, without creating its in-memory form.  By
+	 * default the value is copied to parse it, which subclasses with costly copies should avoid.
+	 */
+	protected long parseValueId(V2 value) throws IOException {
+		return parseId(copyValue(value));
+	}
+
+	/**
+	 * Estimates the cost of a value which is buffered, as {@link #getItemCost(Object)} would,
+	 * without creating its in-memory form.  By default every value costs the same, so subclasses
+	 * which override {@link #getItemCost(Object)} should override this too.
+	 */
+	protected long getValueCost(V2 value) throws IOException {
+		return 1;
+	}
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		Configuration conf = context.getConfiguration();
+		numThreads = Math.max(1, conf.getInt(NUM_THREADS_ATTR, DEF_NUM_THREADS));
+		tileSize = Math.max(1, conf.getInt(TILE_SIZE_ATTR, DEF_TILE_SIZE));
+		maxDistance = conf.getLong(MAX_DISTANCE_ATTR, DEF_MAX_DISTANCE);
+		numNeighbors = Math.max(0, conf.getInt(NUM_NEIGHBORS_ATTR, DEF_NUM_NEIGHBORS));
+		blockSize = Math.max(0, conf.getLong(BLOCK_SIZE_ATTR, 0));
+		groupHeap = Math.max(0, conf.getLong(GROUP_HEAP_ATTR, DEF_GROUP_HEAP));
+
+		if (numThreads > 1) {
+			pool = new ForkJoinPool(numThreads);
+		}
+	}
+
+	@Override
+	protected void cleanup(Context context) throws IOException, InterruptedException {
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+		if (buffer != null) {
+			buffer.close();
+			buffer = null;
+		}
+	}
+
 	@Override
 	public void reduce(LongWritable key, Iterable<V2> values, Context context)
 			throws IOException, InterruptedException {
-		List<V2> list = new ArrayList<V2>();
+		long startTime = System.currentTimeMillis();
+
+		/*
+		 * The items of the group, in memory or in the buffer, with their ids and costs.  Buffered
+		 * values are only copied into items as they are compared.
+		 */
+		List<I> list = new ArrayList<I>();
+		long[] ids = new long[16];
+		long[] costs = new long[16];
+		int n = 0;
+		V2 spare = null;
+
+		if (groupHeap > 0 && buffer == null) {
+			buffer = new GroupBuffer(groupHeap, null);
+		}
+
 		for (V2 v : values) {
-			list.add(copyValue(v));
-		}
-
-		for(int i = 0; i < list.size(); i++) {
-			long idA = parseId(list.get(i));
-			
-			for(int j = i + 1; j < list.size(); j++) {
-				long idB = parseId(list.get(j));
-				Text idConcat = new Text();
-				
-				if(idA < idB) {
-					idConcat.set("" + idA + SEQ_ID_DELIM + idB);
-				} else {
-					idConcat.set("" + idB + SEQ_ID_DELIM + idA);
-				}
-				
-				V3 score = compareItems(list.get(i), list.get(j));
-				context.write(idConcat, score);
+			if (n == ids.length) {
+				ids = Arrays.copyOf(ids, n * 2);
+				costs = Arrays.copyOf(costs, n * 2);
+			}
+
+			if (groupHeap == 0) {
+				I item = copyValue(v);
+				ids[n] = parseId(item);
+				costs[n] = getItemCost(item);
+				list.add(item);
+			} else {
+				ids[n] = parseValueId(v);
+				costs[n] = getValueCost(v);
+				if (!(v instanceof Writable)) {
+					throw new IOException("Only Writable values may be buffered, not " +
+							v.getClass().getName() + ".");
+				}
+				if (spare == null) {
+					spare = newValue(v, context.getConfiguration());
+				}
+				buffer.add((Writable) v);
+			}
+			n++;
+		}
+
+		/*
+		 * Only the pairs (i, j) with i < j, i < rowEnd and j >= split are compared: the upper
+		 * triangle, or the rectangle between two blocks.  Items are compared in the given order,
+		 * and their ids and costs are rearranged to match.
+		 */
+		ids = Arrays.copyOf(ids, n);
+		int split = blockSize > 0 ? countLowerBlock(ids) : 0;
+		int rowEnd = split > 0 ? split : n;
+		int[] order = orderByBlock(ids, split);
+		ids = permute(ids, order);
+		long predictedCost = predictCost(permute(Arrays.copyOf(costs, n), order), split);
+
+		if (numNeighbors > 0) {
+			resetNeighbors(n);
+		}
+
+		if (groupHeap == 0) {
+			List<I> ordered = new ArrayList<I>(n);
+			int[] positions = new int[n];
+			for (int i = 0; i < n; i++) {
+				ordered.add(list.get(order[i]));
+				positions[i] = i;
+			}
+			compare(ordered, positions, ids, rowEnd, split, context);
+
+		} else {
+			compareBuffered(order, spare, ids, rowEnd, split, context);
+			if (buffer.getSpilledBytes() > 0) {
+				context.getCounter(GroupCounters.GROUPS_SPILLED).increment(1);
+				context.getCounter(GroupCounters.SPILLED_BYTES).increment(buffer.getSpilledBytes());
+			}
+			buffer.clear();
+		}
+
+		if (numNeighbors > 0) {
+			writeNeighbors(ids, context);
+		}
+
+		countGroup(key, n, predictedCost, System.currentTimeMillis() - startTime, context);
+	}
+
+	/**
+	 * Compares the buffered items as block nested loops.  Each chunk of rows whose values fit in
+	 * the heap budget is read into memory and compared with itself, then the later columns are
+	 * read past it in batches, each compared with the chunk as a rectangle.  Every item is read
+	 * once per chunk before it, rather than all being held at once.
+	 */
+	private void compareBuffered(int[] order, V2 spare, long[] ids, int rowEnd, int split,
+			Context context) throws IOException, InterruptedException {
+		int n = ids.length;
+		int batchSize = numThreads * tileSize;
+		List<I> list = new ArrayList<I>();
+		int[] positions = new int[0];
+
+		int chunkStart = 0;
+		while (chunkStart < rowEnd) {
+			list.clear();
+			long chunkBytes = 0;
+			int chunkEnd = chunkStart;
+			while (chunkEnd < rowEnd && (chunkEnd == chunkStart ||
+					chunkBytes + buffer.getLength(order[chunkEnd]) <= groupHeap)) {
+				chunkBytes += buffer.getLength(order[chunkEnd]);
+				list.add(readItem(order[chunkEnd], spare));
+				chunkEnd++;
+			}
+
+			int chunkSize = chunkEnd - chunkStart;
+			if (positions.length < chunkSize + batchSize) {
+				positions = new int[chunkSize + batchSize];
+			}
+			for (int i = 0; i < chunkSize; i++) {
+				positions[i] = chunkStart + i;
+			}
+
+			/* Rows of the lower block are never compared among themselves. */
+			if (split == 0) {
+				compare(list, positions, ids, chunkSize, 0, context);
+			}
+
+			for (int batchStart = Math.max(chunkEnd, split); batchStart < n;
+					batchStart += batchSize) {
+				int batchEnd = Math.min(batchStart + batchSize, n);
+				for (int j = batchStart; j < batchEnd; j++) {
+					positions[chunkSize + j - batchStart] = j;
+					list.add(readItem(order[j], spare));
+				}
+
+				compare(list, positions, ids, chunkSize, chunkSize, context);
+				list.subList(chunkSize, list.size()).clear();
+			}
+
+			chunkStart = chunkEnd;
+		}
+	}
+
+	/**
+	 * Compares the pairs (i, j) of the list with i < j, i < rowEnd and j >= split, either serially
+	 * or in tiles.  Item i of the list is the item at positions[i] of the group.
+	 */
+	private void compare(List<I> list, int[] positions, long[] ids, int rowEnd, int split,
+			Context context) throws IOException, InterruptedException {
+
+		/* Small groups are not worth the overhead of tiling. */
+		if (pool != null && list.size() > tileSize) {
+			compareTiles(list, positions, ids, rowEnd, split, context);
+
+		} else {
+			for(int i = 0; i < rowEnd; i++) {
+				for(int j = Math.max(i + 1, split); j < list.size(); j++) {
+					long score = compareItems(list.get(i), list.get(j));
+					if (score <= maxDistance) {
+						acceptPair(positions[i], positions[j], ids, score, context);
+					}
+				}
 				context.progress();
 			}
-		}		
+		}
+	}
+
+	/** Reads the buffered value with the given index back into its in-memory form. */
+	private I readItem(int index, V2 spare) throws IOException {
+		buffer.read(index, (Writable) spare);
+		return copyValue(spare);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V2 newValue(V2 value, Configuration conf) {
+		return (V2) ReflectionUtils.newInstance(value.getClass(), conf);
+	}
+
+	/** Reports the predicted and realized cost of a group. */
+	private void countGroup(LongWritable key, int size, long predictedCost, long realizedMs,
+			Context context) {
+		context.getCounter(GroupCounters.GROUPS).increment(1);
+		context.getCounter(GroupCounters.PREDICTED_COST).increment(predictedCost / 1000);
+		context.getCounter(GroupCounters.REALIZED_MS).increment(realizedMs);
+
+		GroupCounters bucket;
+		if (realizedMs < 1000) {
+			bucket = GroupCounters.GROUPS_UNDER_1S;
+		} else if (realizedMs < 60000) {
+			bucket = GroupCounters.GROUPS_UNDER_1M;
+		} else if (realizedMs < 600000) {
+			bucket = GroupCounters.GROUPS_UNDER_10M;
+		} else {
+			bucket = GroupCounters.GROUPS_OVER_10M;
+		}
+		context.getCounter(bucket).increment(1);
+
+		if (realizedMs >= SLOW_GROUP_MS) {
+			LOG.info("Group " + key + " of " + size + " items took " + realizedMs +
+					"ms, with a predicted cost of " + predictedCost + ".");
+		}
+	}
+
+	/**
+	 * Returns the number of items in the lower block if the group is drawn from two blocks, or 0
+	 * if it is drawn from one.
+	 */
+	private int countLowerBlock(long[] ids) throws IOException {
+		long lowBlock = Long.MAX_VALUE, highBlock = Long.MIN_VALUE;
+		for (long id : ids) {
+			lowBlock = Math.min(lowBlock, id / blockSize);
+			highBlock = Math.max(highBlock, id / blockSize);
+		}
+		if (lowBlock == highBlock) {
+			return 0;
+		}
+
+		int numLow = 0;
+		for (long id : ids) {
+			long block = id / blockSize;
+			if (block == lowBlock) {
+				numLow++;
+			} else if (block != highBlock) {
+				throw new IOException("A group held items of more than two blocks, including " +
+						lowBlock + ", " + block + " and " + highBlock + ".");
+			}
+		}
+		return numLow;
+	}
+
+	/**
+	 * Returns the order in which to compare the items: those of the lower block first if the group
+	 * is drawn from two blocks, and otherwise the order in which they arrived.
+	 */
+	private int[] orderByBlock(long[] ids, int split) {
+		int[] order = new int[ids.length];
+		if (split == 0) {
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			return order;
+		}
+
+		long lowBlock = Long.MAX_VALUE;
+		for (long id : ids) {
+			lowBlock = Math.min(lowBlock, id / blockSize);
+		}
+
+		int low = 0, high = split;
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] / blockSize == lowBlock) {
+				order[low++] = i;
+			} else {
+				order[high++] = i;
+			}
+		}
+		return order;
+	}
+
+	private static long[] permute(long[] values, int[] order) {
+		long[] permuted = new long[order.length];
+		for (int i = 0; i < order.length; i++) {
+			permuted[i] = values[order[i]];
+		}
+		return permuted;
+	}
+
+	/** Returns the sum of the products of the costs of the pairs which will be compared. */
+	private long predictCost(long[] costs, int split) {
+		long lowSum = 0, highSum = 0, squares = 0;
+		for (int i = 0; i < costs.length; i++) {
+			long cost = costs[i];
+			if (i < split) {
+				lowSum += cost;
+			} else {
+				highSum += cost;
+			}
+			squares += cost * cost;
+		}
+
+		if (split > 0) {
+			return lowSum * highSum;
+		}
+		return (highSum * highSum - squares) / 2;
+	}
+
+	/** Ensures there is an empty heap for each of the n items of the group. */
+	private void resetNeighbors(int n) {
+		if (neighbors == null) {
+			neighbors = new ArrayList<NearestNeighbors>();
+		}
+		for (int i = 0; i < Math.min(n, neighbors.size()); i++) {
+			neighbors.get(i).clear();
+		}
+		while (neighbors.size() < n) {
+			neighbors.add(new NearestNeighbors(numNeighbors));
+		}
+	}
+
+	/**
+	 * Handles a pair within the distance threshold: either writes it immediately, or offers each
+	 * item to the other's nearest neighbors.  Only called from the reducer's own thread.
+	 */
+	private void acceptPair(int i, int j, long[] ids, long score, Context context)
+			throws IOException, InterruptedException {
+		if (numNeighbors > 0) {
+			neighbors.get(i).offer(ids[j], score);
+			neighbors.get(j).offer(ids[i], score);
+		} else {
+			writePair(ids[i], ids[j], score, context);
+		}
+	}
+
+	/**
+	 * Writes each pair which is among the nearest neighbors of either of its items.  A pair which
+	 * is near to both is written once.
+	 */
+	private void writeNeighbors(long[] ids, Context context)
+			throws IOException, InterruptedException {
+		Set<IdPair> written = new HashSet<IdPair>();
+
+		for (int i = 0; i < ids.length; i++) {
+			for (Neighbor neighbor : neighbors.get(i).getSorted()) {
+				if (written.add(new IdPair(ids[i], neighbor.getId()))) {
+					writePair(ids[i], neighbor.getId(), neighbor.getDistance(), context);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares all tiles of the upper triangle, or of the rectangle of rows [0, rowEnd) against
+	 * columns [split, n), on the pool, writing out each tile as it completes.  Item i of the list
+	 * is the item at positions[i] of the group.
+	 * At most {@link #TILES_PER_THREAD} tiles per thread are outstanding at once, which bounds the
+	 * memory held by completed but unwritten comparisons.
+	 */
+	private void compareTiles(final List<I> list, int[] positions, long[] ids, int rowEnd,
+			int split, Context context) throws IOException, InterruptedException {
+		int n = list.size();
+		int maxOutstanding = numThreads * TILES_PER_THREAD;
+		final BlockingQueue<Tile> completed = new ArrayBlockingQueue<Tile>(maxOutstanding);
+		int outstanding = 0;
+		int rowStart = 0, colStart = split;
+
+		while (rowStart < rowEnd || outstanding > 0) {
+
+			if (rowStart < rowEnd && outstanding < maxOutstanding) {
+				final Tile tile = new Tile(
+						rowStart, Math.min(rowStart + tileSize, rowEnd),
+						colStart, Math.min(colStart + tileSize, n));
+
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							tile.compare(list);
+						} catch (Throwable t) {
+							tile.error = t;
+						}
+						completed.add(tile);
+					}
+				});
+				outstanding++;
+
+				/* Advance across the row of tiles, then down to the next diagonal tile. */
+				colStart += tileSize;
+				if (colStart >= n) {
+					rowStart += tileSize;
+					colStart = Math.max(rowStart, split);
+				}
+
+			} else {
+				Tile tile = completed.poll(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+				if (tile == null) {
+					context.progress();
+					continue;
+				}
+				outstanding--;
+
+				if (tile.error != null) {
+					throw new IOException("Failed to compare the tile at (" + tile.rowStart +
+							", " + tile.colStart + ").", tile.error);
+				}
+
+				for (int i = 0; i < tile.size; i++) {
+					acceptPair(positions[tile.rows[i]], positions[tile.cols[i]], ids, tile.scores[i],
+							context);
+				}
+			}
+		}
+	}
+
+	/** Combines the ids of a pair to form the output key, and writes the pair's score. */
+	private void writePair(long idA, long idB, long score, Context context)
+			throws IOException, InterruptedException {
+		pair.set(idA, idB);
+		distance.set(score);
+
+		context.write(pair, distance);
+		context.progress();
+	}
+
+	/**
+	 * A rectangular block of the comparison matrix: rows [rowStart, rowEnd) against columns
+	 * [colStart, colEnd).  Only pairs above the diagonal of the full matrix are compared, and only
+	 * those within the distance threshold are kept.
+	 */
+	private class Tile {
+
+		final int rowStart, rowEnd, colStart, colEnd;
+
+		int[] rows, cols;
+		long[] scores;
+		int size;
+		Throwable error;
+
+		Tile(int rowStart, int rowEnd, int colStart, int colEnd) {
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+			this.colStart = colStart;
+			this.colEnd = colEnd;
+		}
+
+		void compare(List<I> list) {
+			int capacity = (rowEnd - rowStart) * (colEnd - colStart);
+			rows = new int[capacity];
+			cols = new int[capacity];
+			scores = new long[capacity];
+
+			for (int i = rowStart; i < rowEnd; i++) {
+				I a = list.get(i);
+
+				for (int j = Math.max(colStart, i + 1); j < colEnd; j++) {
+					long score = compareItems(a, list.get(j));
+					if (score <= maxDistance) {
+						rows[size] = i;
+						cols[size] = j;
+						scores[size] = score;
+						size++;
+					}
+				}
+			}
+		}
 	}
 }
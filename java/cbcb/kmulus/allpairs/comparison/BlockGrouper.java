@@ -0,0 +1,81 @@
+package cbcb.kmulus.allpairs.comparison;
+
+/**
+ * Splits the items into B contiguous blocks of ids, and makes a group of each tile (i, j) of
+ * blocks with i <= j.  A tile of two blocks holds the pairs between them, and a tile on the
+ * diagonal holds the pairs within its block.  Given n items, this generates B(B + 1)/2 groups and
+ * replicates each item B times.
+ *
+ * Unlike a {@link PrimeRot}, the size of every group is bounded by two blocks, regardless of the
+ * number of items, so the number of blocks may be chosen to fit the memory of a reducer.  See
+ * {@link #chooseNumBlocks(long, long, long)}.
+ *
+ * Groups are numbered by their tile as j(j + 1)/2 + i.  The reducer should be told the block size
+ * through {@link AllPairsReducer#BLOCK_SIZE_ATTR}, so that it only compares the items of a tile
+ * of two blocks across the blocks.
+ */
+public class BlockGrouper implements ExhaustiveUniqueGrouper {
+
+	private final long numItems;
+	private final long blockSize;
+	private final int numBlocks;
+
+	public BlockGrouper(long numItems, int numBlocks) {
+		if (numItems < 0 || numBlocks < 1) {
+			throw new IllegalArgumentException(
+					"Cannot split " + numItems + " items into " + numBlocks + " blocks.");
+		}
+		this.numItems = numItems;
+		this.blockSize = Math.max(1, (numItems + numBlocks - 1) / numBlocks);
+
+		/* Rounding the block size up may leave the last blocks empty; drop them. */
+		this.numBlocks = (int) Math.max(1, (numItems + blockSize - 1) / blockSize);
+	}
+
+	/**
+	 * Returns the number of blocks for which a group of two blocks of items fits in the given
+	 * budget, given the total size of all items.
+	 */
+	public static int chooseNumBlocks(long numItems, long totalBytes, long groupBytes) {
+		if (groupBytes <= 0) {
+			throw new IllegalArgumentException("Group budget must be positive: " + groupBytes);
+		}
+		long numBlocks = (2 * totalBytes + groupBytes - 1) / groupBytes;
+		return (int) Math.max(1, Math.min(numBlocks, Math.min(numItems, Integer.MAX_VALUE)));
+	}
+
+	public long[] getGroups(long id) {
+		long block = getBlock(id);
+		long[] groups = new long[numBlocks];
+
+		for (int other = 0; other < numBlocks; other++) {
+			groups[other] = getTile(Math.min(block, other), Math.max(block, other));
+		}
+		return groups;
+	}
+
+	public long getNumItems() {
+		return numItems;
+	}
+
+	public long getNumGroups() {
+		return (long) numBlocks * (numBlocks + 1) / 2;
+	}
+
+	public int getNumBlocks() {
+		return numBlocks;
+	}
+
+	/** Returns the number of items in each block; only the last may hold fewer. */
+	public long getBlockSize() {
+		return blockSize;
+	}
+
+	public long getBlock(long id) {
+		return id / blockSize;
+	}
+
+	private static long getTile(long i, long j) {
+		return j * (j + 1) / 2 + i;
+	}
+}
@@ -9,12 +9,8 @@ public class ClassicalPlaneRot extends PrimeRot {
 		super(numItems, p, 1, p);
 	}
 
-	protected void initializeIids() {
-		//do nothing...
-	}
-
 	@Override
-	public long[] getGroups(long id) {
+	protected long[] getPointGroups(long id) {
 		long[] groups = new long[p+1];
 
 		/*If it is the last item in the set, it belongs to all indicator groups.*/
@@ -0,0 +1,150 @@
+package cbcb.kmulus.allpairs.comparison;
+
+/**
+ * Arithmetic in the finite field GF(p^k), for a prime p.  Elements are the integers [0, p^k),
+ * read as polynomials over GF(p) whose coefficients are the base p digits of the element.
+ * Multiplication uses log and antilog tables built from a primitive polynomial, so each table
+ * holds p^k entries; addition works digit by digit.
+ */
+public class GaloisField {
+
+	private final int p;
+	private final int k;
+	private final int q;
+
+	/* antilog[i] = x^i, and log[antilog[i]] = i, for the primitive element x. */
+	private final int[] antilog;
+	private final int[] log;
+
+	public GaloisField(int p, int k) {
+		if (p < 2 || k < 1) {
+			throw new IllegalArgumentException("Invalid field order " + p + "^" + k + ".");
+		}
+		this.p = p;
+		this.k = k;
+
+		long order = 1;
+		for (int i = 0; i < k; i++) {
+			order *= p;
+		}
+		if (order > Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("Field order " + p + "^" + k + " is too large.");
+		}
+		this.q = (int) order;
+
+		antilog = new int[q - 1];
+		log = new int[q];
+
+		/* Try each monic polynomial of degree k until one whose root x generates the field. */
+		for (int poly = 0; poly < q; poly++) {
+			if (buildTables(poly)) {
+				return;
+			}
+		}
+		throw new IllegalStateException("No primitive polynomial found for GF(" + q + ").");
+	}
+
+	/** Returns the number of elements of the field. */
+	public int getOrder() {
+		return q;
+	}
+
+	public int add(int a, int b) {
+		if (p == 2) {
+			return a ^ b;
+		}
+
+		int sum = 0;
+		for (int place = 1; a > 0 || b > 0; place *= p) {
+			sum += ((a % p + b % p) % p) * place;
+			a /= p;
+			b /= p;
+		}
+		return sum;
+	}
+
+	public int negate(int a) {
+		if (p == 2) {
+			return a;
+		}
+
+		int negation = 0;
+		for (int place = 1; a > 0; place *= p) {
+			negation += ((p - a % p) % p) * place;
+			a /= p;
+		}
+		return negation;
+	}
+
+	public int subtract(int a, int b) {
+		return add(a, negate(b));
+	}
+
+	public int multiply(int a, int b) {
+		if (a == 0 || b == 0) {
+			return 0;
+		}
+		return antilog[(log[a] + log[b]) % (q - 1)];
+	}
+
+	public int divide(int a, int b) {
+		if (b == 0) {
+			throw new ArithmeticException("Division by zero in GF(" + q + ").");
+		}
+		if (a == 0) {
+			return 0;
+		}
+		return antilog[(log[a] - log[b] + q - 1) % (q - 1)];
+	}
+
+	/**
+	 * Fills the log tables with the powers of x modulo the monic polynomial
+	 * x^k + c_{k-1} x^{k-1} + ... + c_0, where the c_i are the base p digits of lowTerms.  Returns
+	 * false if x does not generate all q - 1 non-zero elements, i.e. the polynomial is not
+	 * primitive.
+	 */
+	private boolean buildTables(int lowTerms) {
+		int[] coeffs = toDigits(lowTerms);
+		int[] power = new int[k];
+		power[0] = 1;
+
+		boolean[] seen = new boolean[q];
+		for (int i = 0; i < q - 1; i++) {
+			int element = fromDigits(power);
+			if (element == 0 || seen[element]) {
+				return false;
+			}
+			seen[element] = true;
+			antilog[i] = element;
+			log[element] = i;
+
+			/* Multiply by x, reducing x^k to -(c_{k-1} x^{k-1} + ... + c_0). */
+			int carry = power[k - 1];
+			for (int j = k - 1; j > 0; j--) {
+				power[j] = power[j - 1];
+			}
+			power[0] = 0;
+			for (int j = 0; j < k; j++) {
+				power[j] = ((power[j] - carry * coeffs[j]) % p + p) % p;
+			}
+		}
+		return true;
+	}
+
+	private int[] toDigits(int element) {
+		int[] digits = new int[k];
+		for (int i = 0; i < k; i++) {
+			digits[i] = element % p;
+			element /= p;
+		}
+		return digits;
+	}
+
+	private int fromDigits(int[] digits) {
+		int element = 0;
+		for (int i = k - 1; i >= 0; i--) {
+			element = element * p + digits[i];
+		}
+		return element;
+	}
+}
@@ -0,0 +1,204 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Holds the values of a group serialized in a single byte arena, rather than as objects.  Values
+ * are kept on the heap up to a budget of bytes; the rest spill to a local temporary file, which is
+ * memory mapped once the first spilled value is read.  Values are numbered in the order they were
+ * added and may be read back in any order, but none may be added after a spilled value is read
+ * until the buffer is cleared.
+ *
+ * A buffer is meant to be reused for every group of a task, and is not thread safe.
+ */
+public class GroupBuffer implements Closeable {
+
+	/*
+	 * The spill file is mapped in regions starting at multiples of this size.  Each region extends
+	 * past the next start by the longest spilled value, so that every value lies in one region.
+	 */
+	private static final long REGION_SIZE = 1L << 30;
+
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	private final int heapBytes;
+	private final File spillDir;
+
+	private byte[] arena = new byte[0];
+	private int arenaLength;
+
+	/* The offset of each value in the arena or the spill file, and its length. */
+	private long[] offsets = new long[16];
+	private int[] lengths = new int[16];
+	private int size;
+	private int numOnHeap;
+
+	private File spillFile;
+	private DataOutputStream spillOut;
+	private long spillLength;
+	private int maxSpilledLength;
+	private MappedByteBuffer[] regions;
+
+	private final DataOutputBuffer serialized = new DataOutputBuffer();
+	private final DataInputBuffer in = new DataInputBuffer();
+	private byte[] scratch = new byte[0];
+
+	/**
+	 * @param heapBytes - The most bytes of values to hold on the heap.
+	 * @param spillDir - The local directory in which to spill, or null for the default temporary
+	 * 				directory.
+	 */
+	public GroupBuffer(long heapBytes, File spillDir) {
+		this.heapBytes = (int) Math.max(0, Math.min(heapBytes, Integer.MAX_VALUE - 8));
+		this.spillDir = spillDir;
+	}
+
+	/** Serializes the value into the buffer, returning its index. */
+	public int add(Writable value) throws IOException {
+		serialized.reset();
+		value.write(serialized);
+		int length = serialized.getLength();
+
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+		}
+
+		if (spillOut == null && regions == null && (long) arenaLength + length <= heapBytes) {
+			ensureArenaCapacity(arenaLength + length);
+			System.arraycopy(serialized.getData(), 0, arena, arenaLength, length);
+			offsets[size] = arenaLength;
+			arenaLength += length;
+			numOnHeap++;
+
+		} else {
+			if (regions != null) {
+				throw new IllegalStateException("Cannot add to a group after reading spilled values.");
+			}
+			if (spillOut == null) {
+				spillFile = File.createTempFile("group", ".spill", spillDir);
+				spillOut = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(spillFile)));
+			}
+			spillOut.write(serialized.getData(), 0, length);
+			offsets[size] = spillLength;
+			spillLength += length;
+			maxSpilledLength = Math.max(maxSpilledLength, length);
+		}
+
+		lengths[size] = length;
+		return size++;
+	}
+
+	/** Reads the value with the given index into the given object. */
+	public void read(int index, Writable value) throws IOException {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("No value " + index + " of " + size + ".");
+		}
+
+		if (index < numOnHeap) {
+			in.reset(arena, (int) offsets[index], lengths[index]);
+
+		} else {
+			if (regions == null) {
+				mapSpill();
+			}
+			int length = lengths[index];
+			if (scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+
+			int region = (int) (offsets[index] / REGION_SIZE);
+			regions[region].position((int) (offsets[index] - region * REGION_SIZE));
+			regions[region].get(scratch, 0, length);
+			in.reset(scratch, length);
+		}
+
+		value.readFields(in);
+	}
+
+	/** Returns the serialized length of the value with the given index. */
+	public int getLength(int index) {
+		return lengths[index];
+	}
+
+	/** Returns the number of values in the buffer. */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the number of bytes of values which did not fit on the heap. */
+	public long getSpilledBytes() {
+		return spillLength;
+	}
+
+	/**
+	 * Empties the buffer, deleting any spill file and dropping its mapping, but keeps the arena for
+	 * reuse.  The mapped regions are released once they are collected.
+	 */
+	public void clear() throws IOException {
+		size = 0;
+		numOnHeap = 0;
+		arenaLength = 0;
+
+		if (spillOut != null) {
+			spillOut.close();
+			spillOut = null;
+		}
+		regions = null;
+		if (spillFile != null) {
+			spillFile.delete();
+			spillFile = null;
+		}
+		spillLength = 0;
+		maxSpilledLength = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		clear();
+		arena = new byte[0];
+	}
+
+	private void ensureArenaCapacity(int capacity) {
+		if (arena.length < capacity) {
+			int grown = (int) Math.min(heapBytes,
+					Math.max(capacity, Math.max(INITIAL_CAPACITY, (long) arena.length * 2)));
+			arena = Arrays.copyOf(arena, grown);
+		}
+	}
+
+	/** Finishes the spill file and maps it for reading. */
+	private void mapSpill() throws IOException {
+		spillOut.close();
+		spillOut = null;
+
+		RandomAccessFile file = new RandomAccessFile(spillFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer[] mapped =
+				new MappedByteBuffer[(int) ((spillLength + REGION_SIZE - 1) / REGION_SIZE)];
+			for (int i = 0; i < mapped.length; i++) {
+				long start = i * REGION_SIZE;
+				mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(REGION_SIZE + maxSpilledLength, spillLength - start));
+			}
+			regions = mapped;
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * An unordered pair of 0 based internal identifiers, stored with the smaller id first.  Serialized
+ * as two variable length longs, and registered with a raw comparator so that pairs may be sorted
+ * without deserialization.  The text form, "idA,idB", matches the keys historically written by
+ * {@link AllPairsReducer}.
+ */
+public class IdPair implements WritableComparable<IdPair> {
+
+	private long first;
+	private long second;
+
+	/** Constructor for de-serialization purposes. */
+	public IdPair() {
+	}
+
+	public IdPair(long idA, long idB) {
+		set(idA, idB);
+	}
+
+	/** Sets this pair to the given ids, in either order. */
+	public void set(long idA, long idB) {
+		if (idA < idB) {
+			first = idA;
+			second = idB;
+		} else {
+			first = idB;
+			second = idA;
+		}
+	}
+
+	/** Returns the smaller id of the pair. */
+	public long getFirst() {
+		return first;
+	}
+
+	/** Returns the larger id of the pair. */
+	public long getSecond() {
+		return second;
+	}
+
+	/** Returns the id paired with the given one, which must be a member of this pair. */
+	public long getOther(long id) {
+		return id == first ? second : first;
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		first = WritableUtils.readVLong(in);
+		second = WritableUtils.readVLong(in);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out, first);
+		WritableUtils.writeVLong(out, second);
+	}
+
+	@Override
+	public int compareTo(IdPair o) {
+		if (first != o.first) {
+			return first < o.first ? -1 : 1;
+		}
+		return second < o.second ? -1 : (second == o.second ? 0 : 1);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (first ^ (first >>> 32)) * 31 + (int) (second ^ (second >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof IdPair)) {
+			return false;
+		}
+		IdPair pair = (IdPair) o;
+		return first == pair.first && second == pair.second;
+	}
+
+	@Override
+	public String toString() {
+		return "" + first + AllPairsReducer.SEQ_ID_DELIM + second;
+	}
+
+	/** Compares serialized {@link IdPair}s without deserializing them. */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(IdPair.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			try {
+				long first1 = readVLong(b1, s1);
+				long first2 = readVLong(b2, s2);
+				if (first1 != first2) {
+					return first1 < first2 ? -1 : 1;
+				}
+
+				long second1 = readVLong(b1, s1 + WritableUtils.decodeVIntSize(b1[s1]));
+				long second2 = readVLong(b2, s2 + WritableUtils.decodeVIntSize(b2[s2]));
+				return second1 < second2 ? -1 : (second1 == second2 ? 0 : 1);
+
+			} catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+	}
+
+	static {
+		WritableComparator.define(IdPair.class, new Comparator());
+	}
+}
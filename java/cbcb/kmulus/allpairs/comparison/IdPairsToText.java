@@ -0,0 +1,91 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/**
+ * Converts the binary (SequenceFile) output of an all pairs job, ({@link IdPair}, distance), to
+ * the text form "idA,idB\tdistance".  This is a map-only job.
+ */
+public class IdPairsToText extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(IdPairsToText.class);
+
+	private static final String USAGE = "IdPairsToText ID_PAIR_INPUT OUTPUT";
+
+	/** Passes each pair through unchanged; the {@link TextOutputFormat} does the conversion. */
+	public static class Map extends Mapper<IdPair, LongWritable, IdPair, LongWritable> {
+
+		@Override
+		public void map(IdPair key, LongWritable value, Context context)
+				throws IOException, InterruptedException {
+			context.write(key, value);
+		}
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+		try {
+			result = ToolRunner.run(new IdPairsToText(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length < 2) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String inputPath = args[0];
+		String outputPath = args[1];
+
+		LOG.info("Tool name: " + IdPairsToText.class.getName());
+		LOG.info(" - inputDir: " + inputPath);
+		LOG.info(" - outputDir: " + outputPath);
+
+		Job job = new Job(getConf(), IdPairsToText.class.getName());
+		job.setJarByClass(IdPairsToText.class);
+
+		job.setOutputKeyClass(IdPair.class);
+		job.setOutputValueClass(LongWritable.class);
+
+		job.setMapperClass(IdPairsToText.Map.class);
+		job.setNumReduceTasks(0);
+
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(inputPath));
+		FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+		// Delete the output directory if it exists already.
+		FileSystem.get(job.getConfiguration()).delete(new Path(outputPath), true);
+
+		long startTime = System.currentTimeMillis();
+
+		boolean result = job.waitForCompletion(true);
+
+		LOG.info("Converted in " + (System.currentTimeMillis() - startTime) + "ms.");
+
+		return result ? 0 : 1;
+	}
+}
@@ -0,0 +1,164 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/**
+ * Selects the k nearest neighbors of every item from the binary output of an all pairs job run
+ * with {@link AllPairsReducer#NUM_NEIGHBORS_ATTR}.  Each pair is keyed by both of its ids, and
+ * the combiner and reducer keep only the k nearest {@link Neighbor}s seen for each id.  The
+ * output is (id, {@link Neighbor}), nearest first; as text, "id\tneighborId,distance".
+ */
+public class MergeNearestNeighbors extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(MergeNearestNeighbors.class);
+
+	private static final String USAGE =
+		"MergeNearestNeighbors [-q] ID_PAIR_INPUT OUTPUT NUM_NEIGHBORS\n" +
+		"  -q: write compressed SequenceFiles rather than text";
+
+	/** Emits each pair as a neighbor of both of its items. */
+	public static class Map extends Mapper<IdPair, LongWritable, LongWritable, Neighbor> {
+
+		private final LongWritable id = new LongWritable();
+		private final Neighbor neighbor = new Neighbor();
+
+		@Override
+		public void map(IdPair key, LongWritable value, Context context)
+				throws IOException, InterruptedException {
+			id.set(key.getFirst());
+			neighbor.set(key.getSecond(), value.get());
+			context.write(id, neighbor);
+
+			id.set(key.getSecond());
+			neighbor.set(key.getFirst(), value.get());
+			context.write(id, neighbor);
+		}
+	}
+
+	/**
+	 * Keeps the k nearest neighbors of each id.  Also used as the combiner.  A pair which reaches
+	 * the same id more than once, as when overlapping all pairs outputs are merged, is kept once.
+	 */
+	public static class Reduce extends Reducer<LongWritable, Neighbor, LongWritable, Neighbor> {
+
+		private NearestNeighbors nearest;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			int numNeighbors = context.getConfiguration().getInt(
+					AllPairsReducer.NUM_NEIGHBORS_ATTR, AllPairsReducer.DEF_NUM_NEIGHBORS);
+
+			if (numNeighbors < 1) {
+				throw new IOException(
+						"Expected a positive " + AllPairsReducer.NUM_NEIGHBORS_ATTR + " attribute.");
+			}
+			nearest = new NearestNeighbors(numNeighbors);
+		}
+
+		@Override
+		public void reduce(LongWritable key, Iterable<Neighbor> values, Context context)
+				throws IOException, InterruptedException {
+			nearest.clear();
+			for (Neighbor neighbor : values) {
+				if (!nearest.contains(neighbor.getId())) {
+					nearest.offer(neighbor.getId(), neighbor.getDistance());
+				}
+			}
+
+			for (Neighbor neighbor : nearest.getSorted()) {
+				context.write(key, neighbor);
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+		try {
+			result = ToolRunner.run(new MergeNearestNeighbors(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		int i = 0;
+		boolean binaryOutput = false;
+		if (args.length > 0 && args[0].equals("-q")) {
+			binaryOutput = true;
+			i++;
+		}
+
+		if (args.length - i < 3) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String inputPath = args[i];
+		String outputPath = args[i + 1];
+		int numNeighbors = Integer.parseInt(args[i + 2]);
+
+		LOG.info("Tool name: " + MergeNearestNeighbors.class.getName());
+		LOG.info(" - inputDir: " + inputPath);
+		LOG.info(" - outputDir: " + outputPath);
+		LOG.info(" - numNeighbors: " + numNeighbors);
+
+		Configuration conf = getConf();
+		conf.setInt(AllPairsReducer.NUM_NEIGHBORS_ATTR, numNeighbors);
+
+		Job job = new Job(conf, MergeNearestNeighbors.class.getName());
+		job.setJarByClass(MergeNearestNeighbors.class);
+
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(Neighbor.class);
+
+		job.setMapperClass(MergeNearestNeighbors.Map.class);
+		job.setCombinerClass(MergeNearestNeighbors.Reduce.class);
+		job.setReducerClass(MergeNearestNeighbors.Reduce.class);
+
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+
+		if (binaryOutput) {
+			job.setOutputFormatClass(SequenceFileOutputFormat.class);
+			FileOutputFormat.setCompressOutput(job, true);
+			SequenceFileOutputFormat.setOutputCompressionType(job, CompressionType.BLOCK);
+		} else {
+			job.setOutputFormatClass(TextOutputFormat.class);
+		}
+
+		FileInputFormat.addInputPath(job, new Path(inputPath));
+		FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+		// Delete the output directory if it exists already.
+		FileSystem.get(job.getConfiguration()).delete(new Path(outputPath), true);
+
+		long startTime = System.currentTimeMillis();
+
+		boolean result = job.waitForCompletion(true);
+
+		LOG.info("Merged in " + (System.currentTimeMillis() - startTime) + "ms.");
+
+		return result ? 0 : 1;
+	}
+}
@@ -0,0 +1,67 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A bounded max-heap which keeps the k nearest {@link Neighbor}s offered to it.  Once full, a
+ * rejected offer costs a single comparison and no allocation, and an accepted one reuses the
+ * evicted {@link Neighbor}.
+ */
+public class NearestNeighbors {
+
+	private final int capacity;
+	private final PriorityQueue<Neighbor> heap;
+
+	public NearestNeighbors(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.heap = new PriorityQueue<Neighbor>(capacity, Collections.reverseOrder());
+	}
+
+	/** Offers the given neighbor, returning true if it is now among the nearest. */
+	public boolean offer(long id, long distance) {
+		if (heap.size() < capacity) {
+			heap.add(new Neighbor(id, distance));
+			return true;
+		}
+
+		if (!heap.peek().isFartherThan(id, distance)) {
+			return false;
+		}
+
+		Neighbor farthest = heap.poll();
+		farthest.set(id, distance);
+		heap.add(farthest);
+		return true;
+	}
+
+	/** Returns true if a neighbor with the given id is currently held. */
+	public boolean contains(long id) {
+		for (Neighbor neighbor : heap) {
+			if (neighbor.getId() == id) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return heap.size();
+	}
+
+	public void clear() {
+		heap.clear();
+	}
+
+	/** Returns the held neighbors, nearest first. */
+	public List<Neighbor> getSorted() {
+		List<Neighbor> sorted = new ArrayList<Neighbor>(heap);
+		Collections.sort(sorted);
+		return sorted;
+	}
+}
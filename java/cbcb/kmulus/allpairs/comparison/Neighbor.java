@@ -0,0 +1,87 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * The 0 based internal identifier of a neighboring item, along with its distance.  Neighbors are
+ * ordered nearest first, with ties broken by the smaller id so that the k nearest neighbors of an
+ * item are the same regardless of the order in which they are found.
+ */
+public class Neighbor implements WritableComparable<Neighbor> {
+
+	private long id;
+	private long distance;
+
+	/** Constructor for de-serialization purposes. */
+	public Neighbor() {
+	}
+
+	public Neighbor(long id, long distance) {
+		set(id, distance);
+	}
+
+	public void set(long id, long distance) {
+		this.id = id;
+		this.distance = distance;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getDistance() {
+		return distance;
+	}
+
+	/** Returns true if a neighbor with the given id and distance is ordered before this one. */
+	public boolean isFartherThan(long otherId, long otherDistance) {
+		if (distance != otherDistance) {
+			return distance > otherDistance;
+		}
+		return id > otherId;
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		id = WritableUtils.readVLong(in);
+		distance = WritableUtils.readVLong(in);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out, id);
+		WritableUtils.writeVLong(out, distance);
+	}
+
+	@Override
+	public int compareTo(Neighbor o) {
+		if (distance != o.distance) {
+			return distance < o.distance ? -1 : 1;
+		}
+		return id < o.id ? -1 : (id == o.id ? 0 : 1);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (id ^ (id >>> 32)) * 31 + (int) (distance ^ (distance >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Neighbor)) {
+			return false;
+		}
+		Neighbor neighbor = (Neighbor) o;
+		return id == neighbor.id && distance == neighbor.distance;
+	}
+
+	@Override
+	public String toString() {
+		return "" + id + AllPairsReducer.SEQ_ID_DELIM + distance;
+	}
+}
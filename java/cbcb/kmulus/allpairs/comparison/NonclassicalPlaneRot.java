@@ -1,122 +1,109 @@
 package cbcb.kmulus.allpairs.comparison;
 
 /**
- * Represents a projective plane of the order of any prime power. 
- * 
- * TODO(calbach): Find out how to construct planes of this power.
- * 
+ * Represents a projective plane of the order of any prime power, n = p^k, constructed as the
+ * Desarguesian plane PG(2, n) over the finite field GF(p^k).
+ *
+ * Items are the points of the plane and groups are its lines.  Both are written in homogeneous
+ * coordinates normalized so that the first non-zero coordinate is 1, and numbered as:
+ * <ul>
+ * 	<li>(1, x, y) -> x*n + y, for the first n^2 ids</li>
+ * 	<li>(0, 1, y) -> n^2 + y, for the next n ids</li>
+ * 	<li>(0, 0, 1) -> n^2 + n, the last id</li>
+ * </ul>
+ * A point (X, Y, Z) lies on the line [a, b, c] exactly when aX + bY + cZ = 0.
+ *
  * @author CH Albach
  */
 public class NonclassicalPlaneRot extends PrimeRot {
 
+	private final GaloisField field;
+
 	public NonclassicalPlaneRot(long numItems, int p, int k, int n) {
 		super(numItems, p, k, n);
-	}
+		field = new GaloisField(p, k);
 
-	protected void initializeIids() {
-		// do nothing
+		if (field.getOrder() != n) {
+			throw new IllegalArgumentException("Order " + n + " is not " + p + "^" + k + ".");
+		}
 	}
 
 	/**
-	 * Uses the prime-rot algorithm to calculate the groups to which the ID 
-	 * belongs.
+	 * Calculates the n + 1 lines through the point with the given id, by solving aX + bY + cZ = 0
+	 * for each family of normalized lines.
 	 */
-	public long[] getGroups(long id) {
+	@Override
+	protected long[] getPointGroups(long id) {
 		long[] groups = new long[n+1];
+		int size = 0;
 
-		/*If it is the last item in the set, it belongs to all indicator groups.*/
-		if(id == n*n + n) { 
-			for(int i = 0; i < groups.length; i++) {
-				groups[i] = i;
-			}
-
-			return groups;
-		}
-
-		/*Determine the indicator group this id belongs to.*/
-		int indicatorGroup = (int)(id / n);
-		groups[0] = indicatorGroup;
+		long nn = (long) n * n;
 
-		/*The 0th indicator group is distributed in a unique manner.*/
-		if(indicatorGroup == 0) {
+		if (id < nn) {
+			int x = (int) (id / n);
+			int y = (int) (id % n);
 
-			long offset = id * n + (n + 1);
+			/* Lines [1, b, c]: 1 + bx + cy = 0. */
+			if (y != 0) {
+				for (int b = 0; b < n; b++) {
+					int c = field.divide(field.negate(field.add(1, field.multiply(b, x))), y);
+					groups[size++] = line(1, b, c);
+				}
+			} else if (x != 0) {
+				int b = field.divide(field.negate(1), x);
+				for (int c = 0; c < n; c++) {
+					groups[size++] = line(1, b, c);
+				}
+			}
 
-			for(int i = 0; i < n; i++) {
-				groups[i+1] = offset + i;
+			/* Lines [0, 1, c]: x + cy = 0. */
+			if (y != 0) {
+				groups[size++] = line(0, 1, field.divide(field.negate(x), y));
+			} else if (x == 0) {
+				for (int c = 0; c < n; c++) {
+					groups[size++] = line(0, 1, c);
+				}
 			}
 
-			/*The first indicator group will be distributed without rotation.*/
-		} else if(indicatorGroup == 1) {
+			/* Line [0, 0, 1]: y = 0. */
+			if (y == 0) {
+				groups[size++] = line(0, 0, 1);
+			}
 
-			long offset = id % n + (n + 1);
+		} else if (id < nn + n) {
+			int y = (int) (id - nn);
 
-			for(int i = 0; i < n; i++) {
-				groups[i+1] = offset + i*n;
+			/* Lines [1, b, c]: b + cy = 0. */
+			for (int c = 0; c < n; c++) {
+				groups[size++] = line(1, field.negate(field.multiply(c, y)), c);
 			}
 
-
+			/* Lines [0, 1, c]: 1 + cy = 0, or when y = 0, the line [0, 0, 1]. */
+			if (y != 0) {
+				groups[size++] = line(0, 1, field.divide(field.negate(1), y));
+			} else {
+				groups[size++] = line(0, 0, 1);
+			}
 
 		} else {
 
-			/*Keep the standard implementation for the first set of row groups.*/
-			groups[1] = n + 1 + (id % n);
-
-
-			/* ************************************************************ *
-			 * This is where it gets non-classical. It involves a 'recursive' 
-			 * application of the PrimeRot algorithm.  
-			 * 
-			 * View each indicator group as nested sets of p groups (where 
-			 * there are k levels to the nesting).  A rotation factor will be
-			 * composed of k parts.  Each part rotates a corresponding kth level
-			 * of nested groups.  
-			 * ************************************************************ */
-
-			/*Skip the indicator groups and the first set of row groups.*/
-			int offset = 2*n + 1;
-
-			/*Original position of id within its group.*/
-			long modId = id;
-			int[] pos = new int[k];
-
-			/*Store in 'fixed' base p notation, for faster processing.*/
-			for(int i = 0; i < k; i++) {
-				pos[i] = (int) (modId % p);
-				modId /= p;
-			}
-
-			for(int i = 0; i < n-1; i++) {
-				int rotFactor = indicatorGroup + i - 1;
-				
-				/*Excludes 0 from rotFactors.*/
-				if (rotFactor >= n)
-					rotFactor++;
-
-				/*Offset from the start of the set of groups.*/
-				int inset = 0;
-				
-				/*The value of the current position in base p.*/
-				int expP = 1;
-				
-				/*Add each rot factor to the position in base p notation.*/
-				for(int j = 0; j < k; j++) {
-					inset += ((pos[j] + rotFactor) % p) * expP;
-					rotFactor /= p;
-					
-					expP *= p;
-				}
-				
-				/*Group id based on offset from group 0 and offset within set.*/
-				groups[i+2] = offset + inset;
-				
-				/*Advance to the next set of row groups.*/
-				offset += n;
+			/* The point (0, 0, 1) lies on the lines [1, b, 0] and [0, 1, 0]. */
+			for (int b = 0; b < n; b++) {
+				groups[size++] = line(1, b, 0);
 			}
+			groups[size++] = line(0, 1, 0);
 		}
 
 		return groups;
 	}
 
-
+	/** Numbers the normalized line [a, b, c] in the same way as the points. */
+	private long line(int a, int b, int c) {
+		if (a != 0) {
+			return (long) b * n + c;
+		} else if (b != 0) {
+			return (long) n * n + c;
+		}
+		return (long) n * n + n;
+	}
 }
@@ -1,16 +1,20 @@
 package cbcb.kmulus.allpairs.comparison;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Implementation of the prime-rot algorithm which produces unique groupings within a set. These
  * groupings are unique in that over all groups, each pair of items are found in the same group
  * exactly once. 
  * 
- * This algorithm works optimally on sets of size p^2 + p + 1, where p is a prime number.
- * As p^2 + p + 1 is the exact capacity for this algorithm, in sub-optimal cases p will be chosen as
- * the smallest possible prime number such that p^2 + p + 1 >= set size.
+ * This algorithm works optimally on sets of size n^2 + n + 1, where n = p^k is a prime power.
+ * As n^2 + n + 1 is the exact capacity for this algorithm, in sub-optimal cases n will be chosen as
+ * the smallest possible prime power such that n^2 + n + 1 >= set size.
+ * 
+ * Items are the points of a projective plane of order n, and groups are its lines.  By default
+ * item i is point i; {@link #initializeIids(long[])} instead places items so that the cost of each
+ * group is balanced.
  * 
  * @author CH Albach
  */
@@ -27,6 +31,14 @@ public abstract class PrimeRot implements ExhaustiveUniqueGrouper {
 	
 	/** The order of the projective plane (p^power). */
 	protected int n;
+	
+	/** The point on which each item is placed, or null if item i is point i. */
+	private int[] points;
+	
+	/* Placement parameters: the seed keeps every task's placement identical. */
+	private static final long PLACEMENT_SEED = 0x6b6d756cL;
+	private static final int PLACEMENT_SAMPLES = 8;
+	private static final long PLACEMENT_WORK = 200000000L;
 		
 	public PrimeRot(long numItems, int p, int k, int n) {
 		this.numItems = numItems;
@@ -40,7 +52,7 @@ public abstract class PrimeRot implements ExhaustiveUniqueGrouper {
 	}
 	
 	public long getNumGroups() {
-		return n + 1;
+		return (long) n * n + n + 1;
 	}
 	
 	public int getP() {
@@ -63,108 +75,174 @@ public abstract class PrimeRot implements ExhaustiveUniqueGrouper {
 	 * Determine the smallest order projective plane which can fit the desired input set size. The
 	 * order of this plane may be p^k where p is prime and k is an integer.  Planes where k=1 are
 	 * called Classical projective planes or Desarguesian^2. If such a plane is optimal, this method
-	 * returns a {@link ClassicalPlaneRot} implementation of {@link PrimeRot}.  
-	 * 
-	 * TODO(CH): Planes of other powers should create a {@link NonclassicalPlaneRot} implementation.
+	 * returns a {@link ClassicalPlaneRot} implementation of {@link PrimeRot}; otherwise a
+	 * {@link NonclassicalPlaneRot}.
 	 */
 	public static PrimeRot generatePrimeRot(long numItems) {
 		
-		List<Integer> primes = new ArrayList<Integer>();
-		int prime = 1;
-		int p, k, n;
+		/*Find the smallest order whose capacity, n^2 + n + 1, fits numItems.*/
+		int n = Math.max(2, (int) Math.sqrt(numItems) - 1);
+		while((long) n * n + n + 1 < numItems) {
+			n++;
+		}
 		
-		/*Compute the smallest possible classical projective plane.*/
-		while(prime * prime + prime + 1 < numItems) {
-			
-			do {
-				prime++;
-			} while(!isPrime(prime, primes));
-			
-			primes.add(prime);
+		/*Prime powers are dense enough that the first one is never far off.*/
+		while(getPrimeBase(n) < 0) {
+			n++;
 		}
 		
-		/*Store the classical plane data.*/
-		p = prime;
-		k = 1;
-		n = prime;
+		int p = getPrimeBase(n);
+		int k = 0;
+		for(int order = 1; order < n; order *= p) {
+			k++;
+		}
 		
-		return new ClassicalPlaneRot(numItems, p);
+		if(k == 1) {
+			return new ClassicalPlaneRot(numItems, p);
+		} else {
+			return new NonclassicalPlaneRot(numItems, p, k, n);
+		}
+	}
+	
+	/**
+	 * Map out internal ids such that placement for the algorithm is balanced, given the estimated
+	 * cost of each item, e.g. its length.  Assumes that the input is zero based and is complete
+	 * from 0 - numItems.
+	 * 
+	 * Items are placed heaviest first.  Each of the heaviest items goes to whichever of the free
+	 * points (or, for large planes, of a sample of them) keeps the heaviest of its n + 1 groups
+	 * lightest.  The work of this greedy phase is capped, so the remaining, lighter items are
+	 * spread over the remaining points in a fixed pseudo-random order.  The placement depends only
+	 * on the costs, so every task which computes it gets the same one.
+	 */
+	public void initializeIids(long[] costs) {
+		if (costs.length != numItems) {
+			throw new IllegalArgumentException(
+					"Expected " + numItems + " item costs, got " + costs.length + ".");
+		}
+		if (costs.length == 0) {
+			points = new int[0];
+			return;
+		}
+
+		long numPoints = getNumGroups();
+		if (numPoints > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many points to place: " + numPoints + ".");
+		}
+		
+		/*Order the items heaviest first, packing the (clamped) cost above the item.*/
+		long[] order = new long[costs.length];
+		for(int i = 0; i < costs.length; i++) {
+			long cost = Math.max(0, Math.min(costs[i], Integer.MAX_VALUE));
+			order[i] = (cost << 32) | i;
+		}
+		Arrays.sort(order);
 		
-		//System.out.println("p: " + p + ", k: " + k + ", n: " + n);
-		//System.out.println("classical capacity: " + (n*n + n + 1));
-		/*TODO put in a terminating condition for orders which have a capacity
-		 * within a certain distance of numItems
-		 */
+		int[] free = new int[(int) numPoints];
+		for(int i = 0; i < free.length; i++) {
+			free[i] = i;
+		}
+		int numFree = free.length;
 		
-		/* See if there are any 'tighter fitting' non-classical planes.
-		 * 
-		 * If p^2k + p^k + 1 >= numItems, where p is a prime and k is an integer;
-		 * for each prime, the lowest value of k is FLOOR[ logp(numItems-1)/2 ].  
-		 * (This can be derived from p^2k + p^k + 1 <= numItems) */
+		long[] loads = new long[(int) numPoints];
+		int[] placed = new int[costs.length];
+		Random random = new Random(PLACEMENT_SEED);
 		
-		/*Compute the reusable numerator of the exponent.*/
-		/*double expNum = Math.log(numItems-1)/2;
+		/*Small planes can afford to consider every free point for every item.*/
+		long numSamples = Math.max(PLACEMENT_SAMPLES, PLACEMENT_WORK / (costs.length * (n + 1L)));
+		long numGreedy = Math.min(costs.length, PLACEMENT_WORK / (numSamples * (n + 1L)));
+		int next = costs.length - 1;
 		
-		for(Integer primeFactor : primes) {
-			
-			/*Compute the lowest possible order allowed by numItems.*/
-			/*int exp = (int)( expNum / Math.log(primeFactor) );
-			int order = (int)Math.pow(primeFactor, exp);
+		for(; next >= costs.length - numGreedy; next--) {
+			int item = (int) order[next];
+			long cost = order[next] >>> 32;
+			boolean exhaustive = numSamples >= numFree;
 			
-			/*Increment the exponent until the plane can fit numItems.*/
-			/*while(order * order + order + 1 < numItems) {
-				/*Determine subsequent powers.*/
-				/*order *= primeFactor;
-				exp++;
+			/*Pick the point whose heaviest group is lightest, then whose groups are lightest.*/
+			int best = -1;
+			long bestMax = Long.MAX_VALUE, bestSum = Long.MAX_VALUE;
+			for(int s = 0; s < (exhaustive ? numFree : numSamples); s++) {
+				int f = exhaustive ? s : random.nextInt(numFree);
+				long maxLoad = 0, sumLoad = 0;
+				for(long group : getPointGroups(free[f])) {
+					maxLoad = Math.max(maxLoad, loads[(int) group]);
+					sumLoad += loads[(int) group];
+				}
+				if(maxLoad < bestMax || (maxLoad == bestMax && sumLoad < bestSum)) {
+					best = f;
+					bestMax = maxLoad;
+					bestSum = sumLoad;
+				}
 			}
 			
-			/*If this order beats out the old one, use it.  Careful of overflow.*/
-			/*if(order > 0 && order < n) {
-				p = primeFactor;
-				k = exp;
-				n = order;
+			int point = free[best];
+			free[best] = free[--numFree];
+			for(long group : getPointGroups(point)) {
+				loads[(int) group] += cost;
 			}
+			placed[item] = point;
 		}
 		
-		if(k == 1) {
-			return new ClassicalPlaneRot(numItems, p);
-		} else {
-			return new NonclassicalPlaneRot(numItems, p, k, n);
-		}*/
+		/*Shuffle the remaining points, and deal them out to the lighter items.*/
+		for(int i = numFree - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = free[i];
+			free[i] = free[j];
+			free[j] = swap;
+		}
+		for(int f = 0; next >= 0; next--, f++) {
+			placed[(int) order[next]] = free[f];
+		}
+		
+		points = placed;
 	}
 	
-	/**
-	 * Map out internal ids such that placement for the algorithm is optimal.
-	 * Assuming that the input is zero based and is complete from 0 - numItems
-	 * 
-	 * Eventually this could take into account the size of each item.
-	 */
-	protected abstract void initializeIids();
+	/** Returns the point of each item, as computed by {@link #initializeIids(long[])}, or null. */
+	public int[] getPlacement() {
+		return points;
+	}
+	
+	/** Uses a placement previously computed by {@link #initializeIids(long[])}. */
+	public void setPlacement(int[] placement) {
+		if (placement != null && placement.length != numItems) {
+			throw new IllegalArgumentException(
+					"Expected a placement of " + numItems + " items, got " + placement.length +
+					".");
+		}
+		points = placement;
+	}
 	
 	/**
 	 * Uses the prime-rot algorithm to calculate the groups to which the ID 
 	 * belongs.
 	 */
-	public abstract long[] getGroups(long id);
+	public long[] getGroups(long id) {
+		return getPointGroups(points == null ? id : points[(int) id]);
+	}
+	
+	/** Calculates the groups (lines) which contain the given point of the plane. */
+	protected abstract long[] getPointGroups(long point);
 		
 	
 	/**
-	 * Given a list of preceding prime numbers, determines if p is prime.
+	 * Returns the prime p if n = p^k for some k >= 1, or -1 if n is not a prime power.
 	 */
-	private static boolean isPrime(int p, List<Integer> primeList) {
-		// TODO: Use a better method of primality testing.
-		int lim = (int)Math.sqrt(p);
+	private static int getPrimeBase(int n) {
+		int p = 2;
+		while((long) p * p <= n && n % p != 0) {
+			p++;
+		}
 		
-		for(int prime : primeList) {
-			if(prime > lim)
-				break;
-			
-			if(p % prime == 0) {
-				return false;
-			}
+		/*No factor up to sqrt(n) means that n is itself prime.*/
+		if(n % p != 0) {
+			return n;
+		}
+		
+		while(n % p == 0) {
+			n /= p;
 		}
 		
-		return true;
+		return n == 1 ? p : -1;
 	}
 	
 }
@@ -0,0 +1,88 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cbcb.kmulus.allpairs.comparison.Neighbor;
+
+/**
+ * A sparse distance matrix held in a local directory of shards, as written by
+ * {@link WriteDistanceMatrix}.  Each lookup finds its shard by a binary search over the shards'
+ * row ranges, then defers to that shard's {@link DistanceMatrixReader}.
+ */
+public class DistanceMatrix implements Closeable {
+
+	private final DistanceMatrixReader[] shards;
+
+	public DistanceMatrix(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException(dir + " is not a directory.");
+		}
+		Arrays.sort(files);
+
+		List<DistanceMatrixReader> readers = new ArrayList<DistanceMatrixReader>();
+		try {
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(DistanceMatrixOutputFormat.SHARD_EXT)) {
+					DistanceMatrixReader reader = new DistanceMatrixReader(file);
+					if (reader.getNumRows() > 0) {
+						readers.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			for (DistanceMatrixReader reader : readers) {
+				reader.close();
+			}
+			throw e;
+		}
+		shards = readers.toArray(new DistanceMatrixReader[readers.size()]);
+	}
+
+	/** Returns the neighbors of the given row, in ascending order of id. */
+	public List<Neighbor> getNeighbors(long row) {
+		return getShard(row).getNeighbors(row);
+	}
+
+	/**
+	 * Returns the distance between the given row and neighbor, or
+	 * {@link DistanceMatrixReader#NO_DISTANCE} if the pair was not stored.
+	 */
+	public long getDistance(long row, long neighborId) {
+		return getShard(row).getDistance(row, neighborId);
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (DistanceMatrixReader shard : shards) {
+			shard.close();
+		}
+	}
+
+	private DistanceMatrixReader getShard(long row) {
+		int low = 0;
+		int high = shards.length - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			DistanceMatrixReader shard = shards[mid];
+
+			if (row < shard.getFirstRow()) {
+				high = mid - 1;
+			} else if (row >= shard.getFirstRow() + shard.getNumRows()) {
+				low = mid + 1;
+			} else {
+				return shard;
+			}
+		}
+		throw new IndexOutOfBoundsException("Row " + row + " is not in the matrix.");
+	}
+}
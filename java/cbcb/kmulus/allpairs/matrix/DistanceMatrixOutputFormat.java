@@ -0,0 +1,82 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import cbcb.kmulus.allpairs.comparison.Neighbor;
+
+/**
+ * Writes (row, {@link Neighbor}) records as one {@link DistanceMatrixWriter} shard per reducer.
+ * Must be used with the {@link RowRangePartitioner}, which determines the rows of each shard.
+ */
+public class DistanceMatrixOutputFormat extends FileOutputFormat<LongWritable, Neighbor> {
+
+	public static final String SHARD_EXT = ".dm";
+
+	@Override
+	public RecordWriter<LongWritable, Neighbor> getRecordWriter(TaskAttemptContext context)
+			throws IOException, InterruptedException {
+		Configuration conf = context.getConfiguration();
+		long numRows = conf.getLong(RowRangePartitioner.NUM_ROWS_ATTR, -1);
+		if (numRows < 0) {
+			throw new IOException(
+					"Expected the " + RowRangePartitioner.NUM_ROWS_ATTR + " attribute.");
+		}
+
+		int shard = context.getTaskAttemptID().getTaskID().getId();
+		int numShards = Math.max(1, context.getNumReduceTasks());
+
+		Path file = getDefaultWorkFile(context, SHARD_EXT);
+		DataOutputStream out = file.getFileSystem(conf).create(file, false);
+
+		final DistanceMatrixWriter writer = new DistanceMatrixWriter(out,
+				RowRangePartitioner.getFirstRow(shard, numRows, numShards),
+				RowRangePartitioner.getNumRows(shard, numRows, numShards));
+
+		return new RecordWriter<LongWritable, Neighbor>() {
+			@Override
+			public void write(LongWritable row, Neighbor neighbor) throws IOException {
+				writer.write(row.get(), neighbor.getId(), neighbor.getDistance());
+			}
+
+			@Override
+			public void close(TaskAttemptContext context) throws IOException {
+				writer.close();
+			}
+		};
+	}
+
+	/** Returns the shards in the given output directory, in order of their rows. */
+	public static Path[] getShards(FileSystem fs, Path outputDir) throws IOException {
+		List<Path> shards = new ArrayList<Path>();
+		for (FileStatus status : fs.listStatus(outputDir)) {
+			if (!status.isDir() && status.getPath().getName().endsWith(SHARD_EXT)) {
+				shards.add(status.getPath());
+			}
+		}
+
+		/* Part numbers are zero padded, so name order is row order. */
+		Collections.sort(shards, BY_NAME);
+		return shards.toArray(new Path[shards.size()]);
+	}
+
+	private static final Comparator<Path> BY_NAME = new Comparator<Path>() {
+		@Override
+		public int compare(Path first, Path second) {
+			return first.getName().compareTo(second.getName());
+		}
+	};
+}
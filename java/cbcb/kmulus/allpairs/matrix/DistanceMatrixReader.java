@@ -0,0 +1,170 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import cbcb.kmulus.allpairs.comparison.Neighbor;
+
+/**
+ * Provides random access to one memory mapped shard of a sparse distance matrix, as written by
+ * {@link DistanceMatrixWriter}.  The neighbors of a row are found in constant time, and the
+ * distance of a pair by a binary search of the row.  The shard must be on the local file system;
+ * copy it out of HDFS, or ship it with the distributed cache, first.
+ */
+public class DistanceMatrixReader implements Closeable {
+
+	/** Returned by {@link #getDistance(long, long)} for a pair which was not stored. */
+	public static final long NO_DISTANCE = Long.MIN_VALUE;
+
+	/* Files larger than this are mapped in several chunks.  A multiple of the entry size. */
+	private static final long CHUNK_SIZE = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer[] chunks;
+
+	private final long firstRow;
+	private final long numRows;
+	private final long nnz;
+
+	/* The position of the row offsets in the file. */
+	private final long offsetsStart;
+
+	public DistanceMatrixReader(File shard) throws IOException {
+		file = new RandomAccessFile(shard, "r");
+		try {
+			long length = file.length();
+			if (length < DistanceMatrixWriter.FOOTER_SIZE) {
+				throw new IOException(shard + " is too short to be a distance matrix shard.");
+			}
+
+			FileChannel channel = file.getChannel();
+			chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = i * CHUNK_SIZE;
+				chunks[i] = channel.map(
+						FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+			}
+
+			long footer = length - DistanceMatrixWriter.FOOTER_SIZE;
+			if (getChunk(footer + 24).getInt((int) ((footer + 24) % CHUNK_SIZE)) !=
+					DistanceMatrixWriter.MAGIC) {
+				throw new IOException(shard + " is not a distance matrix shard.");
+			}
+			firstRow = getLong(footer);
+			numRows = getLong(footer + 8);
+			nnz = getLong(footer + 16);
+			offsetsStart = nnz * DistanceMatrixWriter.ENTRY_SIZE;
+
+			if (offsetsStart + (numRows + 1) * 8 != footer) {
+				throw new IOException(shard + " is truncated or corrupt.");
+			}
+
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	public long getFirstRow() {
+		return firstRow;
+	}
+
+	public long getNumRows() {
+		return numRows;
+	}
+
+	/** Returns the number of entries stored in this shard. */
+	public long getNumEntries() {
+		return nnz;
+	}
+
+	public boolean containsRow(long row) {
+		return row >= firstRow && row < firstRow + numRows;
+	}
+
+	/** Returns the number of neighbors stored for the given row. */
+	public int getNumNeighbors(long row) {
+		checkRow(row);
+		return (int) (getRowEnd(row) - getRowStart(row));
+	}
+
+	/** Returns the neighbors stored for the given row, in ascending order of id. */
+	public List<Neighbor> getNeighbors(long row) {
+		checkRow(row);
+		long start = getRowStart(row);
+		long end = getRowEnd(row);
+
+		List<Neighbor> neighbors = new ArrayList<Neighbor>((int) (end - start));
+		for (long e = start; e < end; e++) {
+			neighbors.add(new Neighbor(getNeighborId(e), getEntryDistance(e)));
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Returns the distance between the given row and neighbor, or {@link #NO_DISTANCE} if the pair
+	 * was not stored.
+	 */
+	public long getDistance(long row, long neighborId) {
+		checkRow(row);
+		long low = getRowStart(row);
+		long high = getRowEnd(row) - 1;
+
+		while (low <= high) {
+			long mid = (low + high) >>> 1;
+			long id = getNeighborId(mid);
+
+			if (id < neighborId) {
+				low = mid + 1;
+			} else if (id > neighborId) {
+				high = mid - 1;
+			} else {
+				return getEntryDistance(mid);
+			}
+		}
+		return NO_DISTANCE;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private void checkRow(long row) {
+		if (!containsRow(row)) {
+			throw new IndexOutOfBoundsException("Row " + row + " is not in the shard [" +
+					firstRow + ", " + (firstRow + numRows) + ").");
+		}
+	}
+
+	private long getRowStart(long row) {
+		return getLong(offsetsStart + (row - firstRow) * 8);
+	}
+
+	private long getRowEnd(long row) {
+		return getLong(offsetsStart + (row - firstRow + 1) * 8);
+	}
+
+	private long getNeighborId(long entry) {
+		return getLong(entry * DistanceMatrixWriter.ENTRY_SIZE);
+	}
+
+	private long getEntryDistance(long entry) {
+		return getLong(entry * DistanceMatrixWriter.ENTRY_SIZE + 8);
+	}
+
+	/* Longs are 8 byte aligned, so never straddle two chunks. */
+	private long getLong(long position) {
+		return getChunk(position).getLong((int) (position % CHUNK_SIZE));
+	}
+
+	private MappedByteBuffer getChunk(long position) {
+		return chunks[(int) (position / CHUNK_SIZE)];
+	}
+}
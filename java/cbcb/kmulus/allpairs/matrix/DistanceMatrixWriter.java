@@ -0,0 +1,87 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes one shard of a sparse distance matrix, in a compressed sparse row layout.  A shard holds
+ * the rows [firstRow, firstRow + numRows), which must be written in ascending order, each with its
+ * entries in ascending order of neighbor id.  The shard is laid out as:
+ *
+ * <pre>
+ *   entries[nnz]:           (long neighborId, long distance)
+ *   offsets[numRows + 1]:   long, the index of the first entry of each row
+ *   footer:                 long firstRow, long numRows, long nnz, int magic
+ * </pre>
+ *
+ * All values are big-endian.  Entries are streamed as they arrive, so only the row offsets are
+ * held in memory.  See {@link DistanceMatrixReader}.
+ */
+public class DistanceMatrixWriter {
+
+	/** Identifies a distance matrix shard, "DMX1". */
+	public static final int MAGIC = 0x444d5831;
+
+	public static final int ENTRY_SIZE = 16;
+	public static final int FOOTER_SIZE = 3 * 8 + 4;
+
+	private final DataOutputStream out;
+	private final long firstRow;
+	private final long[] offsets;
+
+	private long nnz = 0;
+	private long lastRow;
+	private long lastNeighbor;
+
+	public DistanceMatrixWriter(DataOutputStream out, long firstRow, int numRows) {
+		this.out = out;
+		this.firstRow = firstRow;
+		this.offsets = new long[numRows + 1];
+		this.lastRow = firstRow - 1;
+	}
+
+	/** Appends an entry to the given row, which may not precede the last row written. */
+	public void write(long row, long neighborId, long distance) throws IOException {
+		if (row < lastRow || row >= firstRow + offsets.length - 1) {
+			throw new IOException("Row " + row + " is out of order or outside of the shard [" +
+					firstRow + ", " + (firstRow + offsets.length - 1) + ").");
+		}
+
+		if (row > lastRow) {
+			startRows(row);
+		} else if (neighborId <= lastNeighbor) {
+			throw new IOException(
+					"Neighbor " + neighborId + " of row " + row + " is out of order.");
+		}
+
+		out.writeLong(neighborId);
+		out.writeLong(distance);
+		lastNeighbor = neighborId;
+		nnz++;
+	}
+
+	/** Writes the row offsets and the footer, and closes the underlying stream. */
+	public void close() throws IOException {
+		startRows(firstRow + offsets.length - 1);
+		offsets[offsets.length - 1] = nnz;
+
+		for (long offset : offsets) {
+			out.writeLong(offset);
+		}
+
+		out.writeLong(firstRow);
+		out.writeLong(offsets.length - 1);
+		out.writeLong(nnz);
+		out.writeInt(MAGIC);
+		out.close();
+	}
+
+	/** Starts every row after the last one up to and including the given row, which are empty. */
+	private void startRows(long row) {
+		for (long r = lastRow + 1; r <= row && r < firstRow + offsets.length - 1; r++) {
+			offsets[(int) (r - firstRow)] = nnz;
+		}
+		lastRow = row;
+		lastNeighbor = Long.MIN_VALUE;
+	}
+}
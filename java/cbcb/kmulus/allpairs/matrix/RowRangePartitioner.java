@@ -0,0 +1,58 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Partitions rows of a distance matrix into contiguous, equally sized ranges, so that each
+ * reducer writes one shard.  Requires the total number of rows in {@link #NUM_ROWS_ATTR}.
+ */
+public class RowRangePartitioner<V> extends Partitioner<LongWritable, V> implements Configurable {
+
+	/** Configuration attribute for the number of rows of the matrix. */
+	public static final String NUM_ROWS_ATTR = "dmr";
+
+	private Configuration conf;
+	private long numRows;
+
+	@Override
+	public int getPartition(LongWritable key, V value, int numPartitions) {
+		return getPartition(key.get(), numRows, numPartitions);
+	}
+
+	@Override
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+		numRows = conf.getLong(NUM_ROWS_ATTR, -1);
+		if (numRows < 0) {
+			throw new IllegalArgumentException("Expected the " + NUM_ROWS_ATTR + " attribute.");
+		}
+	}
+
+	@Override
+	public Configuration getConf() {
+		return conf;
+	}
+
+	/** Returns the number of rows in each shard but the last, which may be short. */
+	public static long getRowsPerShard(long numRows, int numShards) {
+		return Math.max(1, (numRows + numShards - 1) / numShards);
+	}
+
+	public static int getPartition(long row, long numRows, int numShards) {
+		return (int) Math.min(row / getRowsPerShard(numRows, numShards), numShards - 1);
+	}
+
+	public static long getFirstRow(int shard, long numRows, int numShards) {
+		return Math.min(shard * getRowsPerShard(numRows, numShards), numRows);
+	}
+
+	/** Returns the number of rows in the given shard, which may be 0. */
+	public static int getNumRows(int shard, long numRows, int numShards) {
+		long end = shard == numShards - 1 ?
+				numRows : getFirstRow(shard + 1, numRows, numShards);
+		return (int) (end - getFirstRow(shard, numRows, numShards));
+	}
+}
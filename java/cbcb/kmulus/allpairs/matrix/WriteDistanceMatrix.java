@@ -0,0 +1,165 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.allpairs.comparison.AllPairsReducer;
+import cbcb.kmulus.allpairs.comparison.IdPair;
+import cbcb.kmulus.allpairs.comparison.MergeNearestNeighbors;
+import cbcb.kmulus.allpairs.comparison.NearestNeighbors;
+import cbcb.kmulus.allpairs.comparison.Neighbor;
+
+/**
+ * Converts the binary output of an all pairs job, ({@link IdPair}, distance), into a symmetric
+ * sparse distance matrix, sharded by row range.  Each pair is stored in the rows of both of its
+ * items.  Optionally keeps only the k nearest neighbors of each row, in which case this job also
+ * does the work of {@link MergeNearestNeighbors}.  The shards may be queried with
+ * {@link DistanceMatrixReader}.
+ */
+public class WriteDistanceMatrix extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(WriteDistanceMatrix.class);
+
+	private static final String USAGE =
+		"WriteDistanceMatrix [-k NUM_NEIGHBORS] ID_PAIR_INPUT OUTPUT NUM_ROWS NUM_SHARDS";
+
+	/** Orders neighbors by id, the order of the entries within a row. */
+	private static final Comparator<Neighbor> BY_ID = new Comparator<Neighbor>() {
+		@Override
+		public int compare(Neighbor a, Neighbor b) {
+			return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+		}
+	};
+
+	/** Writes the neighbors of each row, in ascending order of id. */
+	public static class Reduce extends Reducer<LongWritable, Neighbor, LongWritable, Neighbor> {
+
+		private NearestNeighbors nearest;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			int numNeighbors = context.getConfiguration().getInt(
+					AllPairsReducer.NUM_NEIGHBORS_ATTR, AllPairsReducer.DEF_NUM_NEIGHBORS);
+
+			if (numNeighbors > 0) {
+				nearest = new NearestNeighbors(numNeighbors);
+			}
+		}
+
+		@Override
+		public void reduce(LongWritable key, Iterable<Neighbor> values, Context context)
+				throws IOException, InterruptedException {
+			List<Neighbor> row;
+
+			if (nearest != null) {
+				nearest.clear();
+				for (Neighbor neighbor : values) {
+					nearest.offer(neighbor.getId(), neighbor.getDistance());
+				}
+				row = nearest.getSorted();
+
+			} else {
+				row = new ArrayList<Neighbor>();
+				for (Neighbor neighbor : values) {
+					row.add(new Neighbor(neighbor.getId(), neighbor.getDistance()));
+				}
+			}
+
+			Collections.sort(row, BY_ID);
+			for (Neighbor neighbor : row) {
+				context.write(key, neighbor);
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+		try {
+			result = ToolRunner.run(new WriteDistanceMatrix(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		int i = 0;
+		int numNeighbors = AllPairsReducer.DEF_NUM_NEIGHBORS;
+		if (args.length > 1 && args[0].equals("-k")) {
+			numNeighbors = Integer.parseInt(args[1]);
+			i += 2;
+		}
+
+		if (args.length - i < 4) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String inputPath = args[i];
+		String outputPath = args[i + 1];
+		long numRows = Long.parseLong(args[i + 2]);
+		int numShards = Integer.parseInt(args[i + 3]);
+
+		LOG.info("Tool name: " + WriteDistanceMatrix.class.getName());
+		LOG.info(" - inputDir: " + inputPath);
+		LOG.info(" - outputDir: " + outputPath);
+		LOG.info(" - numRows: " + numRows);
+		LOG.info(" - numShards: " + numShards);
+		LOG.info(" - numNeighbors: " + numNeighbors);
+
+		Configuration conf = getConf();
+		conf.setLong(RowRangePartitioner.NUM_ROWS_ATTR, numRows);
+		conf.setInt(AllPairsReducer.NUM_NEIGHBORS_ATTR, numNeighbors);
+
+		Job job = new Job(conf, WriteDistanceMatrix.class.getName());
+		job.setJarByClass(WriteDistanceMatrix.class);
+
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(Neighbor.class);
+
+		job.setMapperClass(MergeNearestNeighbors.Map.class);
+		if (numNeighbors > 0) {
+			job.setCombinerClass(MergeNearestNeighbors.Reduce.class);
+		}
+		job.setPartitionerClass(RowRangePartitioner.class);
+		job.setReducerClass(WriteDistanceMatrix.Reduce.class);
+		job.setNumReduceTasks(numShards);
+
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+		job.setOutputFormatClass(DistanceMatrixOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(inputPath));
+		FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+		// Delete the output directory if it exists already.
+		FileSystem.get(job.getConfiguration()).delete(new Path(outputPath), true);
+
+		long startTime = System.currentTimeMillis();
+
+		boolean result = job.waitForCompletion(true);
+
+		LOG.info("Wrote matrix in " + (System.currentTimeMillis() - startTime) + "ms.");
+
+		return result ? 0 : 1;
+	}
+}
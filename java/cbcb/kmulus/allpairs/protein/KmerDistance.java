@@ -29,6 +29,10 @@ public class KmerDistance implements Alignment {
 		return new KmerDistance(getKmerDistance(a, b, kmerLength));
 	}
 	
+	public static KmerDistance getKmerAlignment(KmerProfile a, KmerProfile b) {
+		return new KmerDistance(getKmerDistance(a, b));
+	}
+	
 	public static long getKmerDistance(Text a, Text b, int kmerLength) {
 		Preconditions.checkNotNull(a);
 		Preconditions.checkNotNull(b);
@@ -50,6 +54,23 @@ public class KmerDistance implements Alignment {
 		}
 	
 		int numKmers = Math.min(aStr.length(), bStr.length()) - kmerLength + 1;
+		return toDistance(summation, numKmers);
+	}
+
+	/**
+	 * Computes the same distance as {@link #getKmerDistance(Text, Text, int)}, from precomputed
+	 * {@link KmerProfile}s of the two sequences.
+	 */
+	public static long getKmerDistance(KmerProfile a, KmerProfile b) {
+		Preconditions.checkNotNull(a);
+		Preconditions.checkNotNull(b);
+
+		int numKmers = Math.min(a.getLength(), b.getLength()) - a.getKmerLength() + 1;
+		return toDistance(a.intersectionCount(b), numKmers);
+	}
+
+	/** Converts a shared k-mer count into a distance, normalized to fit within a long. */
+	private static long toDistance(double summation, int numKmers) {
 		double kmerDistance =
 			MAX_DISTANCE - Math.log(.1 + (numKmers <= 0 ? 0 : (summation / numKmers)));
 
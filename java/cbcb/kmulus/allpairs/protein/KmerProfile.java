@@ -0,0 +1,148 @@
+package cbcb.kmulus.allpairs.protein;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A compact k-mer count profile of a single sequence: the distinct k-mers of the sequence encoded
+ * as sorted int codes, along with the number of times each occurs.  Profiles are built once per
+ * sequence so that comparing two sequences is a linear merge of two sorted arrays, rather than
+ * the construction of two hash maps per pair.
+ *
+ * Each residue is encoded as a single byte of the code, so only k-mers of up to
+ * {@link #MAX_KMER_LENGTH} residues may be profiled.
+ */
+public class KmerProfile {
+
+	/** The longest k-mer which can be encoded within a single int code. */
+	public static final int MAX_KMER_LENGTH = Integer.SIZE / Byte.SIZE;
+
+	private static final int[] EMPTY = new int[0];
+
+	/** The distinct k-mer codes of the sequence, in ascending order. */
+	private final int[] kmers;
+
+	/** The number of occurrences of the k-mer at the same index of {@link #kmers}. */
+	private final int[] counts;
+
+	/** The number of residues in the profiled sequence. */
+	private final int length;
+	private final int kmerLength;
+
+	private KmerProfile(int[] kmers, int[] counts, int length, int kmerLength) {
+		this.kmers = kmers;
+		this.counts = counts;
+		this.length = length;
+		this.kmerLength = kmerLength;
+	}
+
+	/** Returns true if k-mers of the given length can be profiled. */
+	public static boolean supportsKmerLength(int kmerLength) {
+		return kmerLength > 0 && kmerLength <= MAX_KMER_LENGTH;
+	}
+
+	/**
+	 * Builds the profile of the entire contents of the given {@link Text}.
+	 *
+	 * @param seq the sequence to be profiled
+	 * @param kmerLength the length of the k-mers to be counted
+	 * @return the k-mer profile of {@code seq}
+	 */
+	public static KmerProfile build(Text seq, int kmerLength) {
+		Preconditions.checkNotNull(seq);
+		return build(seq.getBytes(), 0, seq.getLength(), kmerLength);
+	}
+
+	/**
+	 * Builds the profile of the given range of bytes.
+	 *
+	 * @param seq buffer containing the sequence
+	 * @param start the offset of the first residue in {@code seq}
+	 * @param length the number of residues to be profiled
+	 * @param kmerLength the length of the k-mers to be counted
+	 * @return the k-mer profile of the range
+	 */
+	public static KmerProfile build(byte[] seq, int start, int length, int kmerLength) {
+		Preconditions.checkArgument(supportsKmerLength(kmerLength),
+				"k-mers of length " + kmerLength + " cannot be profiled.");
+
+		int numKmers = length - kmerLength + 1;
+		if (numKmers <= 0) {
+			return new KmerProfile(EMPTY, EMPTY, Math.max(length, 0), kmerLength);
+		}
+
+		/* Roll a window of kmerLength bytes across the sequence, one byte per residue. */
+		int mask = kmerLength == MAX_KMER_LENGTH ? -1 : (1 << (kmerLength * Byte.SIZE)) - 1;
+		int[] codes = new int[numKmers];
+		int code = 0;
+		for (int i = 0; i < length; i++) {
+			code = ((code << Byte.SIZE) | (seq[start + i] & 0xFF)) & mask;
+			if (i >= kmerLength - 1) {
+				codes[i - kmerLength + 1] = code;
+			}
+		}
+		Arrays.sort(codes);
+
+		/* Collapse runs of equal codes into (code, count) entries, in place. */
+		int[] counts = new int[numKmers];
+		int distinct = 0;
+		for (int i = 0; i < numKmers; i++) {
+			if (distinct > 0 && codes[distinct - 1] == codes[i]) {
+				counts[distinct - 1]++;
+			} else {
+				codes[distinct] = codes[i];
+				counts[distinct] = 1;
+				distinct++;
+			}
+		}
+
+		return new KmerProfile(
+				Arrays.copyOf(codes, distinct), Arrays.copyOf(counts, distinct), length, kmerLength);
+	}
+
+	/**
+	 * Computes the number of k-mers shared between this and the given profile, where a k-mer
+	 * occurring x times in one sequence and y times in the other is counted min(x, y) times.
+	 *
+	 * @param other the profile to compare against; must have the same k-mer length
+	 * @return the shared k-mer count
+	 */
+	public int intersectionCount(KmerProfile other) {
+		Preconditions.checkNotNull(other);
+		Preconditions.checkArgument(kmerLength == other.kmerLength);
+
+		int[] kmersB = other.kmers;
+		int[] countsB = other.counts;
+		int i = 0, j = 0, sum = 0;
+
+		while (i < kmers.length && j < kmersB.length) {
+			if (kmers[i] < kmersB[j]) {
+				i++;
+			} else if (kmers[i] > kmersB[j]) {
+				j++;
+			} else {
+				sum += Math.min(counts[i], countsB[j]);
+				i++;
+				j++;
+			}
+		}
+		return sum;
+	}
+
+	/** Returns the number of residues in the profiled sequence. */
+	public int getLength() {
+		return length;
+	}
+
+	public int getKmerLength() {
+		return kmerLength;
+	}
+
+	/** Returns the number of distinct k-mers in the profiled sequence. */
+	public int getNumDistinctKmers() {
+		return kmers.length;
+	}
+}
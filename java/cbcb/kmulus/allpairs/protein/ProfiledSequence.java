@@ -0,0 +1,40 @@
+package cbcb.kmulus.allpairs.protein;
+
+import org.apache.hadoop.io.Text;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A sequence held in memory by the all pairs reducers, along with its parsed id and, when k-mer
+ * comparisons are used, its {@link KmerProfile}.
+ */
+public class ProfiledSequence {
+
+	private final long id;
+	private final Text sequence;
+	private final KmerProfile profile;
+
+	/**
+	 * @param id the internal id of the sequence
+	 * @param sequence the sequence in simple FASTA format, which is owned by this object
+	 * @param profile the k-mer profile of {@code sequence}, or null if not needed
+	 */
+	public ProfiledSequence(long id, Text sequence, KmerProfile profile) {
+		this.id = id;
+		this.sequence = Preconditions.checkNotNull(sequence);
+		this.profile = profile;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public Text getSequence() {
+		return sequence;
+	}
+
+	/** Returns the k-mer profile of the sequence, or null if none was built. */
+	public KmerProfile getProfile() {
+		return profile;
+	}
+}
@@ -1,10 +1,12 @@
 package cbcb.kmulus.allpairs.protein;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.nio.charset.CharacterCodingException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -16,11 +18,13 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -28,14 +32,19 @@ import org.apache.hadoop.util.ToolRunner;
 
 import cbcb.kmulus.allpairs.comparison.AllPairsMapper;
 import cbcb.kmulus.allpairs.comparison.AllPairsReducer;
+import cbcb.kmulus.allpairs.comparison.BlockGrouper;
 import cbcb.kmulus.allpairs.comparison.ExhaustiveUniqueGrouper;
+import cbcb.kmulus.allpairs.comparison.IdPair;
+import cbcb.kmulus.allpairs.comparison.MergeNearestNeighbors;
 import cbcb.kmulus.allpairs.comparison.PairSplit;
 import cbcb.kmulus.allpairs.comparison.PrimeRot;
+import cbcb.kmulus.allpairs.matrix.WriteDistanceMatrix;
 import cbcb.kmulus.util.Alignment;
 import cbcb.kmulus.util.AlphabetMap;
 import cbcb.kmulus.util.Biology;
 import cbcb.kmulus.util.GlobalAlignment;
 import cbcb.kmulus.util.LocalAlignment;
+import cbcb.kmulus.util.SixFrameTranslator;
 
 
 /**
@@ -44,22 +53,31 @@ import cbcb.kmulus.util.LocalAlignment;
  */
 public class ProteinAligner extends Configured implements Tool {
 
-	private static final String SFA_META_FILE_EXT = ".sfm";
-	private static final String SFA_FILE_EXT = ".sfa";
+	static final String SFA_META_FILE_EXT = ".sfm";
+	static final String SFA_META_DIR_EXT = ".sfmd";
+	static final String SFA_PLACEMENT_FILE_EXT = ".sfp";
 
 	private static final String SFA_DIR = "simple";
 
+	/* Suffix of the intermediate pairs directory, when a follow-up job writes the output. */
+	private static final String PAIRS_SUFFIX = "_pairs";
+
 	private static final String[] inputExts = {".fa", ".fasta", ".fsa_aa"};
 
 	/**
 	 * Identifies the different implementations of {@link ExhaustiveUniqueGrouper}s supported by 
 	 * {@link ProteinAligner}.
 	 */
-	enum EugType {PRIME_ROT, PAIR_SPLIT}
+	enum EugType {PRIME_ROT, PAIR_SPLIT, BLOCK}
 
 	/*Configuration attribute names for grouping data.*/
 	static final String NUM_SEQ_ATTR = "ns";
 	static final String EUG_ATTR = "eug";
+	static final String NUM_BLOCKS_ATTR = "nb";
+	static final String PLACEMENT_ATTR = "plc";
+
+	/** Each sequence is compared in all 6 open reading frames, as items seqId * 6 + frame. */
+	static final int NUM_FRAMES = SixFrameTranslator.NUM_FRAMES;
 	
 	/*Configuration attribute names for alignment parameters.*/
 	static final String COMPARE_ATTR = "la";
@@ -91,70 +109,40 @@ public class ProteinAligner extends Configured implements Tool {
 	 */
 	public static class Map extends AllPairsMapper<LongWritable,Text> {
 
-		private AlphabetMap alphabetMap;
+		private SixFrameTranslator translator;
 		private ExhaustiveUniqueGrouper eug;
+		private final Text protein = new Text();
 
 		@Override
 		public void setup(Context context) throws IOException {
 			Configuration conf = context.getConfiguration();
 			
-			long numSeq = conf.getLong(NUM_SEQ_ATTR, 0);
-			int eugID = conf.getInt(EUG_ATTR, EugType.PRIME_ROT.ordinal());
-			alphabetMap = new AlphabetMap(conf.getStrings(ALPHABET_ATTR, DEF_ALPHABET)[0]);
-			
-			// To allow for all 6 open reading frames, will generate 6 fold sequences.
-			numSeq *= 6;
+			translator = new SixFrameTranslator(
+					new AlphabetMap(conf.getStrings(ALPHABET_ATTR, DEF_ALPHABET)[0]));
+			eug = createGrouper(conf);
 			
-			if (numSeq < 0) {
-				eug = null;
-			} else {
-				
-				if (eugID ==  EugType.PRIME_ROT.ordinal()) {
-					eug = PrimeRot.generatePrimeRot(numSeq);
-				
-				} else if (eugID == EugType.PRIME_ROT.ordinal()) {
-					
-					try {
-						eug = new PairSplit(numSeq);
-					} catch (IOException e) {
-						eug = null;
-					}
-
-				} else {
-					eug = PrimeRot.generatePrimeRot(numSeq);
-				}
+			/* Use the balanced placement of items computed by the driver, if any. */
+			String placementPath = conf.get(PLACEMENT_ATTR);
+			if (placementPath != null && eug instanceof PrimeRot) {
+				((PrimeRot) eug).setPlacement(readPlacement(conf, new Path(placementPath)));
 			}
 		}
 		
 		@Override
 		public void map(LongWritable key, Text value, Context context) 
 				throws IOException, InterruptedException {
-			long id = parseId(key, value);
-			String seq = value.toString();
-			seq = seq.substring(seq.indexOf(' ') + 1);
+			long id = parseId(key, value) * NUM_FRAMES;
+			int start = value.find(" ") + 1;
 			
-			// Generate the protein products of all 3 forward reading frames.
-			for (int offset = 0; offset < 3; offset++) {
-				StringBuilder protein = new StringBuilder();
-				for (int i = offset; i < seq.length() - 2; i+=3) {
-					protein.append(alphabetMap.get(seq.substring(i, i + 3)));
-				}
-				
-				// Increment the id by one and map it as usual.
-				String proteinFasta = ">" + (id++) + " " + protein.toString();
-				super.map(key, new Text(proteinFasta), context);
-			}
+			// Generate the protein products of all 3 forward and 3 reverse reading frames at once.
+			translator.translate(value.getBytes(), start, value.getLength() - start);
 			
-			// Generate the protein products of all 3 reverse reading frames.
-			for (int offset = 0; offset < 3; offset++) {
-				StringBuilder protein = new StringBuilder();
-				for (int i = seq.length() - offset; i > 2; i-=3) {
-					protein.append(alphabetMap.revCompGet(seq.substring(i - 3, i)));
-				}
+			for (int frame = 0; frame < NUM_FRAMES; frame++) {
 				
 				// Increment the id by one and map it as usual.
-				String proteinFasta = ">" + (id++) + " " + protein.toString();
-				super.map(key, new Text(proteinFasta), context);;
+				protein.set(">" + (id++) + " ");
+				protein.append(translator.getFrame(frame), 0, translator.getFrameLength(frame));
+				super.map(key, protein, context);
 			}
 		}
 
@@ -187,15 +175,20 @@ public class ProteinAligner extends Configured implements Tool {
 	 * 1) Parse the ids of both sequences.
 	 * 2) Align the two sequences to one another.
 	 * 3) Combine the ids to form the output key, use the alignment score as the output value.
+	 * 
+	 * When comparing by k-mers, each sequence's {@link KmerProfile} is built once as it is read
+	 * into the group, rather than once per pair.
 	 */
-	public static class Reduce extends AllPairsReducer<Text, LongWritable> {
+	public static class Reduce extends AllPairsReducer<Text, ProfiledSequence> {
 
 		private CompareType compareType;
 		private int matchScore, mismatchScore, gapScore, gapExtScore;
 		private int kmerLength;
+		private boolean useProfiles;
 		
 		@Override
-		public void setup(Context context) throws IOException {
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
 			Configuration config = context.getConfiguration();
 			
 			/* Initialize the parameters for the alignment. */
@@ -206,10 +199,14 @@ public class ProteinAligner extends Configured implements Tool {
 			gapScore = config.getInt(GAP_SCORE_ATTR, DEF_GAP_SCORE);
 			gapExtScore = config.getInt(GAP_EXT_SCORE_ATTR, DEF_GAP_EXT_SCORE);
 			kmerLength = config.getInt(KMER_LEN_ATTR, DEF_KMER_LEN);
+			useProfiles = 
+				compareType == CompareType.KMER && KmerProfile.supportsKmerLength(kmerLength);
 		}
 		
 		@Override
-		protected LongWritable compareItems(Text a, Text b) {
+		protected long compareItems(ProfiledSequence itemA, ProfiledSequence itemB) {
+			Text a = itemA.getSequence();
+			Text b = itemB.getSequence();
 			Alignment alignment;
 			
 			switch (compareType) {
@@ -226,24 +223,76 @@ public class ProteinAligner extends Configured implements Tool {
 			case KMER:
 				// Drop through.
 			default:
-				alignment = KmerDistance.getKmerAlignment(a, b, kmerLength);
+				if (useProfiles) {
+					alignment = KmerDistance.getKmerAlignment(itemA.getProfile(), itemB.getProfile());
+				} else {
+					alignment = KmerDistance.getKmerAlignment(a, b, kmerLength);
+				}
 			}
 
-			return new LongWritable(alignment.getDistance());
+			return alignment.getDistance();
+		}
+
+		@Override
+		protected long parseId(ProfiledSequence item) {
+			return item.getId();
+		}
+
+		/** Alignments take time proportional to the product of the sequences' lengths. */
+		@Override
+		protected long getItemCost(ProfiledSequence item) {
+			return item.getSequence().getLength();
 		}
 
 		@Override
-		protected long parseId(Text value) throws IOException {
+		protected long parseValueId(Text value) throws IOException {
 			return parseSeqId(value);
 		}
 
 		@Override
-		protected Text copyValue(Text original) {
-			return new Text(original);
+		protected long getValueCost(Text value) {
+			return value.getLength();
+		}
+
+		@Override
+		protected ProfiledSequence copyValue(Text original) throws IOException {
+			Text sequence = new Text(original);
+			KmerProfile profile = useProfiles ? KmerProfile.build(sequence, kmerLength) : null;
+			return new ProfiledSequence(parseSeqId(sequence), sequence, profile);
 		}
 	}
 
 
+	/**
+	 * Creates the {@link ExhaustiveUniqueGrouper} named by the configuration, over all 6 frames of
+	 * the sequences, or returns null if it cannot be created.
+	 */
+	static ExhaustiveUniqueGrouper createGrouper(Configuration conf) {
+		long numSeq = conf.getLong(NUM_SEQ_ATTR, 0);
+		int eugID = conf.getInt(EUG_ATTR, EugType.PRIME_ROT.ordinal());
+		
+		// To allow for all 6 open reading frames, will generate 6 fold sequences.
+		numSeq *= NUM_FRAMES;
+		
+		if (numSeq < 0) {
+			return null;
+		}
+		
+		if (eugID == EugType.PAIR_SPLIT.ordinal()) {
+			try {
+				return new PairSplit(numSeq);
+			} catch (IOException e) {
+				return null;
+			}
+			
+		} else if (eugID == EugType.BLOCK.ordinal()) {
+			return new BlockGrouper(numSeq, conf.getInt(NUM_BLOCKS_ATTR, 1));
+		}
+		
+		return PrimeRot.generatePrimeRot(numSeq);
+	}
+
+
 	/** Handles runtime flags for the {@link ProteinAligner}. */
 	private static class ProteinAlignerOptions {
 
@@ -251,6 +300,7 @@ public class ProteinAligner extends Configured implements Tool {
 
 		private boolean preprocess = true;
 		private boolean convertOnly = false;
+		private boolean binaryOutput = false;
 
 		private String baseName;
 		private Path fastaPath;
@@ -258,15 +308,23 @@ public class ProteinAligner extends Configured implements Tool {
 		private Path outputPath;
 		
 		private int numReduceTasks = 114;
+		private int numThreads = AllPairsReducer.DEF_NUM_THREADS;
+		private long maxDistance = AllPairsReducer.DEF_MAX_DISTANCE;
+		private int numNeighbors = AllPairsReducer.DEF_NUM_NEIGHBORS;
+		private int numMatrixShards = 0;
+		private boolean balance = false;
+		private long groupBytes = 0;
+		private long groupHeap = AllPairsReducer.DEF_GROUP_HEAP;
 
 		public ProteinAlignerOptions(String[] args) throws IOException {
 
 			int i = 0;
 
-			if (args[i].startsWith(FLAG_MARKER)) {
-				int toIncrement = 1;
+			/* Flags may be grouped or separate; their arguments follow in the order given. */
+			while (i < args.length && args[i].startsWith(FLAG_MARKER)) {
+				String flags = args[i++];
 
-				for (Character c : args[i].substring(1).toCharArray()) {
+				for (Character c : flags.substring(1).toCharArray()) {
 
 					switch(c) {
 
@@ -284,27 +342,74 @@ public class ProteinAligner extends Configured implements Tool {
 						/*Specify a base name for this run.*/
 					case 'b':
 					case 'B':
-						baseName = args[i + 1];
-						toIncrement++;
+						baseName = getFlagArg(args, i++, c);
 						break;
 						
 					case 'r':
 					case 'R':
-						numReduceTasks = Integer.parseInt(args[i + 1]);
-						toIncrement++;
+						numReduceTasks = Integer.parseInt(getFlagArg(args, i++, c));
+						break;
+						
+						/*Number of comparison threads per reducer.*/
+					case 'p':
+					case 'P':
+						numThreads = Integer.parseInt(getFlagArg(args, i++, c));
+						break;
+						
+						/*Write compressed IdPair SequenceFiles rather than text.*/
+					case 'q':
+					case 'Q':
+						binaryOutput = true;
+						break;
+						
+						/*Only write pairs within this distance.*/
+					case 'd':
+					case 'D':
+						maxDistance = Long.parseLong(getFlagArg(args, i++, c));
+						break;
+						
+						/*Only write the k nearest neighbors of each sequence.*/
+					case 'k':
+					case 'K':
+						numNeighbors = Integer.parseInt(getFlagArg(args, i++, c));
+						break;
+						
+						/*Write a sparse distance matrix in this many shards.*/
+					case 'm':
+					case 'M':
+						numMatrixShards = Integer.parseInt(getFlagArg(args, i++, c));
+						break;
+						
+						/*Place sequences so that the groups' costs are balanced by length.*/
+					case 'l':
+					case 'L':
+						balance = true;
+						break;
+						
+						/*Group sequences in blocks, so that each group holds about this many bytes.*/
+					case 'g':
+					case 'G':
+						groupBytes = Long.parseLong(getFlagArg(args, i++, c));
+						break;
+						
+						/*Hold at most this many bytes of a group in memory, spilling the rest.*/
+					case 'h':
+					case 'H':
+						groupHeap = Long.parseLong(getFlagArg(args, i++, c));
 						break;
 						
 					default:
 						throw new IOException("Unrecognized flag: " + c + ".");
 					}
-
-					i+= toIncrement;
 				}
 			}
 
 			if (i >= args.length - 1)
 				throw new IOException("An input and output path are required.");
 
+			if (balance && groupBytes > 0)
+				throw new IOException("Sequences are only placed by length on a PrimeRot plane.");
+
 			fastaPath = new Path(args[i]);
 			inputPath = new Path(args[i] + Path.SEPARATOR + SFA_DIR);
 			outputPath = new Path(args[i+1]);
@@ -313,6 +418,13 @@ public class ProteinAligner extends Configured implements Tool {
 				baseName = ProteinAligner.computeDefaultBaseName(fastaPath);
 		}
 
+		private static String getFlagArg(String[] args, int i, char flag) throws IOException {
+			if (i >= args.length)
+				throw new IOException("Flag " + flag + " requires an argument.");
+
+			return args[i];
+		}
+
 		public boolean isPreprocess() {
 			return preprocess;
 		}
@@ -321,6 +433,10 @@ public class ProteinAligner extends Configured implements Tool {
 			return convertOnly;
 		}
 
+		public boolean isBinaryOutput() {
+			return binaryOutput;
+		}
+
 		public String getBaseName() {
 			return baseName;
 		}
@@ -340,14 +456,42 @@ public class ProteinAligner extends Configured implements Tool {
 		public int getNumReduceTasks() {
 			return numReduceTasks;
 		}
+
+		public int getNumThreads() {
+			return numThreads;
+		}
+
+		public long getMaxDistance() {
+			return maxDistance;
+		}
+
+		public int getNumNeighbors() {
+			return numNeighbors;
+		}
+
+		public int getNumMatrixShards() {
+			return numMatrixShards;
+		}
+
+		public boolean isBalance() {
+			return balance;
+		}
+
+		public long getGroupBytes() {
+			return groupBytes;
+		}
+
+		public long getGroupHeap() {
+			return groupHeap;
+		}
 	}
 
 	@Override
-	public int run(String[] args) throws IOException, ClassNotFoundException, InterruptedException {
+	public int run(String[] args) throws Exception {
 		ProteinAlignerOptions opts = new ProteinAlignerOptions(args);
 
 		if (opts.isPreprocess()) {
-			toSimpleFasta(opts.getFastaPath(), opts.getInputPath(), opts.getBaseName());
+			toSimpleFasta(getConf(), opts.getFastaPath(), opts.getInputPath(), opts.getBaseName());
 			System.out.println("Finished preprocessing successfully.");
 		}
 
@@ -357,7 +501,7 @@ public class ProteinAligner extends Configured implements Tool {
 			job.setJarByClass(ProteinAligner.class);
 			job.setJobName("proteinAligner");
 
-			job.setOutputKeyClass(Text.class);
+			job.setOutputKeyClass(IdPair.class);
 			job.setOutputValueClass(LongWritable.class);
 			job.setMapOutputKeyClass(LongWritable.class);
 			job.setMapOutputValueClass(Text.class);
@@ -366,16 +510,92 @@ public class ProteinAligner extends Configured implements Tool {
 			job.setReducerClass(Reduce.class);
 
 			job.setInputFormatClass(TextInputFormat.class);
-			job.setOutputFormatClass(TextOutputFormat.class);
+
+			/*
+			 * The nearest neighbors, or the distance matrix, are written by a follow-up job from an
+			 * intermediate, binary set of pairs.
+			 */
+			boolean writeMatrix = opts.getNumMatrixShards() > 0;
+			boolean mergeNeighbors = opts.getNumNeighbors() > 0;
+			Path pairsPath = writeMatrix || mergeNeighbors ?
+					opts.getOutputPath().suffix(PAIRS_SUFFIX) : opts.getOutputPath();
+
+			if (opts.isBinaryOutput() || writeMatrix || mergeNeighbors) {
+				/* Text may be recovered later with IdPairsToText. */
+				job.setOutputFormatClass(SequenceFileOutputFormat.class);
+				FileOutputFormat.setCompressOutput(job, true);
+				SequenceFileOutputFormat.setOutputCompressionType(job, CompressionType.BLOCK);
+			} else {
+				job.setOutputFormatClass(TextOutputFormat.class);
+			}
 
 			job.setNumReduceTasks(opts.getNumReduceTasks());
+			job.getConfiguration().setInt(AllPairsReducer.NUM_THREADS_ATTR, opts.getNumThreads());
+			job.getConfiguration().setLong(AllPairsReducer.MAX_DISTANCE_ATTR, opts.getMaxDistance());
+			job.getConfiguration().setInt(
+					AllPairsReducer.NUM_NEIGHBORS_ATTR, opts.getNumNeighbors());
+			job.getConfiguration().setLong(AllPairsReducer.GROUP_HEAP_ATTR, opts.getGroupHeap());
 			
 			FileInputFormat.setInputPaths(job, opts.getInputPath());
-			FileOutputFormat.setOutputPath(job, opts.getOutputPath());
+			FileOutputFormat.setOutputPath(job, pairsPath);
 
 			setNumSequences(job, opts.getFastaPath(), opts.getBaseName());
+			
+			if (opts.isBalance()) {
+				setPlacement(job, opts.getFastaPath(), opts.getBaseName());
+			}
+			
+			if (opts.getGroupBytes() > 0) {
+				setBlocks(job, opts.getInputPath(), opts.getGroupBytes());
+			}
+
+			if (!job.waitForCompletion(true)) {
+				return 1;
+			}
+
+			if (writeMatrix) {
+				List<String> matrixArgs = new ArrayList<String>();
+				if (mergeNeighbors) {
+					matrixArgs.add("-k");
+					matrixArgs.add(Integer.toString(opts.getNumNeighbors()));
+				}
+				matrixArgs.add(pairsPath.toString());
+				matrixArgs.add(opts.getOutputPath().toString());
+				matrixArgs.add(Long.toString(
+						job.getConfiguration().getLong(NUM_SEQ_ATTR, 0) * NUM_FRAMES));
+				matrixArgs.add(Integer.toString(opts.getNumMatrixShards()));
+
+				int result = ToolRunner.run(getConf(), new WriteDistanceMatrix(),
+						matrixArgs.toArray(new String[matrixArgs.size()]));
+
+				// Keep the pairs for a retry if the matrix could not be written.
+				if (result == 0) {
+					FileSystem.get(getConf()).delete(pairsPath, true);
+				} else {
+					System.err.println("The all-pairs output was kept in " + pairsPath + ".");
+				}
+				return result;
+
+			} else if (mergeNeighbors) {
+				List<String> mergeArgs = new ArrayList<String>();
+				if (opts.isBinaryOutput()) {
+					mergeArgs.add("-q");
+				}
+				mergeArgs.add(pairsPath.toString());
+				mergeArgs.add(opts.getOutputPath().toString());
+				mergeArgs.add(Integer.toString(opts.getNumNeighbors()));
+
+				int result = ToolRunner.run(getConf(), new MergeNearestNeighbors(),
+						mergeArgs.toArray(new String[mergeArgs.size()]));
 
-			return job.waitForCompletion(true) ? 0 : 1;
+				// Keep the pairs for a retry if the merge failed.
+				if (result == 0) {
+					FileSystem.get(getConf()).delete(pairsPath, true);
+				} else {
+					System.err.println("The all-pairs output was kept in " + pairsPath + ".");
+				}
+				return result;
+			}
 		}
 		
 		return 0;
@@ -440,158 +660,144 @@ public class ProteinAligner extends Configured implements Tool {
 		Long n = Long.parseLong(br.readLine().trim());
 		br.close();
 		
-		/* Multiply by 6 for the 6 open reading frames. */
-		n *= 6;
-		
-		/*Set the corresponding attribute in the JobConf*/
+		/*Set the corresponding attribute in the JobConf.  The mappers multiply by 6 frames.*/
 		job.getConfiguration().set(NUM_SEQ_ATTR, n.toString());
 	}
 
 	/**
-	 * Converts a FASTA file to the 'simple FASTA format', which is one sequence
-	 * per line with internal sequence IDs.  Also generates a meta-file which
-	 * maps iids -> external ids and keeps a count of the total number of 
-	 * sequences in the FASTA file.
-	 * 
-	 * If the meta-file has been generated more recently than the FASTA file
-	 * has been modified, do nothing.
-	 */
-	public static void toSimpleFasta(Path srcPath, String baseName) throws IOException {
-		Path defaultDestPath = new Path(srcPath + Path.SEPARATOR + SFA_DIR);
-		toSimpleFasta(srcPath, defaultDestPath, baseName);
-	}
-
-	/**
-	 * Converts a FASTA file to the 'simple FASTA format', which is one sequence
-	 * per line with internal sequence IDs.  Also generates a meta-file which
-	 * maps iids -> external ids and keeps a count of the total number of 
-	 * sequences in the FASTA file.
-	 * 
-	 * If the meta-file has been generated more recently than the FASTA file
-	 * has been modified, do nothing.
-	 * 
-	 * @param srcPath - Location of the directory containing the input files.
-	 * @param destPath - Location of the directory where the simple FASTA file
-	 * 				should land.
+	 * Places the items (the 6 frames of each sequence) on the {@link PrimeRot} plane so that the
+	 * estimated cost of each group is balanced, using the sequence lengths in the meta-file.  The
+	 * placement is written beside the meta-file for the mappers to read.
 	 */
-	public static void toSimpleFasta(Path srcPath, Path destPath, String baseName) throws IOException {
-
-		FileSystem hdfs = FileSystem.get(new Configuration());
+	public static void setPlacement(Job job, Path fastaPath, String baseName)
+			throws IOException {
+		Configuration conf = job.getConfiguration();
+		FileSystem hdfs = FileSystem.get(conf);
+		long startTime = System.currentTimeMillis();
 
-		if (!hdfs.exists(srcPath)) {
-			throw new IOException(srcPath + " does not exist.");
+		Path metaPath = new Path(fastaPath + Path.SEPARATOR + baseName + SFA_META_FILE_EXT);
+		BufferedReader br = new BufferedReader(new InputStreamReader(hdfs.open(metaPath)));
+		int numSeq = Integer.parseInt(br.readLine().trim());
+		br.close();
+		long numItems = (long) numSeq * NUM_FRAMES;
+		if (numItems > Integer.MAX_VALUE - 8) {
+			throw new IOException("Cannot place " + numItems + " frames; at most " +
+					(Integer.MAX_VALUE - 8) + " fit in one placement.");
 		}
+		long[] costs = new long[(int) numItems];
 
-		for (int i = 0; i < inputExts.length; i++) {
-
-			if (baseName.endsWith(inputExts[i])) {
-				baseName = baseName.substring(0, baseName.length() - inputExts[i].length());
-				break;
+		/*Each shard line is "iid externalId length"; a frame is a third of the sequence's length.*/
+		Path metaDir = SimpleFastaConverter.getMetaDir(fastaPath, baseName);
+		if (!hdfs.exists(metaDir)) {
+			throw new IOException(metaDir + " does not exist; rerun preprocessing.");
+		}
+		for (Path shard : SimpleFastaConverter.getMetaShards(hdfs, metaDir)) {
+			br = new BufferedReader(new InputStreamReader(hdfs.open(shard)));
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] fields = line.trim().split(" ");
+				int iid = Integer.parseInt(fields[0]);
+				long cost = Math.max(1, Long.parseLong(fields[2]) / 3);
+				for (int frame = 0; frame < NUM_FRAMES; frame++) {
+					costs[iid * NUM_FRAMES + frame] = cost;
+				}
 			}
+			br.close();
 		}
 
-		/* If the directory doesn't exist, try to make it. */
-		if (!hdfs.exists(destPath) && !hdfs.mkdirs(destPath)) {
-			throw new IOException("Couldn't create directory at " + destPath + ".");
-
-		} else if (!hdfs.getFileStatus(destPath).isDir()) {
-			throw new IOException(destPath + " was a file. Expected a directory.");
+		PrimeRot grouper = PrimeRot.generatePrimeRot(costs.length);
+		grouper.initializeIids(costs);
+		int[] placement = grouper.getPlacement();
+
+		Path placementPath =
+			new Path(fastaPath + Path.SEPARATOR + baseName + SFA_PLACEMENT_FILE_EXT);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(hdfs.create(placementPath, true)));
+		out.writeInt(placement.length);
+		for (int point : placement) {
+			out.writeInt(point);
 		}
+		out.close();
 
+		conf.set(PLACEMENT_ATTR, placementPath.toString());
+		System.out.println("Placed " + placement.length + " items in " +
+				(System.currentTimeMillis() - startTime) + "ms.");
+	}
 
-		/* Look for the associated simple FASTA file. */
-		Path sfaPath = new Path(destPath + Path.SEPARATOR + baseName + SFA_FILE_EXT);
+	/**
+	 * Groups the items in blocks with a {@link BlockGrouper}, choosing the number of blocks so that
+	 * each group of two blocks holds about groupBytes of protein.  The 6 frames of a sequence hold
+	 * about twice as many residues as it has bases, which the simple FASTA input's size bounds.
+	 */
+	public static void setBlocks(Job job, Path inputPath, long groupBytes) throws IOException {
+		Configuration conf = job.getConfiguration();
+		long inputBytes = inputPath.getFileSystem(conf).getContentSummary(inputPath).getLength();
+		long numItems = conf.getLong(NUM_SEQ_ATTR, 0) * NUM_FRAMES;
+
+		int numBlocks = BlockGrouper.chooseNumBlocks(numItems, 2 * inputBytes, groupBytes);
+		BlockGrouper grouper = new BlockGrouper(numItems, numBlocks);
+
+		conf.setInt(EUG_ATTR, EugType.BLOCK.ordinal());
+		conf.setInt(NUM_BLOCKS_ATTR, grouper.getNumBlocks());
+		conf.setLong(AllPairsReducer.BLOCK_SIZE_ATTR, grouper.getBlockSize());
+		System.out.println("Grouping " + numItems + " items in " + grouper.getNumBlocks() +
+				" blocks of " + grouper.getBlockSize() + ", for " + grouper.getNumGroups() +
+				" groups.");
+	}
 
-		if (!hdfs.exists(sfaPath) && !hdfs.createNewFile(sfaPath)) {
-			throw new IOException(
-					"Couldn't write " + SFA_FILE_EXT + " file to " + destPath + ".");
+	/** Reads a placement written by {@link #setPlacement(Job, Path, String)}. */
+	static int[] readPlacement(Configuration conf, Path placementPath) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(placementPath.getFileSystem(conf).open(placementPath)));
+		try {
+			int[] placement = new int[in.readInt()];
+			for (int i = 0; i < placement.length; i++) {
+				placement[i] = in.readInt();
+			}
+			return placement;
+		} finally {
+			in.close();
 		}
+	}
 
-		/* Look for the associated meta-file. */
-		Path metaPath = new Path(srcPath + Path.SEPARATOR + baseName + SFA_META_FILE_EXT); 
-		boolean needRewrite = true;
-
-		if (hdfs.exists(metaPath)) {
-			/*TODO
-			long metaModifyTime = hdfs.getFileStatus(metaPath).getModificationTime();
-
-			/*Check if the sfa file has been updated more recently.
-
-			/*Check if the meta-file was updated more recently than any of the FASTA files
+	/**
+	 * Converts a directory of FASTA files to the 'simple FASTA format', which is one sequence
+	 * per line with internal sequence IDs, in the default location.  See
+	 * {@link #toSimpleFasta(Configuration, Path, Path, String)}.
+	 */
+	public static void toSimpleFasta(Configuration conf, Path srcPath, String baseName)
+			throws Exception {
+		Path defaultDestPath = new Path(srcPath + Path.SEPARATOR + SFA_DIR);
+		toSimpleFasta(conf, srcPath, defaultDestPath, baseName);
+	}
 
-			if (metaStatus.getModificationTime() > srcDir.lastModified())
-				needRewrite = false;
-			 */
+	/**
+	 * Converts a directory of FASTA files to the 'simple FASTA format', which is one sequence
+	 * per line with internal sequence IDs, with a {@link SimpleFastaConverter} job.  Also
+	 * generates a meta-file holding the total number of sequences, and a directory of meta shards
+	 * which map iids -> external ids and sequence lengths.
+	 * 
+	 * @param srcPath - Location of the directory containing the input files.
+	 * @param destPath - Location of the directory where the simple FASTA file
+	 * 				should land.
+	 */
+	public static void toSimpleFasta(Configuration conf, Path srcPath, Path destPath,
+			String baseName) throws Exception {
+		String[] args = {srcPath.toString(), destPath.toString(), baseName};
 
-		} else if (!hdfs.createNewFile(metaPath)) {
-			throw new IOException("Couldn't write meta-file to " + destPath + ".");
+		if (ToolRunner.run(conf, new SimpleFastaConverter(), args) != 0) {
+			throw new IOException("Failed to convert " + srcPath + " to simple FASTA.");
 		}
+	}
 
-		/* Rewrite the FASTA file to 'simple FASTA format'. */
-		if (needRewrite) {
-
-			BufferedWriter sfaOut = new BufferedWriter(new OutputStreamWriter(hdfs.create(sfaPath)));
-			List<String> seqIds = new ArrayList<String>();
-			String line;
-			int iid = 0;
-
-			for (FileStatus srcFileStatus : hdfs.listStatus(srcPath)) {
-				if (srcFileStatus.isDir() || srcFileStatus.getPath().toString().endsWith(SFA_META_FILE_EXT))
-					continue;
-
-				BufferedReader faIn = new BufferedReader(new InputStreamReader(hdfs.open(srcFileStatus.getPath())));
-				boolean firstLine = true;
-
-				while((line = faIn.readLine()) != null) {
-
-					/* If this line is a sequence id, convert to an internal id. */
-					if (line.startsWith(">")) {	
-						if (firstLine) {
-							firstLine = false;
-						} else {
-							sfaOut.append("\n");
-						}
-
-						sfaOut.append(">" + iid + " ");
-						int firstSpace = line.indexOf(" ");
-						firstSpace = firstSpace > 0 ? firstSpace : Integer.MAX_VALUE;
-						
-						int firstTab = line.indexOf("\t");
-						firstTab = firstTab > 0 ? firstTab : Integer.MAX_VALUE;
-						
-						int firstWhiteSpace = Math.min(firstSpace, firstTab);
-						if (firstWhiteSpace < Integer.MAX_VALUE) {
-							seqIds.add(iid + " " + line.substring(1, firstWhiteSpace));
-							sfaOut.append(line.substring(firstWhiteSpace + 1));
-							
-						} else {
-							seqIds.add(iid + " " + line.substring(1));
-						}
-						iid++;
-
-						/* If its not a sequence id, write it on the same line. */	
-					} else {
-						sfaOut.append(line);
-					}
-				}
-				faIn.close();
-			}
-			sfaOut.close();
-			
-			BufferedWriter metaOut = new BufferedWriter(new OutputStreamWriter(hdfs.create(metaPath)));
-
-			/* Write the total number of sequences at the beginning of the file. */
-			metaOut.append(iid + "\n");
-
-			/* Write the iid + seqId pairs. */
-			for (String seqId : seqIds) {
-				metaOut.append(seqId + "\n");
+	/** Trims any FASTA file extension from the given name. */
+	static String stripInputExt(String name) {
+		for (String ext : inputExts) {
+			if (name.endsWith(ext)) {
+				return name.substring(0, name.length() - ext.length());
 			}
-
-			metaOut.close();
 		}
-
-		hdfs.close();
+		return name;
 	}
 
 	public static String computeDefaultBaseName(Path fastaPath) throws IOException {
@@ -614,12 +820,6 @@ public class ProteinAligner extends Configured implements Tool {
 		String baseName = fileNames.get(0);
 
 		/* Trim any fasta file extensions. */
-		for (String ext : inputExts) {
-			if (baseName.endsWith(ext)) {
-				baseName = baseName.substring(0, baseName.length() - ext.length());
-				break;
-			}
-		}
-		return baseName;
+		return stripInputExt(baseName);
 	}
 }
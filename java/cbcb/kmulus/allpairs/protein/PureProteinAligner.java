@@ -28,11 +28,13 @@ import org.apache.hadoop.util.ToolRunner;
 import cbcb.kmulus.allpairs.comparison.AllPairsMapper;
 import cbcb.kmulus.allpairs.comparison.AllPairsReducer;
 import cbcb.kmulus.allpairs.comparison.ExhaustiveUniqueGrouper;
+import cbcb.kmulus.allpairs.comparison.IdPair;
 import cbcb.kmulus.allpairs.comparison.PairSplit;
 import cbcb.kmulus.allpairs.comparison.PrimeRot;
 import cbcb.kmulus.util.Alignment;
 import cbcb.kmulus.util.AlphabetMap;
 import cbcb.kmulus.util.Biology;
+import cbcb.kmulus.util.CompiledAlphabetMap;
 import cbcb.kmulus.util.GlobalAlignment;
 import cbcb.kmulus.util.LocalAlignment;
 
@@ -89,8 +91,10 @@ public class PureProteinAligner extends Configured implements Tool {
 	 */
 	public static class Map extends AllPairsMapper<LongWritable,Text> {
 
-		private AlphabetMap alphabetMap;
+		private CompiledAlphabetMap alphabetMap;
 		private ExhaustiveUniqueGrouper eug;
+		private final Text compressedSeq = new Text();
+		private byte[] compressed = new byte[0];
 
 		@Override
 		public void setup(Context context) throws IOException {
@@ -98,7 +102,8 @@ public class PureProteinAligner extends Configured implements Tool {
 			
 			long numSeq = conf.getLong(NUM_SEQ_ATTR, 0);
 			int eugID = conf.getInt(EUG_ATTR, EugType.PRIME_ROT.ordinal());
-			alphabetMap = new AlphabetMap(conf.getStrings(ALPHABET_ATTR, DEF_ALPHABET)[0]);
+			alphabetMap =
+				new AlphabetMap(conf.getStrings(ALPHABET_ATTR, DEF_ALPHABET)[0]).compile();
 			
 			if (numSeq < 0) {
 				eug = null;
@@ -107,7 +112,7 @@ public class PureProteinAligner extends Configured implements Tool {
 				if (eugID ==  EugType.PRIME_ROT.ordinal()) {
 					eug = PrimeRot.generatePrimeRot(numSeq);
 				
-				} else if (eugID == EugType.PRIME_ROT.ordinal()) {
+				} else if (eugID == EugType.PAIR_SPLIT.ordinal()) {
 					
 					try {
 						eug = new PairSplit(numSeq);
@@ -125,16 +130,17 @@ public class PureProteinAligner extends Configured implements Tool {
 		public void map(LongWritable key, Text value, Context context) 
 				throws IOException, InterruptedException {
 			long id = parseId(key, value);
-			String seq = value.toString();
-			seq = seq.substring(seq.indexOf(' ') + 1);
+			int start = value.find(" ") + 1;
+			int length = value.getLength() - start;
 			
 			// Compress the protein.
-			StringBuilder compressed = new StringBuilder();
-			for (int i = 0; i < seq.length(); i++) {
-				compressed.append(alphabetMap.get(seq.charAt(i)));
+			if (compressed.length < length) {
+				compressed = new byte[Math.max(length, compressed.length * 2)];
 			}
+			alphabetMap.encode(value.getBytes(), start, length, compressed, 0);
 			
-			Text compressedSeq = new Text(">" + id + " " + compressed.toString());
+			compressedSeq.set(">" + id + " ");
+			compressedSeq.append(compressed, 0, length);
 			super.map(key, compressedSeq, context);
 		}
 
@@ -167,15 +173,20 @@ public class PureProteinAligner extends Configured implements Tool {
 	 * 1) Parse the ids of both sequences.
 	 * 2) Align the two sequences to one another.
 	 * 3) Combine the ids to form the output key, use the alignment score as the output value.
+	 * 
+	 * When comparing by k-mers, each sequence's {@link KmerProfile} is built once as it is read
+	 * into the group, rather than once per pair.
 	 */
-	public static class Reduce extends AllPairsReducer<Text, LongWritable> {
+	public static class Reduce extends AllPairsReducer<Text, ProfiledSequence> {
 
 		private CompareType compareType;
 		private int matchScore, mismatchScore, gapScore, gapExtScore;
 		private int kmerLength;
+		private boolean useProfiles;
 		
 		@Override
-		public void setup(Context context) throws IOException {
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
 			Configuration config = context.getConfiguration();
 			
 			/* Initialize the parameters for the alignment. */
@@ -186,10 +197,14 @@ public class PureProteinAligner extends Configured implements Tool {
 			gapScore = config.getInt(GAP_SCORE_ATTR, DEF_GAP_SCORE);
 			gapExtScore = config.getInt(GAP_EXT_SCORE_ATTR, DEF_GAP_EXT_SCORE);
 			kmerLength = config.getInt(KMER_LEN_ATTR, DEF_KMER_LEN);
+			useProfiles = 
+				compareType == CompareType.KMER && KmerProfile.supportsKmerLength(kmerLength);
 		}
 		
 		@Override
-		protected LongWritable compareItems(Text a, Text b) {
+		protected long compareItems(ProfiledSequence itemA, ProfiledSequence itemB) {
+			Text a = itemA.getSequence();
+			Text b = itemB.getSequence();
 			Alignment alignment;
 			
 			switch (compareType) {
@@ -206,20 +221,31 @@ public class PureProteinAligner extends Configured implements Tool {
 			case KMER:
 				// Drop through.
 			default:
-				alignment = KmerDistance.getKmerAlignment(a, b, kmerLength);
+				if (useProfiles) {
+					alignment = KmerDistance.getKmerAlignment(itemA.getProfile(), itemB.getProfile());
+				} else {
+					alignment = KmerDistance.getKmerAlignment(a, b, kmerLength);
+				}
 			}
 
-			return new LongWritable(alignment.getDistance());
+			return alignment.getDistance();
+		}
+
+		@Override
+		protected long parseId(ProfiledSequence item) {
+			return item.getId();
 		}
 
 		@Override
-		protected long parseId(Text value) throws IOException {
+		protected long parseValueId(Text value) throws IOException {
 			return parseSeqId(value);
 		}
 
 		@Override
-		protected Text copyValue(Text original) {
-			return new Text(original);
+		protected ProfiledSequence copyValue(Text original) throws IOException {
+			Text sequence = new Text(original);
+			KmerProfile profile = useProfiles ? KmerProfile.build(sequence, kmerLength) : null;
+			return new ProfiledSequence(parseSeqId(sequence), sequence, profile);
 		}
 	}
 
@@ -337,7 +363,7 @@ public class PureProteinAligner extends Configured implements Tool {
 			job.setJarByClass(PureProteinAligner.class);
 			job.setJobName("proteinAligner");
 
-			job.setOutputKeyClass(Text.class);
+			job.setOutputKeyClass(IdPair.class);
 			job.setOutputValueClass(LongWritable.class);
 			job.setMapOutputKeyClass(LongWritable.class);
 			job.setMapOutputValueClass(Text.class);
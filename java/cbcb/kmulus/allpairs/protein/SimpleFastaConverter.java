@@ -0,0 +1,321 @@
+package cbcb.kmulus.allpairs.protein;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.util.FastaInputFormat;
+
+/**
+ * Converts a directory of FASTA files to the 'simple FASTA format', one ">iid sequence" line per
+ * sequence, in parallel.  Internal ids are assigned contiguously by two map-only passes over the
+ * same splits of a {@link FastaInputFormat}:
+ * <ol>
+ * 	<li>each split counts its records, and the client takes the prefix sums of the counts, in
+ * 		order of file and offset, as the first id of each split;</li>
+ * 	<li>each split then numbers its records from its first id as it converts them.</li>
+ * </ol>
+ *
+ * The second pass also writes the meta mapping as "iid externalId length" lines, sharded by
+ * split into the directory {@link #getMetaDir(Path, String)}.  Each shard is sorted by iid and
+ * named by its first iid, so the shards in name order cover the ids in order.  The meta-file
+ * itself holds only the number of sequences.
+ */
+public class SimpleFastaConverter extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(SimpleFastaConverter.class);
+
+	private static final String USAGE =
+		"SimpleFastaConverter FASTA_DIR SIMPLE_FASTA_DIR BASE_NAME";
+
+	/** Configuration attribute for the file of each split's first id, read by the second pass. */
+	static final String SPLIT_IDS_ATTR = "sfi";
+
+	/** Meta shards are named by this prefix and their first iid. */
+	static final String META_SHARD_PREFIX = "meta-";
+
+	/* Suffixes of the intermediate files, beside the simple FASTA directory. */
+	private static final String COUNTS_SUFFIX = "_counts";
+	private static final String SPLIT_IDS_SUFFIX = "_ids";
+
+	/** Counts the records of each split. */
+	public static class CountMap extends Mapper<Text, Text, Text, LongWritable> {
+
+		private long count = 0;
+
+		@Override
+		public void map(Text key, Text value, Context context) {
+			count++;
+		}
+
+		@Override
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			context.write(new Text(getSplitKey(context)), new LongWritable(count));
+		}
+	}
+
+	/** Numbers and writes out the records of each split, along with its meta shard. */
+	public static class ConvertMap extends Mapper<Text, Text, NullWritable, Text> {
+
+		private long nextId;
+		private long endId;
+		private BufferedWriter metaOut;
+		private final Text line = new Text();
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			String splitKey = getSplitKey(context);
+
+			/* Find this split's first id, and the number of records it held in the first pass. */
+			Path splitIdsPath = new Path(conf.get(SPLIT_IDS_ATTR));
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(splitIdsPath.getFileSystem(conf).open(splitIdsPath)));
+			try {
+				String entry;
+				while ((entry = in.readLine()) != null) {
+					String[] fields = entry.split("\t");
+					if (fields[0].equals(splitKey)) {
+						nextId = Long.parseLong(fields[1]);
+						endId = nextId + Long.parseLong(fields[2]);
+						break;
+					}
+				}
+				if (entry == null) {
+					throw new IOException("No first id was counted for the split " + splitKey);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		@Override
+		public void map(Text key, Text value, Context context)
+				throws IOException, InterruptedException {
+			if (nextId >= endId) {
+				throw new IOException("The split " + getSplitKey(context) +
+						" held more records than were counted; did the input change?");
+			}
+
+			/* Splits without records write no shard, which would share the next split's name. */
+			if (metaOut == null) {
+				Path metaPath = new Path(FileOutputFormat.getWorkOutputPath(context),
+						String.format(META_SHARD_PREFIX + "%012d", nextId));
+				metaOut = new BufferedWriter(new OutputStreamWriter(
+						metaPath.getFileSystem(context.getConfiguration()).create(metaPath)));
+			}
+
+			line.set(">" + nextId + " ");
+			line.append(value.getBytes(), 0, value.getLength());
+			context.write(NullWritable.get(), line);
+
+			metaOut.append(nextId + " " + key + " " + value.getLength() + "\n");
+			nextId++;
+		}
+
+		@Override
+		public void cleanup(Context context) throws IOException {
+			if (metaOut != null) {
+				metaOut.close();
+			}
+			if (nextId != endId) {
+				throw new IOException("The split " + getSplitKey(context) +
+						" held fewer records than were counted; did the input change?");
+			}
+		}
+	}
+
+	/**
+	 * Identifies the split of a task by its file and offset, such that keys sort in the order of
+	 * the records within each file.
+	 */
+	static String getSplitKey(Mapper<?, ?, ?, ?>.Context context) {
+		FileSplit split = (FileSplit) context.getInputSplit();
+		return split.getPath() + " " + String.format("%020d", split.getStart());
+	}
+
+	/** Returns the directory holding the meta shards of the simple FASTA of the given name. */
+	public static Path getMetaDir(Path fastaPath, String baseName) {
+		return new Path(fastaPath + Path.SEPARATOR + baseName + ProteinAligner.SFA_META_DIR_EXT);
+	}
+
+	/** Returns the meta shards in the given directory, in order of their ids. */
+	public static List<Path> getMetaShards(FileSystem fs, Path metaDir) throws IOException {
+		List<Path> shards = new ArrayList<Path>();
+		for (FileStatus status : fs.listStatus(metaDir)) {
+			if (status.getPath().getName().startsWith(META_SHARD_PREFIX)) {
+				shards.add(status.getPath());
+			}
+		}
+		Collections.sort(shards, new Comparator<Path>() {
+			@Override
+			public int compare(Path first, Path second) {
+				return first.getName().compareTo(second.getName());
+			}
+		});
+		return shards;
+	}
+
+	public int run(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		Path fastaPath = new Path(args[0]);
+		Path destPath = new Path(args[1]);
+		String baseName = ProteinAligner.stripInputExt(args[2]);
+
+		LOG.info("Tool name: " + SimpleFastaConverter.class.getName());
+		LOG.info(" - fastaDir: " + fastaPath);
+		LOG.info(" - simpleFastaDir: " + destPath);
+		LOG.info(" - baseName: " + baseName);
+
+		Configuration conf = getConf();
+		FileSystem fs = fastaPath.getFileSystem(conf);
+		if (!fs.exists(fastaPath)) {
+			throw new IOException(fastaPath + " does not exist.");
+		}
+
+		/* Every plain file in the directory, other than our own meta-data, is FASTA. */
+		List<Path> inputs = new ArrayList<Path>();
+		for (FileStatus status : fs.listStatus(fastaPath)) {
+			String name = status.getPath().getName();
+			if (!status.isDir() && !name.startsWith("_") && !name.startsWith(".") &&
+					!name.endsWith(ProteinAligner.SFA_META_FILE_EXT) &&
+					!name.endsWith(ProteinAligner.SFA_PLACEMENT_FILE_EXT)) {
+				inputs.add(status.getPath());
+			}
+		}
+		if (inputs.isEmpty()) {
+			throw new IOException("No FASTA files were found in " + fastaPath + ".");
+		}
+
+		/* The intermediates are kept in the meta directory, so they are never read as FASTA. */
+		Path metaDir = getMetaDir(fastaPath, baseName);
+		Path countsPath = new Path(metaDir, COUNTS_SUFFIX);
+		Path splitIdsPath = new Path(metaDir, SPLIT_IDS_SUFFIX);
+		long startTime = System.currentTimeMillis();
+
+		// Delete the output directories if they exist already.
+		fs.delete(destPath, true);
+		fs.delete(metaDir, true);
+
+		/* First pass: count the records of each split. */
+		Job countJob = createJob(conf, "countFasta", inputs, countsPath);
+		countJob.setMapperClass(CountMap.class);
+		countJob.setOutputKeyClass(Text.class);
+		countJob.setOutputValueClass(LongWritable.class);
+		countJob.setOutputFormatClass(SequenceFileOutputFormat.class);
+		if (!countJob.waitForCompletion(true)) {
+			return 1;
+		}
+
+		/* Assign each split its first id, by the prefix sums of the counts in split order. */
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		Text splitKey = new Text();
+		LongWritable count = new LongWritable();
+		for (FileStatus status : fs.listStatus(countsPath)) {
+			if (!status.getPath().getName().startsWith("part-")) {
+				continue;
+			}
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+			while (reader.next(splitKey, count)) {
+				counts.put(splitKey.toString(), count.get());
+			}
+			reader.close();
+		}
+
+		long numSeq = 0;
+		BufferedWriter splitIdsOut =
+			new BufferedWriter(new OutputStreamWriter(fs.create(splitIdsPath, true)));
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			splitIdsOut.append(entry.getKey() + "\t" + numSeq + "\t" + entry.getValue() + "\n");
+			numSeq += entry.getValue();
+		}
+		splitIdsOut.close();
+		fs.delete(countsPath, true);
+		LOG.info("Counted " + numSeq + " sequences in " + counts.size() + " splits.");
+
+		/* Second pass: number and convert the records, writing the meta shards alongside. */
+		Configuration convertConf = new Configuration(conf);
+		convertConf.set(SPLIT_IDS_ATTR, splitIdsPath.toString());
+		Job convertJob = createJob(convertConf, "convertFasta", inputs, destPath);
+		convertJob.setMapperClass(ConvertMap.class);
+		convertJob.setOutputKeyClass(NullWritable.class);
+		convertJob.setOutputValueClass(Text.class);
+		convertJob.setOutputFormatClass(TextOutputFormat.class);
+		boolean result = convertJob.waitForCompletion(true);
+		fs.delete(splitIdsPath, true);
+		if (!result) {
+			return 1;
+		}
+
+		/* Move the meta shards out of the simple FASTA, which is read as the aligner's input. */
+		fs.mkdirs(metaDir);
+		for (FileStatus status : fs.listStatus(destPath)) {
+			Path shard = status.getPath();
+			if (shard.getName().startsWith(META_SHARD_PREFIX) &&
+					!fs.rename(shard, new Path(metaDir, shard.getName()))) {
+				throw new IOException("Couldn't move " + shard + " to " + metaDir + ".");
+			}
+		}
+
+		/* The meta-file holds the total number of sequences. */
+		Path metaPath =
+			new Path(fastaPath + Path.SEPARATOR + baseName + ProteinAligner.SFA_META_FILE_EXT);
+		BufferedWriter metaOut =
+			new BufferedWriter(new OutputStreamWriter(fs.create(metaPath, true)));
+		metaOut.append(numSeq + "\n");
+		metaOut.close();
+
+		LOG.info("Converted " + numSeq + " sequences in " +
+				(System.currentTimeMillis() - startTime) + "ms.");
+		return 0;
+	}
+
+	private Job createJob(Configuration conf, String name, List<Path> inputs, Path outputPath)
+			throws IOException {
+		Job job = new Job(conf, name);
+		job.setJarByClass(SimpleFastaConverter.class);
+		job.setInputFormatClass(FastaInputFormat.class);
+		job.setNumReduceTasks(0);
+
+		FileInputFormat.setInputPaths(job, inputs.toArray(new Path[inputs.size()]));
+		FileOutputFormat.setOutputPath(job, outputPath);
+		return job;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int result = ToolRunner.run(new SimpleFastaConverter(), args);
+		System.exit(result);
+	}
+}
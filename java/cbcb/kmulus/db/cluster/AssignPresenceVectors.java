@@ -0,0 +1,149 @@
+package cbcb.kmulus.db.cluster;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.db.processing.UnionClusterPresenceVectors;
+import cbcb.kmulus.util.PresenceVector;
+
+/**
+ * Hadoop program that assigns {@link PresenceVector}s to fixed cluster centers, without
+ * iterating, as when sequences are added to an existing database.  Like the final run of
+ * {@link ClusterPresenceVectors}, with the same mapper, it writes the (seqId, clusterId)
+ * assignments as text under {@link ClusterPresenceVectors#ASSIGNMENTS_DIR}, and the union of the
+ * assigned vectors of each cluster as (clusterId, {@link PresenceVector}).
+ *
+ * The cluster ids are the positions of the centers in the part files of the centers directory,
+ * so the directory must hold the centers of the clustering exactly as it wrote them.
+ */
+public class AssignPresenceVectors extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(AssignPresenceVectors.class);
+
+	private static final String USAGE =
+		"AssignPresenceVectors KMER_VECTOR_INPUT CENTERS OUTPUT [KMER_LENGTH] [NUM_TASKS]";
+
+	private static final String LOG_DELIM = ",";
+
+	private static final int MAX_REDUCES = 100;
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new AssignPresenceVectors(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String vectorInputPath = args[0];
+		String centersPath = args[1];
+		String outputPath = args[2];
+		int kmerLength = ClusterPresenceVectors.DEFAULT_KMER_LENGTH;
+		if (args.length > 3) {
+			kmerLength = Integer.parseInt(args[3]);
+		}
+		int reduceTasks = MAX_REDUCES;
+		if (args.length > 4) {
+			reduceTasks = Integer.parseInt(args[4]);
+		}
+
+		LOG.info("Tool name: " + AssignPresenceVectors.class.getName());
+		LOG.info(" - vectorInputDir: " + vectorInputPath);
+		LOG.info(" - centersDir: " + centersPath);
+		LOG.info(" - outputDir: " + outputPath);
+
+		Job job = new Job(getConf(), AssignPresenceVectors.class.getName());
+		job.setJarByClass(AssignPresenceVectors.class);
+		Configuration conf = job.getConfiguration();
+		FileSystem fs = FileSystem.get(conf);
+
+		int numCenters = countCenters(fs, new Path(centersPath), conf);
+		if (numCenters == 0) {
+			throw new IOException("There are no centers in " + centersPath + ".");
+		}
+		LOG.info(" - numCenters: " + numCenters);
+
+		conf.set(ClusterPresenceVectors.CENTERS_PATH, centersPath);
+		conf.setInt(ClusterPresenceVectors.NUM_CLUSTERS, numCenters);
+		conf.setInt(ClusterPresenceVectors.KMER_LENGTH, kmerLength);
+		conf.setBoolean(ClusterPresenceVectors.ASSIGN, true);
+
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(PresenceVector.class);
+		job.setMapOutputKeyClass(LongWritable.class);
+		job.setMapOutputValueClass(PresenceVector.class);
+
+		job.setMapperClass(ClusterPresenceVectors.Map.class);
+		job.setCombinerClass(UnionClusterPresenceVectors.Reduce.class);
+		job.setReducerClass(UnionClusterPresenceVectors.Reduce.class);
+		MultipleOutputs.addNamedOutput(job, ClusterPresenceVectors.ASSIGNMENTS_DIR,
+				TextOutputFormat.class, LongWritable.class, LongWritable.class);
+
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(vectorInputPath));
+		FileOutputFormat.setOutputPath(job, new Path(outputPath));
+		job.setNumReduceTasks(reduceTasks);
+
+		// Delete the output directory if it exists already.
+		fs.delete(new Path(outputPath), true);
+
+		long startTime = System.currentTimeMillis();
+
+		boolean result = job.waitForCompletion(true);
+
+		LOG.info((System.currentTimeMillis() - startTime) + LOG_DELIM + reduceTasks);
+
+		return result ? 0 : 1;
+	}
+
+	/** Counts the centers in the part files of the given directory. */
+	private static int countCenters(FileSystem fs, Path centersPath, Configuration conf)
+			throws IOException {
+		int numCenters = 0;
+		for (FileStatus status : fs.listStatus(centersPath)) {
+			String name = status.getPath().getName();
+			if (status.isDir() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+			LongWritable key = new LongWritable();
+			PresenceVector value = new PresenceVector();
+			while (reader.next(key, value)) {
+				numCenters++;
+			}
+			reader.close();
+		}
+		return numCenters;
+	}
+}
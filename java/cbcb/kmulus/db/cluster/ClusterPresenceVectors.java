@@ -1,12 +1,10 @@
 package cbcb.kmulus.db.cluster;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.TreeSet;
 
+import cbcb.kmulus.db.processing.UnionClusterPresenceVectors;
 import cbcb.kmulus.util.PresenceVector;
 
 import org.apache.hadoop.conf.Configuration;
@@ -21,13 +19,23 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
 /**
  * Hadoop program that clusters a HDFS directory of {@link PresenceVector}.
+ *
+ * The final run assigns every vector to its closest center in a single job, which writes both the
+ * (seqId, clusterId) assignments, as text under {@link #ASSIGNMENTS_DIR}, and the union of the
+ * vectors of each cluster, as (clusterId, {@link PresenceVector}) in {@link #FINAL_DIR}.  The
+ * assignments are written by the mappers, and the unions are taken by a combiner and the reducers.
+ *
+ * The first run chooses the initial centers by {@link SeedPresenceVectors}, with the seed given
+ * by {@link #SEED} in the configuration, if any, for reproducible clusterings.
  */
 public class ClusterPresenceVectors extends Configured implements Tool {
 	
@@ -35,7 +43,18 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 	private static final String USAGE = "ClusterPresenceVectors KMER_VECTOR_INPUT OUTPUT NUM_SEQUENCES NUM_CLUSTERS [KMER_LENGTH] [NUM_TASKS] [DEBUG]";
 	
 	public static final String FINAL_DIR = "final";
+
+	/** The directory of the final assignments, within {@link #FINAL_DIR}. */
+	public static final String ASSIGNMENTS_DIR = "assignments";
+
+	/** The attribute of the seed of the initial centers, chosen at random if not given. */
+	public static final String SEED = "SEED";
+
+	/** The working directory of the seeding, within the temporary output. */
+	public static final String SEEDING_DIR = "seeding";
 	
+	protected static final String ASSIGN = "ASSIGN";
+	protected static final String CENTERS_PATH = "CENTERS_PATH";
 	protected static final String DEBUG = "DEBUG";
 	protected static final String INPUT_PATH = "INPUT_PATH";
 	protected static final String ITERATION = "ITERATION";
@@ -48,9 +67,9 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 	private static final int MAX_REDUCES = 100;
 	private static final int MAX_MAPS = 100;
 	private static final int MAX_ITERATIONS = 5;
-	
-	private static final int LARGE_PRIME1 = 27277;
-	private static final int LARGE_PRIME2 = 30707;
+
+	/** The number of k-means iterations run before the final assignment. */
+	public static final int NUM_ITERATIONS = MAX_ITERATIONS + 3;
 	
 	/* Runtime return codes. */
 	public static final int CODE_ERROR = -1;
@@ -83,6 +102,13 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 		
 		private PresenceVector[] centers;
 		
+		private final Random random = new Random();
+		
+		/* Where the assignments are written, in the final run. */
+		private MultipleOutputs<LongWritable, PresenceVector> assignments;
+		private final LongWritable seqId = new LongWritable();
+		private final LongWritable clusterId = new LongWritable();
+		
 		/**
 		 * Load the cluster {@link PresenceVector} into the memory.
 		 */
@@ -101,17 +127,20 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 				throw new IOException("The number centers was not given in the configuration.");
 			}
 			
+			/* The centers are those of the iteration, unless given outright. */
 			String input = context.getConfiguration().get(INPUT_PATH);
-			LOG.info("Loading cluster centers from: " + input + "/output-" + iteration);
+			Path centersPath = new Path(conf.get(CENTERS_PATH, input + "/output-" + iteration));
+			LOG.info("Loading cluster centers from: " + centersPath);
 			LOG.info("numCenters: " + numCenters);
 			initializeCenters();
 			
-			Path centersPath = new Path(input + "/output-" + iteration);
-			
 			int currCenter = 0;
-			// Go through each part-r-* file in the centersPath and add the centers to the TreeSet.
-			for (FileStatus srcFileStatus : fs.listStatus(centersPath)) {
-				if (srcFileStatus.isDir())
+			// Go through each part-r-* file in the centersPath, by name, as the ids are positions.
+			FileStatus[] statuses = fs.listStatus(centersPath);
+			Arrays.sort(statuses);
+			for (FileStatus srcFileStatus : statuses) {
+				String name = srcFileStatus.getPath().getName();
+				if (srcFileStatus.isDir() || name.startsWith("_") || name.startsWith("."))
 					continue;
 
 				SequenceFile.Reader reader = new SequenceFile.Reader(fs, srcFileStatus.getPath(), conf);
@@ -139,6 +168,17 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 			if (debug) {
 				LOG.info("Number of centers loaded: " + currCenter);
 			}
+			
+			if (conf.getBoolean(ASSIGN, false)) {
+				assignments = new MultipleOutputs<LongWritable, PresenceVector>(context);
+			}
+		}
+		
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (assignments != null) {
+				assignments.close();
+			}
 		}
 
 		/**
@@ -157,38 +197,7 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 				throw new IOException("Centers are uninitialized.");
 			}
 			 
-			// Go through each center and compute minimum distance.
-			Long closestCenter = new Long(-1);
-			int minDistance = Integer.MAX_VALUE;
-			
-			// Store the closest centers.
-			ArrayList<Long> closestCenters = new ArrayList<Long>();
-			
-			for (int i = 0; i < numCenters; i++) {
-				if (centers[i] == null) {
-					throw new IOException("Center '" + i + "' was uninitialized.");
-				}
-				int distance = centers[i].getHammingDistance(value);
-				
-				// If the current sequence is the same as the center, MUST map to it.
-				if (centers[i].getId() == value.getId() && centers[i].getId() >= 0) {
-					closestCenters.clear();
-					closestCenters.add(new Long(i));
-					break;
-					
-			    } else if (distance < minDistance) {
-					closestCenter = new Long(i);
-					minDistance = distance;
-					closestCenters.clear();
-					closestCenters.add(closestCenter);
-				} else if (distance == minDistance) {
-					closestCenters.add(new Long(i));
-				}
-			}
-			
-			// Randomly select a center.
-			int item = new Random().nextInt(closestCenters.size());		
-			closestCenter = closestCenters.get(item);
+			int closestCenter = findClosestCenter(centers, numCenters, value, random);
 			
 			if (debug) {
 				// TODO(cmhill) log PV specs
@@ -199,8 +208,52 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 				
 			} else {
 				context.write(new LongWritable(closestCenter), value);
+				
+				if (assignments != null) {
+					seqId.set(value.getId());
+					clusterId.set(closestCenter);
+					assignments.write(ASSIGNMENTS_DIR, seqId, clusterId,
+							ASSIGNMENTS_DIR + Path.SEPARATOR + "part");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the center closest to the vector by Hamming distance, or -1 if there
+	 * are no centers.  A center with the id of the vector is always the closest.  Ties are broken
+	 * at random, or by the lowest index if random is null.
+	 */
+	public static int findClosestCenter(PresenceVector[] centers, int numCenters,
+			PresenceVector value, Random random) throws IOException {
+		int closestCenter = -1;
+		int minDistance = Integer.MAX_VALUE;
+		int numClosest = 0;
+		
+		for (int i = 0; i < numCenters; i++) {
+			if (centers[i] == null) {
+				throw new IOException("Center '" + i + "' was uninitialized.");
+			}
+			
+			// If the current sequence is the same as the center, MUST map to it.
+			if (centers[i].getId() == value.getId() && centers[i].getId() >= 0) {
+				return i;
+			}
+			
+			int distance = centers[i].getHammingDistance(value);
+			if (distance < minDistance) {
+				closestCenter = i;
+				minDistance = distance;
+				numClosest = 1;
+			} else if (distance == minDistance) {
+				// Keep each of the closest centers with equal probability.
+				numClosest++;
+				if (random != null && random.nextInt(numClosest) == 0) {
+					closestCenter = i;
+				}
 			}
 		}
+		return closestCenter;
 	}
 
 	public static void main(String[] args) throws Exception{
@@ -280,14 +333,13 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 		}
 
 		
-		int maxSequenceNumber = Integer.parseInt(numSequences);
 		int clusters = Integer.parseInt(numClusters);
 		conf.setInt(NUM_CLUSTERS, clusters);
 		
 		/* Setup the key value pairs */
 		job.setNumReduceTasks(reduceTasks);
 
-		if (finished || runIter - 2 > MAX_ITERATIONS) {
+		if (finished || runIter >= NUM_ITERATIONS) {
 			
 			job.setOutputKeyClass(LongWritable.class);
 			job.setOutputValueClass(PresenceVector.class);
@@ -297,7 +349,16 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 			job.setMapperClass(ClusterPresenceVectors.Map.class);
 			FileOutputFormat.setOutputPath(job, new Path(outputPath + Path.SEPARATOR + FINAL_DIR));
 			
-			job.waitForCompletion(true);		
+			/* Write the assignments from the mappers, and union each cluster's vectors. */
+			conf.setBoolean(ASSIGN, true);
+			MultipleOutputs.addNamedOutput(job, ASSIGNMENTS_DIR, TextOutputFormat.class,
+					LongWritable.class, LongWritable.class);
+			job.setCombinerClass(UnionClusterPresenceVectors.Reduce.class);
+			job.setReducerClass(UnionClusterPresenceVectors.Reduce.class);
+			
+			if (!job.waitForCompletion(true)) {
+				return CODE_ERROR;
+			}
 			return CODE_FINISHED;
 
 		} else {
@@ -305,56 +366,18 @@ public class ClusterPresenceVectors extends Configured implements Tool {
 			FileOutputFormat.setOutputPath(job, new Path(tempInput + "/output-"
 					+ (runIter + 1)));
 		}
-		
-		FileSystem fs = FileSystem.get(conf);
 
 		if (runIter == 0) {
-			int index = new Random().nextInt();
-			int largePrime = maxSequenceNumber == LARGE_PRIME1 ? LARGE_PRIME2 : LARGE_PRIME1;
-			TreeSet<Integer> t = new TreeSet<Integer>();
-			
-			// Adding a large prime will eventually visit all sequences without repeating.
-			while (t.size() < clusters) {
-				t.add(index);
-				index = (index + largePrime) % maxSequenceNumber;
+			// Choose the initial centers as the first iteration.
+			String seed = getConf().get(SEED);
+			String[] seedArgs = seed == null ?
+					new String[]{sequenceInputPath, tempInput + "/" + SEEDING_DIR,
+							tempInput + "/output-0", numClusters} :
+					new String[]{sequenceInputPath, tempInput + "/" + SEEDING_DIR,
+							tempInput + "/output-0", numClusters, seed};
+			if (ToolRunner.run(getConf(), new SeedPresenceVectors(), seedArgs) != 0) {
+				return CODE_ERROR;
 			}
-				
-			fs = FileSystem.get(conf);
-			
-			int currPart = 0;
-			
-			NumberFormat formatter = new DecimalFormat("00000");
-			
-			// Write out the centers presencevectors as the first iteration.
-			SequenceFile.Writer sf = new SequenceFile.Writer(fs, conf,
-					new Path(tempInput + "/output-0/part-r-00000"),
-					LongWritable.class, PresenceVector.class);
-			
-
-			// Bootstrap with the first k sequences from input.
-			SequenceFile.Reader reader = new SequenceFile.Reader(fs,
-					new Path(sequenceInputPath + "/part-r-"
-					+ formatter.format(currPart)), conf);
-
-			LongWritable key = new LongWritable();
-			PresenceVector value = new PresenceVector();
-
-			LOG.info("Creating file at: " + tempInput
-					+ "/output-0/part-r-00000");
-
-			for (int i = 0; i < new Integer(numClusters); i++) {
-				if (reader.next(key, value) != true) {
-					LOG.info("Stopped at clusters: " + i);
-					
-					++currPart;
-					reader = new SequenceFile.Reader(fs, new Path(sequenceInputPath
-							+ "/part-r-" + formatter.format(currPart)), conf);
-				}
-				
-				sf.append(key, value);				
-			}
-			
-			sf.close();
 		}
 		
 		job.setNumReduceTasks(reduceTasks);
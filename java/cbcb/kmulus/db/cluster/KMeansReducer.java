@@ -1,7 +1,6 @@
 package cbcb.kmulus.db.cluster;
 
 import java.io.IOException;
-import java.util.Arrays;
 
 import cbcb.kmulus.util.Biology;
 import cbcb.kmulus.util.PresenceVector;
@@ -36,9 +35,7 @@ public class KMeansReducer extends Reducer<LongWritable, PresenceVector, LongWri
 		if (debug)
 			LOG.info("RedKey: " + key.toString());
 		
-		Double[] distances = new Double[(int) Math.ceil(Math.pow(
-				Biology.AMINO_ACIDS.length, kmerLength))];
-		Arrays.fill(distances, 0.0);
+		int[] distances = new int[getNumKmers(kmerLength)];
 		
 		int numOfSequences = 0;
 		
@@ -62,16 +59,28 @@ public class KMeansReducer extends Reducer<LongWritable, PresenceVector, LongWri
 			LOG.info("Number of sequences: " + numOfSequences);
 		}
 		
+		context.write(key, createCenter(distances, numOfSequences, kmerLength));
+	}
+	
+	/** Returns the number of k-mers a center counts, of the amino acid alphabet. */
+	public static int getNumKmers(int kmerLength) {
+		return (int) Math.ceil(Math.pow(Biology.AMINO_ACIDS.length, kmerLength));
+	}
+	
+	/**
+	 * Creates the center of a cluster from the number of its sequences with each k-mer: the k-mers
+	 * present in at least half of them.
+	 */
+	public static PresenceVector createCenter(int[] counts, int numOfSequences, int kmerLength) {
 		PresenceVector clusterCenter = new PresenceVector(kmerLength);
 		
 		// Normalize the presence vector.
-		for (int i = 0; i < distances.length; i++) {
+		for (int i = 0; i < counts.length; i++) {
 			// Distance metric relied on bit vectors of only 0 or 1, not counts.
-			int distance = (int) Math.round(distances[i] / ((double) numOfSequences));
+			int distance = (int) Math.round(counts[i] / ((double) numOfSequences));
 			if (distance > 0)
 				clusterCenter.setKmer(i);
 		}
-		
-		context.write(key, clusterCenter);
+		return clusterCenter;
 	}
 }
\ No newline at end of file
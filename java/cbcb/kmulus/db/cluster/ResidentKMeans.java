@@ -0,0 +1,234 @@
+package cbcb.kmulus.db.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.util.PresenceVector;
+
+/**
+ * Runs the k-means iterations of {@link ClusterPresenceVectors} in a single process, over
+ * {@link ResidentVectors} read once, instead of as one job per iteration which reads every vector
+ * again and writes its means to OUTPUT/temp/output-N.  The clustering is seeded as by
+ * {@link SeedPresenceVectors} and iterated as by the jobs, with one reduce task, and the seeds and
+ * the last means are written where the jobs would have written them, output-0 and
+ * output-{@link ClusterPresenceVectors#NUM_ITERATIONS}.  The final run of
+ * {@link ClusterPresenceVectors} then assigns the vectors to the last means.
+ *
+ * The vectors must fit in the memory of the machine, off the heap.
+ */
+public class ResidentKMeans extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(ResidentKMeans.class);
+
+	private static final String USAGE =
+		"ResidentKMeans KMER_VECTOR_INPUT OUTPUT NUM_CLUSTERS [KMER_LENGTH] [NUM_THREADS] [SEED]";
+
+	private static final String LOG_DELIM = ",";
+
+	/** The results of a clustering: the last means, and their keys as written by the jobs. */
+	public static class Means {
+		public final PresenceVector[] means;
+		public final long[] keys;
+
+		private Means(PresenceVector[] means, long[] keys) {
+			this.means = means;
+			this.keys = keys;
+		}
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new ResidentKMeans(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String vectorInputPath = args[0];
+		String tempOutput = args[1] + "/temp";
+		int numClusters = Integer.parseInt(args[2]);
+		int kmerLength = args.length > 3 ?
+				Integer.parseInt(args[3]) : ClusterPresenceVectors.DEFAULT_KMER_LENGTH;
+		int numThreads = args.length > 4 ?
+				Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : new Random().nextLong();
+
+		LOG.info("Tool name: " + ResidentKMeans.class.getName());
+		LOG.info(" - vectorInputDir: " + vectorInputPath);
+		LOG.info(" - outputDir: " + args[1]);
+		LOG.info(" - numClusters: " + numClusters);
+		LOG.info(" - numThreads: " + numThreads);
+		LOG.info(" - seed: " + seed);
+
+		Configuration conf = getConf();
+		FileSystem fs = FileSystem.get(conf);
+
+		long startTime = System.currentTimeMillis();
+		ResidentVectors vectors =
+			ResidentVectors.load(fs, new Path(vectorInputPath), conf, kmerLength);
+		LOG.info("Loaded " + vectors.size() + " vectors in " +
+				(System.currentTimeMillis() - startTime) + "ms.");
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try {
+			startTime = System.currentTimeMillis();
+			Means seeds =
+				seed(vectors, numClusters, seed, SeedPresenceVectors.DEFAULT_NUM_ROUNDS, pool);
+			writeMeans(fs, conf, new Path(tempOutput + "/output-0"), seeds, false);
+
+			Means means = cluster(vectors, seeds, ClusterPresenceVectors.NUM_ITERATIONS, pool);
+			writeMeans(fs, conf, new Path(tempOutput + "/output-" +
+					ClusterPresenceVectors.NUM_ITERATIONS), means, true);
+
+			LOG.info((System.currentTimeMillis() - startTime) + LOG_DELIM + numThreads +
+					LOG_DELIM + means.means.length);
+		} finally {
+			pool.shutdownNow();
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the initial centers chosen by k-means||, the same as {@link SeedPresenceVectors}
+	 * chooses with the same seed and number of rounds.
+	 */
+	public static Means seed(ResidentVectors vectors, int numClusters, long seed, int numRounds,
+			ForkJoinPool pool) throws IOException {
+		if (vectors.size() == 0) {
+			throw new IOException("There are no vectors to seed the clusters with.");
+		}
+		long startTime = System.currentTimeMillis();
+
+		int first = 0;
+		for (int i = 1; i < vectors.size(); i++) {
+			if (SeedPresenceVectors.isBefore(seed, vectors.getId(i), vectors.getId(first))) {
+				first = i;
+			}
+		}
+		List<PresenceVector> candidates = new ArrayList<PresenceVector>();
+		candidates.add(vectors.get(first));
+
+		/* Sample the candidates, by the cost of the pass before. */
+		double samplingRate = SeedPresenceVectors.OVERSAMPLING * numClusters;
+		long cost = -1;
+		for (int round = 1; round <= numRounds + 1 && cost != 0; round++) {
+			Collections.sort(candidates, SeedPresenceVectors.BY_ID);
+			int[] distances = vectors.distances(
+					candidates.toArray(new PresenceVector[candidates.size()]), pool);
+
+			long nextCost = 0;
+			for (int i = 0; i < distances.length; i++) {
+				nextCost += distances[i];
+				if (SeedPresenceVectors.isSampled(seed, round, vectors.getId(i), distances[i], cost,
+						samplingRate)) {
+					candidates.add(vectors.get(i));
+				}
+			}
+			cost = nextCost;
+		}
+
+		/* Weigh the candidates, and choose the centers among them. */
+		Collections.sort(candidates, SeedPresenceVectors.BY_ID);
+		PresenceVector[] sorted = candidates.toArray(new PresenceVector[candidates.size()]);
+		long[] weights = new long[sorted.length];
+		for (int closest : vectors.assign(sorted, pool)) {
+			weights[closest]++;
+		}
+		PresenceVector[] seeds =
+			SeedPresenceVectors.chooseCenters(sorted, weights, numClusters, new Random(seed));
+
+		long[] keys = new long[seeds.length];
+		for (int i = 0; i < seeds.length; i++) {
+			keys[i] = seeds[i].getId();
+		}
+		LOG.info("Chose " + seeds.length + " seeds among " + sorted.length + " candidates in " +
+				(System.currentTimeMillis() - startTime) + "ms.");
+		return new Means(seeds, keys);
+	}
+
+	/** Runs the given number of k-means iterations from the given means. */
+	public static Means cluster(ResidentVectors vectors, Means means, int numIterations,
+			ForkJoinPool pool) throws IOException {
+		for (int iteration = 0; iteration < numIterations; iteration++) {
+			long startTime = System.currentTimeMillis();
+			PresenceVector[] iterated = vectors.iterate(loadCenters(means), pool);
+
+			/* Only the clusters with vectors have a new mean, as from the reducers. */
+			int numMeans = 0;
+			for (PresenceVector mean : iterated) {
+				if (mean != null) {
+					numMeans++;
+				}
+			}
+			PresenceVector[] next = new PresenceVector[numMeans];
+			long[] keys = new long[numMeans];
+			numMeans = 0;
+			for (int i = 0; i < iterated.length; i++) {
+				if (iterated[i] != null) {
+					next[numMeans] = iterated[i];
+					keys[numMeans++] = i;
+				}
+			}
+			means = new Means(next, keys);
+
+			LOG.info("Iteration " + iteration + " left " + numMeans + " clusters in " +
+					(System.currentTimeMillis() - startTime) + "ms.");
+		}
+		return means;
+	}
+
+	/**
+	 * Returns the centers of the means as the mappers of {@link ClusterPresenceVectors} load them,
+	 * by copy, which also resets their ids to 0.
+	 */
+	public static PresenceVector[] loadCenters(Means means) {
+		PresenceVector[] centers = new PresenceVector[means.means.length];
+		for (int i = 0; i < centers.length; i++) {
+			centers[i] = new PresenceVector(means.means[i]);
+		}
+		return centers;
+	}
+
+	/** Writes the means as the output of an iteration, and marks it completed if given. */
+	private static void writeMeans(FileSystem fs, Configuration conf, Path path, Means means,
+			boolean completed) throws IOException {
+		fs.delete(path, true);
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf,
+				new Path(path, "part-r-00000"), LongWritable.class, PresenceVector.class);
+		LongWritable key = new LongWritable();
+		for (int i = 0; i < means.means.length; i++) {
+			key.set(means.keys[i]);
+			writer.append(key, means.means[i]);
+		}
+		writer.close();
+
+		if (completed) {
+			fs.create(new Path(path, "_SUCCESS")).close();
+		}
+	}
+}
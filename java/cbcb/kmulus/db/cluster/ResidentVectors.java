@@ -0,0 +1,343 @@
+package cbcb.kmulus.db.cluster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+import cbcb.kmulus.util.PresenceVector;
+
+/**
+ * {@link PresenceVector}s held off the heap, as the bits of each vector packed into direct
+ * buffers, so that k-means can run over them any number of times after they are read once.  Each
+ * pass is split among the threads of a {@link ForkJoinPool}, which keep the sums of their own
+ * vectors and exchange only those.
+ *
+ * Vectors are assigned to centers as by {@link ClusterPresenceVectors#findClosestCenter}, with
+ * ties broken by the lowest index, and the means are computed as by {@link KMeansReducer}.
+ */
+public class ResidentVectors {
+
+	/** The size of each direct buffer, in bytes. */
+	private static final int DEF_BLOCK_BYTES = 1 << 24;
+
+	private final int kmerLength;
+	private final int numWords;
+	private final int blockBytes;
+	private final int vectorsPerBlock;
+
+	private final List<IntBuffer> blocks = new ArrayList<IntBuffer>();
+	private long[] ids = new long[1024];
+	private int size;
+
+	public ResidentVectors(int kmerLength) {
+		this(kmerLength, DEF_BLOCK_BYTES);
+	}
+
+	ResidentVectors(int kmerLength, int blockBytes) {
+		this.kmerLength = kmerLength;
+		numWords = new PresenceVector(kmerLength).getNumWords();
+		this.blockBytes = Math.max(blockBytes, numWords * Integer.SIZE / Byte.SIZE);
+		vectorsPerBlock = this.blockBytes / (numWords * Integer.SIZE / Byte.SIZE);
+	}
+
+	/** Reads the (key, {@link PresenceVector}) SequenceFiles of a directory, by name. */
+	public static ResidentVectors load(FileSystem fs, Path vectorsPath, Configuration conf,
+			int kmerLength) throws IOException {
+		ResidentVectors vectors = new ResidentVectors(kmerLength);
+		FileStatus[] statuses = fs.listStatus(vectorsPath);
+		Arrays.sort(statuses);
+
+		for (FileStatus status : statuses) {
+			String name = status.getPath().getName();
+			if (status.isDir() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+			LongWritable key = new LongWritable();
+			PresenceVector value = new PresenceVector();
+			while (reader.next(key, value)) {
+				vectors.add(value);
+			}
+			reader.close();
+		}
+		return vectors;
+	}
+
+	/** Adds a copy of the vector, with its id. */
+	public void add(PresenceVector vector) {
+		if (vector.getNumWords() != numWords) {
+			throw new IllegalArgumentException("The vector of " + vector.getId() + " is not of " +
+					kmerLength + "-mers.");
+		}
+		if (size == blocks.size() * vectorsPerBlock) {
+			blocks.add(ByteBuffer.allocateDirect(blockBytes).asIntBuffer());
+		}
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+
+		IntBuffer block = blocks.get(size / vectorsPerBlock);
+		int offset = (size % vectorsPerBlock) * numWords;
+		for (int i = 0; i < numWords; i++) {
+			block.put(offset + i, vector.getWord(i));
+		}
+		ids[size++] = vector.getId();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Returns the id of the given vector. */
+	public long getId(int index) {
+		return ids[index];
+	}
+
+	/** Returns a copy of the given vector, with its id. */
+	public PresenceVector get(int index) {
+		PresenceVector vector = new PresenceVector(kmerLength);
+		vector.setId(ids[index]);
+		IntBuffer block = blocks.get(index / vectorsPerBlock);
+		int offset = (index % vectorsPerBlock) * numWords;
+		for (int i = 0; i < numWords; i++) {
+			vector.setWord(i, block.get(offset + i));
+		}
+		return vector;
+	}
+
+	/** Returns the index of the closest center of each vector. */
+	public int[] assign(PresenceVector[] centers, ForkJoinPool pool) throws IOException {
+		int[] assignment = new int[size];
+		run(new Pass(centers, assignment, false, false), pool);
+		return assignment;
+	}
+
+	/**
+	 * Returns the Hamming distance of each vector to its closest center, or 0 if the center has its
+	 * id, as {@link SeedPresenceVectors#getDistance} finds it.
+	 */
+	public int[] distances(PresenceVector[] centers, ForkJoinPool pool) throws IOException {
+		Pass pass = new Pass(centers, new int[size], false, false);
+		pass.distances = new int[size];
+		run(pass, pool);
+		return pass.distances;
+	}
+
+	/**
+	 * Runs an iteration of k-means: assigns each vector to its closest center, and returns the
+	 * mean of each center's vectors, or null for centers without any.
+	 */
+	public PresenceVector[] iterate(PresenceVector[] centers, ForkJoinPool pool)
+			throws IOException {
+		Pass pass = new Pass(centers, new int[size], true, false);
+		run(pass, pool);
+
+		PresenceVector[] means = new PresenceVector[centers.length];
+		for (int i = 0; i < means.length; i++) {
+			if (pass.sizes[i] > 0) {
+				means[i] = KMeansReducer.createCenter(pass.sums[i], pass.sizes[i], kmerLength);
+			}
+		}
+		return means;
+	}
+
+	/**
+	 * Returns the union of the vectors assigned to each center, or null for centers without any.
+	 */
+	public PresenceVector[] union(int[] assignment, int numCenters, ForkJoinPool pool)
+			throws IOException {
+		Pass pass = new Pass(new PresenceVector[numCenters], assignment, false, true);
+		run(pass, pool);
+
+		PresenceVector[] unions = new PresenceVector[numCenters];
+		for (int i = 0; i < numCenters; i++) {
+			if (pass.sizes[i] > 0) {
+				unions[i] = new PresenceVector(kmerLength);
+				for (int j = 0; j < numWords; j++) {
+					unions[i].setWord(j, pass.sums[i][j]);
+				}
+			}
+		}
+		return unions;
+	}
+
+	/* Splits a pass among the threads of the pool, and merges their sums. */
+	private void run(Pass pass, ForkJoinPool pool) throws IOException {
+		int numTasks = Math.max(1, Math.min(size, pool.getParallelism()));
+		List<Callable<Task>> tasks = new ArrayList<Callable<Task>>(numTasks);
+		for (int i = 0; i < numTasks; i++) {
+			tasks.add(new Task(pass, (int) ((long) size * i / numTasks),
+					(int) ((long) size * (i + 1) / numTasks)));
+		}
+
+		try {
+			for (Future<Task> future : pool.invokeAll(tasks)) {
+				pass.merge(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting on the pool.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * A pass over the vectors, which assigns them to the centers, or takes the given assignment
+	 * if unioning, and sums them by center: the count of each k-mer if counting, or the OR of
+	 * their words if unioning.
+	 */
+	private class Pass {
+		private final int[] centerWords;
+		private final long[] centerIds;
+		private final int[] assignment;
+		private final boolean counting;
+		private final boolean unioning;
+
+		/* The distance of each vector to its closest center, if wanted. */
+		private int[] distances;
+
+		/* The merged sums and sizes of each center. */
+		private final int[][] sums;
+		private final int[] sizes;
+
+		private Pass(PresenceVector[] centers, int[] assignment, boolean counting,
+				boolean unioning) {
+			this.assignment = assignment;
+			this.counting = counting;
+			this.unioning = unioning;
+			sums = new int[centers.length][];
+			sizes = new int[centers.length];
+
+			centerWords = new int[unioning ? 0 : centers.length * numWords];
+			centerIds = new long[unioning ? 0 : centers.length];
+			for (int i = 0; i < centerIds.length; i++) {
+				centerIds[i] = centers[i].getId();
+				for (int j = 0; j < numWords; j++) {
+					centerWords[i * numWords + j] = centers[i].getWord(j);
+				}
+			}
+		}
+
+		private void merge(Task task) {
+			for (int i = 0; i < sizes.length; i++) {
+				int[] taskSums = task.sums[i];
+				if (taskSums == null) {
+					continue;
+				}
+				sizes[i] += task.sizes[i];
+				if (sums[i] == null) {
+					sums[i] = taskSums;
+				} else {
+					for (int j = 0; j < taskSums.length; j++) {
+						sums[i][j] = unioning ? sums[i][j] | taskSums[j] : sums[i][j] + taskSums[j];
+					}
+				}
+			}
+		}
+	}
+
+	/** A pass over a range of the vectors, with sums of its own. */
+	private class Task implements Callable<Task> {
+		private final Pass pass;
+		private final int start;
+		private final int end;
+
+		private final int[][] sums;
+		private final int[] sizes;
+
+		private Task(Pass pass, int start, int end) {
+			this.pass = pass;
+			this.start = start;
+			this.end = end;
+			sums = new int[pass.sizes.length][];
+			sizes = new int[pass.sizes.length];
+		}
+
+		@Override
+		public Task call() throws IOException {
+			int numCenters = pass.centerIds.length;
+			int[] words = new int[numWords];
+
+			for (int i = start; i < end; i++) {
+				/* Copy the vector out through a view of its own, for the position. */
+				IntBuffer block = blocks.get(i / vectorsPerBlock).duplicate();
+				block.position((i % vectorsPerBlock) * numWords);
+				block.get(words);
+
+				int closestCenter = pass.assignment[i];
+				if (!pass.unioning) {
+					closestCenter = -1;
+					int minDistance = Integer.MAX_VALUE;
+					for (int c = 0; c < numCenters; c++) {
+						// If the current sequence is the same as the center, MUST map to it.
+						if (pass.centerIds[c] == ids[i] && pass.centerIds[c] >= 0) {
+							closestCenter = c;
+							minDistance = 0;
+							break;
+						}
+
+						int distance = 0;
+						int base = c * numWords;
+						for (int j = 0; j < numWords; j++) {
+							distance += Integer.bitCount(words[j] ^ pass.centerWords[base + j]);
+						}
+						if (distance < minDistance) {
+							closestCenter = c;
+							minDistance = distance;
+						}
+					}
+					if (closestCenter < 0) {
+						throw new IOException("No nearest center found for sequence: " + ids[i]);
+					}
+					pass.assignment[i] = closestCenter;
+					if (pass.distances != null) {
+						pass.distances[i] = minDistance;
+					}
+				}
+
+				if (pass.counting) {
+					int[] counts = sums[closestCenter];
+					if (counts == null) {
+						counts = sums[closestCenter] = new int[numWords * Integer.SIZE];
+					}
+					for (int j = 0; j < numWords; j++) {
+						for (int word = words[j]; word != 0; word &= word - 1) {
+							counts[j * Integer.SIZE + Integer.numberOfTrailingZeros(word)]++;
+						}
+					}
+				} else if (pass.unioning) {
+					int[] union = sums[closestCenter];
+					if (union == null) {
+						union = sums[closestCenter] = new int[numWords];
+					}
+					for (int j = 0; j < numWords; j++) {
+						union[j] |= words[j];
+					}
+				} else if (sums[closestCenter] == null) {
+					sums[closestCenter] = new int[0];
+				}
+				sizes[closestCenter]++;
+			}
+			return this;
+		}
+	}
+}
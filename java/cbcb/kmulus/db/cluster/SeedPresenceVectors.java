@@ -0,0 +1,489 @@
+package cbcb.kmulus.db.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.LongSumReducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.util.PresenceVector;
+
+/**
+ * Hadoop program that chooses the initial centers of {@link ClusterPresenceVectors} by k-means||,
+ * a k-means++ which samples many candidates per pass over the vectors rather than one.
+ *
+ * The first candidate is a vector chosen uniformly at random.  Each following pass samples every
+ * vector with probability OVERSAMPLING * NUM_CLUSTERS * d / cost, where d is the Hamming distance
+ * of the vector to its closest candidate and cost is the sum of those distances, then adds the
+ * sampled vectors to the candidates.  The cost is summed by the same pass, so each pass samples by
+ * the cost of the candidates of the pass before it, and the first pass only sums the cost.  A last
+ * pass weighs each candidate by the number of vectors closest to it, and NUM_CLUSTERS of the
+ * candidates are chosen from those by k-means++, in memory.  The Hamming distance between presence
+ * vectors is their squared Euclidean distance, so it is weighed as is, not squared.
+ *
+ * Whether a vector is sampled is decided by a hash of the seed, the pass and the id of the vector,
+ * so the centers depend only on the vectors and the seed, not on the splits of the input.  The
+ * candidates are kept in WORK_DIR/round-N, and the centers are written to OUTPUT/part-r-00000 in
+ * order of id.
+ */
+public class SeedPresenceVectors extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(SeedPresenceVectors.class);
+
+	private static final String USAGE = "SeedPresenceVectors KMER_VECTOR_INPUT WORK_DIR OUTPUT " +
+			"NUM_CLUSTERS [SEED] [NUM_ROUNDS]";
+
+	/** The number of sampling passes after the first. */
+	public static final int DEFAULT_NUM_ROUNDS = 5;
+
+	/** The expected number of vectors sampled per pass, as a multiple of the number of clusters. */
+	public static final double OVERSAMPLING = 2.0;
+
+	protected static final String COST = "COST";
+	protected static final String ROUND = "ROUND";
+	protected static final String SAMPLING_RATE = "SAMPLING_RATE";
+	protected static final String WORK_PATH = "WORK_PATH";
+
+	private static final String ROUND_PREFIX = "round-";
+	private static final String WEIGHTS_DIR = "weights";
+	private static final String LOG_DELIM = ",";
+
+	/** The counters of each pass. */
+	public static enum Seeding {COST, SAMPLED};
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new SeedPresenceVectors(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	/**
+	 * This mapper keeps the vector with the least hash of its split, which the reducer then
+	 * chooses among as the first candidate.
+	 */
+	public static class FirstMap
+			extends Mapper<LongWritable, PresenceVector, LongWritable, PresenceVector> {
+
+		private long seed;
+		private PresenceVector first;
+
+		@Override
+		protected void setup(Context context) {
+			seed = context.getConfiguration().getLong(ClusterPresenceVectors.SEED, 0);
+		}
+
+		@Override
+		public void map(LongWritable key, PresenceVector value, Context context) {
+			if (first == null || isBefore(seed, value.getId(), first.getId())) {
+				first = copy(value);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (first != null) {
+				context.write(new LongWritable(0), first);
+			}
+		}
+	}
+
+	/** Writes the vector with the least hash as (seqId, {@link PresenceVector}). */
+	public static class FirstReduce
+			extends Reducer<LongWritable, PresenceVector, LongWritable, PresenceVector> {
+
+		@Override
+		public void reduce(LongWritable key, Iterable<PresenceVector> values, Context context)
+				throws IOException, InterruptedException {
+			long seed = context.getConfiguration().getLong(ClusterPresenceVectors.SEED, 0);
+			PresenceVector first = null;
+			for (PresenceVector value : values) {
+				if (first == null || isBefore(seed, value.getId(), first.getId())) {
+					first = copy(value);
+				}
+			}
+			context.write(new LongWritable(first.getId()), first);
+		}
+	}
+
+	/**
+	 * This mapper sums the distance of each vector to its closest candidate, and writes the
+	 * vectors it samples as (seqId, {@link PresenceVector}).
+	 */
+	public static class SampleMap
+			extends Mapper<LongWritable, PresenceVector, LongWritable, PresenceVector> {
+
+		private PresenceVector[] candidates;
+		private long seed;
+		private int round;
+		private long cost;
+		private double samplingRate;
+
+		@Override
+		protected void setup(Context context) throws IOException {
+			Configuration conf = context.getConfiguration();
+			seed = conf.getLong(ClusterPresenceVectors.SEED, 0);
+			round = conf.getInt(ROUND, -1);
+			cost = conf.getLong(COST, 0);
+			samplingRate = Double.parseDouble(conf.get(SAMPLING_RATE, "0"));
+			candidates = loadCandidates(FileSystem.get(conf), conf, new Path(conf.get(WORK_PATH)),
+					round);
+		}
+
+		@Override
+		public void map(LongWritable key, PresenceVector value, Context context)
+				throws IOException, InterruptedException {
+			int distance = getDistance(candidates, value);
+			context.getCounter(Seeding.COST).increment(distance);
+
+			if (isSampled(seed, round, value.getId(), distance, cost, samplingRate)) {
+				context.getCounter(Seeding.SAMPLED).increment(1);
+				context.write(new LongWritable(value.getId()), value);
+			}
+		}
+	}
+
+	/** This mapper counts the vectors closest to each candidate, written as (index, count). */
+	public static class WeightMap
+			extends Mapper<LongWritable, PresenceVector, LongWritable, LongWritable> {
+
+		private PresenceVector[] candidates;
+		private long[] weights;
+
+		@Override
+		protected void setup(Context context) throws IOException {
+			Configuration conf = context.getConfiguration();
+			candidates = loadCandidates(FileSystem.get(conf), conf, new Path(conf.get(WORK_PATH)),
+					conf.getInt(ROUND, -1));
+			weights = new long[candidates.length];
+		}
+
+		@Override
+		public void map(LongWritable key, PresenceVector value, Context context)
+				throws IOException {
+			int closest = ClusterPresenceVectors.findClosestCenter(candidates, candidates.length,
+					value, null);
+			if (closest == -1) {
+				throw new IOException("No nearest candidate found for sequence: " + key.get());
+			}
+			weights[closest]++;
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			for (int i = 0; i < weights.length; i++) {
+				if (weights[i] > 0) {
+					context.write(new LongWritable(i), new LongWritable(weights[i]));
+				}
+			}
+		}
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 4) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String vectorInputPath = args[0];
+		Path workPath = new Path(args[1]);
+		Path outputPath = new Path(args[2]);
+		int numClusters = Integer.parseInt(args[3]);
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : new Random().nextLong();
+		int numRounds = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_NUM_ROUNDS;
+
+		LOG.info("Tool name: " + SeedPresenceVectors.class.getName());
+		LOG.info(" - vectorInputDir: " + vectorInputPath);
+		LOG.info(" - workDir: " + workPath);
+		LOG.info(" - outputDir: " + outputPath);
+		LOG.info(" - numClusters: " + numClusters);
+		LOG.info(" - seed: " + seed);
+		LOG.info(" - numRounds: " + numRounds);
+
+		Configuration conf = getConf();
+		FileSystem fs = FileSystem.get(conf);
+
+		// Delete the output directories if they exist already.
+		fs.delete(workPath, true);
+		fs.delete(outputPath, true);
+
+		long startTime = System.currentTimeMillis();
+
+		/* Choose the first candidate. */
+		Job job = createJob(vectorInputPath, new Path(workPath, ROUND_PREFIX + 0), seed);
+		job.setMapperClass(FirstMap.class);
+		job.setReducerClass(FirstReduce.class);
+		job.setNumReduceTasks(1);
+		if (!job.waitForCompletion(true)) {
+			return 1;
+		}
+
+		/* Sample the candidates, by the cost of the pass before. */
+		long cost = -1;
+		int round = 1;
+		for (; round <= numRounds + 1 && cost != 0; round++) {
+			job = createJob(vectorInputPath, new Path(workPath, ROUND_PREFIX + round), seed);
+			Configuration jobConf = job.getConfiguration();
+			jobConf.setInt(ROUND, round);
+			jobConf.setLong(COST, cost);
+			jobConf.set(SAMPLING_RATE, Double.toString(OVERSAMPLING * numClusters));
+			jobConf.set(WORK_PATH, workPath.toString());
+			job.setMapperClass(SampleMap.class);
+			job.setNumReduceTasks(0);
+			if (!job.waitForCompletion(true)) {
+				return 1;
+			}
+
+			cost = job.getCounters().findCounter(Seeding.COST).getValue();
+			LOG.info("Round " + round + " cost " + cost + " and sampled " +
+					job.getCounters().findCounter(Seeding.SAMPLED).getValue() + " vectors.");
+		}
+
+		/* Weigh the candidates. */
+		Path weightsPath = new Path(workPath, WEIGHTS_DIR);
+		job = createJob(vectorInputPath, weightsPath, seed);
+		job.getConfiguration().setInt(ROUND, round);
+		job.getConfiguration().set(WORK_PATH, workPath.toString());
+		job.setMapperClass(WeightMap.class);
+		job.setMapOutputValueClass(LongWritable.class);
+		job.setOutputValueClass(LongWritable.class);
+		job.setReducerClass(LongSumReducer.class);
+		job.setNumReduceTasks(1);
+		if (!job.waitForCompletion(true)) {
+			return 1;
+		}
+
+		/* Choose the centers among the candidates. */
+		PresenceVector[] candidates = loadCandidates(fs, conf, workPath, round);
+		long[] weights = new long[candidates.length];
+		for (FileStatus status : listParts(fs, weightsPath)) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+			LongWritable key = new LongWritable();
+			LongWritable value = new LongWritable();
+			while (reader.next(key, value)) {
+				weights[(int) key.get()] += value.get();
+			}
+			reader.close();
+		}
+
+		PresenceVector[] centers =
+			chooseCenters(candidates, weights, numClusters, new Random(seed));
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf,
+				new Path(outputPath, "part-r-00000"), LongWritable.class, PresenceVector.class);
+		for (PresenceVector center : centers) {
+			writer.append(new LongWritable(center.getId()), center);
+		}
+		writer.close();
+
+		LOG.info((System.currentTimeMillis() - startTime) + LOG_DELIM + candidates.length +
+				LOG_DELIM + centers.length);
+		return 0;
+	}
+
+	private Job createJob(String vectorInputPath, Path outputPath, long seed) throws IOException {
+		Job job = new Job(getConf(), SeedPresenceVectors.class.getName());
+		job.setJarByClass(SeedPresenceVectors.class);
+		job.getConfiguration().setLong(ClusterPresenceVectors.SEED, seed);
+
+		job.setMapOutputKeyClass(LongWritable.class);
+		job.setMapOutputValueClass(PresenceVector.class);
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(PresenceVector.class);
+
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+		FileInputFormat.addInputPath(job, new Path(vectorInputPath));
+		FileOutputFormat.setOutputPath(job, outputPath);
+		return job;
+	}
+
+	/**
+	 * Returns the Hamming distance of the vector to its closest candidate, or 0 if it is one of
+	 * them, as {@link ClusterPresenceVectors#findClosestCenter} would find it.
+	 */
+	public static int getDistance(PresenceVector[] candidates, PresenceVector value) {
+		int minDistance = Integer.MAX_VALUE;
+		for (PresenceVector candidate : candidates) {
+			if (candidate.getId() == value.getId() && candidate.getId() >= 0) {
+				return 0;
+			}
+			minDistance = Math.min(minDistance, candidate.getHammingDistance(value));
+		}
+		return minDistance;
+	}
+
+	/**
+	 * Returns whether the vector of the given id and distance is sampled in the given pass, with
+	 * probability samplingRate * distance / cost.  Nothing is sampled if the cost is unknown.
+	 */
+	public static boolean isSampled(long seed, int round, long id, long distance, long cost,
+			double samplingRate) {
+		if (cost <= 0 || distance <= 0) {
+			return false;
+		}
+		return uniform(seed, round, id) * cost < samplingRate * distance;
+	}
+
+	/** Returns whether the first id is chosen as the first candidate before the second. */
+	public static boolean isBefore(long seed, long firstId, long secondId) {
+		double firstHash = uniform(seed, 0, firstId);
+		double secondHash = uniform(seed, 0, secondId);
+		return firstHash < secondHash || (firstHash == secondHash && firstId < secondId);
+	}
+
+	/* A number in [0, 1) from a hash of the arguments, by the finalizer of SplitMix64. */
+	private static double uniform(long seed, int round, long id) {
+		long hash = seed + round * 0x9E3779B97F4A7C15L + id * 0xC2B2AE3D27D4EB4FL;
+		hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+		hash = hash ^ (hash >>> 31);
+		return (hash >>> 11) / (double) (1L << 53);
+	}
+
+	/**
+	 * Chooses the given number of centers among the candidates by k-means++, each candidate
+	 * counted as many times as its weight, and returns them in order of id.  Fewer are returned if
+	 * there are fewer distinct candidates.
+	 */
+	public static PresenceVector[] chooseCenters(PresenceVector[] candidates, long[] weights,
+			int numClusters, Random random) {
+		List<PresenceVector> centers = new ArrayList<PresenceVector>();
+		if (candidates.length <= numClusters) {
+			/* Every candidate is a center, but only the first of those with the same k-mers. */
+			for (PresenceVector candidate : candidates) {
+				boolean distinct = true;
+				for (PresenceVector center : centers) {
+					if (center.getHammingDistance(candidate) == 0) {
+						distinct = false;
+						break;
+					}
+				}
+				if (distinct) {
+					centers.add(candidate);
+				}
+			}
+		} else {
+			/* Each candidate's weighted distance to its closest center, at first its weight. */
+			long[] costs = Arrays.copyOf(weights, weights.length);
+			int[] distances = new int[candidates.length];
+			Arrays.fill(distances, Integer.MAX_VALUE);
+
+			while (centers.size() < numClusters) {
+				int chosen = choose(costs, random);
+				if (chosen < 0) {
+					break;
+				}
+				centers.add(candidates[chosen]);
+				for (int i = 0; i < candidates.length; i++) {
+					distances[i] = Math.min(distances[i],
+							candidates[i].getHammingDistance(candidates[chosen]));
+					costs[i] = weights[i] * distances[i];
+				}
+			}
+		}
+
+		Collections.sort(centers, BY_ID);
+		return centers.toArray(new PresenceVector[centers.size()]);
+	}
+
+	/* Returns an index with probability proportional to its cost, or -1 if all are 0. */
+	private static int choose(long[] costs, Random random) {
+		double total = 0;
+		for (long cost : costs) {
+			total += cost;
+		}
+		if (total <= 0) {
+			return -1;
+		}
+
+		double target = random.nextDouble() * total;
+		int last = -1;
+		for (int i = 0; i < costs.length; i++) {
+			if (costs[i] > 0) {
+				last = i;
+				target -= costs[i];
+				if (target < 0) {
+					return i;
+				}
+			}
+		}
+		return last;
+	}
+
+	/** Reads the candidates of the passes before the given one, in order of id. */
+	public static PresenceVector[] loadCandidates(FileSystem fs, Configuration conf,
+			Path workPath, int round) throws IOException {
+		List<PresenceVector> candidates = new ArrayList<PresenceVector>();
+		for (int i = 0; i < round; i++) {
+			Path roundPath = new Path(workPath, ROUND_PREFIX + i);
+			if (!fs.exists(roundPath)) {
+				continue;
+			}
+			for (FileStatus status : listParts(fs, roundPath)) {
+				SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+				LongWritable key = new LongWritable();
+				PresenceVector value = new PresenceVector();
+				while (reader.next(key, value)) {
+					candidates.add(copy(value));
+				}
+				reader.close();
+			}
+		}
+
+		Collections.sort(candidates, BY_ID);
+		return candidates.toArray(new PresenceVector[candidates.size()]);
+	}
+
+	/* The data files of a directory. */
+	private static List<FileStatus> listParts(FileSystem fs, Path path) throws IOException {
+		List<FileStatus> parts = new ArrayList<FileStatus>();
+		for (FileStatus status : fs.listStatus(path)) {
+			String name = status.getPath().getName();
+			if (!status.isDir() && !name.startsWith("_") && !name.startsWith(".")) {
+				parts.add(status);
+			}
+		}
+		return parts;
+	}
+
+	/* A copy of the vector, with its id. */
+	private static PresenceVector copy(PresenceVector vector) {
+		PresenceVector copy = new PresenceVector(vector);
+		copy.setId(vector.getId());
+		return copy;
+	}
+
+	static final Comparator<PresenceVector> BY_ID = new Comparator<PresenceVector>() {
+		@Override
+		public int compare(PresenceVector first, PresenceVector second) {
+			return first.getId() < second.getId() ? -1 : (first.getId() > second.getId() ? 1 : 0);
+		}
+	};
+}
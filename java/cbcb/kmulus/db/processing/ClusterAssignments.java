@@ -0,0 +1,133 @@
+package cbcb.kmulus.db.processing;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * The cluster of every sequence, as a dense array indexed by sequence id.  The text output of
+ * {@link PrepareClusteringOutput}, "seqId\tclusterId" lines, is compiled to a file of one int per
+ * sequence id, {@link #UNASSIGNED} for ids without a cluster, which is memory-mapped by the tasks
+ * which look clusters up.  The array starts at the smallest id assigned, which heads the file, so
+ * that the assignments of sequences added to a database hold only the range of their own ids.
+ */
+public class ClusterAssignments {
+
+	/** The cluster of sequence ids which were not assigned to one. */
+	public static final int UNASSIGNED = -1;
+
+	private final int base;
+	private final IntBuffer clusters;
+
+	private ClusterAssignments(int base, IntBuffer clusters) {
+		this.base = base;
+		this.clusters = clusters;
+	}
+
+	/**
+	 * Compiles the assignments in the text files of the given directory to the given file.
+	 *
+	 * @return the number of sequence ids held by the compiled file, from the smallest id to the
+	 *     largest.
+	 * @throws IOException if a sequence is assigned more than once.
+	 */
+	public static int compile(FileSystem fs, Path assignmentPath, Path compiledPath)
+			throws IOException {
+		int[] seqIds = new int[1024];
+		int[] clusterIds = new int[1024];
+		int numAssigned = 0;
+		int minId = Integer.MAX_VALUE;
+		int maxId = -1;
+
+		for (FileStatus status : fs.listStatus(assignmentPath)) {
+			String name = status.getPath().getName();
+			if (status.isDir() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(status.getPath())));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty()) {
+						continue;
+					}
+
+					String[] tuple = line.split("\t");
+					if (numAssigned == seqIds.length) {
+						seqIds = Arrays.copyOf(seqIds, numAssigned * 2);
+						clusterIds = Arrays.copyOf(clusterIds, numAssigned * 2);
+					}
+					int seqId = Integer.parseInt(tuple[0]);
+					seqIds[numAssigned] = seqId;
+					clusterIds[numAssigned] = Integer.parseInt(tuple[1]);
+					numAssigned++;
+					minId = Math.min(minId, seqId);
+					maxId = Math.max(maxId, seqId);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		int base = numAssigned == 0 ? 0 : minId;
+		int numIds = numAssigned == 0 ? 0 : maxId - minId + 1;
+		int[] clusters = new int[numIds];
+		Arrays.fill(clusters, UNASSIGNED);
+		for (int i = 0; i < numAssigned; i++) {
+			int index = seqIds[i] - base;
+			if (clusters[index] != UNASSIGNED) {
+				throw new IOException("Sequence " + seqIds[i] + " is assigned to both cluster " +
+						clusters[index] + " and cluster " + clusterIds[i] + ".");
+			}
+			clusters[index] = clusterIds[i];
+		}
+
+		DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(fs.create(compiledPath, true)));
+		out.writeInt(base);
+		for (int cluster : clusters) {
+			out.writeInt(cluster);
+		}
+		out.close();
+		return numIds;
+	}
+
+	/** Maps a local copy of a compiled file, as from the distributed cache. */
+	public static ClusterAssignments map(File compiledFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(compiledFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			IntBuffer ints =
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+			int base = ints.get();
+			return new ClusterAssignments(base, ints.slice());
+		} finally {
+			/* The mapping remains valid once the file is closed. */
+			raf.close();
+		}
+	}
+
+	/** Returns the number of sequence ids held, from the smallest id assigned. */
+	public int size() {
+		return clusters.limit();
+	}
+
+	/** Returns the cluster of the given sequence id, or {@link #UNASSIGNED}. */
+	public int get(long seqId) {
+		long index = seqId - base;
+		return index < 0 || index >= clusters.limit() ? UNASSIGNED : clusters.get((int) index);
+	}
+}
@@ -0,0 +1,158 @@
+package cbcb.kmulus.db.processing;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import cbcb.kmulus.util.SequenceRecord;
+
+/**
+ * Converts sequences between simple FASTA, ">seqId SEQUENCE" lines, and block-compressed
+ * SequenceFiles of (seqId, {@link SequenceRecord}), at the edges of the pipeline.  Both directions
+ * are map-only, so the records of the output are in the order of the input.
+ */
+public class ConvertSequences extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(ConvertSequences.class);
+
+	private static final String USAGE = "ConvertSequences {-toRecords|-toFasta} INPUT OUTPUT";
+
+	public static final String TO_RECORDS = "-toRecords";
+	public static final String TO_FASTA = "-toFasta";
+
+	private static final String LOG_DELIM = ",";
+	private static final String SIMPLE_FASTA_SPLIT = " ";
+
+	/** This mapper packs each simple FASTA line into a (seqId, {@link SequenceRecord}). */
+	public static class ToRecordsMap
+			extends Mapper<LongWritable, Text, LongWritable, SequenceRecord> {
+
+		private final LongWritable seqId = new LongWritable();
+		private final SequenceRecord record = new SequenceRecord();
+
+		@Override
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			byte[] bytes = value.getBytes();
+			int start = 0;
+			int end = value.getLength();
+			while (start < end && Character.isWhitespace(bytes[start])) {
+				start++;
+			}
+			while (end > start && Character.isWhitespace(bytes[end - 1])) {
+				end--;
+			}
+			if (start == end) {
+				return;
+			}
+
+			/* Skip the header character. */
+			int spaceIndex = value.find(SIMPLE_FASTA_SPLIT, start);
+			if (bytes[start] != '>' || spaceIndex < 0 || spaceIndex >= end) {
+				throw new IOException("Line at offset " + key.get() + " is not simple FASTA.");
+			}
+			seqId.set(Long.parseLong(Text.decode(bytes, start + 1, spaceIndex - start - 1)));
+			try {
+				record.set(bytes, spaceIndex + 1, end - spaceIndex - 1);
+			} catch (IOException e) {
+				throw new IOException("Sequence " + seqId.get() + ": " + e.getMessage(), e);
+			}
+			context.write(seqId, record);
+		}
+	}
+
+	/** This mapper unpacks each {@link SequenceRecord} into a simple FASTA line. */
+	public static class ToFastaMap
+			extends Mapper<LongWritable, SequenceRecord, NullWritable, Text> {
+
+		private final Text line = new Text();
+
+		@Override
+		public void map(LongWritable key, SequenceRecord value, Context context)
+				throws IOException, InterruptedException {
+			line.set(">" + key.get() + SIMPLE_FASTA_SPLIT);
+			line.append(value.getResidues(), 0, value.getLength());
+			context.write(NullWritable.get(), line);
+		}
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new ConvertSequences(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 3 || !(args[0].equals(TO_RECORDS) || args[0].equals(TO_FASTA))) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		boolean toRecords = args[0].equals(TO_RECORDS);
+		String inputPath = args[1];
+		String outputPath = args[2];
+
+		LOG.info("Tool name: " + ConvertSequences.class.getName());
+		LOG.info(" - toRecords: " + toRecords);
+		LOG.info(" - inputDir: " + inputPath);
+		LOG.info(" - outputDir: " + outputPath);
+
+		Job job = new Job(getConf(), ConvertSequences.class.getName());
+		job.setJarByClass(ConvertSequences.class);
+		job.setNumReduceTasks(0);
+
+		if (toRecords) {
+			job.setMapperClass(ConvertSequences.ToRecordsMap.class);
+			job.setOutputKeyClass(LongWritable.class);
+			job.setOutputValueClass(SequenceRecord.class);
+			job.setInputFormatClass(TextInputFormat.class);
+			job.setOutputFormatClass(SequenceFileOutputFormat.class);
+			FileOutputFormat.setCompressOutput(job, true);
+			SequenceFileOutputFormat.setOutputCompressionType(job, CompressionType.BLOCK);
+		} else {
+			job.setMapperClass(ConvertSequences.ToFastaMap.class);
+			job.setOutputKeyClass(NullWritable.class);
+			job.setOutputValueClass(Text.class);
+			job.setInputFormatClass(SequenceFileInputFormat.class);
+			job.setOutputFormatClass(TextOutputFormat.class);
+		}
+
+		FileInputFormat.addInputPath(job, new Path(inputPath));
+		FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+		// Delete the output directory if it exists already.
+		FileSystem.get(job.getConfiguration()).delete(new Path(outputPath), true);
+
+		long startTime = System.currentTimeMillis();
+
+		boolean result = job.waitForCompletion(true);
+
+		LOG.info((System.currentTimeMillis() - startTime) + LOG_DELIM + toRecords);
+
+		return result ? 0 : 1;
+	}
+}
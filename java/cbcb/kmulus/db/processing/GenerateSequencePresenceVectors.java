@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import cbcb.kmulus.util.Biology;
 import cbcb.kmulus.util.PresenceVector;
+import cbcb.kmulus.util.SequenceRecord;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
@@ -16,6 +17,7 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
@@ -32,6 +34,12 @@ public class GenerateSequencePresenceVectors extends Configured implements Tool
 
 		private static final String USAGE = "GenerateSequencePresenceVectors SEQUENCE_INPUT OUTPUT [KMER_LEN] [NUM_TASKS]";
 		private static final String KMER_LENGTH = "KMER_LENGTH";
+
+		/**
+		 * Configuration attribute for whether the input is SequenceFiles of {@link SequenceRecord},
+		 * as written by {@link ConvertSequences}, rather than simple FASTA; defaults to false.
+		 */
+		public static final String RECORD_INPUT = "RECORD_INPUT";
 		private static final String LOG_DELIM = ",";
 
 		private static final int MAX_REDUCES = 200;	  
@@ -69,20 +77,63 @@ public class GenerateSequencePresenceVectors extends Configured implements Tool
 				LongWritable seqId = new LongWritable(new Integer(line.substring(1, spaceIndex)));
 				String sequence = line.substring(spaceIndex + 1);
 				
-				// Create the feature vector.
-				PresenceVector featureVector = new PresenceVector(kmerLength);
-				featureVector.setId(seqId.get());
-				
-				for (int i = 0; i <= sequence.length() - kmerLength; i += kmerLength) {
-					int hash = Biology.getAAKmerHash(sequence.substring(i, i + kmerLength));
-					if (hash >= 0) {
-						featureVector.setKmer(hash);
-					}
-				}		
-					
-				context.write(seqId, featureVector);
+				context.write(seqId, createVector(seqId.get(), sequence, kmerLength));
 			}
 		}
+
+		/**
+		 * This mapper takes as input packed sequences, and outputs (seqId, {@link PresenceVector}).
+		 */
+		public static class RecordMap
+				extends Mapper<LongWritable, SequenceRecord, LongWritable, PresenceVector> {
+
+			private int kmerLength;
+
+			@Override
+			protected void setup(Context context) {
+				Configuration conf = context.getConfiguration();
+				kmerLength = conf.getInt(KMER_LENGTH, 3);
+			}
+
+			@Override
+			public void map(LongWritable key, SequenceRecord value, Context context)
+					throws IOException, InterruptedException {
+				context.write(key, createVector(key.get(), value, kmerLength));
+			}
+		}
+
+		/** Creates the {@link PresenceVector} of the non-overlapping k-mers of a sequence. */
+		public static PresenceVector createVector(long seqId, String sequence, int kmerLength) {
+			PresenceVector featureVector = new PresenceVector(kmerLength);
+			featureVector.setId(seqId);
+
+			for (int i = 0; i <= sequence.length() - kmerLength; i += kmerLength) {
+				int hash = Biology.getAAKmerHash(sequence.substring(i, i + kmerLength));
+				if (hash >= 0) {
+					featureVector.setKmer(hash);
+				}
+			}
+			return featureVector;
+		}
+
+		/**
+		 * Creates the {@link PresenceVector} of the non-overlapping k-mers of a record, the same as
+		 * that of its sequence, hashing the k-mers from its residue buffer.
+		 */
+		public static PresenceVector createVector(long seqId, SequenceRecord record,
+				int kmerLength) {
+			PresenceVector featureVector = new PresenceVector(kmerLength);
+			featureVector.setId(seqId);
+
+			byte[] residues = record.getResidues();
+			for (int i = 0; i <= record.getLength() - kmerLength; i += kmerLength) {
+				int hash = Biology.getAAKmerHash(residues, i, kmerLength);
+				if (hash >= 0) {
+					featureVector.setKmer(hash);
+				}
+			}
+			return featureVector;
+		}
 		
 		/**
 		 * OPTIONAL TODO(cmhill): 
@@ -130,10 +181,15 @@ public class GenerateSequencePresenceVectors extends Configured implements Tool
 		job.setMapOutputKeyClass(LongWritable.class);
 		job.setMapOutputValueClass(PresenceVector.class);
 
-		job.setMapperClass(GenerateSequencePresenceVectors.Map.class);
 		// job.setReducerClass(GenerateSequencePresenceVectors.Reduce.class);
 
-		job.setInputFormatClass(TextInputFormat.class);
+		if (job.getConfiguration().getBoolean(RECORD_INPUT, false)) {
+			job.setMapperClass(GenerateSequencePresenceVectors.RecordMap.class);
+			job.setInputFormatClass(SequenceFileInputFormat.class);
+		} else {
+			job.setMapperClass(GenerateSequencePresenceVectors.Map.class);
+			job.setInputFormatClass(TextInputFormat.class);
+		}
 		job.setOutputFormatClass(SequenceFileOutputFormat.class);
 		// job.setOutputFormatClass(TextOutputFormat.class);
 
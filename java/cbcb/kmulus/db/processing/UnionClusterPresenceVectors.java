@@ -6,7 +6,6 @@ import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -33,14 +32,12 @@ public class UnionClusterPresenceVectors extends Configured implements Tool {
 	public static final String LOG_DELIM = ",";
 	
 	/**
-	 * This mapper takes as input the cluster information and sequences, and outputs
-	 * two possible pairs, (seqId, cluster it belongs to), and (seqId, sequence).
+	 * This mapper takes as input the (cluster_id, presence_vector) pairs of the clustering, and
+	 * passes them on to be unioned by cluster.
 	 */
-	public static class Map extends Mapper<LongWritable, Text, LongWritable, PresenceVector> {
+	public static class Map extends Mapper<LongWritable, PresenceVector, LongWritable, PresenceVector> {
 
-		/**
-		 * Replace with identity mapper.
-		 */
+		@Override
 		public void map(LongWritable key, PresenceVector value, Context context) 
 				throws IOException, InterruptedException {
 			context.write(key, value);
@@ -48,23 +45,27 @@ public class UnionClusterPresenceVectors extends Configured implements Tool {
 	}
 	
 	/**
-	 * Union all Presence vectors associated with a given cluster id.
+	 * Union all Presence vectors associated with a given cluster id.  Union is associative, so
+	 * this also serves as the combiner, sending one partial union per cluster from each mapper.
 	 */
 	public static class Reduce extends Reducer<LongWritable, PresenceVector, LongWritable, PresenceVector> {
 		
 		private int kmerLength;
+		private PresenceVector clusterPV;
 		
 		protected void setup(Context context) throws IOException, InterruptedException {
 			kmerLength = context.getConfiguration().getInt(KMER_LENGTH, 3);
+			clusterPV = new PresenceVector(kmerLength);
 		}
 		
 		public void reduce(LongWritable key, Iterable<PresenceVector> values, Context context) 
 			throws IOException, InterruptedException {
 			
-			PresenceVector clusterPV = new PresenceVector(kmerLength);
+			/* Accumulate in place; the vector is written out before it is reused. */
+			clusterPV.clear();
 			
 			for (PresenceVector pv : values) {
-				clusterPV = clusterPV.union(pv);
+				clusterPV.unionEquals(pv);
 			}
 			
 			context.write(key, clusterPV);
@@ -111,6 +112,7 @@ public class UnionClusterPresenceVectors extends Configured implements Tool {
 		job.setMapOutputValueClass(PresenceVector.class);
 		
 		job.setMapperClass(UnionClusterPresenceVectors.Map.class);
+		job.setCombinerClass(UnionClusterPresenceVectors.Reduce.class);
 		job.setReducerClass(UnionClusterPresenceVectors.Reduce.class);
 		
 		job.setInputFormatClass(SequenceFileInputFormat.class);
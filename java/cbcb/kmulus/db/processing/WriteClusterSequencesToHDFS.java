@@ -22,6 +22,13 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
+/**
+ * Writes the (cluster_id, sequence) pairs of {@link WriteSequencesToCluster} to a directory per
+ * cluster.
+ *
+ * @deprecated Use {@link WritePartitions}, which joins and writes the partitions in one job.
+ */
+@Deprecated
 public class WriteClusterSequencesToHDFS extends Configured implements Tool {
 	
 	private static final Logger LOG = Logger.getLogger(WriteClusterSequencesToHDFS.class);
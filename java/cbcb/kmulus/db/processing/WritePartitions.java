@@ -0,0 +1,263 @@
+package cbcb.kmulus.db.processing;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the database partitions in a single job, by default with a map-side join: the cluster
+ * assignments are compiled by the client into {@link ClusterAssignments}, which is shipped through
+ * the distributed cache and memory-mapped by each mapper, so that mappers write each sequence
+ * straight to its cluster's partition without a shuffle.  When {@link #MAP_JOIN} is false, the
+ * sequences are instead joined with their clusters by sequence id in the reducers, as in
+ * {@link WriteSequencesToCluster}.
+ *
+ * Either way, sequences are written through {@link MultipleOutputs}.  A partition is the directory
+ * OUTPUT_DIR/[CLUSTER_ID], holding one FASTA file per task which saw any of its sequences, named
+ * seq-m-[TASK] or seq-r-[TASK].  The files are written within the task attempt and committed with
+ * it, so failed and speculative attempts leave nothing behind.
+ *
+ * Each task holds a writer open for each cluster it has seen, so the number of clusters should be
+ * kept to the low thousands.
+ */
+public class WritePartitions extends Configured implements Tool {
+
+	private static final Logger LOG = Logger.getLogger(WritePartitions.class);
+
+	private static final String USAGE =
+		"WritePartitions CLUSTER_INPUT SEQUENCE_INPUT OUTPUT_DIR [NUM_TASKS]";
+
+	public static final String LOG_DELIM = ",";
+	public static final String SIMPLE_FASTA_SPLIT = " ";
+
+	/** The name of each partition's files, within its directory. */
+	public static final String PARTITION_FILE = "seq";
+
+	/** Configuration attribute for whether to join in the mappers; defaults to true. */
+	public static final String MAP_JOIN = "MAP_JOIN";
+
+	/** Configuration attribute for the name of the compiled assignments in the cache. */
+	public static final String ASSIGNMENTS_FILE = "ASSIGNMENTS_FILE";
+
+	/* Suffix of the compiled assignments, beside the output directory. */
+	private static final String ASSIGNMENTS_SUFFIX = "_assignments";
+
+	private static final int MAX_REDUCES = 200;
+
+	/**
+	 * This mapper looks up the cluster of each sequence in the compiled assignments, and writes the
+	 * sequence in FASTA format to its cluster's partition.
+	 */
+	public static class AssignMap extends Mapper<LongWritable, Text, NullWritable, Text> {
+
+		private ClusterAssignments assignments;
+		private MultipleOutputs<NullWritable, Text> partitions;
+		private final Text record = new Text();
+
+		@Override
+		protected void setup(Context context) throws IOException {
+			Configuration conf = context.getConfiguration();
+			String name = conf.get(ASSIGNMENTS_FILE);
+
+			Path[] cached = DistributedCache.getLocalCacheFiles(conf);
+			if (cached != null) {
+				for (Path path : cached) {
+					if (path.getName().equals(name)) {
+						assignments = ClusterAssignments.map(new File(path.toUri().getPath()));
+					}
+				}
+			}
+			if (assignments == null) {
+				throw new IOException("The assignments " + name + " were not in the cache.");
+			}
+
+			partitions = new MultipleOutputs<NullWritable, Text>(context);
+		}
+
+		@Override
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			String line = value.toString().trim();
+			if (line.isEmpty()) {
+				return;
+			}
+
+			/* Skip the header character. */
+			int spaceIndex = line.indexOf(SIMPLE_FASTA_SPLIT);
+			long seqId = Long.parseLong(line.substring(1, spaceIndex));
+			int clusterId = assignments.get(seqId);
+			if (clusterId == ClusterAssignments.UNASSIGNED) {
+				throw new IOException("Sequence '" + seqId + "' was not assigned to a cluster.");
+			}
+
+			write(partitions, Integer.toString(clusterId), line, record);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			partitions.close();
+		}
+	}
+
+	/**
+	 * This reducer receives a sequence id, with the cluster it belongs to and its sequence, and
+	 * writes the sequence in FASTA format to its cluster's partition.
+	 */
+	public static class Reduce extends Reducer<LongWritable, Text, NullWritable, Text> {
+
+		private MultipleOutputs<NullWritable, Text> partitions;
+		private final Text record = new Text();
+
+		@Override
+		protected void setup(Context context) {
+			partitions = new MultipleOutputs<NullWritable, Text>(context);
+		}
+
+		@Override
+		public void reduce(LongWritable key, Iterable<Text> values, Context context)
+				throws IOException, InterruptedException {
+			String sequence = null;
+			String clusterId = null;
+
+			int count = 0;
+			for (Text value : values) {
+				String line = value.toString().trim();
+				if (line.startsWith(">")) {
+					sequence = line;
+				} else {
+					clusterId = line;
+				}
+				count++;
+			}
+			if (count != 2 || sequence == null || clusterId == null) {
+				throw new IOException("Sequence '" + key.get() + "' had " + count + " reduce "
+						+ "values. Expected 2 (one for the sequence, one for the cluster).");
+			}
+
+			write(partitions, clusterId, sequence, record);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			partitions.close();
+		}
+	}
+
+	/**
+	 * Writes a simple FASTA line to the given cluster's partition, with the header and the sequence
+	 * on lines of their own.
+	 */
+	private static void write(MultipleOutputs<NullWritable, Text> partitions, String clusterId,
+			String line, Text record) throws IOException, InterruptedException {
+		int split = line.indexOf(SIMPLE_FASTA_SPLIT);
+		record.set(line.substring(0, split) + "\n" + line.substring(split + 1).trim());
+		partitions.write(NullWritable.get(), record, clusterId + Path.SEPARATOR + PARTITION_FILE);
+	}
+
+	public static void main(String[] args) {
+		int result = 1;
+
+		try {
+			result = ToolRunner.run(new WritePartitions(), args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Job failed.");
+		}
+		System.exit(result);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println(USAGE);
+			return -1;
+		}
+
+		String clusterInputPath = args[0];
+		String sequenceInputPath = args[1];
+		String outputPath = args[2];
+
+		LOG.info("Tool name: " + WritePartitions.class.getName());
+		LOG.info(" - clusterInputDir: " + clusterInputPath);
+		LOG.info(" - sequenceInputDir: " + sequenceInputPath);
+		LOG.info(" - outputDir: " + outputPath);
+
+		Job job = new Job(getConf(), WritePartitions.class.getName());
+		job.setJarByClass(WritePartitions.class);
+		Configuration conf = job.getConfiguration();
+		boolean mapJoin = conf.getBoolean(MAP_JOIN, true);
+		LOG.info(" - mapJoin: " + mapJoin);
+
+		job.setMapOutputKeyClass(LongWritable.class);
+		job.setMapOutputValueClass(Text.class);
+		job.setOutputKeyClass(NullWritable.class);
+		job.setOutputValueClass(Text.class);
+
+		job.setInputFormatClass(TextInputFormat.class);
+		/* Every record goes to a named output; don't create empty default part files. */
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(sequenceInputPath));
+		FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+		int reduceTasks = MAX_REDUCES;
+		if (args.length > 3) {
+			reduceTasks = Integer.parseInt(args[3]);
+		}
+
+		// Delete the output directory if it exists already.
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(new Path(outputPath), true);
+
+		long startTime = System.currentTimeMillis();
+		Path assignmentsPath = new Path(outputPath + ASSIGNMENTS_SUFFIX);
+
+		if (mapJoin) {
+			/* Compile the assignments, and ship them to the mappers. */
+			int numIds = ClusterAssignments.compile(fs, new Path(clusterInputPath), assignmentsPath);
+			LOG.info("Compiled the assignments of " + numIds + " sequence ids in " +
+					(System.currentTimeMillis() - startTime) + "ms.");
+
+			Path qualified = fs.makeQualified(assignmentsPath);
+			DistributedCache.addCacheFile(qualified.toUri(), conf);
+			conf.set(ASSIGNMENTS_FILE, qualified.getName());
+
+			job.setMapperClass(WritePartitions.AssignMap.class);
+			reduceTasks = 0;
+		} else {
+			FileInputFormat.addInputPath(job, new Path(clusterInputPath));
+			job.setMapperClass(WriteSequencesToCluster.Map.class);
+			job.setReducerClass(WritePartitions.Reduce.class);
+		}
+		job.setNumReduceTasks(reduceTasks);
+
+		boolean result = job.waitForCompletion(true);
+		if (mapJoin) {
+			fs.delete(assignmentsPath, false);
+		}
+
+		LOG.info((System.currentTimeMillis() - startTime) + LOG_DELIM + reduceTasks);
+
+		return result ? 0 : 1;
+	}
+}
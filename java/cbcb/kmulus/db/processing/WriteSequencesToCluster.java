@@ -23,6 +23,12 @@ public class WriteSequencesToCluster  extends Configured implements Tool {
 	private static final Logger LOG = Logger.getLogger(WriteSequencesToCluster.class);
 	
 	private static final String USAGE = "WriteSequencesToCluster CLUSTER_INPUT SEQUENCE_INPUT BASE_OUTPUT_DIR OUTPUT_DIR NUM_CLUSTERS [NUM_TASKS]";
+
+	/* The usage of main, which writes the partitions rather than the pairs. */
+	private static final String MAIN_USAGE = USAGE + "\n" +
+		"\tWrites the partition of each cluster to BASE_OUTPUT_DIR/CLUSTER_ID, by\n" +
+		"\tWritePartitions.  OUTPUT_DIR held the intermediate pairs, which are no longer\n" +
+		"\twritten, and NUM_CLUSTERS is not needed; both are accepted for compatibility.";
 	
 	public static final String LOG_DELIM = ",";
 	public static final String SIMPLE_FASTA_SPLIT = " ";
@@ -98,12 +104,25 @@ public class WriteSequencesToCluster  extends Configured implements Tool {
 		}
 	}
 	
+	/**
+	 * Writes the partitions of the clusters to BASE_OUTPUT_DIR, as this job followed by
+	 * WriteClusterSequencesToHDFS did, by {@link WritePartitions}, which joins and writes them in
+	 * one job.  OUTPUT_DIR and NUM_CLUSTERS are checked but not used; see MAIN_USAGE.
+	 */
 	public static void main(String[] args) {
 		int result = 1;
 
+		if (args.length < 5) {
+			System.out.println(MAIN_USAGE);
+			System.exit(-1);
+		}
+		Integer.parseInt(args[4]);
+
 		try {
-			result = ToolRunner.run(new WriteSequencesToCluster(), args);
-			result = ToolRunner.run(new WriteClusterSequencesToHDFS(), args);
+			String[] partitionArgs = args.length > 5 ?
+					new String[]{args[0], args[1], args[2], args[5]} :
+					new String[]{args[0], args[1], args[2]};
+			result = ToolRunner.run(new WritePartitions(), partitionArgs);
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.out.println("Job failed.");
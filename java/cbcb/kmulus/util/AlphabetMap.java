@@ -15,6 +15,9 @@ import com.google.common.collect.Maps;
  * single letter.  Along with the obvious mapping of amino acid to alphabet letter, also allows for
  * direct lookup from the DNA triplet to the alphabet letter.
  * 
+ * Lookups on the hot path should use the array backed {@link CompiledAlphabetMap} from
+ * {@link #compile()}.
+ * 
  * @author CH Albach
  */
 public class AlphabetMap {
@@ -24,6 +27,7 @@ public class AlphabetMap {
 	private final Map<String, Character> revCompDnaToAlphabet;
 	
 	private final int alphabetSize;
+	private final CompiledAlphabetMap compiled;
 
 	/**
 	 * Takes an alphabet as a string in the form '(A B C) (D E) (F) (G H)', where A B and C are
@@ -48,24 +52,33 @@ public class AlphabetMap {
 		revCompDnaToAlphabet = Maps.newHashMap();
 		alphabetSize = classes.length;
 		initAlphabet(classes, table);
+		compiled = new CompiledAlphabetMap(
+				aaToAlphabet, dnaToAlphabet, revCompDnaToAlphabet, alphabetSize);
 	}
 	
 	public int size() {
 		return alphabetSize;
 	}
 
+	/** Returns the immutable, array backed form of this alphabet. */
+	public CompiledAlphabetMap compile() {
+		return compiled;
+	}
+
 	public char get(char aa) throws IOException {
-		if (!aaToAlphabet.containsKey(aa)) {
+		byte letter = compiled.get(aa);
+		if (letter == CompiledAlphabetMap.NONE) {
 			throw new IOException("Amino acid '" + aa + "' was not present in the alphabet.");
 		}
-		return aaToAlphabet.get(aa);
+		return (char) letter;
 	}
 	
 	public char get(String triplet) throws IOException {
-		if (!dnaToAlphabet.containsKey(triplet)) {
+		Character letter = dnaToAlphabet.get(triplet);
+		if (letter == null) {
 			throw new IOException("Triplet '" + triplet + "' was not present in the alphabet.");
 		}
-		return dnaToAlphabet.get(triplet);
+		return letter;
 	}
 	
 	public char revCompGet(String triplet) {
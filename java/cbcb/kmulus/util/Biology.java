@@ -1,6 +1,7 @@
 package cbcb.kmulus.util;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -13,6 +14,23 @@ import com.google.common.collect.Maps;
 public class Biology {
 
 	public static final char[] NUCLEOTIDES = {'A', 'T', 'C', 'G'};
+
+	/** The number of distinct codons, each indexed by {@link #getCodonIndex(String)}. */
+	public static final int NUM_CODONS = 64;
+
+	/*
+	 * The 2 bit code of each nucleotide, in either case, or -1.  Complementary nucleotides sum to
+	 * 3.  Declared ahead of the alphabets below, whose construction uses it.
+	 */
+	private static final byte[] NUCLEOTIDE_CODES = new byte[256];
+
+	static {
+		Arrays.fill(NUCLEOTIDE_CODES, (byte) -1);
+		NUCLEOTIDE_CODES['A'] = NUCLEOTIDE_CODES['a'] = 0;
+		NUCLEOTIDE_CODES['C'] = NUCLEOTIDE_CODES['c'] = 1;
+		NUCLEOTIDE_CODES['G'] = NUCLEOTIDE_CODES['g'] = 2;
+		NUCLEOTIDE_CODES['T'] = NUCLEOTIDE_CODES['t'] = 3;
+	}
 	public static final String[] TRIPLETS = {"AAA", "AAT", "AAC", "AAG", "ATA", "ATT", "ATC", "ATG",
 		"ACA", "ACT", "ACC", "ACG", "AGA", "AGT", "AGC", "AGG", "TAA", "TAT", "TAC", "TAG", "TTA",
 		"TTT", "TTC", "TTG", "TCA", "TCT", "TCC", "TCG", "TGA", "TGT", "TGC", "TGG", "CAA", "CAT",
@@ -109,6 +127,27 @@ public class Biology {
 		return hash;
 	}
 	
+	/**
+	 * Computes the hash index value of the amino acid k-mer in residues[start, start + k), the same
+	 * as {@link #getAAKmerHash(String)} of those residues, without creating a String.
+	 * 
+	 * @param residues amino acids, as bytes
+	 * @return the hash index
+	 */
+	public static int getAAKmerHash(byte[] residues, int start, int k) {
+		int posValue = 1;
+		int hash = 0;
+		for (int i = 0; i < k; i++) {
+			int aaHash = getAAHash((char) (residues[start + i] & 0xff)) * posValue;
+			if (aaHash == -1) {
+				return -1;
+			}
+			hash += aaHash;
+			posValue *= k;
+		}
+		return hash;
+	}
+	
 	/**
 	 * Computes the hash index value for the given compressed alphabet k-mer.
 	 * 
@@ -145,6 +184,32 @@ public class Biology {
 		return kmers;
 	} 
 	
+	/**
+	 * Returns the 2 bit code of the given nucleotide: 0, 1, 2 or 3 for A, C, G or T, or -1 if it
+	 * is not a nucleotide.
+	 * 
+	 * @param base a nucleotide, as a character or an unsigned byte
+	 */
+	public static int getNucleotideCode(int base) {
+		return base < 0 || base >= NUCLEOTIDE_CODES.length ? -1 : NUCLEOTIDE_CODES[base];
+	}
+	
+	/**
+	 * Returns the 6 bit index of the given codon, formed from the codes of its nucleotides from
+	 * first to last, or -1 if it holds anything but nucleotides.
+	 */
+	public static int getCodonIndex(String triplet) {
+		int index = 0;
+		for (int i = 0; i < 3; i++) {
+			int code = getNucleotideCode(triplet.charAt(i));
+			if (code < 0) {
+				return -1;
+			}
+			index = (index << 2) | code;
+		}
+		return index;
+	}
+	
 	/** Takes the reverse complement of the given DNA sequence. */
 	public static String revComp(String dna) {
 		StringBuilder revComp = new StringBuilder();
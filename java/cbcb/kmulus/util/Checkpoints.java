@@ -0,0 +1,113 @@
+package cbcb.kmulus.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Records which steps of a pipeline have completed, so that a pipeline which is run again skips
+ * the steps whose inputs and parameters are unchanged.  A step is identified by its name and a
+ * fingerprint, a hash of its parameters and of the path, size and modification time of every file
+ * of its inputs, and its marker holds the fingerprint it completed with.
+ *
+ * A step may also be marked as started, for steps which can resume their own partial output when
+ * they are run again with the same fingerprint.
+ */
+public class Checkpoints {
+
+	private static final String DONE_EXT = ".done";
+	private static final String STARTED_EXT = ".started";
+
+	private final FileSystem fs;
+	private final Path dir;
+
+	/** Creates the checkpoints kept in the given directory. */
+	public Checkpoints(FileSystem fs, Path dir) {
+		this.fs = fs;
+		this.dir = dir;
+	}
+
+	/**
+	 * Returns the fingerprint of the given input paths, files or directories, and parameters.  An
+	 * input which does not exist has a fingerprint of its own.
+	 */
+	public String fingerprint(Path[] inputs, String... params) throws IOException {
+		Hasher hasher = Hashing.md5().newHasher();
+		for (String param : params) {
+			hasher.putString(param).putChar('\n');
+		}
+		for (Path input : inputs) {
+			hasher.putString(fs.makeQualified(input).toString()).putChar('\n');
+			if (fs.exists(input)) {
+				addFiles(hasher, fs.getFileStatus(input));
+			} else {
+				hasher.putString("missing\n");
+			}
+		}
+		return hasher.hash().toString();
+	}
+
+	/* Adds the files under the given status to the hash, in order of name. */
+	private void addFiles(Hasher hasher, FileStatus status) throws IOException {
+		if (status.isDir()) {
+			FileStatus[] children = fs.listStatus(status.getPath());
+			Arrays.sort(children);
+			for (FileStatus child : children) {
+				addFiles(hasher, child);
+			}
+		} else {
+			hasher.putString(status.getPath().getName()).putChar('\t')
+					.putLong(status.getLen()).putLong(status.getModificationTime());
+		}
+	}
+
+	/** Returns whether the step completed with the given fingerprint. */
+	public boolean isDone(String step, String fingerprint) throws IOException {
+		return fingerprint.equals(read(new Path(dir, step + DONE_EXT)));
+	}
+
+	/** Marks the step as completed with the given fingerprint. */
+	public void markDone(String step, String fingerprint) throws IOException {
+		write(new Path(dir, step + DONE_EXT), fingerprint);
+		fs.delete(new Path(dir, step + STARTED_EXT), false);
+	}
+
+	/** Returns whether the step was last started with the given fingerprint. */
+	public boolean wasStarted(String step, String fingerprint) throws IOException {
+		return fingerprint.equals(read(new Path(dir, step + STARTED_EXT)));
+	}
+
+	/** Marks the step as started with the given fingerprint, and no longer completed. */
+	public void markStarted(String step, String fingerprint) throws IOException {
+		fs.delete(new Path(dir, step + DONE_EXT), false);
+		write(new Path(dir, step + STARTED_EXT), fingerprint);
+	}
+
+	/* Returns the fingerprint in the given marker, or null if there is none. */
+	private String read(Path marker) throws IOException {
+		if (!fs.exists(marker)) {
+			return null;
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(marker)));
+		try {
+			return in.readLine();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void write(Path marker, String fingerprint) throws IOException {
+		PrintWriter out = new PrintWriter(fs.create(marker, true));
+		out.println(fingerprint);
+		out.close();
+	}
+}
@@ -0,0 +1,82 @@
+package cbcb.kmulus.util;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The immutable, array backed form of an {@link AlphabetMap}, for lookups on the hot path.
+ * Residues are looked up by their character code and codons by their 6 bit index from
+ * {@link Biology#getCodonIndex(String)}, each in a single array access.  Lookups which are not in
+ * the alphabet return {@link #NONE} rather than throwing.  Obtain one from
+ * {@link AlphabetMap#compile()}.
+ */
+public final class CompiledAlphabetMap {
+
+	/** Returned for a residue or codon which is not in the alphabet. */
+	public static final byte NONE = 0;
+
+	private final byte[] residues = new byte[128];
+	private final byte[] codons = new byte[Biology.NUM_CODONS];
+	private final byte[] revCompCodons = new byte[Biology.NUM_CODONS];
+
+	private final int size;
+
+	CompiledAlphabetMap(Map<Character, Character> aaToAlphabet,
+			Map<String, Character> dnaToAlphabet, Map<String, Character> revCompDnaToAlphabet,
+			int size) {
+		this.size = size;
+
+		for (Map.Entry<Character, Character> entry : aaToAlphabet.entrySet()) {
+			if (entry.getKey() < residues.length) {
+				residues[entry.getKey()] = (byte) entry.getValue().charValue();
+			}
+		}
+		for (Map.Entry<String, Character> entry : dnaToAlphabet.entrySet()) {
+			codons[Biology.getCodonIndex(entry.getKey())] = (byte) entry.getValue().charValue();
+		}
+		for (Map.Entry<String, Character> entry : revCompDnaToAlphabet.entrySet()) {
+			revCompCodons[Biology.getCodonIndex(entry.getKey())] =
+				(byte) entry.getValue().charValue();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Returns the alphabet letter of the given amino acid, or {@link #NONE}. */
+	public byte get(int residue) {
+		return residue < 0 || residue >= residues.length ? NONE : residues[residue];
+	}
+
+	/** Returns the alphabet letter which the given codon encodes. */
+	public byte getCodon(int codon) {
+		return codons[codon];
+	}
+
+	/**
+	 * Returns the alphabet letter which the reverse complement of the given codon encodes, so that
+	 * the reverse strand may be read without building it.
+	 */
+	public byte getRevCompCodon(int codon) {
+		return revCompCodons[codon];
+	}
+
+	/**
+	 * Compresses the amino acids in src[start, start + length) to their alphabet letters, written
+	 * to dest from destStart.
+	 *
+	 * @throws IOException if an amino acid is not in the alphabet.
+	 */
+	public void encode(byte[] src, int start, int length, byte[] dest, int destStart)
+			throws IOException {
+		for (int i = 0; i < length; i++) {
+			byte letter = get(src[start + i] & 0xff);
+			if (letter == NONE) {
+				throw new IOException("Amino acid '" + (char) (src[start + i] & 0xff) +
+						"' at position " + i + " was not present in the alphabet.");
+			}
+			dest[destStart + i] = letter;
+		}
+	}
+}
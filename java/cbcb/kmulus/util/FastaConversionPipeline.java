@@ -0,0 +1,329 @@
+package cbcb.kmulus.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts local FASTA files to the simple FASTA format, one ">id sequence" line per sequence, in
+ * a pipeline: the calling thread reads the records into batches with a {@link MappedFastaReader},
+ * a pool of workers converts the batches, and a writer writes the converted batches in the order
+ * they were read.  The output is sharded by size: a new shard is started at the first record after
+ * the current shard reaches the split size, and each shard is named by the first id it holds, as
+ * PREFIX.id.simple_faa.
+ *
+ * Each record is converted to a fixed number of sequences, so the ids of the record numbered r are
+ * r * n to r * n + n - 1, whichever thread converts it, and the output does not depend on the
+ * number of threads.
+ */
+public class FastaConversionPipeline {
+
+	public static final String SHARD_EXT = ".simple_faa";
+
+	/** Shards default to the size of an HDFS block, so each is read by a single map task. */
+	public static final long DEF_SPLIT_BYTES = 64L << 20;
+
+	/* Batches are cut after this many bytes of input sequence. */
+	private static final int BATCH_BYTES = 1 << 20;
+
+	/** Converts the sequence of each record; must be safe to call from several threads at once. */
+	public interface Converter {
+
+		/** Returns the number of sequences each record is converted to. */
+		int getSequencesPerRecord();
+
+		/**
+		 * Converts the sequence in sequence[start, start + length), adding exactly
+		 * {@link #getSequencesPerRecord()} sequences to the output.
+		 */
+		void convert(byte[] sequence, int start, int length, Output out) throws IOException;
+	}
+
+	/** Collects the converted sequences of a batch as simple FASTA lines, numbered in order. */
+	public static class Output {
+
+		private long nextId;
+		private byte[] data = new byte[BATCH_BYTES];
+		private int length;
+
+		/* The end of each record's lines in data, at which a new shard may start. */
+		private int[] recordEnds = new int[64];
+		private int numRecords;
+
+		private Output(long firstId) {
+			this.nextId = firstId;
+		}
+
+		/** Adds a sequence, in sequence[start, start + length), as the next id's line. */
+		public void add(byte[] sequence, int start, int length) {
+			String prefix = ">" + nextId++ + " ";
+			ensureCapacity(prefix.length() + length + 1);
+			for (int i = 0; i < prefix.length(); i++) {
+				data[this.length++] = (byte) prefix.charAt(i);
+			}
+			System.arraycopy(sequence, start, data, this.length, length);
+			this.length += length;
+			data[this.length++] = '\n';
+		}
+
+		private void endRecord() {
+			if (numRecords == recordEnds.length) {
+				recordEnds = Arrays.copyOf(recordEnds, numRecords * 2);
+			}
+			recordEnds[numRecords++] = length;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > data.length) {
+				data = Arrays.copyOf(data, Math.max(length + extra, data.length * 2));
+			}
+		}
+	}
+
+	/** The sequences of consecutive records, as read. */
+	private static class Batch {
+		private final long firstRecord;
+		private byte[] sequences = new byte[BATCH_BYTES];
+		private int length;
+		private int[] starts = new int[64];
+		private int numRecords;
+
+		private Batch(long firstRecord) {
+			this.firstRecord = firstRecord;
+		}
+
+		private void add(byte[] sequence, int sequenceLength) {
+			if (numRecords + 1 >= starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			if (length + sequenceLength > sequences.length) {
+				sequences = Arrays.copyOf(sequences,
+						Math.max(length + sequenceLength, sequences.length * 2));
+			}
+			starts[numRecords] = length;
+			System.arraycopy(sequence, 0, sequences, length, sequenceLength);
+			length += sequenceLength;
+			starts[++numRecords] = length;
+		}
+	}
+
+	private final Converter converter;
+	private final String outputPrefix;
+	private final long splitBytes;
+	private final int numThreads;
+
+	/**
+	 * @param outputPrefix - The path and name prefix of the output shards.
+	 * @param splitBytes - The size at which a shard is closed.
+	 * @param numThreads - The number of threads which convert records.
+	 */
+	public FastaConversionPipeline(Converter converter, String outputPrefix, long splitBytes,
+			int numThreads) {
+		this.converter = converter;
+		this.outputPrefix = outputPrefix;
+		this.splitBytes = splitBytes;
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Runs a tool whose usage is "SEQUENCE_DIR OUTPUT_PREFIX [SPLIT_BYTES [NUM_THREADS]]",
+	 * converting the files of the sequence directory in name order.
+	 *
+	 * @return 0, or -1 if the arguments do not match the usage.
+	 */
+	public static int run(String usage, String[] args, Converter converter) throws Exception {
+		if (args.length < 2) {
+			System.out.println(usage);
+			return -1;
+		}
+
+		long splitBytes = args.length > 2 ? Long.parseLong(args[2]) : DEF_SPLIT_BYTES;
+		int numThreads = args.length > 3 ?
+				Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		List<File> files = new ArrayList<File>();
+		File[] listOfFiles = new File(args[0]).listFiles();
+		if (listOfFiles == null) {
+			throw new IOException(args[0] + " is not a directory.");
+		}
+		for (File file : listOfFiles) {
+			if (file.isFile()) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+
+		System.out.println("Converting " + files.size() + " files on " + numThreads +
+				" threads, in shards of " + splitBytes + " bytes.");
+		long startTime = System.currentTimeMillis();
+		long numSequences =
+			new FastaConversionPipeline(converter, args[1], splitBytes, numThreads).convert(files);
+		System.out.println("Wrote " + numSequences + " sequences in " +
+				(System.currentTimeMillis() - startTime) + "ms.");
+		return 0;
+	}
+
+	/**
+	 * Converts the records of the given files, in order.
+	 *
+	 * @return the number of sequences written.
+	 */
+	public long convert(List<File> files) throws IOException, InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		ExecutorService writerThread = Executors.newSingleThreadExecutor();
+
+		/* Bounds the batches in flight, and so the memory held by the pipeline. */
+		BlockingQueue<Future<Output>> pending =
+			new ArrayBlockingQueue<Future<Output>>(numThreads * 2);
+		Future<Long> writer = writerThread.submit(new Writer(pending));
+
+		try {
+			long numRecords = 0;
+			Batch batch = new Batch(numRecords);
+			for (File file : files) {
+				MappedFastaReader reader = new MappedFastaReader(file);
+				try {
+					while (reader.next()) {
+						batch.add(reader.getSequence(), reader.getSequenceLength());
+						numRecords++;
+						if (batch.length >= BATCH_BYTES) {
+							enqueue(pending, workers.submit(new Worker(batch)), writer);
+							batch = new Batch(numRecords);
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			if (batch.numRecords > 0) {
+				enqueue(pending, workers.submit(new Worker(batch)), writer);
+			}
+
+			/* An empty batch marks the end of the input. */
+			FutureTask<Output> end = new FutureTask<Output>(new Callable<Output>() {
+				public Output call() {
+					return null;
+				}
+			});
+			end.run();
+			enqueue(pending, end, writer);
+
+			return writer.get();
+
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to convert the sequences.", e.getCause());
+		} finally {
+			workers.shutdownNow();
+			writerThread.shutdownNow();
+		}
+	}
+
+	/** Queues a batch for the writer, unless the writer has failed. */
+	private static void enqueue(BlockingQueue<Future<Output>> pending, Future<Output> batch,
+			Future<Long> writer) throws InterruptedException, ExecutionException {
+		while (!pending.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			if (writer.isDone()) {
+				/* Rethrows the writer's failure. */
+				writer.get();
+				throw new IllegalStateException("The writer finished before the input.");
+			}
+		}
+	}
+
+	/** Converts a batch of records. */
+	private class Worker implements Callable<Output> {
+
+		private final Batch batch;
+
+		private Worker(Batch batch) {
+			this.batch = batch;
+		}
+
+		public Output call() throws IOException {
+			int perRecord = converter.getSequencesPerRecord();
+			Output out = new Output(batch.firstRecord * perRecord);
+			for (int r = 0; r < batch.numRecords; r++) {
+				long expectedId = out.nextId + perRecord;
+				converter.convert(batch.sequences, batch.starts[r],
+						batch.starts[r + 1] - batch.starts[r], out);
+				if (out.nextId != expectedId) {
+					throw new IllegalStateException("Record " + (batch.firstRecord + r) +
+							" was converted to " + (out.nextId - expectedId + perRecord) +
+							" sequences rather than " + perRecord + ".");
+				}
+				out.endRecord();
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Writes the converted batches in order, starting a new shard once one is full.  The first
+	 * shard is opened with the first record, so that no shard is written for empty input.
+	 */
+	private class Writer implements Callable<Long> {
+
+		private final BlockingQueue<Future<Output>> pending;
+
+		private Writer(BlockingQueue<Future<Output>> pending) {
+			this.pending = pending;
+		}
+
+		public Long call() throws Exception {
+			int perRecord = converter.getSequencesPerRecord();
+			long numRecords = 0;
+			long shardBytes = 0;
+			OutputStream out = null;
+
+			try {
+				Output batch;
+				while ((batch = pending.take().get()) != null) {
+					int start = 0;
+					for (int r = 0; r < batch.numRecords; r++) {
+						if (out == null || shardBytes >= splitBytes) {
+							if (out != null) {
+								out.close();
+							}
+							out = openShard(numRecords * perRecord);
+							shardBytes = 0;
+						}
+
+						int end = batch.recordEnds[r];
+						out.write(batch.data, start, end - start);
+						shardBytes += end - start;
+						start = end;
+						numRecords++;
+					}
+				}
+			} finally {
+				if (out != null) {
+					out.close();
+				}
+			}
+			return numRecords * perRecord;
+		}
+
+		private OutputStream openShard(long firstId) throws IOException {
+			return new BufferedOutputStream(
+					new FileOutputStream(outputPrefix + "." + firstId + SHARD_EXT), 1 << 16);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package cbcb.kmulus.util;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * Reads multi-line FASTA files directly, as records of the sequence's external id (its header up
+ * to the first whitespace) and its sequence, with the lines joined.  Files are split anywhere: a
+ * record belongs to the split holding the '>' which starts its header, and is read past the end of
+ * the split if need be.  Compressed files are not split.  See {@link FastaRecordReader}.
+ */
+public class FastaInputFormat extends FileInputFormat<Text, Text> {
+
+	@Override
+	public RecordReader<Text, Text> createRecordReader(InputSplit split,
+			TaskAttemptContext context) {
+		return new FastaRecordReader();
+	}
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+	}
+}
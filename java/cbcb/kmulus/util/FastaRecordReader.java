@@ -0,0 +1,160 @@
+package cbcb.kmulus.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Reads the FASTA records whose headers start within a {@link FileSplit}.  A split which starts
+ * mid-file resynchronizes on the first line starting with '>' at or after its start; the last
+ * record is read past the split's end, up to the next header.  Lines before the first header, and
+ * whitespace within the sequence, are dropped.  The key and value are reused between records.
+ */
+public class FastaRecordReader extends RecordReader<Text, Text> {
+
+	private static final byte HEADER = '>';
+
+	private long start;
+	private long end;
+	private long pos;
+	private LineReader in;
+
+	/* The next header line, and its position, or null at the end of the file. */
+	private final Text line = new Text();
+	private boolean hasHeader;
+	private long headerPos;
+
+	private final Text key = new Text();
+	private final Text value = new Text();
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context)
+			throws IOException {
+		FileSplit split = (FileSplit) genericSplit;
+		Configuration conf = context.getConfiguration();
+		start = split.getStart();
+		end = start + split.getLength();
+
+		Path file = split.getPath();
+		FileSystem fs = file.getFileSystem(conf);
+		FSDataInputStream fileIn = fs.open(file);
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+
+		if (codec != null) {
+			in = new LineReader(codec.createInputStream(fileIn), conf);
+			end = Long.MAX_VALUE;
+			pos = start;
+
+		} else if (start != 0) {
+			/* Skip the rest of the line holding the byte before the split; it is not ours. */
+			fileIn.seek(start - 1);
+			in = new LineReader((InputStream) fileIn, conf);
+			pos = start - 1;
+			pos += in.readLine(line);
+
+		} else {
+			in = new LineReader((InputStream) fileIn, conf);
+			pos = start;
+		}
+
+		readToHeader();
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		if (!hasHeader || headerPos >= end) {
+			return false;
+		}
+
+		/* The external id is the header up to its first whitespace. */
+		int idEnd = 1;
+		while (idEnd < line.getLength() && !isWhitespace(line.getBytes()[idEnd])) {
+			idEnd++;
+		}
+		key.set(line.getBytes(), 1, idEnd - 1);
+
+		value.clear();
+		readToHeader();
+		return true;
+	}
+
+	@Override
+	public Text getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public Text getCurrentValue() {
+		return value;
+	}
+
+	@Override
+	public float getProgress() {
+		if (start == end || end == Long.MAX_VALUE) {
+			return 0.0f;
+		}
+		return Math.min(1.0f, (pos - start) / (float) (end - start));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads lines up to the next header, appending the sequence lines to the value, and leaves
+	 * the header in the line buffer.
+	 */
+	private void readToHeader() throws IOException {
+		while (true) {
+			long linePos = pos;
+			int consumed = in.readLine(line);
+			if (consumed == 0) {
+				hasHeader = false;
+				return;
+			}
+			pos += consumed;
+
+			if (line.getLength() > 0 && line.getBytes()[0] == HEADER) {
+				hasHeader = true;
+				headerPos = linePos;
+				return;
+			}
+			appendSequence(line);
+		}
+	}
+
+	/** Appends the non-whitespace bytes of a sequence line to the value. */
+	private void appendSequence(Text sequenceLine) {
+		byte[] bytes = sequenceLine.getBytes();
+		int length = sequenceLine.getLength();
+
+		int runStart = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i == length || isWhitespace(bytes[i])) {
+				if (i > runStart) {
+					value.append(bytes, runStart, i - runStart);
+				}
+				runStart = i + 1;
+			}
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
@@ -0,0 +1,317 @@
+package cbcb.kmulus.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads the records of a local FASTA file through a read-only memory mapping, in place of
+ * {@link ParseFasta}.  The file is mapped in chunks, so files over 2GB may be read, and records are
+ * found by scanning the mapping for a '>' which starts a line.  Each record is exposed as file
+ * offsets of its header and body, which may be viewed without copying by {@link #view(long, int)};
+ * {@link #getSequence()} joins the body's lines into a reused buffer.
+ *
+ * {@link #seek(long)} resumes reading at the first record at or after a file offset.  Records may
+ * be sought by number with {@link #seekRecord(int)}, which is backed by the offsets of
+ * {@link #buildIndex()} or {@link #setIndex(long[])} if either was called.
+ *
+ * A reader is not thread safe.
+ */
+public class MappedFastaReader implements Closeable {
+
+	private static final byte HEADER = '>';
+	private static final byte NEWLINE = '\n';
+
+	/* Mapped chunks are 1GB, well within the 2GB a buffer may address. */
+	private static final int DEF_CHUNK_SHIFT = 30;
+
+	private final File file;
+	private final long length;
+	private final int chunkShift;
+	private final long chunkMask;
+	private MappedByteBuffer[] chunks;
+
+	/* The position of the next record's header, or length at the end of the file. */
+	private long pos;
+
+	/* The current record, as file offsets. */
+	private long offset = -1;
+	private long headerOffset;
+	private int headerLength;
+	private long bodyOffset;
+	private long bodyLength;
+
+	private byte[] sequence = new byte[0];
+	private int sequenceLength;
+
+	private long[] index;
+
+	/**
+	 * Maps the given FASTA file.
+	 *
+	 * @throws IOException if the file cannot be mapped, or holds anything other than whitespace
+	 * 				before its first header.
+	 */
+	public MappedFastaReader(File file) throws IOException {
+		this(file, DEF_CHUNK_SHIFT);
+	}
+
+	/** Maps the given FASTA file in chunks of 2^chunkShift bytes. */
+	MappedFastaReader(File file, int chunkShift) throws IOException {
+		this.file = file;
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1L << chunkShift) - 1;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			length = channel.size();
+			chunks = new MappedByteBuffer[(int) ((length + chunkMask) >>> chunkShift)];
+			for (int i = 0; i < chunks.length; i++) {
+				long chunkStart = (long) i << chunkShift;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+						Math.min(1L << chunkShift, length - chunkStart));
+			}
+		} finally {
+			/* The mapping remains valid once the file is closed. */
+			raf.close();
+		}
+
+		long first = 0;
+		while (first < length && isWhitespace(get(first))) {
+			first++;
+		}
+		if (first < length && get(first) != HEADER) {
+			throw new IOException(file + " does not start with a FASTA header.");
+		}
+		pos = first;
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return false at the end of the file.
+	 */
+	public boolean next() {
+		sequenceLength = -1;
+		if (pos >= length) {
+			offset = -1;
+			return false;
+		}
+
+		offset = pos;
+		headerOffset = pos + 1;
+		long headerEnd = findByte(NEWLINE, headerOffset);
+		bodyOffset = Math.min(length, headerEnd + 1);
+
+		/* Trim a carriage return from the header, as a line reader would. */
+		long trimmedEnd = headerEnd;
+		if (trimmedEnd > headerOffset && get(trimmedEnd - 1) == '\r') {
+			trimmedEnd--;
+		}
+		headerLength = (int) (trimmedEnd - headerOffset);
+
+		pos = findHeader(bodyOffset);
+		bodyLength = pos - bodyOffset;
+		return true;
+	}
+
+	/** Returns the file offset of the current record's '>'. */
+	public long getOffset() {
+		return offset;
+	}
+
+	/** Returns the file offset of the current record's header, after the '>'. */
+	public long getHeaderOffset() {
+		return headerOffset;
+	}
+
+	/** Returns the length of the current record's header, without the line break. */
+	public int getHeaderLength() {
+		return headerLength;
+	}
+
+	/** Returns the file offset of the current record's body, the lines after the header. */
+	public long getBodyOffset() {
+		return bodyOffset;
+	}
+
+	/** Returns the length of the current record's body, including its line breaks. */
+	public long getBodyLength() {
+		return bodyLength;
+	}
+
+	/** Returns the current record's header, without the '>'. */
+	public String getHeader() {
+		ByteBuffer header = view(headerOffset, headerLength);
+		byte[] bytes = new byte[headerLength];
+		header.get(bytes);
+		return new String(bytes, Charsets.US_ASCII);
+	}
+
+	/**
+	 * Returns the current record's sequence, the body with its whitespace dropped, in a buffer which
+	 * is reused by the next record.  See {@link #getSequenceLength()}.
+	 */
+	public byte[] getSequence() {
+		if (offset < 0) {
+			sequenceLength = 0;
+		} else if (sequenceLength < 0) {
+			if (sequence.length < bodyLength) {
+				if (bodyLength > Integer.MAX_VALUE) {
+					throw new IllegalStateException("The record at " + offset + " in " + file +
+							" is too long to be held in an array.");
+				}
+				sequence = new byte[(int) Math.max(bodyLength, sequence.length * 2L)];
+			}
+
+			sequenceLength = 0;
+			long end = bodyOffset + bodyLength;
+			for (long i = bodyOffset; i < end; ) {
+				ByteBuffer chunk = chunks[(int) (i >>> chunkShift)];
+				int chunkEnd = (int) Math.min(end - (i & ~chunkMask), chunk.limit());
+				for (int j = (int) (i & chunkMask); j < chunkEnd; j++) {
+					byte b = chunk.get(j);
+					if (!isWhitespace(b)) {
+						sequence[sequenceLength++] = b;
+					}
+				}
+				i = (i & ~chunkMask) + chunkEnd;
+			}
+		}
+		return sequence;
+	}
+
+	/** Returns the length of the sequence held by {@link #getSequence()}. */
+	public int getSequenceLength() {
+		getSequence();
+		return sequenceLength;
+	}
+
+	/**
+	 * Returns a read-only view of the file's bytes in [offset, offset + length).  The view shares
+	 * the mapping unless it crosses from one chunk into the next, in which case it is a copy.
+	 */
+	public ByteBuffer view(long offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > this.length) {
+			throw new IndexOutOfBoundsException("[" + offset + ", " + (offset + length) +
+					") is not within " + file + ".");
+		}
+
+		if (length == 0) {
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		}
+
+		int chunk = (int) (offset >>> chunkShift);
+		int start = (int) (offset & chunkMask);
+		if (start + (long) length <= chunks[chunk].limit()) {
+			ByteBuffer view = chunks[chunk].duplicate();
+			view.position(start);
+			view.limit(start + length);
+			return view.slice().asReadOnlyBuffer();
+		}
+
+		byte[] copy = new byte[length];
+		for (int i = 0; i < length; i++) {
+			copy[i] = get(offset + i);
+		}
+		return ByteBuffer.wrap(copy).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Positions the reader such that {@link #next()} reads the first record whose header starts at
+	 * or after the given file offset.
+	 */
+	public void seek(long offset) {
+		pos = findHeader(Math.max(0, Math.min(offset, length)));
+		this.offset = -1;
+		sequenceLength = -1;
+	}
+
+	/**
+	 * Positions the reader such that {@link #next()} reads the record of the given number, counting
+	 * from 0.  Without an index, the file is scanned from its start.
+	 */
+	public void seekRecord(int record) {
+		if (index != null) {
+			seek(record < index.length ? index[record] : length);
+			return;
+		}
+
+		seek(0);
+		for (int i = 0; i < record && next(); i++) {
+			/* Skip the record. */
+		}
+	}
+
+	/**
+	 * Scans the whole file for the offset of each record's header, and keeps them to back
+	 * {@link #seekRecord(int)}.  The reader's position is left unchanged.
+	 *
+	 * @return the offsets, which may be saved and later given to {@link #setIndex(long[])}.
+	 */
+	public long[] buildIndex() {
+		long[] offsets = new long[16];
+		int count = 0;
+		for (long header = findHeader(0); header < length; header = findHeader(header + 1)) {
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+			}
+			offsets[count++] = header;
+		}
+		index = Arrays.copyOf(offsets, count);
+		return index;
+	}
+
+	/** Sets the record offsets which back {@link #seekRecord(int)}, as from {@link #buildIndex()}. */
+	public void setIndex(long[] index) {
+		this.index = index;
+	}
+
+	/** Releases the mapping; it is unmapped once it is garbage collected. */
+	public void close() {
+		chunks = null;
+	}
+
+	/** Returns the position of the first header at or after from, or the length of the file. */
+	private long findHeader(long from) {
+		long i = from;
+		if (i > 0 && get(i - 1) != NEWLINE) {
+			i = findByte(NEWLINE, i) + 1;
+		}
+		while (i < length && get(i) != HEADER) {
+			i = findByte(NEWLINE, i) + 1;
+		}
+		return Math.min(i, length);
+	}
+
+	/** Returns the position of the first b at or after from, or the length of the file. */
+	private long findByte(byte b, long from) {
+		for (long i = from; i < length; ) {
+			ByteBuffer chunk = chunks[(int) (i >>> chunkShift)];
+			int limit = chunk.limit();
+			for (int j = (int) (i & chunkMask); j < limit; j++) {
+				if (chunk.get(j) == b) {
+					return (i & ~chunkMask) + j;
+				}
+			}
+			i = (i & ~chunkMask) + limit;
+		}
+		return length;
+	}
+
+	private byte get(long i) {
+		return chunks[(int) (i >>> chunkShift)].get((int) (i & chunkMask));
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+}
@@ -23,8 +23,10 @@ import java.io.RandomAccessFile;
  * 
  * - Taken from ParseFasta.pm - Mihai Pop
  * @author cmhill
- *
+ * @deprecated Use {@link MappedFastaReader}, which reads local files through a memory mapping
+ * 				and supports seeking.
  */
+@Deprecated
 public class ParseFasta {
 	// Head/Record separator, default is ">"
 	private String headSep = ">";
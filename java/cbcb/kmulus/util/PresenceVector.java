@@ -3,6 +3,7 @@ package cbcb.kmulus.util;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -127,6 +128,11 @@ public class PresenceVector implements Writable {
 		}
 	}
 	
+	/** Sets every k-mer in the vector to not present. */
+	public void clear() {
+		Arrays.fill(bits, 0);
+	}
+	
 	/**
 	 * Checks if the given kmer is present in the vector.
 	 * 
@@ -136,7 +142,7 @@ public class PresenceVector implements Writable {
 	public boolean containsKmer(int kmerIndex) {
 		int chunk = bits[kmerIndex / Integer.SIZE];
 		int mask = 1 << (kmerIndex % Integer.SIZE);
-		return (chunk & mask) > 0;
+		return (chunk & mask) != 0;
 	}
 	
 	/** Sets the (optional) id for the sequence associated with this {@link PresenceVector}. */
@@ -149,6 +155,24 @@ public class PresenceVector implements Writable {
 		return id;
 	}
 	
+	/** Returns the number of ints the bits of the vector are held in. */
+	public int getNumWords() {
+		return bits.length;
+	}
+	
+	/**
+	 * Returns the given int of the bits of the vector, which holds the k-mers from index * 32,
+	 * the lowest in the lowest bit.
+	 */
+	public int getWord(int index) {
+		return bits[index];
+	}
+	
+	/** Sets the given int of the bits of the vector; see {@link #getWord(int)}. */
+	public void setWord(int index, int word) {
+		bits[index] = word;
+	}
+	
 	/** Returns the number of bits set in the vector. */
 	public int getCount() {
 		int count = 0;
@@ -169,7 +193,7 @@ public class PresenceVector implements Writable {
 		Preconditions.checkState(hasSameParameters(other));
 		
 		for (int i = 0; i < bits.length; i++) {
-			if ((bits[i] & other.bits[i]) > 0) {
+			if ((bits[i] & other.bits[i]) != 0) {
 				return true;
 			}
 		}
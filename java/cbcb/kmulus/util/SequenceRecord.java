@@ -0,0 +1,185 @@
+package cbcb.kmulus.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A sequence, with the residues packed: 2 bits per base for sequences of only the
+ * nucleotides A, C, G and T, and 5 bits per residue otherwise, which holds the amino acids of
+ * {@link Biology#AMINO_ACIDS} and the ambiguity codes of {@link Biology#AMBIGUOUS_CODES}.  The
+ * nucleotide codes are those of {@link Biology#getNucleotideCode(int)}.  The packing is chosen
+ * when the record is set.  Residues are stored in upper case.
+ *
+ * Records are meant to be stored in block-compressed SequenceFiles in place of simple FASTA, so
+ * that tasks read ids and residues without parsing text.  The id of a sequence is the key it is
+ * stored under, so it is not kept in the record as well.  The buffers of a record are reused when
+ * it is set or read again.
+ */
+public class SequenceRecord implements Writable {
+
+	private static final byte NUCLEOTIDE_PACKING = 2;
+	private static final byte RESIDUE_PACKING = 5;
+
+	/*
+	 * The residues of each 5 bit code, and the code of each residue, or -1.  The codes are part of
+	 * the stored format, so residues may only be added to the end.
+	 */
+	private static final byte[] RESIDUES = {'A', 'R', 'N', 'D', 'C', 'E', 'Q', 'G', 'H', 'I', 'L',
+		'K', 'M', 'F', 'P', 'S', 'T', 'W', 'Y', 'V', '*', 'U', 'O', 'B', 'Z', 'X', 'J', '-'};
+	private static final byte[] RESIDUE_CODES = new byte[128];
+	private static final byte[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+	static {
+		Arrays.fill(RESIDUE_CODES, (byte) -1);
+		for (int i = 0; i < RESIDUES.length; i++) {
+			RESIDUE_CODES[RESIDUES[i]] = (byte) i;
+			RESIDUE_CODES[Character.toLowerCase(RESIDUES[i])] = (byte) i;
+		}
+	}
+
+	private byte packing = NUCLEOTIDE_PACKING;
+	private int length;
+	private byte[] packed = new byte[0];
+
+	/* The unpacked residues, filled on demand. */
+	private byte[] residues = new byte[0];
+	private boolean unpacked = true;
+
+	public SequenceRecord() {
+	}
+
+	/** Creates a record of the given residues. */
+	public SequenceRecord(String sequence) throws IOException {
+		byte[] bytes = sequence.getBytes("US-ASCII");
+		set(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Sets the record to the residues in sequence[start, start + length).
+	 *
+	 * @throws IOException if a residue is neither an amino acid nor an ambiguity code.
+	 */
+	public void set(byte[] sequence, int start, int length) throws IOException {
+		this.length = length;
+
+		packing = NUCLEOTIDE_PACKING;
+		for (int i = 0; i < length; i++) {
+			if (Biology.getNucleotideCode(sequence[start + i] & 0xff) < 0) {
+				packing = RESIDUE_PACKING;
+				break;
+			}
+		}
+
+		ensurePacked(getPackedLength(length, packing));
+		Arrays.fill(packed, 0, getPackedLength(length, packing), (byte) 0);
+		for (int i = 0; i < length; i++) {
+			int residue = sequence[start + i] & 0xff;
+			int code = packing == NUCLEOTIDE_PACKING ?
+					Biology.getNucleotideCode(residue) : getResidueCode(residue);
+			if (code < 0) {
+				throw new IOException(
+						"Residue '" + (char) residue + "' at position " + i + " cannot be packed.");
+			}
+			pack(i, code);
+		}
+		unpacked = false;
+	}
+
+	/** Returns the number of residues. */
+	public int getLength() {
+		return length;
+	}
+
+	/** Returns whether the residues are packed as nucleotides, at 2 bits each. */
+	public boolean isNucleotides() {
+		return packing == NUCLEOTIDE_PACKING;
+	}
+
+	/**
+	 * Returns the residues, in upper case, in a buffer which is reused by the record.  See
+	 * {@link #getLength()}.
+	 */
+	public byte[] getResidues() {
+		if (!unpacked) {
+			if (residues.length < length) {
+				residues = new byte[length];
+			}
+			byte[] alphabet = packing == NUCLEOTIDE_PACKING ? NUCLEOTIDES : RESIDUES;
+			for (int i = 0; i < length; i++) {
+				residues[i] = alphabet[unpack(i)];
+			}
+			unpacked = true;
+		}
+		return residues;
+	}
+
+	/** Returns the residues as a String. */
+	public String getSequence() {
+		return new String(getResidues(), 0, length);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		packing = in.readByte();
+		if (packing != NUCLEOTIDE_PACKING && packing != RESIDUE_PACKING) {
+			throw new IOException("Unknown packing, " + packing + ".");
+		}
+		length = WritableUtils.readVInt(in);
+
+		int packedLength = getPackedLength(length, packing);
+		ensurePacked(packedLength);
+		in.readFully(packed, 0, packedLength);
+		unpacked = false;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(packing);
+		WritableUtils.writeVInt(out, length);
+		out.write(packed, 0, getPackedLength(length, packing));
+	}
+
+	/** Returns the residues; see {@link #getSequence()}. */
+	@Override
+	public String toString() {
+		return getSequence();
+	}
+
+	private static int getResidueCode(int residue) {
+		return residue < RESIDUE_CODES.length ? RESIDUE_CODES[residue] : -1;
+	}
+
+	private static int getPackedLength(int length, int packing) {
+		return (int) (((long) length * packing + 7) / 8);
+	}
+
+	private void ensurePacked(int packedLength) {
+		if (packed.length < packedLength) {
+			packed = new byte[packedLength];
+		}
+	}
+
+	/* Codes are packed from the low bits of each byte, and may straddle two bytes. */
+	private void pack(int index, int code) {
+		int bit = index * packing;
+		int shifted = code << (bit & 7);
+		packed[bit >>> 3] |= (byte) shifted;
+		if ((bit & 7) + packing > 8) {
+			packed[(bit >>> 3) + 1] |= (byte) (shifted >>> 8);
+		}
+	}
+
+	private int unpack(int index) {
+		int bit = index * packing;
+		int word = packed[bit >>> 3] & 0xff;
+		if ((bit & 7) + packing > 8) {
+			word |= (packed[(bit >>> 3) + 1] & 0xff) << 8;
+		}
+		return (word >>> (bit & 7)) & ((1 << packing) - 1);
+	}
+}
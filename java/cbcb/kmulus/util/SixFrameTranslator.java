@@ -0,0 +1,100 @@
+package cbcb.kmulus.util;
+
+import java.io.IOException;
+
+/**
+ * Translates all 6 reading frames of a DNA sequence in a single pass.  Each nucleotide is encoded
+ * as a 2 bit code, and the last three codes are kept as a 6 bit codon which indexes a table of
+ * amino acids for the forward strand and another for the reverse complement, so no triplet strings
+ * or reverse complemented copies are ever built.
+ *
+ * Frames 0 to 2 are read forward from offsets 0 to 2, and frames 3 to 5 are read along the reverse
+ * complement, from offsets 0 to 2 of its start (the end of the forward strand).  Each frame holds
+ * every complete codon from its offset.  The frames are written to buffers which are reused by the
+ * next translation, so a translator is not thread safe.
+ */
+public class SixFrameTranslator {
+
+	public static final int NUM_FRAMES = 6;
+
+	/* The amino acid letter of each codon, and of its reverse complement. */
+	private final byte[] forward = new byte[Biology.NUM_CODONS];
+	private final byte[] reverse = new byte[Biology.NUM_CODONS];
+
+	private final byte[][] frames = new byte[NUM_FRAMES][0];
+	private final int[] frameLengths = new int[NUM_FRAMES];
+
+	/** Translates codons to the letters of a compressed amino acid alphabet. */
+	public SixFrameTranslator(AlphabetMap alphabet) {
+		CompiledAlphabetMap compiled = alphabet.compile();
+		for (int codon = 0; codon < Biology.NUM_CODONS; codon++) {
+			forward[codon] = compiled.getCodon(codon);
+			reverse[codon] = compiled.getRevCompCodon(codon);
+		}
+	}
+
+	/** Translates codons to amino acids. */
+	public SixFrameTranslator(AATable table) {
+		for (String triplet : Biology.TRIPLETS) {
+			forward[Biology.getCodonIndex(triplet)] = (byte) table.get(triplet);
+			reverse[Biology.getCodonIndex(triplet)] = (byte) table.get(Biology.revComp(triplet));
+		}
+	}
+
+	/**
+	 * Translates the DNA in dna[start, start + length) into all 6 frames, replacing the last
+	 * translation.
+	 *
+	 * @throws IOException if the DNA holds anything other than the nucleotides A, C, G and T.
+	 */
+	public void translate(byte[] dna, int start, int length) throws IOException {
+		for (int frame = 0; frame < NUM_FRAMES; frame++) {
+			int offset = frame % 3;
+			frameLengths[frame] = length > offset ? (length - offset) / 3 : 0;
+			if (frames[frame].length < frameLengths[frame]) {
+				frames[frame] = new byte[Math.max(frameLengths[frame], frames[frame].length * 2)];
+			}
+		}
+
+		/*
+		 * The codon ending at i starts forward frame (i - 2) % 3, and lies (length - 1 - i) bases
+		 * from the start of the reverse complement.
+		 */
+		int codon = 0;
+		int forwardFrame = 0, forwardIndex = 0;
+		int reverseFrame = (length - 3) % 3, reverseIndex = (length - 3) / 3;
+
+		for (int i = 0; i < length; i++) {
+			int code = Biology.getNucleotideCode(dna[start + i] & 0xff);
+			if (code < 0) {
+				throw new IOException("Invalid nucleotide '" + (char) dna[start + i] +
+						"' at position " + i + ".");
+			}
+			codon = ((codon << 2) | code) & 63;
+
+			if (i >= 2) {
+				frames[forwardFrame][forwardIndex] = forward[codon];
+				if (++forwardFrame == 3) {
+					forwardFrame = 0;
+					forwardIndex++;
+				}
+
+				frames[3 + reverseFrame][reverseIndex] = reverse[codon];
+				if (--reverseFrame < 0) {
+					reverseFrame = 2;
+					reverseIndex--;
+				}
+			}
+		}
+	}
+
+	/** Returns the buffer holding the given frame of the last translation. */
+	public byte[] getFrame(int frame) {
+		return frames[frame];
+	}
+
+	/** Returns the number of amino acids in the given frame of the last translation. */
+	public int getFrameLength(int frame) {
+		return frameLengths[frame];
+	}
+}
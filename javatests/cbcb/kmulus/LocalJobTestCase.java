@@ -0,0 +1,103 @@
+package cbcb.kmulus;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+import cbcb.kmulus.util.PresenceVector;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * A test of jobs run with the local job runner on the local file system, in a temporary
+ * directory which is deleted after each test.
+ */
+public abstract class LocalJobTestCase extends TestCase {
+
+	protected File dir;
+	protected Configuration conf;
+	protected FileSystem fs;
+
+	@Override
+	public void setUp() throws Exception {
+		dir = Files.createTempDir();
+		conf = new Configuration();
+		conf.set("fs.default.name", "file:///");
+		conf.set("mapred.job.tracker", "local");
+		fs = FileSystem.getLocal(conf);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		FileUtil.fullyDelete(dir);
+	}
+
+	/** Returns a vector with the given id and k-mers. */
+	protected static PresenceVector vector(long id, int... kmers) {
+		PresenceVector vector = new PresenceVector(1);
+		for (int kmer : kmers) {
+			vector.setKmer(kmer);
+		}
+		vector.setId(id);
+		return vector;
+	}
+
+	/** Writes the vectors to a sequence file, keyed by their ids. */
+	protected void write(Path path, PresenceVector... vectors) throws Exception {
+		SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, path,
+				LongWritable.class, PresenceVector.class);
+		for (PresenceVector vector : vectors) {
+			writer.append(new LongWritable(vector.getId()), vector);
+		}
+		writer.close();
+	}
+
+	protected void write(File file, PresenceVector... vectors) throws Exception {
+		write(new Path(file.toURI().toString()), vectors);
+	}
+
+	/** Reads the k-mers of the vectors of the part files of a directory, by key. */
+	protected Map<Long, Set<Integer>> readVectors(File directory) throws Exception {
+		Map<Long, Set<Integer>> vectors = Maps.newTreeMap();
+		for (File file : directory.listFiles()) {
+			if (file.getName().startsWith("part-")) {
+				SequenceFile.Reader reader =
+					new SequenceFile.Reader(fs, new Path(file.toURI().toString()), conf);
+				LongWritable key = new LongWritable();
+				PresenceVector value = new PresenceVector();
+				while (reader.next(key, value)) {
+					vectors.put(key.get(), value.getAllPresentHashes());
+				}
+				reader.close();
+			}
+		}
+		return vectors;
+	}
+
+	/** Reads the lines of the data files of a directory, by name. */
+	protected static List<String> readLines(File directory) throws Exception {
+		List<String> lines = Lists.newArrayList();
+		File[] files = directory.listFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			if (!file.getName().startsWith(".") && !file.getName().startsWith("_")) {
+				lines.addAll(Files.readLines(file, Charsets.US_ASCII));
+			}
+		}
+		return lines;
+	}
+}
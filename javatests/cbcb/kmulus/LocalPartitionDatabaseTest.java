@@ -0,0 +1,94 @@
+package cbcb.kmulus;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.util.ToolRunner;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/** Tests for {@link LocalPartitionDatabase}. */
+public class LocalPartitionDatabaseTest extends LocalJobTestCase {
+
+	/* Two groups of sequences, far enough apart that no sequence is ever equally close to both. */
+	private static final String SEQUENCES = ">0 ACDEFG\n>1 KLMNPQ\n>2 ACDEFH\n>3 KLMNPR\n" +
+			">4 ACDEGH\n>5 KLMNQR\n";
+
+	private File input;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		input = new File(dir, "input");
+		input.mkdirs();
+		Files.write(SEQUENCES, new File(input, "a.sfa"), Charsets.US_ASCII);
+	}
+
+	/** Test that each group of sequences becomes a partition. */
+	public void testRun() throws Exception {
+		File output = new File(dir, "local");
+		assertEquals(0, ToolRunner.run(conf, new LocalPartitionDatabase(),
+				new String[] {input.getPath(), output.getPath(), "2", "1", "3", "7"}));
+
+		/* The clusters are numbered by the seeds chosen, so they may be numbered either way. */
+		Set<List<String>> expected = Sets.newHashSet();
+		expected.add(Lists.newArrayList(">0", "ACDEFG", ">2", "ACDEFH", ">4", "ACDEGH"));
+		expected.add(Lists.newArrayList(">1", "KLMNPQ", ">3", "KLMNPR", ">5", "KLMNQR"));
+		assertEquals(expected, Sets.newHashSet(readPartitions(output).values()));
+
+		List<String> assignments = readLines(new File(output, "assignments"));
+		assertEquals(6, assignments.size());
+		String first = assignments.get(0).split("\t")[1];
+		for (String assignment : assignments) {
+			String[] fields = assignment.split("\t");
+			assertEquals(assignment, Long.parseLong(fields[0]) % 2 == 0, fields[1].equals(first));
+		}
+		assertEquals(2, readVectors(new File(output, "centers")).size());
+		assertEquals(2, readVectors(new File(output, "means")).size());
+	}
+
+	/** Test that the results are the same as those of the Hadoop pipeline. */
+	public void testRun_sameAsPartitionDatabase() throws Exception {
+		assertSameAsPartitionDatabase("0");
+	}
+
+	/** Test that clustering in process gives the same results as clustering with jobs. */
+	public void testRun_sameAsResidentPartitionDatabase() throws Exception {
+		assertSameAsPartitionDatabase("2");
+	}
+
+	/** Runs both engines with the same seed, the pipeline on the given RESIDENT_THREADS. */
+	private void assertSameAsPartitionDatabase(String residentThreads) throws Exception {
+		File local = new File(dir, "local");
+		assertEquals(0, ToolRunner.run(conf, new LocalPartitionDatabase(),
+				new String[] {input.getPath(), local.getPath(), "2", "1", "2", "7"}));
+
+		File hadoop = new File(dir, "hadoop");
+		PartitionDatabase.main(new String[] {
+				input.getPath(), hadoop.getPath(), "6", "2", "r:u", "1", residentThreads, "7"});
+
+		assertEquals(readPartitions(hadoop), readPartitions(local));
+		assertEquals(readLines(new File(hadoop, "assignments")),
+				readLines(new File(local, "assignments")));
+		for (String name : new String[] {"centers", "means"}) {
+			assertEquals(name, readVectors(new File(hadoop, name)),
+					readVectors(new File(local, name)));
+		}
+	}
+
+	private static Map<String, List<String>> readPartitions(File output) throws Exception {
+		Map<String, List<String>> partitions = Maps.newTreeMap();
+		for (File partition : new File(output, "partitions").listFiles()) {
+			if (partition.isDirectory()) {
+				partitions.put(partition.getName(), readLines(partition));
+			}
+		}
+		return partitions;
+	}
+}
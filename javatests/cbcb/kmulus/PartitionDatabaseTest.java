@@ -0,0 +1,102 @@
+package cbcb.kmulus;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileUtil;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/** Tests for the checkpoints of {@link PartitionDatabase}, run with the local job runner. */
+public class PartitionDatabaseTest extends LocalJobTestCase {
+
+	private static final String SEQUENCES = ">0 ACDEFG\n>1 KLMNPQ\n>2 ACDEFH\n>3 KLMNPR\n" +
+			">4 ACDEGH\n>5 KLMNQR\n";
+
+	/* The markers of a completed and a started step; see Checkpoints. */
+	private static final String CLUSTER_DONE = "temp/checkpoints/CLUSTER.done";
+	private static final String CLUSTER_STARTED = "temp/checkpoints/CLUSTER.started";
+
+	private static final String ITERATIONS = "temp/cluster/temp/output-";
+	private static final String SENTINEL = "_sentinel";
+
+	private File input;
+	private File output;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		input = new File(dir, "input");
+		input.mkdirs();
+		Files.write(SEQUENCES, new File(input, "a.sfa"), Charsets.US_ASCII);
+		output = new File(dir, "output");
+	}
+
+	/**
+	 * Test that an interrupted clustering resumes from its last completed iteration, and that the
+	 * completed steps before it are skipped.
+	 */
+	public void testRun_resumesClustering() throws Exception {
+		runPipeline();
+		Map<String, Long> generated = getModificationTimes(new File(output, "temp/gen"));
+
+		/* Interrupt the clustering after iteration 5, part way through iteration 6. */
+		File done = new File(output, CLUSTER_DONE);
+		assertTrue(done.renameTo(new File(output, CLUSTER_STARTED)));
+		for (int i = 7; i <= 8; i++) {
+			FileUtil.fullyDelete(new File(output, ITERATIONS + i));
+		}
+		assertTrue(new File(output, ITERATIONS + 6 + "/_SUCCESS").delete());
+		FileUtil.fullyDelete(new File(output, "temp/cluster/final"));
+		FileUtil.fullyDelete(new File(output, "centers"));
+		assertTrue(new File(output, ITERATIONS + 5 + "/" + SENTINEL).createNewFile());
+		assertTrue(new File(output, ITERATIONS + 6 + "/" + SENTINEL).createNewFile());
+
+		runPipeline();
+		assertEquals(generated, getModificationTimes(new File(output, "temp/gen")));
+		assertTrue(new File(output, ITERATIONS + 5 + "/" + SENTINEL).exists());
+		assertFalse(new File(output, ITERATIONS + 6 + "/" + SENTINEL).exists());
+		assertTrue(new File(output, ITERATIONS + 8 + "/_SUCCESS").exists());
+		assertTrue(done.exists());
+		assertTrue(new File(output, "centers").isDirectory());
+	}
+
+	/** Test that a completed step is run again if its output was deleted. */
+	public void testRun_rebuildsDeletedOutput() throws Exception {
+		runPipeline();
+		Map<String, Long> generated = getModificationTimes(new File(output, "temp/gen"));
+		Map<String, Long> partitions = getModificationTimes(new File(output, "partitions"));
+
+		FileUtil.fullyDelete(new File(output, "centers"));
+		runPipeline();
+		assertEquals(generated, getModificationTimes(new File(output, "temp/gen")));
+		assertEquals(partitions, getModificationTimes(new File(output, "partitions")));
+		assertTrue(new File(output, "centers").isDirectory());
+		assertTrue(new File(output, "means").isDirectory());
+	}
+
+	private void runPipeline() {
+		PartitionDatabase.main(
+				new String[] {input.getPath(), output.getPath(), "6", "2", "r:u", "1", "0", "7"});
+	}
+
+	/** Returns the modification time of each file under a directory, by relative path. */
+	private static Map<String, Long> getModificationTimes(File directory) {
+		Map<String, Long> times = Maps.newTreeMap();
+		addModificationTimes(directory, "", times);
+		assertFalse(times.isEmpty());
+		return times;
+	}
+
+	private static void addModificationTimes(File file, String path, Map<String, Long> times) {
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				addModificationTimes(child, path + "/" + child.getName(), times);
+			}
+		} else {
+			times.put(path, file.lastModified());
+		}
+	}
+}
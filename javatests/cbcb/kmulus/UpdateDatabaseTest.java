@@ -0,0 +1,143 @@
+package cbcb.kmulus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+
+import cbcb.kmulus.util.Biology;
+import cbcb.kmulus.util.PresenceVector;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/** Tests for {@link UpdateDatabase}, run with the local job runner. */
+public class UpdateDatabaseTest extends LocalJobTestCase {
+
+	/**
+	 * Test that new sequences are assigned to the nearest means, and added to the partitions,
+	 * centers, assignments and sizes of their clusters.
+	 */
+	public void testRun() throws Exception {
+		writeDatabase();
+		assertEquals(0, ToolRunner.run(conf, new UpdateDatabase(), getArgs()));
+		assertUpdated();
+	}
+
+	/** Test that running an update again after it completed does not apply it twice. */
+	public void testRun_again() throws Exception {
+		writeDatabase();
+		assertEquals(0, ToolRunner.run(conf, new UpdateDatabase(), getArgs()));
+		assertEquals(0, ToolRunner.run(conf, new UpdateDatabase(), getArgs()));
+		assertUpdated();
+	}
+
+	/** Test that an update interrupted after its centers were replaced completes when rerun. */
+	public void testRun_interruptedAfterCenters() throws Exception {
+		writeDatabase();
+		UpdateDatabase interrupted = new UpdateDatabase() {
+			@Override
+			void appendPartitions(FileSystem fs, Path newPartitions, Path partitions,
+					String updateId) throws IOException {
+				throw new IOException("Interrupted.");
+			}
+		};
+		try {
+			ToolRunner.run(conf, interrupted, getArgs());
+			fail();
+		} catch (IOException e) {
+			assertEquals("Interrupted.", e.getMessage());
+		}
+		File db = new File(dir, "db");
+		assertEquals(vector(0, "ACDEFG").getAllPresentHashes(),
+				readVectors(new File(db, "centers")).get(0L));
+		assertEquals(Lists.newArrayList(">0 ACDE", ">1 ACDF"),
+				readPartition(new File(db, "partitions/0")));
+
+		assertEquals(0, ToolRunner.run(conf, new UpdateDatabase(), getArgs()));
+		assertUpdated();
+	}
+
+	/** Test that a database without means is not updated. */
+	public void testRun_noMeans() throws Exception {
+		File db = new File(dir, "db");
+		write(new File(db, "assignments/part-m-00000"), "0\t0\n");
+
+		assertEquals(-1, ToolRunner.run(conf, new UpdateDatabase(),
+				new String[] {dir.getPath(), db.getPath(), "1"}));
+	}
+
+	private void writeDatabase() throws Exception {
+		File db = new File(dir, "db");
+		write(new File(db, "means/part-r-00000"), vector(0, "ACDE"), vector(1, "KLMN"));
+		write(new File(db, "centers/part-r-00000"), vector(0, "ACDEF"), vector(1, "KLMN"));
+		write(new File(db, "assignments/part-m-00000"), "0\t0\n1\t0\n2\t1\n");
+		write(new File(db, "partitions/0/seq-m-00000"), ">0\nACDE\n>1\nACDF\n");
+		write(new File(db, "partitions/1/seq-m-00000"), ">2\nKLMN\n");
+
+		write(new File(dir, "seqs/a.sfa"), ">3 ACDEG\n>4 KLMP\n>5 ACD\n");
+	}
+
+	private String[] getArgs() {
+		return new String[] {new File(dir, "seqs").getPath(), new File(dir, "db").getPath(), "1"};
+	}
+
+	/** Asserts that the sequences of writeDatabase were added to the database once. */
+	private void assertUpdated() throws Exception {
+		File db = new File(dir, "db");
+		assertEquals(Lists.newArrayList(">0 ACDE", ">1 ACDF", ">3 ACDEG", ">5 ACD"),
+				readPartition(new File(db, "partitions/0")));
+		assertEquals(Lists.newArrayList(">2 KLMN", ">4 KLMP"),
+				readPartition(new File(db, "partitions/1")));
+
+		Map<Long, Set<Integer>> centers = readVectors(new File(db, "centers"));
+		assertEquals(2, centers.size());
+		assertEquals(vector(0, "ACDEFG").getAllPresentHashes(), centers.get(0L));
+		assertEquals(vector(1, "KLMNP").getAllPresentHashes(), centers.get(1L));
+
+		List<String> assignments = readLines(new File(db, "assignments"));
+		Collections.sort(assignments);
+		assertEquals(Lists.newArrayList("0\t0", "1\t0", "2\t1", "3\t0", "4\t1", "5\t0"),
+				assignments);
+		assertEquals(Lists.newArrayList("0\t4", "1\t2"),
+				Files.readLines(new File(db, UpdateDatabase.SIZES_FILE), Charsets.US_ASCII));
+		/* The default maximum is twice the mean size before the update, of 1. */
+		assertEquals(Lists.newArrayList("0\t4"),
+				Files.readLines(new File(db, UpdateDatabase.RESPLIT_FILE), Charsets.US_ASCII));
+		/* Only the marker of the update is left in the temp directory. */
+		assertEquals(Lists.newArrayList(PartitionDatabase.CHECKPOINTS_SUFFIX),
+				Lists.newArrayList(new File(db, PartitionDatabase.TEMP_SUFFIX).list()));
+	}
+
+	private static PresenceVector vector(long id, String kmers) {
+		PresenceVector vector = new PresenceVector(1);
+		for (int i = 0; i < kmers.length(); i++) {
+			vector.setKmer(Biology.getAAKmerHash(kmers.substring(i, i + 1)));
+		}
+		vector.setId(id);
+		return vector;
+	}
+
+	private static void write(File file, String contents) throws Exception {
+		file.getParentFile().mkdirs();
+		Files.write(contents, file, Charsets.US_ASCII);
+	}
+
+	/** Reads the records of a partition's files, in order of sequence id. */
+	private static List<String> readPartition(File partition) throws Exception {
+		List<String> lines = readLines(partition);
+		List<String> records = Lists.newArrayList();
+		for (int i = 0; i + 1 < lines.size(); i += 2) {
+			records.add(lines.get(i) + " " + lines.get(i + 1));
+		}
+		Collections.sort(records);
+		return records;
+	}
+}
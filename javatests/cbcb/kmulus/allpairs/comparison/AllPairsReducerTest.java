@@ -0,0 +1,269 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.easymock.IAnswer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/** Tests for {@link AllPairsReducer}. */
+public class AllPairsReducerTest extends TestCase {
+
+	/** Compares numbers by their absolute difference. */
+	private static class DifferenceReducer extends AllPairsReducer<LongWritable, Long> {
+
+		@Override
+		protected long parseId(Long item) {
+			return item;
+		}
+
+		@Override
+		protected long compareItems(Long a, Long b) {
+			return Math.abs(a - b);
+		}
+
+		@Override
+		protected Long copyValue(LongWritable original) {
+			return original.get();
+		}
+	}
+
+	/** Test for {@link AllPairsReducer#reduce} in serial mode. */
+	public void testReduce() throws Exception {
+		assertAllPairs(1, AllPairsReducer.DEF_TILE_SIZE, 10);
+	}
+
+	/** Test for {@link AllPairsReducer#reduce} with tiles compared on several threads. */
+	public void testReduce_parallel() throws Exception {
+		assertAllPairs(4, 3, 10);
+		assertAllPairs(4, 5, 10);
+		assertAllPairs(3, 7, 50);
+	}
+
+	/** Test that each group's predicted cost, by default its number of pairs, is counted. */
+	public void testReduce_counters() throws Exception {
+		Counters counters = new Counters();
+		reduce(createConf(1, AllPairsReducer.DEF_TILE_SIZE), 100, counters);
+
+		assertEquals(1, counters.findCounter(AllPairsReducer.GroupCounters.GROUPS).getValue());
+		assertEquals(1, counters.findCounter(
+				AllPairsReducer.GroupCounters.GROUPS_UNDER_1S).getValue());
+		assertEquals(100 * 99 / 2 / 1000,
+				counters.findCounter(AllPairsReducer.GroupCounters.PREDICTED_COST).getValue());
+	}
+
+	/** Test that pairs farther apart than {@link AllPairsReducer#MAX_DISTANCE_ATTR} are dropped. */
+	public void testReduce_maxDistance() throws Exception {
+		for (int numThreads : new int[] {1, 3}) {
+			Configuration conf = createConf(numThreads, 4);
+			conf.setLong(AllPairsReducer.MAX_DISTANCE_ATTR, 2);
+
+			int n = 20;
+			Map<String, Long> written = reduce(conf, n);
+
+			assertEquals((n - 1) + (n - 2), written.size());
+			for (long a = 0; a < n; a++) {
+				for (long b = a + 1; b < n; b++) {
+					String pair = "" + a + AllPairsReducer.SEQ_ID_DELIM + b;
+					assertEquals(b - a <= 2, written.containsKey(pair));
+				}
+			}
+		}
+	}
+
+	/** Test that only the nearest neighbors of each item are written, each pair once. */
+	public void testReduce_numNeighbors() throws Exception {
+		for (int numThreads : new int[] {1, 3}) {
+			Configuration conf = createConf(numThreads, 4);
+			conf.setInt(AllPairsReducer.NUM_NEIGHBORS_ATTR, 2);
+
+			/*
+			 * The 2 nearest neighbors of i are i-1 and i+1, with ties broken by the smaller id, so
+			 * the ends of the line each pick up their second neighbor two steps away.
+			 */
+			int n = 20;
+			Map<String, Long> written = reduce(conf, n);
+
+			assertEquals(n - 1 + 2, written.size());
+			for (long a = 0; a < n - 1; a++) {
+				assertEquals(Long.valueOf(1),
+						written.get("" + a + AllPairsReducer.SEQ_ID_DELIM + (a + 1)));
+			}
+			assertEquals(Long.valueOf(2), written.get("0" + AllPairsReducer.SEQ_ID_DELIM + "2"));
+			assertEquals(Long.valueOf(2), written.get(
+					"" + (n - 3) + AllPairsReducer.SEQ_ID_DELIM + (n - 1)));
+		}
+	}
+
+	/** Test that the groups of a {@link BlockGrouper} together compare every pair once. */
+	public void testReduce_blocks() throws Exception {
+		int n = 23;
+		BlockGrouper grouper = new BlockGrouper(n, BlockGrouper.chooseNumBlocks(n, 230, 100));
+		assertEquals(5, grouper.getNumBlocks());
+		assertEquals(5, grouper.getBlockSize());
+
+		/* Collect each group's items in descending order, so that its blocks arrive swapped. */
+		Map<Long, List<Long>> groups = Maps.newTreeMap();
+		for (long id = n - 1; id >= 0; id--) {
+			for (long group : grouper.getGroups(id)) {
+				if (!groups.containsKey(group)) {
+					groups.put(group, Lists.<Long>newArrayList());
+				}
+				groups.get(group).add(id);
+			}
+		}
+		assertEquals(grouper.getNumGroups(), groups.size());
+
+		/* Also buffer each group, in chunks of fewer rows than a block holds. */
+		for (int run = 0; run < 4; run++) {
+			Configuration conf = createConf(run % 2 == 0 ? 1 : 3, 2);
+			conf.setLong(AllPairsReducer.BLOCK_SIZE_ATTR, grouper.getBlockSize());
+			conf.setLong(AllPairsReducer.GROUP_HEAP_ATTR, run < 2 ? 0 : 24);
+			Map<String, Long> written =
+				reduce(conf, Lists.newArrayList(groups.values()), new Counters());
+
+			assertEquals(n * (n - 1) / 2, written.size());
+			for (long a = 0; a < n; a++) {
+				for (long b = a + 1; b < n; b++) {
+					assertEquals(Long.valueOf(b - a),
+							written.get("" + a + AllPairsReducer.SEQ_ID_DELIM + b));
+				}
+			}
+		}
+	}
+
+	/** Test that groups which spill out of the heap budget still compare every pair once. */
+	public void testReduce_spill() throws Exception {
+		for (int numThreads : new int[] {1, 3}) {
+
+			/* Each LongWritable takes 8 bytes: chunks of 5 rows, with most of the group spilled. */
+			Configuration conf = createConf(numThreads, 4);
+			conf.setLong(AllPairsReducer.GROUP_HEAP_ATTR, 40);
+
+			Counters counters = new Counters();
+			assertAllPairs(conf, 23, counters);
+			assertEquals(1, counters.findCounter(
+					AllPairsReducer.GroupCounters.GROUPS_SPILLED).getValue());
+			assertEquals(18 * 8, counters.findCounter(
+					AllPairsReducer.GroupCounters.SPILLED_BYTES).getValue());
+
+			/* A group within the budget is compared in a single chunk. */
+			conf.setLong(AllPairsReducer.GROUP_HEAP_ATTR, 1 << 20);
+			counters = new Counters();
+			assertAllPairs(conf, 23, counters);
+			assertEquals(0, counters.findCounter(
+					AllPairsReducer.GroupCounters.GROUPS_SPILLED).getValue());
+		}
+	}
+
+	/** Reduces a single group of n items and checks that every pair was written exactly once. */
+	private void assertAllPairs(int numThreads, int tileSize, int n) throws Exception {
+		assertAllPairs(createConf(numThreads, tileSize), n, new Counters());
+	}
+
+	private void assertAllPairs(Configuration conf, int n, Counters counters) throws Exception {
+		Map<String, Long> written = reduce(conf, n, counters);
+
+		assertEquals(n * (n - 1) / 2, written.size());
+		for (long a = 0; a < n; a++) {
+			for (long b = a + 1; b < n; b++) {
+				assertEquals(Long.valueOf(b - a),
+						written.get("" + a + AllPairsReducer.SEQ_ID_DELIM + b));
+			}
+		}
+	}
+
+	private Configuration createConf(int numThreads, int tileSize) {
+		Configuration conf = new Configuration(false);
+		conf.setInt(AllPairsReducer.NUM_THREADS_ATTR, numThreads);
+		conf.setInt(AllPairsReducer.TILE_SIZE_ATTR, tileSize);
+		return conf;
+	}
+
+	/**
+	 * Reduces a single group of the items 0..n-1, returning the distance written for each pair.
+	 * Fails if any pair is written twice.
+	 */
+	private Map<String, Long> reduce(Configuration conf, int n) throws Exception {
+		return reduce(conf, n, new Counters());
+	}
+
+	private Map<String, Long> reduce(Configuration conf, int n, Counters counters)
+			throws Exception {
+
+		/* Feed the items in descending order, to check that pair ids are ordered. */
+		List<Long> group = Lists.newArrayList();
+		for (long i = n - 1; i >= 0; i--) {
+			group.add(i);
+		}
+		List<List<Long>> groups = Lists.newArrayList();
+		groups.add(group);
+		return reduce(conf, groups, counters);
+	}
+
+	/**
+	 * Reduces each of the given groups with one reducer, returning the distance written for each
+	 * pair.  Fails if any pair is written twice.
+	 */
+	private Map<String, Long> reduce(Configuration conf, List<List<Long>> groups,
+			final Counters counters) throws Exception {
+		@SuppressWarnings("unchecked")
+		Reducer<LongWritable, LongWritable, IdPair, LongWritable>.Context context =
+			(Reducer<LongWritable, LongWritable, IdPair, LongWritable>.Context)
+			createMock(Reducer.Context.class);
+		expect(context.getConfiguration()).andReturn(conf).anyTimes();
+		context.progress();
+		expectLastCall().anyTimes();
+		expect(context.getCounter((Enum<?>) anyObject())).andAnswer(new IAnswer<Counter>() {
+			@Override
+			public Counter answer() throws Throwable {
+				return counters.findCounter((Enum<?>) getCurrentArguments()[0]);
+			}
+		}).anyTimes();
+
+		final Map<String, Long> written = Maps.newHashMap();
+		context.write(isA(IdPair.class), isA(LongWritable.class));
+		expectLastCall().andAnswer(new IAnswer<Void>() {
+			@Override
+			public Void answer() throws Throwable {
+				String pair = getCurrentArguments()[0].toString();
+				assertFalse("Pair " + pair + " was written twice.", written.containsKey(pair));
+				written.put(pair, ((LongWritable) getCurrentArguments()[1]).get());
+				return null;
+			}
+		}).anyTimes();
+		replay(context);
+
+		DifferenceReducer reducer = new DifferenceReducer();
+		reducer.setup(context);
+		for (int g = 0; g < groups.size(); g++) {
+			List<LongWritable> values = Lists.newArrayList();
+			for (long item : groups.get(g)) {
+				values.add(new LongWritable(item));
+			}
+			reducer.reduce(new LongWritable(g), values, context);
+		}
+		reducer.cleanup(context);
+		verify(context);
+
+		return written;
+	}
+}
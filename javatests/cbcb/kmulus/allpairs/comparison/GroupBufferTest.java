@@ -0,0 +1,99 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.Text;
+
+import com.google.common.io.Files;
+
+/** Tests for {@link GroupBuffer}. */
+public class GroupBufferTest extends TestCase {
+
+	/** Test that values on the heap and spilled to disk are read back in any order. */
+	public void testReadSpilled() throws Exception {
+		GroupBuffer buffer = new GroupBuffer(100, null);
+		try {
+			for (int group = 0; group < 2; group++) {
+				int n = 50;
+				for (int i = 0; i < n; i++) {
+					assertEquals(i, buffer.add(new Text(getValue(i))));
+				}
+				assertEquals(n, buffer.size());
+				assertTrue(buffer.getSpilledBytes() > 0);
+
+				Text value = new Text();
+				for (int i = n - 1; i >= 0; i -= 3) {
+					buffer.read(i, value);
+					assertEquals(getValue(i), value.toString());
+					assertEquals(value.getLength() + 1, buffer.getLength(i));
+				}
+
+				try {
+					buffer.add(new Text("late"));
+					fail();
+				} catch (IllegalStateException e) {
+					// Expected.
+				}
+
+				/* The buffer is reused for the next group. */
+				buffer.clear();
+				assertEquals(0, buffer.size());
+				assertEquals(0, buffer.getSpilledBytes());
+			}
+		} finally {
+			buffer.close();
+		}
+	}
+
+	/** Test that the spill file of a group is deleted when the group is cleared. */
+	public void testClearDeletesSpill() throws Exception {
+		File spillDir = Files.createTempDir();
+		GroupBuffer buffer = new GroupBuffer(10, spillDir);
+		try {
+			for (int i = 0; i < 10; i++) {
+				buffer.add(new Text(getValue(i)));
+			}
+			buffer.read(9, new Text());
+			assertEquals(1, spillDir.list().length);
+
+			buffer.clear();
+			assertEquals(0, spillDir.list().length);
+
+			buffer.add(new Text(getValue(20)));
+			buffer.add(new Text(getValue(21)));
+			assertEquals(1, spillDir.list().length);
+			buffer.close();
+			assertEquals(0, spillDir.list().length);
+		} finally {
+			buffer.close();
+			FileUtil.fullyDelete(spillDir);
+		}
+	}
+
+	/** Test that a buffer which never spills may keep growing after it is read. */
+	public void testReadHeap() throws Exception {
+		GroupBuffer buffer = new GroupBuffer(1 << 20, null);
+		Text value = new Text();
+
+		buffer.add(new Text(getValue(0)));
+		buffer.read(0, value);
+		assertEquals(getValue(0), value.toString());
+
+		buffer.add(new Text(getValue(1)));
+		buffer.read(1, value);
+		assertEquals(getValue(1), value.toString());
+		assertEquals(0, buffer.getSpilledBytes());
+		buffer.close();
+	}
+
+	private String getValue(int i) {
+		StringBuilder value = new StringBuilder(">" + i + " ");
+		for (int j = 0; j < i % 7; j++) {
+			value.append("ACGT");
+		}
+		return value.toString();
+	}
+}
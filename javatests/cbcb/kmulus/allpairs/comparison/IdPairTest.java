@@ -0,0 +1,56 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link IdPair}. */
+public class IdPairTest extends TestCase {
+
+	/** Test for {@link IdPair#set(long, long)}. */
+	public void testSet() {
+		IdPair pair = new IdPair(7, 3);
+		assertEquals(3, pair.getFirst());
+		assertEquals(7, pair.getSecond());
+		assertEquals(7, pair.getOther(3));
+		assertEquals("3" + AllPairsReducer.SEQ_ID_DELIM + "7", pair.toString());
+		assertEquals(new IdPair(3, 7), pair);
+	}
+
+	/** Test for {@link IdPair#write} and {@link IdPair#readFields}. */
+	public void testSerialization() throws Exception {
+		DataOutputBuffer out = new DataOutputBuffer();
+		IdPair pair = new IdPair(1L << 40, 5);
+		pair.write(out);
+
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		IdPair actual = new IdPair();
+		actual.readFields(in);
+		assertEquals(pair, actual);
+	}
+
+	/** Test that the registered raw comparator agrees with {@link IdPair#compareTo(IdPair)}. */
+	public void testRawComparator() throws Exception {
+		WritableComparator comparator = WritableComparator.get(IdPair.class);
+		assertTrue(comparator instanceof IdPair.Comparator);
+
+		IdPair[] pairs = {new IdPair(0, 1), new IdPair(0, 300), new IdPair(1, 2),
+				new IdPair(200, 1L << 33), new IdPair(200, 1L << 34), new IdPair(1L << 35, 1L << 36)};
+
+		for (IdPair a : pairs) {
+			for (IdPair b : pairs) {
+				DataOutputBuffer outA = new DataOutputBuffer();
+				DataOutputBuffer outB = new DataOutputBuffer();
+				a.write(outA);
+				b.write(outB);
+
+				int raw = comparator.compare(
+						outA.getData(), 0, outA.getLength(), outB.getData(), 0, outB.getLength());
+				assertEquals(a + " vs " + b, Integer.signum(a.compareTo(b)), Integer.signum(raw));
+			}
+		}
+	}
+}
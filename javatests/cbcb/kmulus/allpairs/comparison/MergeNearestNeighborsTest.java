@@ -0,0 +1,139 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.easymock.IAnswer;
+
+import com.google.common.collect.Lists;
+
+/** Tests for {@link MergeNearestNeighbors}. */
+public class MergeNearestNeighborsTest extends TestCase {
+
+	/** Test that the nearest neighbors are written nearest first. */
+	public void testReduce() throws Exception {
+		List<String> written = reduce(2, new Neighbor(4, 9), new Neighbor(1, 3),
+				new Neighbor(7, 5), new Neighbor(2, 8));
+
+		assertEquals(Lists.newArrayList("1,3", "7,5"), written);
+	}
+
+	/** Test that ties are broken by the smaller id, whatever the order they arrive in. */
+	public void testReduce_ties() throws Exception {
+		List<String> written = reduce(2, new Neighbor(9, 4), new Neighbor(3, 4),
+				new Neighbor(6, 4), new Neighbor(8, 6));
+		assertEquals(Lists.newArrayList("3,4", "6,4"), written);
+
+		written = reduce(2, new Neighbor(6, 4), new Neighbor(8, 6), new Neighbor(3, 4),
+				new Neighbor(9, 4));
+		assertEquals(Lists.newArrayList("3,4", "6,4"), written);
+	}
+
+	/** Test that a neighbor which arrives more than once is written once. */
+	public void testReduce_duplicates() throws Exception {
+		List<String> written = reduce(3, new Neighbor(5, 2), new Neighbor(1, 7),
+				new Neighbor(5, 2), new Neighbor(3, 4), new Neighbor(5, 2));
+
+		assertEquals(Lists.newArrayList("5,2", "3,4", "1,7"), written);
+
+		/* A duplicate of a neighbor which was already evicted stays out. */
+		written = reduce(1, new Neighbor(5, 2), new Neighbor(3, 1), new Neighbor(5, 2));
+		assertEquals(Lists.newArrayList("3,1"), written);
+	}
+
+	/** Test that fewer neighbors than k are all written. */
+	public void testReduce_fewNeighbors() throws Exception {
+		List<String> written = reduce(4, new Neighbor(2, 6), new Neighbor(8, 1));
+
+		assertEquals(Lists.newArrayList("8,1", "2,6"), written);
+	}
+
+	/** Test that the reducer keeps no neighbors from one id to the next. */
+	public void testReduce_keys() throws Exception {
+		List<String> written = Lists.newArrayList();
+		Reducer<LongWritable, Neighbor, LongWritable, Neighbor>.Context context =
+			createContext(createConf(2), written);
+		replay(context);
+
+		MergeNearestNeighbors.Reduce reducer = new MergeNearestNeighbors.Reduce();
+		reducer.setup(context);
+		reducer.reduce(new LongWritable(0),
+				Lists.newArrayList(new Neighbor(1, 1), new Neighbor(2, 2)), context);
+		reducer.reduce(new LongWritable(1),
+				Lists.newArrayList(new Neighbor(3, 5), new Neighbor(0, 1)), context);
+		verify(context);
+
+		assertEquals(Lists.newArrayList("1,1", "2,2", "0,1", "3,5"), written);
+	}
+
+	/** Test that a number of neighbors below 1 is rejected. */
+	public void testSetup_numNeighbors() throws Exception {
+		Reducer<LongWritable, Neighbor, LongWritable, Neighbor>.Context context =
+			createContext(createConf(0), Lists.<String>newArrayList());
+		replay(context);
+
+		try {
+			new MergeNearestNeighbors.Reduce().setup(context);
+			fail("Expected an IOException.");
+		} catch (IOException e) {
+			/* Expected. */
+		}
+	}
+
+	private Configuration createConf(int numNeighbors) {
+		Configuration conf = new Configuration(false);
+		conf.setInt(AllPairsReducer.NUM_NEIGHBORS_ATTR, numNeighbors);
+		return conf;
+	}
+
+	/**
+	 * Reduces the given neighbors of a single id, keeping the numNeighbors nearest, and returns
+	 * each neighbor written as "neighborId,distance" in the order written.
+	 */
+	private List<String> reduce(int numNeighbors, Neighbor... neighbors) throws Exception {
+		List<String> written = Lists.newArrayList();
+		Reducer<LongWritable, Neighbor, LongWritable, Neighbor>.Context context =
+			createContext(createConf(numNeighbors), written);
+		replay(context);
+
+		MergeNearestNeighbors.Reduce reducer = new MergeNearestNeighbors.Reduce();
+		reducer.setup(context);
+		reducer.reduce(new LongWritable(0), Lists.newArrayList(neighbors), context);
+		verify(context);
+
+		return written;
+	}
+
+	/** Creates a context which appends each neighbor written to the given list. */
+	private Reducer<LongWritable, Neighbor, LongWritable, Neighbor>.Context createContext(
+			Configuration conf, final List<String> written) throws Exception {
+		@SuppressWarnings("unchecked")
+		Reducer<LongWritable, Neighbor, LongWritable, Neighbor>.Context context =
+			(Reducer<LongWritable, Neighbor, LongWritable, Neighbor>.Context)
+			createMock(Reducer.Context.class);
+		expect(context.getConfiguration()).andReturn(conf).anyTimes();
+
+		context.write(isA(LongWritable.class), isA(Neighbor.class));
+		expectLastCall().andAnswer(new IAnswer<Void>() {
+			@Override
+			public Void answer() throws Throwable {
+				written.add(getCurrentArguments()[1].toString());
+				return null;
+			}
+		}).anyTimes();
+		return context;
+	}
+}
@@ -0,0 +1,153 @@
+package cbcb.kmulus.allpairs.comparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link PrimeRot} and its implementations. */
+public class PrimeRotTest extends TestCase {
+
+	/** Test that classical planes cover every pair exactly once. */
+	public void testClassicalPlaneRot() {
+		for (int p : new int[] {2, 3, 5, 7, 11, 13}) {
+			assertExhaustiveUnique(new ClassicalPlaneRot(p * p + p + 1, p));
+		}
+	}
+
+	/** Test that prime power planes cover every pair exactly once. */
+	public void testNonclassicalPlaneRot() {
+		assertExhaustiveUnique(new NonclassicalPlaneRot(21, 2, 2, 4));
+		assertExhaustiveUnique(new NonclassicalPlaneRot(73, 2, 3, 8));
+		assertExhaustiveUnique(new NonclassicalPlaneRot(91, 3, 2, 9));
+		assertExhaustiveUnique(new NonclassicalPlaneRot(273, 2, 4, 16));
+		assertExhaustiveUnique(new NonclassicalPlaneRot(651, 5, 2, 25));
+		assertExhaustiveUnique(new NonclassicalPlaneRot(757, 3, 3, 27));
+
+		/* The construction also holds for prime orders. */
+		assertExhaustiveUnique(new NonclassicalPlaneRot(57, 7, 1, 7));
+	}
+
+	/** Test for {@link PrimeRot#generatePrimeRot(long)}. */
+	public void testGeneratePrimeRot() {
+		assertPlane(2, 1, PrimeRot.generatePrimeRot(1));
+		assertPlane(2, 1, PrimeRot.generatePrimeRot(7));
+		assertPlane(3, 1, PrimeRot.generatePrimeRot(8));
+		assertPlane(4, 2, PrimeRot.generatePrimeRot(14));
+		assertPlane(4, 2, PrimeRot.generatePrimeRot(21));
+		assertPlane(5, 1, PrimeRot.generatePrimeRot(22));
+		assertPlane(8, 3, PrimeRot.generatePrimeRot(58));
+		assertPlane(9, 2, PrimeRot.generatePrimeRot(74));
+		assertPlane(11, 1, PrimeRot.generatePrimeRot(92));
+		assertPlane(1009, 1, PrimeRot.generatePrimeRot(1000000));
+		assertPlane(1024, 10, PrimeRot.generatePrimeRot(1045000));
+	}
+
+	/** Test that {@link PrimeRot#initializeIids(long[])} spreads heavy items over the groups. */
+	public void testInitializeIids() {
+		int numItems = 50;
+		long[] costs = new long[numItems];
+		for (int i = 0; i < numItems; i++) {
+			costs[i] = i < 4 ? 1000 : 1;
+		}
+
+		PrimeRot plane = PrimeRot.generatePrimeRot(numItems);
+		long identityLoad = getMaxGroupLoad(plane, costs);
+
+		plane.initializeIids(costs);
+		int[] placement = plane.getPlacement();
+		assertEquals(numItems, placement.length);
+
+		Set<Integer> points = new HashSet<Integer>();
+		for (int point : placement) {
+			assertTrue(point >= 0 && point < plane.getNumGroups());
+			assertTrue("Point " + point + " was used twice.", points.add(point));
+		}
+
+		/* Four points can always be placed with no three on one line, or group. */
+		long balancedLoad = getMaxGroupLoad(plane, costs);
+		assertTrue(balancedLoad < identityLoad);
+		assertTrue(balancedLoad < 3000);
+
+		/* The placement is deterministic. */
+		PrimeRot other = PrimeRot.generatePrimeRot(numItems);
+		other.initializeIids(costs);
+		assertTrue(Arrays.equals(placement, other.getPlacement()));
+	}
+
+	/** Test that {@link PrimeRot#initializeIids(long[])} places no items without any. */
+	public void testInitializeIids_empty() {
+		PrimeRot plane = PrimeRot.generatePrimeRot(0);
+		plane.initializeIids(new long[0]);
+		assertEquals(0, plane.getPlacement().length);
+	}
+
+	private long getMaxGroupLoad(PrimeRot plane, long[] costs) {
+		long[] loads = new long[(int) plane.getNumGroups()];
+		long maxLoad = 0;
+		for (int id = 0; id < costs.length; id++) {
+			for (long group : plane.getGroups(id)) {
+				loads[(int) group] += costs[id];
+				maxLoad = Math.max(maxLoad, loads[(int) group]);
+			}
+		}
+		return maxLoad;
+	}
+
+	private void assertPlane(int n, int k, PrimeRot plane) {
+		assertEquals(n, plane.getN());
+		assertEquals(k, plane.getK());
+		assertEquals(k == 1, plane instanceof ClassicalPlaneRot);
+		assertEquals((long) n * n + n + 1, plane.getNumGroups());
+		assertTrue((long) n * n + n + 1 >= plane.getNumItems());
+	}
+
+	/**
+	 * Checks that every point of the plane is in n + 1 distinct groups, and that every pair of
+	 * points shares exactly one group.
+	 */
+	private void assertExhaustiveUnique(PrimeRot plane) {
+		int n = plane.getN();
+		int numPoints = n * n + n + 1;
+		assertEquals(numPoints, plane.getNumGroups());
+
+		List<List<Integer>> members = new ArrayList<List<Integer>>();
+		for (int g = 0; g < numPoints; g++) {
+			members.add(new ArrayList<Integer>());
+		}
+
+		for (int id = 0; id < numPoints; id++) {
+			long[] groups = plane.getGroups(id);
+			assertEquals(n + 1, groups.length);
+
+			for (int i = 0; i < groups.length; i++) {
+				assertTrue("Group " + groups[i] + " of " + id + " is out of range.",
+						groups[i] >= 0 && groups[i] < numPoints);
+				for (int j = 0; j < i; j++) {
+					assertTrue("Group " + groups[i] + " repeated for " + id + ".",
+							groups[i] != groups[j]);
+				}
+				members.get((int) groups[i]).add(id);
+			}
+		}
+
+		int[][] shared = new int[numPoints][numPoints];
+		for (List<Integer> group : members) {
+			for (int a : group) {
+				for (int b : group) {
+					shared[a][b]++;
+				}
+			}
+		}
+
+		for (int a = 0; a < numPoints; a++) {
+			for (int b = a + 1; b < numPoints; b++) {
+				assertEquals("Order " + n + ": pair " + a + "," + b + " shared groups.",
+						1, shared[a][b]);
+			}
+		}
+	}
+}
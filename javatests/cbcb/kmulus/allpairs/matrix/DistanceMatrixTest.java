@@ -0,0 +1,143 @@
+package cbcb.kmulus.allpairs.matrix;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import cbcb.kmulus.allpairs.comparison.Neighbor;
+
+/** Tests for the {@link DistanceMatrixWriter}, its readers and the {@link RowRangePartitioner}. */
+public class DistanceMatrixTest extends TestCase {
+
+	private static final int NUM_ROWS = 10;
+	private static final int NUM_SHARDS = 3;
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("matrix", "");
+		assertTrue(dir.delete() && dir.mkdir());
+
+		/* Row i neighbors every other row j whose difference is a multiple of 3, at |i - j|. */
+		for (int shard = 0; shard < NUM_SHARDS; shard++) {
+			long firstRow = RowRangePartitioner.getFirstRow(shard, NUM_ROWS, NUM_SHARDS);
+			int numRows = RowRangePartitioner.getNumRows(shard, NUM_ROWS, NUM_SHARDS);
+
+			DistanceMatrixWriter writer =
+				new DistanceMatrixWriter(createShard(shard), firstRow, numRows);
+			for (long row = firstRow; row < firstRow + numRows; row++) {
+				for (long j = row % 3; j < NUM_ROWS; j += 3) {
+					if (j != row) {
+						writer.write(row, j, Math.abs(row - j));
+					}
+				}
+			}
+			writer.close();
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/** Test for {@link RowRangePartitioner}. */
+	public void testRowRanges() {
+		long expectedFirst = 0;
+		for (int shard = 0; shard < NUM_SHARDS; shard++) {
+			long firstRow = RowRangePartitioner.getFirstRow(shard, NUM_ROWS, NUM_SHARDS);
+			int numRows = RowRangePartitioner.getNumRows(shard, NUM_ROWS, NUM_SHARDS);
+			assertEquals(expectedFirst, firstRow);
+
+			for (long row = firstRow; row < firstRow + numRows; row++) {
+				assertEquals(shard, RowRangePartitioner.getPartition(row, NUM_ROWS, NUM_SHARDS));
+			}
+			expectedFirst += numRows;
+		}
+		assertEquals(NUM_ROWS, expectedFirst);
+	}
+
+	/** Test for {@link DistanceMatrix#getNeighbors} and {@link DistanceMatrix#getDistance}. */
+	public void testRead() throws Exception {
+		DistanceMatrix matrix = new DistanceMatrix(dir);
+
+		for (long row = 0; row < NUM_ROWS; row++) {
+			List<Neighbor> neighbors = matrix.getNeighbors(row);
+			long expectedId = row % 3;
+
+			for (Neighbor neighbor : neighbors) {
+				if (expectedId == row) {
+					expectedId += 3;
+				}
+				assertEquals(expectedId, neighbor.getId());
+				assertEquals(Math.abs(row - expectedId), neighbor.getDistance());
+				expectedId += 3;
+			}
+
+			for (long j = 0; j < NUM_ROWS; j++) {
+				long expected = j != row && (j - row) % 3 == 0 ?
+						Math.abs(row - j) : DistanceMatrixReader.NO_DISTANCE;
+				assertEquals(expected, matrix.getDistance(row, j));
+			}
+		}
+
+		try {
+			matrix.getNeighbors(NUM_ROWS);
+			fail("Expected IndexOutOfBoundsException.");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected.
+		}
+		matrix.close();
+	}
+
+	/** Test that rows without any neighbors are empty. */
+	public void testEmptyRows() throws Exception {
+		DistanceMatrixWriter writer = new DistanceMatrixWriter(createShard(NUM_SHARDS), 100, 5);
+		writer.write(102, 7, 1);
+		writer.close();
+
+		DistanceMatrixReader reader = new DistanceMatrixReader(
+				new File(dir, "part-" + NUM_SHARDS + DistanceMatrixOutputFormat.SHARD_EXT));
+		assertEquals(100, reader.getFirstRow());
+		assertEquals(5, reader.getNumRows());
+		assertEquals(1, reader.getNumEntries());
+		assertEquals(0, reader.getNumNeighbors(100));
+		assertEquals(1, reader.getNumNeighbors(102));
+		assertEquals(0, reader.getNumNeighbors(104));
+		assertEquals(1, reader.getDistance(102, 7));
+		reader.close();
+	}
+
+	/** Test that rows and neighbors must be written in order. */
+	public void testWriteOutOfOrder() throws Exception {
+		DistanceMatrixWriter writer = new DistanceMatrixWriter(createShard(NUM_SHARDS), 0, 5);
+		writer.write(1, 3, 1);
+		try {
+			writer.write(1, 2, 1);
+			fail("Expected IOException.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		try {
+			writer.write(0, 4, 1);
+			fail("Expected IOException.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		writer.close();
+	}
+
+	private DataOutputStream createShard(int shard) throws IOException {
+		File file = new File(dir, "part-" + shard + DistanceMatrixOutputFormat.SHARD_EXT);
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+	}
+}
@@ -0,0 +1,63 @@
+package cbcb.kmulus.allpairs.protein;
+
+import org.apache.hadoop.io.Text;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link KmerDistance} and {@link KmerProfile}. */
+public class KmerDistanceTest extends TestCase {
+
+	private static final String[] SEQUENCES = {
+		">0 ARNDCEQGHILKMFPSTWYV",
+		">1 ARNDARNDARNDARND",
+		">2 AAAAAAAAAAAAAAAAAAA",
+		">3 AAAAAAAAA",
+		">4 WYVWYV*WYVWYV",
+		">5 AR",
+		">15 ",
+	};
+
+	/** Test for {@link KmerProfile#intersectionCount(KmerProfile)}. */
+	public void testIntersectionCount() {
+		KmerProfile a = KmerProfile.build(new Text("AAAAB"), 2);
+		KmerProfile b = KmerProfile.build(new Text("AAABAB"), 2);
+
+		// AA: min(3, 2), AB: min(1, 2), BA: min(0, 1).
+		assertEquals(3, a.intersectionCount(b));
+		assertEquals(3, b.intersectionCount(a));
+		assertEquals(2, a.getNumDistinctKmers());
+		assertEquals(5, a.getLength());
+	}
+
+	/**
+	 * Test that {@link KmerDistance#getKmerDistance(KmerProfile, KmerProfile)} agrees with
+	 * {@link KmerDistance#getKmerDistance(Text, Text, int)} for all supported k-mer lengths.
+	 */
+	public void testGetKmerDistance_profiles() {
+		for (int k = 1; k <= KmerProfile.MAX_KMER_LENGTH; k++) {
+			for (String a : SEQUENCES) {
+				for (String b : SEQUENCES) {
+					Text aText = new Text(a);
+					Text bText = new Text(b);
+
+					long expected = KmerDistance.getKmerDistance(aText, bText, k);
+					long actual = KmerDistance.getKmerDistance(
+							KmerProfile.build(aText, k), KmerProfile.build(bText, k));
+					assertEquals("k=" + k + " '" + a + "' '" + b + "'", expected, actual);
+				}
+			}
+		}
+	}
+
+	/** Test for {@link KmerProfile#build(Text, int)} with unsupported k-mer lengths. */
+	public void testBuild_unsupportedLength() {
+		assertFalse(KmerProfile.supportsKmerLength(KmerProfile.MAX_KMER_LENGTH + 1));
+		try {
+			KmerProfile.build(new Text("ARND"), KmerProfile.MAX_KMER_LENGTH + 1);
+			fail();
+
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+}
@@ -112,6 +112,7 @@ public class ProteinAlignerTest extends TestCase {
 						return new String[] {(String) getCurrentArguments()[1]};
 					}
 				});
+		expect(conf.get(ProteinAligner.PLACEMENT_ATTR)).andReturn(null);
 		expect(context.getConfiguration()).andReturn(conf);
 		
 		// Store all values as they are emitted by the Mapper.
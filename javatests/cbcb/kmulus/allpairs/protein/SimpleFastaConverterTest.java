@@ -0,0 +1,76 @@
+package cbcb.kmulus.allpairs.protein;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import cbcb.kmulus.LocalJobTestCase;
+
+import com.google.common.collect.Lists;
+
+/** Tests for {@link SimpleFastaConverter}, run with the local job runner. */
+public class SimpleFastaConverterTest extends LocalJobTestCase {
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		/* Split the files every few records. */
+		conf.setLong("mapred.max.split.size", 16);
+	}
+
+	/** Test that ids are contiguous, in order of file and offset, across many splits. */
+	public void testConvert() throws Exception {
+		File fastaDir = new File(dir, "fasta");
+		fastaDir.mkdirs();
+		write(new File(fastaDir, "a.fa"), ">a1 first\nACDE\nFG\n>a2\nHIK\n>a3 third\nLMN\n");
+		write(new File(fastaDir, "b.fa"), ">b1\nPQRS\n>b2 second\nTV\nWY\n");
+
+		Path fastaPath = new Path(fastaDir.toURI());
+		Path destPath = new Path(new File(dir, "sfa").toURI());
+		ProteinAligner.toSimpleFasta(conf, fastaPath, destPath, "db.fa");
+
+		List<String> sequences = Lists.newArrayList();
+		for (FileStatus status : fs.listStatus(destPath)) {
+			if (status.getPath().getName().startsWith("part-")) {
+				sequences.addAll(readLines(status.getPath()));
+			}
+		}
+		Collections.sort(sequences);
+		assertEquals(Lists.newArrayList(
+				">0 ACDEFG", ">1 HIK", ">2 LMN", ">3 PQRS", ">4 TVWY"), sequences);
+
+		List<String> meta = Lists.newArrayList();
+		Path metaDir = SimpleFastaConverter.getMetaDir(fastaPath, "db");
+		for (Path shard : SimpleFastaConverter.getMetaShards(fs, metaDir)) {
+			meta.addAll(readLines(shard));
+		}
+		assertEquals(Lists.newArrayList(
+				"0 a1 6", "1 a2 3", "2 a3 3", "3 b1 4", "4 b2 4"), meta);
+
+		assertEquals(Lists.newArrayList("5"), readLines(new Path(fastaPath, "db.sfm")));
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents.getBytes("US-ASCII"));
+		out.close();
+	}
+
+	private List<String> readLines(Path path) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(path)));
+		List<String> lines = Lists.newArrayList();
+		String line;
+		while ((line = in.readLine()) != null) {
+			lines.add(line);
+		}
+		in.close();
+		return lines;
+	}
+}
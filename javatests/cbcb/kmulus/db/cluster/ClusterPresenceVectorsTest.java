@@ -0,0 +1,75 @@
+package cbcb.kmulus.db.cluster;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+
+import cbcb.kmulus.LocalJobTestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/** Tests for {@link ClusterPresenceVectors}, run with the local job runner. */
+public class ClusterPresenceVectorsTest extends LocalJobTestCase {
+
+	/** Test that the final run writes both the assignments and the union of each cluster. */
+	public void testRun_final() throws Exception {
+		Path input = new Path(new File(dir, "input").toURI());
+		Path output = new Path(new File(dir, "output").toURI());
+
+		write(new Path(input, "part-r-00000"),
+				vector(0, 0, 1), vector(1, 1, 2, 3), vector(2, 10, 11), vector(3, 11, 12, 13));
+		write(new Path(output, "temp/output-0/part-r-00000"),
+				vector(-1, 0, 1, 2), vector(-1, 10, 11, 12));
+
+		assertEquals(ClusterPresenceVectors.CODE_FINISHED, ToolRunner.run(conf,
+				new ClusterPresenceVectors(),
+				new String[] {input.toString(), output.toString(), "4", "2", "1", "1"}));
+
+		Map<Long, Set<Integer>> centers =
+			readVectors(new File(dir, "output/" + ClusterPresenceVectors.FINAL_DIR));
+		Map<Long, Set<Integer>> expected = Maps.newTreeMap();
+		expected.put(0L, Sets.newHashSet(0, 1, 2, 3));
+		expected.put(1L, Sets.newHashSet(10, 11, 12, 13));
+		assertEquals(expected, centers);
+
+		assertEquals(Lists.newArrayList("0\t0", "1\t0", "2\t1", "3\t1"), readAssignments());
+	}
+
+	/** Test that the cluster ids are the positions of the centers in part files by name. */
+	public void testRun_centersInNameOrder() throws Exception {
+		Path input = new Path(new File(dir, "input").toURI());
+		Path output = new Path(new File(dir, "output").toURI());
+
+		write(new Path(input, "part-r-00000"),
+				vector(0, 0, 1), vector(1, 1, 2, 3), vector(2, 10, 11), vector(3, 11, 12, 13));
+		write(new Path(output, "temp/output-0/part-r-00001"), vector(-1, 10, 11, 12));
+		write(new Path(output, "temp/output-0/part-r-00000"), vector(-1, 0, 1, 2));
+
+		assertEquals(ClusterPresenceVectors.CODE_FINISHED, ToolRunner.run(conf,
+				new ClusterPresenceVectors(),
+				new String[] {input.toString(), output.toString(), "4", "2", "1", "1"}));
+		assertEquals(Lists.newArrayList("0\t0", "1\t0", "2\t1", "3\t1"), readAssignments());
+	}
+
+	private List<String> readAssignments() throws Exception {
+		List<String> assignments = Lists.newArrayList();
+		File assignmentsDir = new File(new File(dir, "output/" + ClusterPresenceVectors.FINAL_DIR),
+				ClusterPresenceVectors.ASSIGNMENTS_DIR);
+		for (File file : assignmentsDir.listFiles()) {
+			if (file.getName().startsWith("part-")) {
+				assignments.addAll(Files.readLines(file, Charsets.US_ASCII));
+			}
+		}
+		Collections.sort(assignments);
+		return assignments;
+	}
+}
@@ -0,0 +1,119 @@
+package cbcb.kmulus.db.cluster;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import cbcb.kmulus.util.PresenceVector;
+
+/** Tests for {@link ResidentVectors}. */
+public class ResidentVectorsTest extends TestCase {
+
+	private static final int KMER_LENGTH = 2;
+
+	private ForkJoinPool pool;
+
+	@Override
+	public void setUp() {
+		pool = new ForkJoinPool(3);
+	}
+
+	@Override
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	/** Test that vectors are read back as added, across blocks. */
+	public void testGet() {
+		PresenceVector[] expected = randomVectors(100, 1);
+		ResidentVectors vectors = residentVectors(expected);
+		assertEquals(expected.length, vectors.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], vectors.get(i));
+			assertEquals(expected[i].getId(), vectors.getId(i));
+		}
+	}
+
+	/** Test that vectors are assigned as by {@link ClusterPresenceVectors#findClosestCenter}. */
+	public void testAssign() throws Exception {
+		PresenceVector[] expected = randomVectors(200, 2);
+		PresenceVector[] centers = new PresenceVector[7];
+		for (int i = 0; i < centers.length; i++) {
+			centers[i] = new PresenceVector(expected[i * 10]);
+		}
+		/* The vector with the id of a center is always assigned to it. */
+		centers[3].setId(expected[150].getId());
+
+		int[] assignment = residentVectors(expected).assign(centers, pool);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(ClusterPresenceVectors.findClosestCenter(centers, centers.length,
+					expected[i], null), assignment[i]);
+		}
+		assertEquals(3, assignment[150]);
+	}
+
+	/** Test that the means are those of {@link KMeansReducer}, and the unions of the clusters. */
+	public void testIterateAndUnion() throws Exception {
+		PresenceVector[] expected = randomVectors(200, 3);
+		PresenceVector[] centers = new PresenceVector[5];
+		for (int i = 0; i < centers.length; i++) {
+			centers[i] = new PresenceVector(expected[i]);
+		}
+		ResidentVectors vectors = residentVectors(expected);
+		int[] assignment = vectors.assign(centers, pool);
+		PresenceVector[] means = vectors.iterate(centers, pool);
+		PresenceVector[] unions = vectors.union(assignment, centers.length, pool);
+
+		int numKmers = KMeansReducer.getNumKmers(KMER_LENGTH);
+		for (int c = 0; c < centers.length; c++) {
+			int[] counts = new int[numKmers];
+			int size = 0;
+			PresenceVector union = new PresenceVector(KMER_LENGTH);
+			for (int i = 0; i < expected.length; i++) {
+				if (assignment[i] == c) {
+					for (int kmer : expected[i].getAllPresentHashes()) {
+						counts[kmer]++;
+					}
+					union.unionEquals(expected[i]);
+					size++;
+				}
+			}
+
+			if (size == 0) {
+				assertNull(means[c]);
+				assertNull(unions[c]);
+			} else {
+				assertEquals(KMeansReducer.createCenter(counts, size, KMER_LENGTH), means[c]);
+				assertEquals(union, unions[c]);
+			}
+		}
+	}
+
+	/* Random vectors, with about a fifth of their k-mers present. */
+	private static PresenceVector[] randomVectors(int n, long seed) {
+		Random random = new Random(seed);
+		int numKmers = KMeansReducer.getNumKmers(KMER_LENGTH);
+		PresenceVector[] vectors = new PresenceVector[n];
+		for (int i = 0; i < n; i++) {
+			vectors[i] = new PresenceVector(KMER_LENGTH);
+			vectors[i].setId(i * 3 + 1);
+			for (int kmer = 0; kmer < numKmers; kmer++) {
+				if (random.nextInt(5) == 0) {
+					vectors[i].setKmer(kmer);
+				}
+			}
+		}
+		return vectors;
+	}
+
+	/* Holds the vectors in blocks of 16 vectors each. */
+	private static ResidentVectors residentVectors(PresenceVector[] vectors) {
+		int vectorBytes = new PresenceVector(KMER_LENGTH).getNumWords() * 4;
+		ResidentVectors resident = new ResidentVectors(KMER_LENGTH, vectorBytes * 16);
+		for (PresenceVector vector : vectors) {
+			resident.add(vector);
+		}
+		return resident;
+	}
+}
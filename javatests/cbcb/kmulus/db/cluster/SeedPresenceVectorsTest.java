@@ -0,0 +1,101 @@
+package cbcb.kmulus.db.cluster;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.ToolRunner;
+
+import cbcb.kmulus.LocalJobTestCase;
+import cbcb.kmulus.util.PresenceVector;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/** Tests for {@link SeedPresenceVectors}, run with the local job runner. */
+public class SeedPresenceVectorsTest extends LocalJobTestCase {
+
+	/** Test that a seed is chosen from each group of vectors, as {@link ResidentKMeans} does. */
+	public void testRun() throws Exception {
+		PresenceVector[] vectors = new PresenceVector[12];
+		for (int i = 0; i < vectors.length; i++) {
+			/* Three groups of four, which differ in a single k-mer within a group. */
+			int group = i / 4 * 8;
+			vectors[i] = vector(i, group, group + 1, group + 2, group + 3, group + 4 + i % 4);
+		}
+		Path input = new Path(new File(dir, "input").toURI());
+		Path output = new Path(new File(dir, "output").toURI());
+		write(new Path(input, "part-r-00000"), vectors);
+
+		assertEquals(0, ToolRunner.run(conf, new SeedPresenceVectors(), new String[] {
+				input.toString(), new File(dir, "work").getPath(), output.toString(), "3", "11"}));
+
+		List<PresenceVector> seeds = read(new Path(output, "part-r-00000"));
+		Set<Long> groups = Sets.newHashSet();
+		for (PresenceVector seed : seeds) {
+			assertEquals(vectors[(int) seed.getId()], seed);
+			groups.add(seed.getId() / 4);
+		}
+		assertEquals(Sets.newHashSet(0L, 1L, 2L), groups);
+
+		ResidentVectors resident = new ResidentVectors(1);
+		for (PresenceVector vector : vectors) {
+			resident.add(vector);
+		}
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			ResidentKMeans.Means means = ResidentKMeans.seed(resident, 3, 11,
+					SeedPresenceVectors.DEFAULT_NUM_ROUNDS, pool);
+			assertEquals(seeds, Lists.newArrayList(means.means));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/** Test that no more centers are chosen than there are distinct candidates. */
+	public void testChooseCenters_duplicates() {
+		PresenceVector[] candidates = {vector(0, 1, 2), vector(1, 1, 2), vector(2, 5)};
+		PresenceVector[] centers = SeedPresenceVectors.chooseCenters(candidates,
+				new long[] {1, 1, 1}, 2, new Random(3));
+		assertEquals(2, centers.length);
+		assertEquals(candidates[2], centers[1]);
+
+		centers = SeedPresenceVectors.chooseCenters(candidates, new long[] {1, 1, 1}, 3,
+				new Random(3));
+		assertEquals(2, centers.length);
+		assertEquals(candidates[0], centers[0]);
+		assertEquals(candidates[2], centers[1]);
+
+		candidates[2] = vector(2, 1, 2);
+		centers = SeedPresenceVectors.chooseCenters(
+				new PresenceVector[] {candidates[0], candidates[1], candidates[2], vector(3, 1, 2)},
+				new long[] {1, 1, 1, 1}, 2, new Random(3));
+		assertEquals(1, centers.length);
+	}
+
+	/** Test that vectors are only sampled when they are away from the candidates. */
+	public void testIsSampled() {
+		assertFalse(SeedPresenceVectors.isSampled(1, 1, 5, 0, 10, 100.0));
+		assertFalse(SeedPresenceVectors.isSampled(1, 1, 5, 10, -1, 100.0));
+		assertTrue(SeedPresenceVectors.isSampled(1, 1, 5, 10, 10, 1.0));
+	}
+
+	private List<PresenceVector> read(Path path) throws Exception {
+		List<PresenceVector> vectors = Lists.newArrayList();
+		SequenceFile.Reader reader = new SequenceFile.Reader(fs, path, conf);
+		LongWritable key = new LongWritable();
+		PresenceVector value = new PresenceVector();
+		while (reader.next(key, value)) {
+			PresenceVector vector = new PresenceVector(value);
+			vector.setId(value.getId());
+			vectors.add(vector);
+		}
+		reader.close();
+		return vectors;
+	}
+}
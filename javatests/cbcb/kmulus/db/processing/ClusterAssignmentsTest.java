@@ -0,0 +1,100 @@
+package cbcb.kmulus.db.processing;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/** Tests for {@link ClusterAssignments}. */
+public class ClusterAssignmentsTest extends TestCase {
+
+	private File dir;
+	private FileSystem fs;
+
+	@Override
+	public void setUp() throws Exception {
+		dir = Files.createTempDir();
+		new File(dir, "assignments").mkdirs();
+		fs = FileSystem.getLocal(new Configuration());
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		FileUtil.fullyDelete(dir);
+	}
+
+	/** Test compiling assignments from several files, with gaps in the ids. */
+	public void testCompile() throws Exception {
+		write("part-m-00000", "0\t4\n5\t2\n\n");
+		write("part-m-00001", "2\t0\n1100\t9\n");
+		write("_SUCCESS", "");
+
+		File compiled = new File(dir, "compiled");
+		assertEquals(1101, compile(compiled));
+		assertEquals((1 + 1101) * 4, compiled.length());
+
+		ClusterAssignments assignments = ClusterAssignments.map(compiled);
+		assertEquals(1101, assignments.size());
+		assertEquals(4, assignments.get(0));
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(1));
+		assertEquals(0, assignments.get(2));
+		assertEquals(2, assignments.get(5));
+		assertEquals(9, assignments.get(1100));
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(1101));
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(-1));
+	}
+
+	/** Test that only the range of the assigned ids is held, as for new sequences. */
+	public void testCompile_base() throws Exception {
+		write("part-m-00000", "1002\t3\n1000\t1\n");
+
+		File compiled = new File(dir, "compiled");
+		assertEquals(3, compile(compiled));
+		assertEquals((1 + 3) * 4, compiled.length());
+
+		ClusterAssignments assignments = ClusterAssignments.map(compiled);
+		assertEquals(3, assignments.size());
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(0));
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(999));
+		assertEquals(1, assignments.get(1000));
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(1001));
+		assertEquals(3, assignments.get(1002));
+		assertEquals(ClusterAssignments.UNASSIGNED, assignments.get(1003));
+	}
+
+	/** Test that no ids are held without assignments. */
+	public void testCompile_empty() throws Exception {
+		File compiled = new File(dir, "compiled");
+		assertEquals(0, compile(compiled));
+		assertEquals(ClusterAssignments.UNASSIGNED, ClusterAssignments.map(compiled).get(0));
+	}
+
+	/** Test that a sequence assigned to two clusters is rejected. */
+	public void testCompile_duplicate() throws Exception {
+		write("part-m-00000", "0\t4\n3\t2\n");
+		write("part-m-00001", "3\t1\n");
+		try {
+			compile(new File(dir, "compiled"));
+			fail("Expected an IOException.");
+		} catch (IOException e) {
+			/* Expected. */
+		}
+	}
+
+	private int compile(File compiled) throws IOException {
+		return ClusterAssignments.compile(fs, new Path(new File(dir, "assignments").toURI()),
+				new Path(compiled.toURI()));
+	}
+
+	private void write(String name, String contents) throws IOException {
+		Files.write(contents, new File(new File(dir, "assignments"), name), Charsets.US_ASCII);
+	}
+}
@@ -0,0 +1,41 @@
+package cbcb.kmulus.db.processing;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.util.ToolRunner;
+
+import cbcb.kmulus.LocalJobTestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/** Tests for {@link ConvertSequences}, run with the local job runner. */
+public class ConvertSequencesTest extends LocalJobTestCase {
+
+	/** Test that simple FASTA survives the conversion to records and back. */
+	public void testRun_roundTrip() throws Exception {
+		File fasta = new File(dir, "fasta");
+		fasta.mkdirs();
+		Files.write(">0 MKVLAAGIVG\n\n>1 GATTACA\n>12 ACDX*\n", new File(fasta, "a.sfa"),
+				Charsets.US_ASCII);
+
+		File records = new File(dir, "records");
+		File output = new File(dir, "output");
+		assertEquals(0, ToolRunner.run(conf, new ConvertSequences(), new String[] {
+				ConvertSequences.TO_RECORDS, fasta.getPath(), records.getPath()}));
+		assertEquals(0, ToolRunner.run(conf, new ConvertSequences(), new String[] {
+				ConvertSequences.TO_FASTA, records.getPath(), output.getPath()}));
+
+		List<String> lines = Lists.newArrayList();
+		for (File file : output.listFiles()) {
+			if (file.getName().startsWith("part-")) {
+				lines.addAll(Files.readLines(file, Charsets.US_ASCII));
+			}
+		}
+		Collections.sort(lines);
+		assertEquals(Lists.newArrayList(">0 MKVLAAGIVG", ">1 GATTACA", ">12 ACDX*"), lines);
+	}
+}
@@ -0,0 +1,27 @@
+package cbcb.kmulus.db.processing;
+
+import junit.framework.TestCase;
+
+import cbcb.kmulus.util.PresenceVector;
+import cbcb.kmulus.util.SequenceRecord;
+
+/** Tests for {@link GenerateSequencePresenceVectors}. */
+public class GenerateSequencePresenceVectorsTest extends TestCase {
+
+	/** Test that the vector of a record is that of its sequence, for several k-mer lengths. */
+	public void testCreateVector_record() throws Exception {
+		String[] sequences = {"MKVLAAGIVGLLLAQ", "mkvlXaagivgBll", "AC", ""};
+		for (String sequence : sequences) {
+			SequenceRecord record = new SequenceRecord(sequence);
+			for (int kmerLength = 1; kmerLength <= 3; kmerLength++) {
+				PresenceVector expected = GenerateSequencePresenceVectors.createVector(
+						5, sequence.toUpperCase(), kmerLength);
+				PresenceVector vector =
+					GenerateSequencePresenceVectors.createVector(5, record, kmerLength);
+				assertEquals(sequence + ", " + kmerLength, expected, vector);
+				assertEquals(expected.getAllPresentHashes(), vector.getAllPresentHashes());
+				assertEquals(5, vector.getId());
+			}
+		}
+	}
+}
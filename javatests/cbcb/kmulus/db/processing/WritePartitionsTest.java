@@ -0,0 +1,79 @@
+package cbcb.kmulus.db.processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.util.ToolRunner;
+
+import cbcb.kmulus.LocalJobTestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/** Tests for {@link WritePartitions}, run with the local job runner. */
+public class WritePartitionsTest extends LocalJobTestCase {
+
+	/** Test the map-side join. */
+	public void testRun() throws Exception {
+		run(true);
+	}
+
+	/** Test the reduce-side join. */
+	public void testRun_reduceJoin() throws Exception {
+		run(false);
+	}
+
+	/** Test that each sequence is written to its cluster's partition, and nothing else is. */
+	private void run(boolean mapJoin) throws Exception {
+		File clusters = new File(dir, "clusters");
+		clusters.mkdirs();
+		Files.write("0\t7\n1\t3\n2\t7\n3\t3\n4\t5\n", new File(clusters, "part-m-00000"),
+				Charsets.US_ASCII);
+
+		File sequences = new File(dir, "sequences");
+		sequences.mkdirs();
+		Files.write(">0 ACDE\n>1 FGHI\n>2 KLMN\n", new File(sequences, "a.sfa"), Charsets.US_ASCII);
+		Files.write(">3 PQRS\n>4 TVWY\n", new File(sequences, "b.sfa"), Charsets.US_ASCII);
+
+		File output = new File(dir, "partitions");
+		conf.setBoolean(WritePartitions.MAP_JOIN, mapJoin);
+		assertEquals(0, ToolRunner.run(conf, new WritePartitions(), new String[] {
+				clusters.getPath(), sequences.getPath(), output.getPath(), "1"}));
+
+		Map<String, List<String>> expected = Maps.newTreeMap();
+		expected.put("3", Lists.newArrayList(">1 FGHI", ">3 PQRS"));
+		expected.put("5", Lists.newArrayList(">4 TVWY"));
+		expected.put("7", Lists.newArrayList(">0 ACDE", ">2 KLMN"));
+
+		Map<String, List<String>> partitions = Maps.newTreeMap();
+		for (File file : output.listFiles()) {
+			if (file.getName().startsWith("_") || file.getName().startsWith(".")) {
+				continue;
+			}
+			assertTrue(file + " is not a partition.", file.isDirectory());
+			partitions.put(file.getName(), readPartition(file));
+		}
+		assertEquals(expected, partitions);
+		assertFalse(new File(dir, "partitions_assignments").exists());
+	}
+
+	/** Reads the records of a partition's files, in order of sequence id. */
+	private static List<String> readPartition(File partition) throws IOException {
+		List<String> records = Lists.newArrayList();
+		for (File file : partition.listFiles()) {
+			if (file.getName().startsWith(WritePartitions.PARTITION_FILE)) {
+				List<String> lines = Files.readLines(file, Charsets.US_ASCII);
+				for (int i = 0; i + 1 < lines.size(); i += 2) {
+					records.add(lines.get(i) + " " + lines.get(i + 1));
+				}
+			}
+		}
+		Collections.sort(records);
+		return records;
+	}
+}
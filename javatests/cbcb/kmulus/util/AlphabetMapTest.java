@@ -63,6 +63,42 @@ public class AlphabetMapTest extends TestCase {
 		}
 	}
 
+	/** Test that {@link AlphabetMap#compile()} agrees with the alphabet's own lookups. */
+	public void testCompile() throws Exception {
+		AlphabetMap alphabet =
+			new AlphabetMap("(A) (R N D) (C E Q G H) (I L) (K M) (F P S T) (W Y V)");
+		CompiledAlphabetMap compiled = alphabet.compile();
+		assertEquals(7, compiled.size());
+
+		for (char aa : Biology.AMINO_ACIDS) {
+			if (aa == Biology.TERMINATOR || aa == 'U' || aa == 'O') {
+				assertEquals(CompiledAlphabetMap.NONE, compiled.get(aa));
+			} else {
+				assertEquals(alphabet.get(aa), (char) compiled.get(aa));
+			}
+		}
+		assertEquals(CompiledAlphabetMap.NONE, compiled.get('a'));
+		assertEquals(CompiledAlphabetMap.NONE, compiled.get(200));
+
+		for (String triplet : Biology.TRIPLETS) {
+			int codon = Biology.getCodonIndex(triplet);
+			assertEquals(alphabet.get(triplet), (char) compiled.getCodon(codon));
+			assertEquals(alphabet.revCompGet(triplet), (char) compiled.getRevCompCodon(codon));
+		}
+
+		byte[] src = ">1 MARY".getBytes("US-ASCII");
+		byte[] dest = new byte[5];
+		compiled.encode(src, 3, 4, dest, 1);
+		assertEquals("EABG", new String(dest, 1, 4, "US-ASCII"));
+
+		try {
+			compiled.encode(src, 0, 4, dest, 0);
+			fail();
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
 	/** Test for {@link AlphabetMap#parseClasses(String)}. */
 	public void testParseClasses() throws Exception {
 		String classStr = "(A) (R N D) (C E Q G H) (I L) (K M) (F P S T) (W Y)";
@@ -0,0 +1,77 @@
+package cbcb.kmulus.util;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/** Tests for {@link Checkpoints}. */
+public class CheckpointsTest extends TestCase {
+
+	private File dir;
+	private File input;
+	private Path[] inputs;
+	private Checkpoints checkpoints;
+
+	@Override
+	public void setUp() throws Exception {
+		dir = Files.createTempDir();
+		input = new File(dir, "input");
+		input.mkdirs();
+		Files.write(">0 ACDE\n", new File(input, "a.sfa"), Charsets.US_ASCII);
+		inputs = new Path[] {new Path(input.toURI().toString())};
+
+		FileSystem fs = FileSystem.getLocal(new Configuration());
+		checkpoints = new Checkpoints(fs, new Path(new File(dir, "checkpoints").toURI().toString()));
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		FileUtil.fullyDelete(dir);
+	}
+
+	/** Test that the fingerprint follows the parameters and the files of the inputs. */
+	public void testFingerprint() throws Exception {
+		String fingerprint = checkpoints.fingerprint(inputs, "3");
+		assertEquals(fingerprint, checkpoints.fingerprint(inputs, "3"));
+		assertFalse(fingerprint.equals(checkpoints.fingerprint(inputs, "4")));
+
+		Files.write(">1 KLMN\n", new File(input, "b.sfa"), Charsets.US_ASCII);
+		String added = checkpoints.fingerprint(inputs, "3");
+		assertFalse(fingerprint.equals(added));
+
+		Files.write(">1 KLMNP\n", new File(input, "b.sfa"), Charsets.US_ASCII);
+		assertFalse(added.equals(checkpoints.fingerprint(inputs, "3")));
+
+		FileUtil.fullyDelete(input);
+		assertFalse(fingerprint.equals(checkpoints.fingerprint(inputs, "3")));
+	}
+
+	/** Test that steps are done and started only with the fingerprint they were marked with. */
+	public void testMarks() throws Exception {
+		String fingerprint = checkpoints.fingerprint(inputs);
+		assertFalse(checkpoints.isDone("STEP", fingerprint));
+		assertFalse(checkpoints.wasStarted("STEP", fingerprint));
+
+		checkpoints.markStarted("STEP", fingerprint);
+		assertTrue(checkpoints.wasStarted("STEP", fingerprint));
+		assertFalse(checkpoints.wasStarted("STEP", "other"));
+		assertFalse(checkpoints.isDone("STEP", fingerprint));
+
+		checkpoints.markDone("STEP", fingerprint);
+		assertTrue(checkpoints.isDone("STEP", fingerprint));
+		assertFalse(checkpoints.isDone("STEP", "other"));
+		assertFalse(checkpoints.isDone("OTHER_STEP", fingerprint));
+		assertFalse(checkpoints.wasStarted("STEP", fingerprint));
+
+		checkpoints.markStarted("STEP", "other");
+		assertFalse(checkpoints.isDone("STEP", fingerprint));
+	}
+}
@@ -0,0 +1,131 @@
+package cbcb.kmulus.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileUtil;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/** Tests for {@link FastaConversionPipeline}. */
+public class FastaConversionPipelineTest extends TestCase {
+
+	private File dir;
+	private List<File> files;
+
+	@Override
+	public void setUp() throws Exception {
+		dir = Files.createTempDir();
+		files = Lists.newArrayList(
+				write("a.fa", ">a1\nACGT\nAC\n>a2\nGGG\n"),
+				write("b.fa", ">b1 desc\nTTTTTT\n>b2\n\n>b3\nCA\n"));
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		FileUtil.fullyDelete(dir);
+	}
+
+	/** Test that ids are assigned in order of file and record, in a single shard. */
+	public void testConvert() throws Exception {
+		assertEquals(5, convert(new FastaToSimpleFasta.Copier(), Long.MAX_VALUE, 3));
+
+		Map<String, String> expected = Maps.newTreeMap();
+		expected.put("out.0.simple_faa",
+				">0 ACGTAC\n>1 GGG\n>2 TTTTTT\n>3 \n>4 CA\n");
+		assertEquals(expected, readShards());
+	}
+
+	/** Test that shards start at the first record after the split size is reached. */
+	public void testConvert_split() throws Exception {
+		assertEquals(5, convert(new FastaToSimpleFasta.Copier(), 12, 2));
+
+		Map<String, String> expected = Maps.newTreeMap();
+		expected.put("out.0.simple_faa", ">0 ACGTAC\n>1 GGG\n");
+		expected.put("out.2.simple_faa", ">2 TTTTTT\n>3 \n");
+		expected.put("out.4.simple_faa", ">4 CA\n");
+		assertEquals(expected, readShards());
+	}
+
+	/** Test that translations keep each record's frames together and in order. */
+	public void testConvert_translate() throws Exception {
+		assertEquals(30, convert(new TranslateDNASequence.Translator(), 1, 4));
+
+		Map<String, String> shards = readShards();
+		assertEquals(5, shards.size());
+		assertEquals(">0 TY\n>1 R\n>2 V\n>3 VR\n>4 Y\n>5 T\n",
+				shards.get("out.0.simple_faa"));
+		assertEquals(">24 \n>25 \n>26 \n>27 \n>28 \n>29 \n", shards.get("out.24.simple_faa"));
+	}
+
+	/** Test that the output does not depend on the number of threads. */
+	public void testConvert_threads() throws Exception {
+		convert(new TranslateDNASequence.Translator(), 20, 1);
+		Map<String, String> expected = readShards();
+		for (int threads = 2; threads < 6; threads++) {
+			clearShards();
+			convert(new TranslateDNASequence.Translator(), 20, threads);
+			assertEquals("Threads: " + threads, expected, readShards());
+		}
+	}
+
+	/** Test that no shard is written without records. */
+	public void testConvert_empty() throws Exception {
+		files = Lists.newArrayList(write("empty.fa", ""));
+		assertEquals(0, convert(new FastaToSimpleFasta.Copier(), 12, 2));
+		assertTrue(readShards().isEmpty());
+	}
+
+	/** Test that a failed conversion is reported. */
+	public void testConvert_badInput() throws Exception {
+		write("c.fa", ">c1\nACGN\n");
+		files.add(new File(dir, "c.fa"));
+		try {
+			convert(new TranslateDNASequence.Translator(), 20, 2);
+			fail("Expected an IOException.");
+		} catch (IOException e) {
+			/* Expected. */
+		}
+	}
+
+	private long convert(FastaConversionPipeline.Converter converter, long splitBytes,
+			int numThreads) throws Exception {
+		String prefix = new File(dir, "out").getPath();
+		return new FastaConversionPipeline(converter, prefix, splitBytes, numThreads)
+				.convert(files);
+	}
+
+	private File write(String name, String contents) throws IOException {
+		File file = new File(dir, name);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents.getBytes("US-ASCII"));
+		out.close();
+		return file;
+	}
+
+	private Map<String, String> readShards() throws IOException {
+		Map<String, String> shards = Maps.newTreeMap();
+		for (File file : dir.listFiles()) {
+			if (file.getName().endsWith(FastaConversionPipeline.SHARD_EXT)) {
+				shards.put(file.getName(), Files.toString(file, Charsets.US_ASCII));
+			}
+		}
+		return shards;
+	}
+
+	private void clearShards() {
+		for (File file : dir.listFiles()) {
+			if (file.getName().endsWith(FastaConversionPipeline.SHARD_EXT)) {
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package cbcb.kmulus.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import com.google.common.collect.Lists;
+
+/** Tests for {@link FastaInputFormat} and {@link FastaRecordReader}. */
+public class FastaInputFormatTest extends TestCase {
+
+	private static final String FASTA =
+		">seq1 first sequence\n" +
+		"ACGT\n" +
+		"GGCC\n" +
+		">seq2\tsecond\r\n" +
+		"TTTT \r\n" +
+		">seq3\n" +
+		">seq4 fourth\n" +
+		"A\n" +
+		"C\n" +
+		"G";
+
+	private static final String[] EXPECTED =
+		{"seq1 ACGTGGCC", "seq2 TTTT", "seq3 ", "seq4 ACG"};
+
+	private File file;
+
+	@Override
+	public void setUp() throws Exception {
+		file = File.createTempFile("fasta", ".fa");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(FASTA.getBytes("US-ASCII"));
+		out.close();
+	}
+
+	@Override
+	public void tearDown() {
+		file.delete();
+	}
+
+	/** Test that the whole file is read as a single split. */
+	public void testRead() throws Exception {
+		assertEquals(Lists.newArrayList(EXPECTED), read(0, file.length()));
+	}
+
+	/** Test that every record is read exactly once, wherever the file is split in two. */
+	public void testRead_split() throws Exception {
+		for (long split = 0; split <= file.length(); split++) {
+			List<String> records = read(0, split);
+			records.addAll(read(split, file.length() - split));
+			assertEquals("Split at " + split, Lists.newArrayList(EXPECTED), records);
+		}
+	}
+
+	/** Test small splits, several of which hold no header at all. */
+	public void testRead_manySplits() throws Exception {
+		for (int size = 1; size < 10; size++) {
+			List<String> records = Lists.newArrayList();
+			for (long start = 0; start < file.length(); start += size) {
+				records.addAll(read(start, Math.min(size, file.length() - start)));
+			}
+			assertEquals("Splits of " + size, Lists.newArrayList(EXPECTED), records);
+		}
+	}
+
+	private List<String> read(long start, long length) throws Exception {
+		Configuration conf = new Configuration();
+		TaskAttemptContext context = new TaskAttemptContext(conf, new TaskAttemptID());
+		FileSplit split = new FileSplit(new Path(file.toURI()), start, length, new String[0]);
+
+		FastaRecordReader reader = new FastaRecordReader();
+		reader.initialize(split, context);
+
+		List<String> records = Lists.newArrayList();
+		while (reader.nextKeyValue()) {
+			records.add(reader.getCurrentKey() + " " + reader.getCurrentValue());
+		}
+		reader.close();
+		return records;
+	}
+}
@@ -0,0 +1,144 @@
+package cbcb.kmulus.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+/** Tests for {@link MappedFastaReader}. */
+public class MappedFastaReaderTest extends TestCase {
+
+	private static final String FASTA =
+		"\n" +
+		">seq1 first sequence\n" +
+		"ACGT\n" +
+		"GGCC\n" +
+		">seq2\tsecond\r\n" +
+		"TTTT \r\n" +
+		">seq3\n" +
+		">seq4 fourth\n" +
+		"A\n" +
+		"C\n" +
+		"G";
+
+	private static final String[] EXPECTED =
+		{"seq1 first sequence|ACGTGGCC", "seq2\tsecond|TTTT", "seq3|", "seq4 fourth|ACG"};
+
+	private File file;
+
+	@Override
+	public void setUp() throws Exception {
+		file = write(FASTA);
+	}
+
+	@Override
+	public void tearDown() {
+		file.delete();
+	}
+
+	/** Test reading every record, with the file mapped whole and in chunks of every size. */
+	public void testNext() throws Exception {
+		assertEquals(Lists.newArrayList(EXPECTED), readAll(new MappedFastaReader(file)));
+		for (int shift = 0; shift < 6; shift++) {
+			assertEquals("Chunks of " + (1 << shift), Lists.newArrayList(EXPECTED),
+					readAll(new MappedFastaReader(file, shift)));
+		}
+	}
+
+	/** Test that views of the mapping hold the file's bytes, within and across chunks. */
+	public void testView() throws Exception {
+		MappedFastaReader reader = new MappedFastaReader(file, 3);
+		assertTrue(reader.next());
+		assertEquals(1, reader.getOffset());
+		assertEquals("seq1 first sequence",
+				toString(reader.view(reader.getHeaderOffset(), reader.getHeaderLength())));
+		assertEquals("ACGT\nGGCC\n",
+				toString(reader.view(reader.getBodyOffset(), (int) reader.getBodyLength())));
+		assertEquals("", toString(reader.view(FASTA.length(), 0)));
+		reader.close();
+	}
+
+	/** Test seeking to every offset in the file. */
+	public void testSeek() throws Exception {
+		MappedFastaReader reader = new MappedFastaReader(file, 2);
+		int[] headers = {1, FASTA.indexOf(">seq2"), FASTA.indexOf(">seq3"), FASTA.indexOf(">seq4")};
+
+		for (int offset = 0; offset <= FASTA.length(); offset++) {
+			int record = 0;
+			while (record < headers.length && headers[record] < offset) {
+				record++;
+			}
+
+			reader.seek(offset);
+			List<String> expected = Lists.newArrayList(EXPECTED).subList(record, EXPECTED.length);
+			assertEquals("Seek to " + offset, expected, readAll(reader));
+		}
+		reader.close();
+	}
+
+	/** Test seeking by record number, with and without an index. */
+	public void testSeekRecord() throws Exception {
+		MappedFastaReader reader = new MappedFastaReader(file);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int record = 0; record <= EXPECTED.length; record++) {
+				reader.seekRecord(record);
+				assertEquals(Lists.newArrayList(EXPECTED).subList(record, EXPECTED.length),
+						readAll(reader));
+			}
+
+			assertEquals(EXPECTED.length, reader.buildIndex().length);
+		}
+		reader.close();
+	}
+
+	/** Test that a file holding data before its first header is rejected. */
+	public void testBadInput() throws Exception {
+		File bad = write("ACGT\n>seq1\nACGT\n");
+		try {
+			new MappedFastaReader(bad);
+			fail("Expected an IOException.");
+		} catch (IOException e) {
+			/* Expected. */
+		} finally {
+			bad.delete();
+		}
+	}
+
+	/** Test that an empty file holds no records. */
+	public void testEmpty() throws Exception {
+		File empty = write("");
+		MappedFastaReader reader = new MappedFastaReader(empty);
+		assertFalse(reader.next());
+		assertEquals(0, reader.buildIndex().length);
+		reader.close();
+		empty.delete();
+	}
+
+	private static File write(String contents) throws IOException {
+		File file = File.createTempFile("fasta", ".fa");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents.getBytes("US-ASCII"));
+		out.close();
+		return file;
+	}
+
+	private static List<String> readAll(MappedFastaReader reader) {
+		List<String> records = Lists.newArrayList();
+		while (reader.next()) {
+			records.add(reader.getHeader() + "|" +
+					new String(reader.getSequence(), 0, reader.getSequenceLength()));
+		}
+		return records;
+	}
+
+	private static String toString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes);
+	}
+}
@@ -64,6 +64,32 @@ public class PresenceVectorTest extends TestCase {
 		assertFalse(pv.containsKmer(Biology.getAAKmerHash("AA")));
 	}
 	
+	/** Test for {@link PresenceVector#clear()} */
+	public void testClear() {
+		PresenceVector pv = new PresenceVector(kmerLength, alphabetSize);
+		pv.setKmer(0); pv.setKmer(4);
+		
+		pv.clear();
+		assertEquals(0, pv.getCount());
+		
+		pv.setKmer(1);
+		assertTrue(pv.containsKmer(1));
+	}
+	
+	/** Test for {@link PresenceVector#getWord(int)} and {@link PresenceVector#setWord(int, int)} */
+	public void testWords() {
+		PresenceVector pv = new PresenceVector(2);
+		assertEquals(17, pv.getNumWords());
+		pv.setKmer(1); pv.setKmer(33);
+		assertEquals(2, pv.getWord(0));
+		assertEquals(2, pv.getWord(1));
+		
+		pv.setWord(0, 1 << 31);
+		assertTrue(pv.containsKmer(31));
+		assertFalse(pv.containsKmer(1));
+		assertTrue(pv.getAllPresentHashes().contains(31));
+	}
+	
 	/** Test for {@link PresenceVector#PresenceVector(PresenceVector)} */
 	public void testCopyConstructor() {
 		PresenceVector pv = new PresenceVector(kmerLength, alphabetSize);
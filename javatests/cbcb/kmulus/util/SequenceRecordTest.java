@@ -0,0 +1,80 @@
+package cbcb.kmulus.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link SequenceRecord}. */
+public class SequenceRecordTest extends TestCase {
+
+	/** Test that nucleotide sequences are packed at 2 bits per base. */
+	public void testSet_nucleotides() throws Exception {
+		SequenceRecord record = new SequenceRecord("acgtTGCAA");
+		assertTrue(record.isNucleotides());
+		assertEquals(9, record.getLength());
+		assertEquals("ACGTTGCAA", record.getSequence());
+		/* The packing and length take a byte each, and the 9 bases 3 bytes. */
+		assertEquals(5, serialize(record).length);
+	}
+
+	/** Test that protein sequences are packed at 5 bits per residue. */
+	public void testSet_residues() throws Exception {
+		String sequence = "ARNDCEQGHILKMFPSTWYV*UOBZXJ-";
+		SequenceRecord record = new SequenceRecord(sequence.toLowerCase());
+		assertFalse(record.isNucleotides());
+		assertEquals(sequence, record.getSequence());
+		assertEquals(sequence, record.toString());
+	}
+
+	/** Test for {@link SequenceRecord#set(byte[], int, int)} with an unknown residue. */
+	public void testSet_badResidue() throws Exception {
+		try {
+			new SequenceRecord("ACD1E");
+			fail("Expected an IOException.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("position 3"));
+		}
+	}
+
+	/** Test that a record is reused when set to a shorter sequence. */
+	public void testSet_reuse() throws Exception {
+		SequenceRecord record = new SequenceRecord("MKVLAAGIVGLLLAQ");
+		byte[] bytes = "xxACGTxx".getBytes("US-ASCII");
+		record.set(bytes, 2, 4);
+		assertEquals(4, record.getLength());
+		assertEquals("ACGT", record.getSequence());
+	}
+
+	/** Test that records are read back as written, over a reused record. */
+	public void testReadFields() throws Exception {
+		SequenceRecord[] records = {new SequenceRecord("MKVLAAGIVGLLLAQ*"),
+				new SequenceRecord("GATTACA"), new SequenceRecord("")};
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (SequenceRecord record : records) {
+			record.write(out);
+		}
+		out.close();
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		SequenceRecord read = new SequenceRecord();
+		for (SequenceRecord record : records) {
+			read.readFields(in);
+			assertEquals(record.isNucleotides(), read.isNucleotides());
+			assertEquals(record.getSequence(), read.getSequence());
+		}
+	}
+
+	private static byte[] serialize(SequenceRecord record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		record.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
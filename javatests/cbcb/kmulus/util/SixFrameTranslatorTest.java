@@ -0,0 +1,68 @@
+package cbcb.kmulus.util;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link SixFrameTranslator}. */
+public class SixFrameTranslatorTest extends TestCase {
+
+	/** Test that every frame matches a translation of one triplet at a time. */
+	public void testTranslate() throws Exception {
+		SixFrameTranslator translator = new SixFrameTranslator(Biology.defaultTable);
+		Random random = new Random(17);
+
+		for (int length = 0; length < 40; length++) {
+			StringBuilder dna = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				dna.append(Biology.NUCLEOTIDES[random.nextInt(Biology.NUCLEOTIDES.length)]);
+			}
+
+			/* Translate from the middle of a larger buffer, as from a line of simple FASTA. */
+			byte[] line = (">7 " + dna + "\n").getBytes("US-ASCII");
+			translator.translate(line, 3, length);
+
+			String revComp = Biology.revComp(dna.toString());
+			for (int frame = 0; frame < SixFrameTranslator.NUM_FRAMES; frame++) {
+				String strand = frame < 3 ? dna.toString() : revComp;
+				StringBuilder expected = new StringBuilder();
+				for (int i = frame % 3; i + 3 <= length; i += 3) {
+					expected.append(Biology.defaultTable.get(strand.substring(i, i + 3)));
+				}
+
+				String actual = new String(
+						translator.getFrame(frame), 0, translator.getFrameLength(frame), "US-ASCII");
+				assertEquals("Frame " + frame + " of " + dna, expected.toString(), actual);
+			}
+		}
+	}
+
+	/** Test translation to a compressed alphabet, in lower case. */
+	public void testTranslate_alphabet() throws Exception {
+		AlphabetMap alphabet = new AlphabetMap("(A G) (C R N D E Q H I L K M F P S T W Y V)");
+		SixFrameTranslator translator = new SixFrameTranslator(alphabet);
+
+		/* GCC GGC TGG encodes A G W, and its reverse complement CCA GCC GGC encodes P A G. */
+		byte[] dna = "gccggctgg".getBytes("US-ASCII");
+		translator.translate(dna, 0, dna.length);
+
+		assertEquals("AAB", new String(translator.getFrame(0), 0, translator.getFrameLength(0)));
+		assertEquals("BAA", new String(translator.getFrame(3), 0, translator.getFrameLength(3)));
+		assertEquals(2, translator.getFrameLength(1));
+		assertEquals(2, translator.getFrameLength(5));
+	}
+
+	/** Test that anything but a nucleotide is rejected. */
+	public void testTranslate_invalid() throws Exception {
+		SixFrameTranslator translator = new SixFrameTranslator(Biology.defaultTable);
+		byte[] dna = "ACGNACG".getBytes("US-ASCII");
+
+		try {
+			translator.translate(dna, 0, dna.length);
+			fail();
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+}